@@ -0,0 +1,660 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.ardverk.collection.Cursor.Decision;
+
+/**
+ * A read-only PATRICIA {@link Trie} whose entries are numbered in the
+ * order of the {@link Trie}. The sub classes tell where the bit index,
+ * the links, the key and the value of an entry are stored.
+ *
+ * <p>An uplink is recognized like in the {@link PatriciaTrie}, by a bit
+ * index that is not greater than the one of the entry that points to it.
+ * Because the entries are in order, the range views are index ranges.
+ */
+abstract class AbstractFrozenTrie<K, V> extends AbstractTrie<K, V>
+        implements Splittable<K, V> {
+
+    private static final long serialVersionUID = -8125622937624414536L;
+
+    /**
+     * The link of an empty root
+     */
+    static final int EMPTY = -1;
+
+    public AbstractFrozenTrie(KeyAnalyzer<? super K> keyAnalyzer) {
+        super(keyAnalyzer);
+    }
+
+    /**
+     * Returns the left link of the root
+     */
+    abstract int rootLeft();
+
+    /**
+     * Returns the bit index of the entry at the given index
+     */
+    abstract int bitIndex(int index);
+
+    /**
+     * Returns the left link of the entry at the given index
+     */
+    abstract int left(int index);
+
+    /**
+     * Returns the right link of the entry at the given index
+     */
+    abstract int right(int index);
+
+    /**
+     * Returns the key of the entry at the given index
+     */
+    abstract K keyAt(int index);
+
+    /**
+     * Returns the value of the entry at the given index
+     */
+    abstract V valueAt(int index);
+
+    /**
+     * Returns true if the key of the entry at the given index is
+     * equal to the given key
+     */
+    abstract boolean isKey(int index, K key);
+
+    @Override
+    public V get(Object k) {
+        int index = indexOf(k);
+        return index != EMPTY ? valueAt(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object k) {
+        return indexOf(k) != EMPTY;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < size(); i++) {
+            if (Tries.areEqual(value, valueAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return keyAnalyzer;
+    }
+
+    @Override
+    public K firstKey() {
+        return firstKey(0, size());
+    }
+
+    @Override
+    public K lastKey() {
+        return lastKey(0, size());
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new RangeMap(0, ceilingIndex(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, toKey, 0, size());
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new RangeMap(ceilingIndex(fromKey), size());
+    }
+
+    @Override
+    public SortedMap<K, V> prefixMap(K prefix) {
+        int lengthInBits = lengthInBits(prefix);
+        if (lengthInBits == 0) {
+            return this;
+        }
+
+        // The keys with the prefix follow each other, starting
+        // with the first key that is not lower than the prefix
+        int start = ceilingIndex(prefix);
+        int low = start;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int bitIndex = bitIndex(prefix, keyAt(mid));
+            if (!Tries.isValidBitIndex(bitIndex) || bitIndex >= lengthInBits) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return new RangeMap(start, low);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet(0, size());
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new KeySet(0, size());
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new Values(0, size());
+    }
+
+    @Override
+    public Splitter<Map.Entry<K, V>> splitter() {
+        return new IndexSplitter(0, size());
+    }
+
+    @Override
+    public Map.Entry<K, V> select(K key) {
+        int index = selectR(rootLeft(), -1, key);
+        return index != EMPTY ? entryAt(index) : null;
+    }
+
+    @Override
+    public Map.Entry<K, V> select(K key, Cursor<? super K, ? super V> cursor) {
+        return selectR(rootLeft(), -1, key, cursor);
+    }
+
+    /**
+     * Returns the index of the entry whose key is the closest to the
+     * given key in the XOR metric, {@link #EMPTY} if there is none.
+     *
+     * @see AbstractPatriciaTrie#select(Object)
+     */
+    private int selectR(int h, int bitIndex, K key) {
+        if (h == EMPTY) {
+            return EMPTY;
+        } else if (bitIndex(h) <= bitIndex) {
+            return h;
+        }
+
+        int found;
+        if (!isBitSet(key, bitIndex(h))) {
+            found = selectR(left(h), bitIndex(h), key);
+            if (found == EMPTY) {
+                found = selectR(right(h), bitIndex(h), key);
+            }
+        } else {
+            found = selectR(right(h), bitIndex(h), key);
+            if (found == EMPTY) {
+                found = selectR(left(h), bitIndex(h), key);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the entry at which the {@link Cursor} exited, null if
+     * it wants to continue.
+     *
+     * @see AbstractPatriciaTrie#select(Object, Cursor)
+     */
+    private Map.Entry<K, V> selectR(int h, int bitIndex, K key,
+            Cursor<? super K, ? super V> cursor) {
+        if (h == EMPTY) {
+            return null;
+        } else if (bitIndex(h) <= bitIndex) {
+            Map.Entry<K, V> entry = entryAt(h);
+            return select(cursor, entry) ? entry : null;
+        }
+
+        Map.Entry<K, V> found;
+        if (!isBitSet(key, bitIndex(h))) {
+            found = selectR(left(h), bitIndex(h), key, cursor);
+            if (found == null) {
+                found = selectR(right(h), bitIndex(h), key, cursor);
+            }
+        } else {
+            found = selectR(right(h), bitIndex(h), key, cursor);
+            if (found == null) {
+                found = selectR(left(h), bitIndex(h), key, cursor);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Map.Entry<K, V> traverse(Cursor<? super K, ? super V> cursor) {
+        for (int i = 0; i < size(); i++) {
+            Map.Entry<K, V> entry = entryAt(i);
+            if (select(cursor, entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the {@link Cursor} wants to exit
+     */
+    private boolean select(Cursor<? super K, ? super V> cursor,
+            Map.Entry<K, V> entry) {
+        Decision decision = cursor.select(entry);
+        switch (decision) {
+            case EXIT:
+                return true;
+            case REMOVE:
+            case REMOVE_AND_EXIT:
+                throw new UnsupportedOperationException(
+                        "Cannot remove from a read-only Trie");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the index of the given key, {@link #EMPTY} if the
+     * {@link Trie} doesn't contain it.
+     *
+     * @see AbstractPatriciaTrie#getEntry(Object)
+     */
+    private int indexOf(Object k) {
+        K key = Tries.<K>cast(k);
+        if (key == null) {
+            return EMPTY;
+        }
+
+        int current = rootLeft();
+        int path = -1;
+        while (current != EMPTY && bitIndex(current) > path) {
+            path = bitIndex(current);
+            if (!isBitSet(key, path)) {
+                current = left(current);
+            } else {
+                current = right(current);
+            }
+        }
+
+        if (current != EMPTY && isKey(current, key)) {
+            return current;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Returns the index of the first key that is not lower
+     * than the given key
+     */
+    private int ceilingIndex(K key) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            // The keys are in the order of their bits
+            int bitIndex = bitIndex(key, keyAt(mid));
+            if (Tries.isValidBitIndex(bitIndex) && isBitSet(key, bitIndex)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Map.Entry<K, V> entryAt(int index) {
+        return new FrozenEntry<K, V>(keyAt(index), valueAt(index));
+    }
+
+    private K firstKey(int start, int end) {
+        if (start >= end) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(start);
+    }
+
+    private K lastKey(int start, int end) {
+        if (start >= end) {
+            throw new NoSuchElementException();
+        }
+        return keyAt(end - 1);
+    }
+
+    /**
+     * Returns the entries from fromKey to toKey of the entries from
+     * start to end. A null key is the start or the end, the keys out
+     * of the range are moved to the start or the end.
+     */
+    private SortedMap<K, V> subMap(K fromKey, K toKey, int start, int end) {
+        int from = fromKey != null ? ceilingIndex(fromKey) : start;
+        int to = toKey != null ? ceilingIndex(toKey) : end;
+        if (to < from) {
+            throw new IllegalArgumentException(
+                    "FromKey is greater than the ToKey: " + fromKey);
+        }
+
+        return new RangeMap(Math.min(Math.max(from, start), end),
+                Math.max(Math.min(to, end), start));
+    }
+
+    /**
+     * The entries from start (inclusive) to end (exclusive)
+     */
+    private class RangeMap extends AbstractMap<K, V>
+            implements SortedMap<K, V>, Splittable<K, V>, Serializable {
+
+        private static final long serialVersionUID = -3393225186932185612L;
+
+        private final int start;
+
+        private final int end;
+
+        public RangeMap(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        private boolean inRange(int index) {
+            return start <= index && index < end;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public V get(Object key) {
+            int index = indexOf(key);
+            return inRange(index) ? valueAt(index) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(indexOf(key));
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return keyAnalyzer;
+        }
+
+        @Override
+        public K firstKey() {
+            return AbstractFrozenTrie.this.firstKey(start, end);
+        }
+
+        @Override
+        public K lastKey() {
+            return AbstractFrozenTrie.this.lastKey(start, end);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return AbstractFrozenTrie.this.subMap(null, toKey, start, end);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return AbstractFrozenTrie.this.subMap(fromKey, toKey, start, end);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return AbstractFrozenTrie.this.subMap(fromKey, null, start, end);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet(start, end);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return new KeySet(start, end);
+        }
+
+        @Override
+        public Collection<V> values() {
+            return new Values(start, end);
+        }
+
+        @Override
+        public Splitter<Map.Entry<K, V>> splitter() {
+            return new IndexSplitter(start, end);
+        }
+    }
+
+    /**
+     * An {@link Iterator} over the entries from start to end
+     */
+    private abstract class IndexIterator<E> implements Iterator<E> {
+
+        protected int next;
+
+        protected final int end;
+
+        public IndexIterator(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public E next() {
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            return get(next++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the element of the entry at the given index
+         */
+        protected abstract E get(int index);
+    }
+
+    /**
+     * A {@link Splitter} for an index range, it splits the range in 
+     * the middle and knows its exact size.
+     */
+    private class IndexSplitter extends IndexIterator<Map.Entry<K, V>>
+            implements Splitter<Map.Entry<K, V>> {
+
+        public IndexSplitter(int start, int end) {
+            super(start, end);
+        }
+
+        @Override
+        public Splitter<Map.Entry<K, V>> trySplit() {
+            int middle = (next + end) >>> 1;
+            if (middle == next) {
+                return null;
+            }
+
+            Splitter<Map.Entry<K, V>> prefix = new IndexSplitter(next, middle);
+            next = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - next;
+        }
+
+        @Override
+        protected Map.Entry<K, V> get(int index) {
+            return entryAt(index);
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        private final int start;
+
+        private final int end;
+
+        public EntrySet(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new IndexIterator<Map.Entry<K, V>>(start, end) {
+                @Override
+                protected Map.Entry<K, V> get(int index) {
+                    return entryAt(index);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+            int index = indexOf(entry.getKey());
+            return start <= index && index < end
+                && Tries.areEqual(valueAt(index), entry.getValue());
+        }
+    }
+
+    private class KeySet extends AbstractSet<K> {
+
+        private final int start;
+
+        private final int end;
+
+        public KeySet(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new IndexIterator<K>(start, end) {
+                @Override
+                protected K get(int index) {
+                    return keyAt(index);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int index = indexOf(o);
+            return start <= index && index < end;
+        }
+    }
+
+    private class Values extends AbstractCollection<V> {
+
+        private final int start;
+
+        private final int end;
+
+        public Values(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new IndexIterator<V>(start, end) {
+                @Override
+                protected V get(int index) {
+                    return valueAt(index);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * A read-only {@link Map.Entry}
+     */
+    private static final class FrozenEntry<K, V> extends BasicEntry<K, V> {
+
+        private static final long serialVersionUID = -1386372245262484839L;
+
+        public FrozenEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.ardverk.collection;
 
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
@@ -31,7 +32,8 @@ import org.ardverk.collection.Cursor.Decision;
  * This class implements the base PATRICIA algorithm and everything that
  * is related to the {@link Map} interface.
  */
-abstract class AbstractPatriciaTrie<K, V> extends AbstractTrie<K, V> {
+abstract class AbstractPatriciaTrie<K, V> extends AbstractTrie<K, V> 
+        implements Splittable<K, V> {
     
     private static final long serialVersionUID = -2303909182832019043L;
 
@@ -99,6 +101,184 @@ abstract class AbstractPatriciaTrie<K, V> extends AbstractTrie<K, V> {
     public int size() {
         return size;
     }
+    
+    /**
+     * Replaces the content of this {@link Trie} with copies of the 
+     * entries of the given {@link Trie}. The links between the entries 
+     * are copied as they are, in O(n) time and without analyzing any 
+     * of the keys again. Both {@link Trie}s must use the same 
+     * {@link KeyAnalyzer}.
+     * 
+     * The entries are copied depth first along the links going down
+     * the {@link Trie}. An uplink goes to the entry itself or to one of 
+     * the entries on the path to it, whose bitIndex grow from the root 
+     * down: the copy of its target is found by a binary search on the 
+     * path. The uplink also gives the predecessor of its target.
+     */
+    @SuppressWarnings("unchecked")
+    void copyEntries(AbstractPatriciaTrie<K, V> other) {
+        TrieEntry<K, V>[] from = new TrieEntry[16];
+        TrieEntry<K, V>[] to = new TrieEntry[16];
+        int[] links = new int[16]; // the number of links copied
+        
+        from[0] = other.root;
+        to[0] = root;
+        root.setKeyValue(other.root.key, other.root.value);
+        root.parent = null;
+        root.left = root;
+        root.right = null;
+        root.predecessor = root;
+        
+        int depth = 1;
+        while (depth > 0) {
+            int top = depth - 1;
+            if (links[top] == 2) {
+                --depth;
+                continue;
+            }
+            
+            TrieEntry<K, V> source = from[top];
+            TrieEntry<K, V> target = to[top];
+            boolean isLeft = (links[top]++ == 0);
+            TrieEntry<K, V> child = isLeft ? source.left : source.right;
+            
+            TrieEntry<K, V> copy = null;
+            if (child != null) {
+                if (child.bitIndex > source.bitIndex) {
+                    copy = new TrieEntry<K, V>(
+                            child.key, child.value, child.bitIndex);
+                    copy.parent = target;
+                    
+                    if (depth == from.length) {
+                        from = Arrays.copyOf(from, depth * 2);
+                        to = Arrays.copyOf(to, depth * 2);
+                        links = Arrays.copyOf(links, depth * 2);
+                    }
+                    from[depth] = child;
+                    to[depth] = copy;
+                    links[depth] = 0;
+                    ++depth;
+                } else {
+                    copy = to[uplink(from, top, child)];
+                    copy.predecessor = target;
+                }
+            }
+            
+            if (isLeft) {
+                target.left = copy;
+            } else {
+                target.right = copy;
+            }
+        }
+        
+        size = other.size;
+        incrementModCount();
+    }
+    
+    /**
+     * Adds the given entries to this empty {@link Trie}. The entries must
+     * be sorted in the order of the {@link Trie} and their keys must be
+     * distinct. Only the bitIndex of each key and the previous one is
+     * computed, no entry is looked up.
+     *
+     * The entries on the right edge of the {@link Trie} are kept on a
+     * stack, their bitIndex grow from the root down. A new entry goes
+     * below the last one whose bitIndex is lower than its own: the entries
+     * below move to its left, or the uplink to the previous key if there
+     * are none, and its own key is its right uplink.
+     */
+    @SuppressWarnings("unchecked")
+    void addSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        if (!isEmpty()) {
+            throw new IllegalStateException("The Trie is not empty");
+        }
+
+        TrieEntry<K, V>[] stack = new TrieEntry[16];
+        stack[0] = root;
+        int depth = 1;
+
+        K previous = null;
+        while (entries.hasNext()) {
+            Map.Entry<? extends K, ? extends V> e = entries.next();
+            K key = e.getKey();
+            if (key == null) {
+                throw new NullPointerException("Key cannot be null");
+            }
+
+            int bitIndex = bitIndex(key, previous);
+            if (Tries.isNullBitKey(bitIndex) && size == 0) {
+                // All bits are zero, the key of the root
+                root.setKeyValue(key, e.getValue());
+                incrementSize();
+                previous = key;
+                continue;
+            }
+
+            if (!Tries.isValidBitIndex(bitIndex)) {
+                throw new IllegalArgumentException(
+                        "Duplicate key: " + key);
+            } else if (!isBitSet(key, bitIndex)) {
+                throw new IllegalArgumentException(
+                        "Key is out of order: " + key + " < " + previous);
+            }
+
+            TrieEntry<K, V> entry = new TrieEntry<K, V>(
+                    key, e.getValue(), bitIndex);
+
+            TrieEntry<K, V> below = null;
+            while (stack[depth - 1].bitIndex > bitIndex) {
+                below = stack[--depth];
+            }
+
+            TrieEntry<K, V> path = stack[depth - 1];
+            if (below != null) {
+                entry.left = below;
+                below.parent = entry;
+            } else {
+                TrieEntry<K, V> uplink = (path == root ? root.left : path.right);
+                entry.left = uplink;
+                uplink.predecessor = entry;
+            }
+
+            entry.right = entry;
+            entry.parent = path;
+            if (path == root) {
+                root.left = entry;
+            } else {
+                path.right = entry;
+            }
+
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = entry;
+
+            incrementSize();
+            previous = key;
+        }
+    }
+
+    /**
+     * Returns the position on the path of the entry an uplink goes to
+     */
+    private static int uplink(TrieEntry<?, ?>[] path, int top, 
+            TrieEntry<?, ?> entry) {
+        int low = 0;
+        int high = top;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int bitIndex = path[mid].bitIndex;
+            if (bitIndex < entry.bitIndex) {
+                low = mid + 1;
+            } else if (bitIndex > entry.bitIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        
+        throw new IllegalStateException(entry + " is not on the path");
+    }
    
     /**
      * A helper method to increment the {@link Trie} size
@@ -380,6 +560,83 @@ abstract class AbstractPatriciaTrie<K, V> extends AbstractTrie<K, V> {
         return null;
     }
     
+    @Override
+    public Splitter<Map.Entry<K, V>> splitter() {
+        TrieEntry<K, V> first = firstEntry();
+        if (first == null) {
+            return new TrieSplitter(null, null, 0);
+        }
+        return new TrieSplitter(first, lastInSubtree(root.left, root), size());
+    }
+    
+    /**
+     * Returns a {@link Splitter} for the entries from first to last, 
+     * both inclusive, of which there are about size. The first and 
+     * last entries are null if there are no entries.
+     */
+    Splitter<Map.Entry<K, V>> splitter(TrieEntry<K, V> first, 
+            TrieEntry<K, V> last, long size) {
+        return new TrieSplitter(first, last, size);
+    }
+    
+    /**
+     * Returns the node whose bit index is the first bit where the
+     * keys of the given entries differ, the lowest node both of them
+     * are under. Returns null if there is no such node.
+     */
+    private TrieEntry<K, V> forkEntry(TrieEntry<K, V> first, TrieEntry<K, V> last) {
+        int bitIndex = bitIndex(first.key, last.key);
+        if (!Tries.isValidBitIndex(bitIndex) || isBitSet(first.key, bitIndex)) {
+            return null;
+        }
+        
+        TrieEntry<K, V> path = root;
+        TrieEntry<K, V> current = root.left;
+        while (current.bitIndex > path.bitIndex && current.bitIndex < bitIndex) {
+            path = current;
+            if (!isBitSet(first.key, current.bitIndex)) {
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        
+        if (current.bitIndex > path.bitIndex && current.bitIndex == bitIndex) {
+            return current;
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the last entry of the subtree the given node links to.
+     */
+    private static <K, V> TrieEntry<K, V> lastInSubtree(
+            TrieEntry<K, V> node, TrieEntry<K, V> from) {
+        if (node.bitIndex <= from.bitIndex) {
+            return node;
+        }
+        
+        while (node.right.bitIndex > node.bitIndex) {
+            node = node.right;
+        }
+        return node.right;
+    }
+    
+    /**
+     * Returns the first entry of the subtree the given node links to.
+     */
+    private static <K, V> TrieEntry<K, V> firstInSubtree(
+            TrieEntry<K, V> node, TrieEntry<K, V> from) {
+        if (node.bitIndex <= from.bitIndex) {
+            return node;
+        }
+        
+        while (node.left.bitIndex > node.bitIndex) {
+            node = node.left;
+        }
+        return node.left;
+    }
+    
     @Override
     public boolean containsKey(Object k) {
         if (k == null) {
@@ -1135,4 +1392,96 @@ abstract class AbstractPatriciaTrie<K, V> extends AbstractTrie<K, V> {
             expectedModCount = AbstractPatriciaTrie.this.modCount;
         }
     }
+    
+    /**
+     * A {@link Splitter} for the entries between two entries. It splits
+     * them at the node where the paths of the two entries fork, the 
+     * left subtree of that node goes to the new {@link Splitter}.
+     */
+    private class TrieSplitter implements Splitter<Map.Entry<K, V>> {
+        
+        /**
+         * For fast-fail
+         */
+        private final int expectedModCount = AbstractPatriciaTrie.this.modCount;
+        
+        private TrieEntry<K, V> next;
+        
+        private final TrieEntry<K, V> last;
+        
+        private long size;
+        
+        public TrieSplitter(TrieEntry<K, V> first, TrieEntry<K, V> last, long size) {
+            this.next = first;
+            this.last = last;
+            this.size = size;
+        }
+        
+        @Override
+        public Splitter<Map.Entry<K, V>> trySplit() {
+            if (expectedModCount != AbstractPatriciaTrie.this.modCount) {
+                throw new ConcurrentModificationException();
+            }
+            
+            if (next == null || next == last) {
+                return null;
+            }
+            
+            TrieEntry<K, V> first = next;
+            
+            // The key of the root has no bits to fork on,
+            // it's split off by itself.
+            if (first == root) {
+                next = nextEntry(root);
+                if (size > 1) {
+                    --size;
+                }
+                return new TrieSplitter(root, root, 1);
+            }
+            
+            TrieEntry<K, V> fork = forkEntry(first, last);
+            if (fork == null) {
+                return null;
+            }
+            
+            next = firstInSubtree(fork.right, fork);
+            
+            long half = size >>> 1;
+            size -= half;
+            return new TrieSplitter(first, lastInSubtree(fork.left, fork), half);
+        }
+        
+        @Override
+        public long estimateSize() {
+            return size;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public Map.Entry<K, V> next() {
+            if (expectedModCount != AbstractPatriciaTrie.this.modCount) {
+                throw new ConcurrentModificationException();
+            }
+            
+            TrieEntry<K, V> e = next;
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            
+            next = (e != last) ? nextEntry(e) : null;
+            if (size > 0) {
+                --size;
+            }
+            return e;
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
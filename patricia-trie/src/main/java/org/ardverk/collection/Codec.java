@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+/**
+ * The {@link Codec} turns the keys and the values of a {@link Trie}
+ * into bytes and back for the file of {@link Tries#write(PatriciaTrie, 
+ * Codec, Codec, java.io.File)}.
+ * 
+ * <p>The bytes of two keys must be equal if and only if the 
+ * {@link KeyAnalyzer} of the {@link Trie} says that the keys are.
+ * 
+ * @see Codecs
+ */
+public interface Codec<T> {
+    
+    /**
+     * Returns the bytes of the given key or value
+     */
+    public byte[] encode(T value);
+    
+    /**
+     * Returns the key or value of the given bytes
+     */
+    public T decode(byte[] data);
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+/**
+ * A collection of {@link Codec}s
+ */
+public class Codecs {
+    
+    /**
+     * A {@link Codec} for {@link String}s that keeps every 
+     * character as it is, in two bytes
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            byte[] data = new byte[value.length() * 2];
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                data[2 * i] = (byte)(ch >>> 8);
+                data[2 * i + 1] = (byte)ch;
+            }
+            return data;
+        }
+
+        @Override
+        public String decode(byte[] data) {
+            char[] chars = new char[data.length / 2];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char)((data[2 * i] << 8) | (data[2 * i + 1] & 0xFF));
+            }
+            return new String(chars);
+        }
+    };
+    
+    /**
+     * A {@link Codec} for <tt>byte[]</tt>s
+     */
+    public static final Codec<byte[]> BYTE_ARRAY = new Codec<byte[]>() {
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(byte[] data) {
+            return data;
+        }
+    };
+    
+    /**
+     * A {@link Codec} for {@link Integer}s
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public byte[] encode(Integer value) {
+            return encodeLong(value, Integer.SIZE / Byte.SIZE);
+        }
+
+        @Override
+        public Integer decode(byte[] data) {
+            return (int)decodeLong(data);
+        }
+    };
+    
+    /**
+     * A {@link Codec} for {@link Long}s
+     */
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public byte[] encode(Long value) {
+            return encodeLong(value, Long.SIZE / Byte.SIZE);
+        }
+
+        @Override
+        public Long decode(byte[] data) {
+            return decodeLong(data);
+        }
+    };
+    
+    private Codecs() {}
+    
+    /**
+     * Returns the given number of low bytes of the value, 
+     * the most significant byte first
+     */
+    private static byte[] encodeLong(long value, int length) {
+        byte[] data = new byte[length];
+        for (int i = length - 1; i >= 0; i--) {
+            data[i] = (byte)value;
+            value >>>= Byte.SIZE;
+        }
+        return data;
+    }
+    
+    private static long decodeLong(byte[] data) {
+        long value = 0L;
+        for (byte b : data) {
+            value = (value << Byte.SIZE) | (b & 0xFF);
+        }
+        return value;
+    }
+}
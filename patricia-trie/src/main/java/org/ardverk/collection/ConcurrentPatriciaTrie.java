@@ -0,0 +1,685 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe PATRICIA {@link Trie} for {@link Trie}s that are read
+ * much more often than they're modified, a routing table for example.
+ *
+ * <p>The entries are kept in a {@link PatriciaTrie} that is never
+ * modified once it's published. Readers take no locks: every read
+ * operation works on the {@link PatriciaTrie} that is current when it
+ * starts and sees a consistent snapshot of the {@link Trie}. Writers
+ * are serialized by a lock, each of them copies the current
+ * {@link PatriciaTrie}, modifies the copy and publishes it. The copy
+ * takes O(n) time but analyzes no key, use {@link #putAll(Map)} to
+ * apply many changes with a single copy.
+ *
+ * <p>The views ({@link #entrySet()}, {@link #prefixMap(Object)},
+ * {@link #subMap(Object, Object)}...) are backed by the {@link Trie} and
+ * their {@link Iterator}s are weakly consistent: they iterate the
+ * snapshot that was current when they were created, they never throw a
+ * {@link java.util.ConcurrentModificationException} and their remove
+ * method removes the key from the {@link Trie}. The {@link Map.Entry}s
+ * of the views write {@link Map.Entry#setValue(Object)} through to the
+ * {@link Trie}.
+ *
+ * <p>The entries a {@link Cursor} removes during
+ * {@link #traverse(Cursor)} are removed once the traversal is over.
+ */
+public class ConcurrentPatriciaTrie<K, V> extends AbstractTrie<K, V>
+        implements Splittable<K, V>, Serializable {
+
+    private static final long serialVersionUID = 4093626440937212815L;
+
+    /**
+     * Serializes the writers
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The current snapshot, never modified once it's published
+     */
+    private volatile PatriciaTrie<K, V> trie;
+
+    public ConcurrentPatriciaTrie() {
+        super();
+        this.trie = new PatriciaTrie<K, V>(keyAnalyzer);
+    }
+
+    public ConcurrentPatriciaTrie(Map<? extends K, ? extends V> m) {
+        this();
+        trie.putAll(m);
+    }
+
+    public ConcurrentPatriciaTrie(KeyAnalyzer<? super K> keyAnalyzer) {
+        super(keyAnalyzer);
+        this.trie = new PatriciaTrie<K, V>(keyAnalyzer);
+    }
+
+    public ConcurrentPatriciaTrie(KeyAnalyzer<? super K> keyAnalyzer,
+            Map<? extends K, ? extends V> m) {
+        this(keyAnalyzer);
+        trie.putAll(m);
+    }
+
+    /**
+     * Applies an {@link Update} to a copy of the current snapshot and
+     * publishes the copy if the {@link Update} modified it. Nothing is
+     * published if the {@link Update} throws an exception.
+     */
+    private <R> R update(Update<K, V, R> update) {
+        lock.lock();
+        try {
+            PatriciaTrie<K, V> current = trie;
+            PatriciaTrie<K, V> copy = new PatriciaTrie<K, V>(keyAnalyzer);
+            copy.copyEntries(current);
+
+            int modCount = copy.modCount;
+            R result = update.apply(copy);
+            if (copy.modCount != modCount) {
+                trie = copy;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V put(final K key, final V value) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+
+        return update(new Update<K, V, V>() {
+            @Override
+            public V apply(PatriciaTrie<K, V> trie) {
+                return trie.put(key, value);
+            }
+        });
+    }
+
+    /**
+     * Adds all the mappings of the given {@link Map} at once, with a
+     * single copy of the {@link Trie}.
+     */
+    @Override
+    public void putAll(final Map<? extends K, ? extends V> m) {
+        update(new Update<K, V, Void>() {
+            @Override
+            public Void apply(PatriciaTrie<K, V> trie) {
+                trie.putAll(m);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public V remove(final Object key) {
+        // The absent keys don't cost a copy
+        if (!containsKey(key)) {
+            return null;
+        }
+
+        return update(new Update<K, V, V>() {
+            @Override
+            public V apply(PatriciaTrie<K, V> trie) {
+                return trie.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Removes all the given keys at once, with a single copy of
+     * the {@link Trie}.
+     */
+    void removeAll(final Collection<?> keys) {
+        update(new Update<K, V, Void>() {
+            @Override
+            public Void apply(PatriciaTrie<K, V> trie) {
+                for (Object key : keys) {
+                    trie.remove(key);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            trie = new PatriciaTrie<K, V>(keyAnalyzer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return trie.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return trie.isEmpty();
+    }
+
+    @Override
+    public V get(Object key) {
+        return trie.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return trie.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return trie.containsValue(value);
+    }
+
+    @Override
+    public Map.Entry<K, V> select(K key) {
+        Map.Entry<K, V> entry = trie.select(key);
+        return entry != null ? new SnapshotEntry(entry) : null;
+    }
+
+    @Override
+    public K selectKey(K key) {
+        return trie.selectKey(key);
+    }
+
+    @Override
+    public V selectValue(K key) {
+        return trie.selectValue(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> select(K key,
+            final Cursor<? super K, ? super V> cursor) {
+        final List<K> removed = new ArrayList<K>(1);
+        Map.Entry<K, V> entry = trie.select(key, new Cursor<K, V>() {
+            @Override
+            public Decision select(Map.Entry<? extends K, ? extends V> entry) {
+                Decision decision = cursor.select(entry);
+                switch (decision) {
+                    case REMOVE:
+                        throw new UnsupportedOperationException(
+                                "Cannot remove during select");
+                    case REMOVE_AND_EXIT:
+                        removed.add(entry.getKey());
+                        return Decision.EXIT;
+                }
+                return decision;
+            }
+        });
+
+        return exit(entry, removed);
+    }
+
+    @Override
+    public Map.Entry<K, V> traverse(final Cursor<? super K, ? super V> cursor) {
+        final List<K> removed = new ArrayList<K>();
+        Map.Entry<K, V> entry = trie.traverse(new Cursor<K, V>() {
+            @Override
+            public Decision select(Map.Entry<? extends K, ? extends V> entry) {
+                Decision decision = cursor.select(entry);
+                switch (decision) {
+                    case REMOVE:
+                        removed.add(entry.getKey());
+                        return Decision.CONTINUE;
+                    case REMOVE_AND_EXIT:
+                        removed.add(entry.getKey());
+                        return Decision.EXIT;
+                }
+                return decision;
+            }
+        });
+
+        return exit(entry, removed);
+    }
+
+    /**
+     * Removes the entries a {@link Cursor} removed and returns the
+     * entry it exited on
+     */
+    private Map.Entry<K, V> exit(Map.Entry<K, V> entry, List<K> removed) {
+        if (!removed.isEmpty()) {
+            removeAll(removed);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        // REMOVE_AND_EXIT, the entry is no longer in the Trie
+        if (!removed.isEmpty()
+                && removed.get(removed.size() - 1) == entry.getKey()) {
+            return new AbstractPatriciaTrie.TrieEntry<K, V>(
+                    entry.getKey(), entry.getValue(), -1);
+        }
+        return new SnapshotEntry(entry);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return keyAnalyzer;
+    }
+
+    @Override
+    public K firstKey() {
+        return trie.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return trie.lastKey();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new SnapshotEntrySet(null);
+    }
+
+    @Override
+    public SortedMap<K, V> prefixMap(K prefix) {
+        return new SnapshotMap(new PrefixView<K, V>(prefix));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new SnapshotMap(new RangeView<K, V>(null, null, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return new SnapshotMap(new RangeView<K, V>(null, fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new SnapshotMap(new RangeView<K, V>(null, fromKey, null));
+    }
+
+    /**
+     * Returns a {@link Splitter} for the current snapshot
+     */
+    @Override
+    public Splitter<Map.Entry<K, V>> splitter() {
+        return new SnapshotSplitter(trie.splitter());
+    }
+
+    /**
+     * Returns a {@link PatriciaTrie} with the current content of this
+     * {@link Trie}. It's not backed by this {@link Trie}.
+     */
+    public PatriciaTrie<K, V> snapshot() {
+        PatriciaTrie<K, V> copy = new PatriciaTrie<K, V>(keyAnalyzer);
+        copy.copyEntries(trie);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return trie.toString();
+    }
+
+    /**
+     * Returns the given view of a snapshot, or the snapshot itself
+     * if the view is null
+     */
+    private static <K, V> SortedMap<K, V> map(View<K, V> view,
+            PatriciaTrie<K, V> trie) {
+        return view != null ? view.of(trie) : trie;
+    }
+
+    /**
+     * A modification of the {@link Trie}, applied to a copy of the
+     * current snapshot
+     */
+    private static abstract class Update<K, V, R> {
+        public abstract R apply(PatriciaTrie<K, V> trie);
+    }
+
+    /**
+     * A part of the {@link Trie}, taken from any of its snapshots
+     */
+    private static abstract class View<K, V> {
+        public abstract SortedMap<K, V> of(PatriciaTrie<K, V> trie);
+    }
+
+    /**
+     * The keys with a prefix
+     */
+    private static class PrefixView<K, V> extends View<K, V> {
+
+        private final K prefix;
+
+        public PrefixView(K prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public SortedMap<K, V> of(PatriciaTrie<K, V> trie) {
+            return trie.prefixMap(prefix);
+        }
+    }
+
+    /**
+     * A range of keys, of the whole {@link Trie} or of an other
+     * {@link View}. A null key is an open end.
+     */
+    private static class RangeView<K, V> extends View<K, V> {
+
+        private final View<K, V> parent;
+
+        private final K fromKey;
+
+        private final K toKey;
+
+        public RangeView(View<K, V> parent, K fromKey, K toKey) {
+            this.parent = parent;
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+        }
+
+        @Override
+        public SortedMap<K, V> of(PatriciaTrie<K, V> trie) {
+            SortedMap<K, V> map = map(parent, trie);
+            if (fromKey == null) {
+                return map.headMap(toKey);
+            } else if (toKey == null) {
+                return map.tailMap(fromKey);
+            }
+            return map.subMap(fromKey, toKey);
+        }
+    }
+
+    /**
+     * A {@link SortedMap} view of a part of the {@link Trie}
+     */
+    private class SnapshotMap extends AbstractMap<K, V>
+            implements SortedMap<K, V>, Splittable<K, V> {
+
+        private final View<K, V> view;
+
+        public SnapshotMap(View<K, V> view) {
+            // Checks the range now rather than at the first use
+            view.of(trie);
+            this.view = view;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return keyAnalyzer;
+        }
+
+        @Override
+        public K firstKey() {
+            return view.of(trie).firstKey();
+        }
+
+        @Override
+        public K lastKey() {
+            return view.of(trie).lastKey();
+        }
+
+        @Override
+        public int size() {
+            return view.of(trie).size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return view.of(trie).isEmpty();
+        }
+
+        @Override
+        public V get(Object key) {
+            return view.of(trie).get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return view.of(trie).containsKey(key);
+        }
+
+        @Override
+        public V put(final K key, final V value) {
+            return update(new Update<K, V, V>() {
+                @Override
+                public V apply(PatriciaTrie<K, V> trie) {
+                    return view.of(trie).put(key, value);
+                }
+            });
+        }
+
+        @Override
+        public V remove(final Object key) {
+            if (!containsKey(key)) {
+                return null;
+            }
+
+            return update(new Update<K, V, V>() {
+                @Override
+                public V apply(PatriciaTrie<K, V> trie) {
+                    return view.of(trie).remove(key);
+                }
+            });
+        }
+
+        @Override
+        public void clear() {
+            update(new Update<K, V, Void>() {
+                @Override
+                public Void apply(PatriciaTrie<K, V> trie) {
+                    view.of(trie).clear();
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new SnapshotEntrySet(view);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return new SnapshotMap(new RangeView<K, V>(view, null, toKey));
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return new SnapshotMap(new RangeView<K, V>(view, fromKey, toKey));
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return new SnapshotMap(new RangeView<K, V>(view, fromKey, null));
+        }
+
+        @Override
+        public Splitter<Map.Entry<K, V>> splitter() {
+            return new SnapshotSplitter(Tries.splitter(view.of(trie)));
+        }
+    }
+
+    /**
+     * The entries of the {@link Trie} or of a {@link View}
+     */
+    private class SnapshotEntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        private final View<K, V> view;
+
+        public SnapshotEntrySet(View<K, V> view) {
+            this.view = view;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new SnapshotIterator(map(view, trie).entrySet().iterator());
+        }
+
+        @Override
+        public int size() {
+            return map(view, trie).size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map(view, trie).isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map(view, trie).entrySet().contains(o);
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+
+            return update(new Update<K, V, Boolean>() {
+                @Override
+                public Boolean apply(PatriciaTrie<K, V> trie) {
+                    return map(view, trie).entrySet().remove(o);
+                }
+            });
+        }
+
+        @Override
+        public void clear() {
+            if (view == null) {
+                ConcurrentPatriciaTrie.this.clear();
+            } else {
+                new SnapshotMap(view).clear();
+            }
+        }
+    }
+
+    /**
+     * A weakly consistent {@link Iterator}, it iterates a snapshot
+     */
+    private class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final Iterator<Map.Entry<K, V>> iterator;
+
+        private Map.Entry<K, V> current;
+
+        public SnapshotIterator(Iterator<Map.Entry<K, V>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            current = iterator.next();
+            return new SnapshotEntry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            ConcurrentPatriciaTrie.this.remove(current.getKey());
+            current = null;
+        }
+    }
+
+    /**
+     * A {@link Splitter} of a snapshot
+     */
+    private class SnapshotSplitter implements Splitter<Map.Entry<K, V>> {
+
+        private final Splitter<Map.Entry<K, V>> splitter;
+
+        public SnapshotSplitter(Splitter<Map.Entry<K, V>> splitter) {
+            this.splitter = splitter;
+        }
+
+        @Override
+        public Splitter<Map.Entry<K, V>> trySplit() {
+            Splitter<Map.Entry<K, V>> prefix = splitter.trySplit();
+            return prefix != null ? new SnapshotSplitter(prefix) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return splitter.estimateSize();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return splitter.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return new SnapshotEntry(splitter.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An entry of a snapshot, {@link #setValue(Object)} writes
+     * through to the {@link Trie}
+     */
+    private class SnapshotEntry extends BasicEntry<K, V> {
+
+        private static final long serialVersionUID = -1520815541232939466L;
+
+        public SnapshotEntry(Map.Entry<K, V> entry) {
+            super(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = super.setValue(value);
+            put(key, value);
+            return previous;
+        }
+    }
+}
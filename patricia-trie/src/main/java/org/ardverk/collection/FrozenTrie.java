@@ -0,0 +1,314 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.ardverk.collection.AbstractPatriciaTrie.TrieEntry;
+
+/**
+ * A read-only PATRICIA {@link Trie} whose structure is stored in
+ * primitive arrays instead of one {@link TrieEntry} per key.
+ *
+ * <p>The bit index and the left and right links of the entry <tt>i</tt>
+ * are <tt>bitIndex[i]</tt>, <tt>left[i]</tt> and <tt>right[i]</tt>. The
+ * parent and predecessor links are only needed for the updates and are
+ * dropped. The keys of {@link String}s and <tt>byte[]</tt>s are packed
+ * into a single array.
+ *
+ * @see Tries#freeze(PatriciaTrie)
+ */
+final class FrozenTrie<K, V> extends AbstractFrozenTrie<K, V> {
+
+    private static final long serialVersionUID = 3520283468409823460L;
+
+    /**
+     * The number of entries
+     */
+    private final int size;
+
+    /**
+     * The left link of the root
+     */
+    private final int rootLeft;
+
+    private final int[] bitIndex;
+
+    private final int[] left;
+
+    private final int[] right;
+
+    private final Keys<K> keys;
+
+    private final Object[] values;
+
+    public FrozenTrie(PatriciaTrie<K, V> trie) {
+        super(trie.getKeyAnalyzer());
+
+        size = trie.size();
+        bitIndex = new int[size];
+        left = new int[size];
+        right = new int[size];
+        values = new Object[size];
+
+        IdentityHashMap<TrieEntry<K, V>, Integer> index
+            = new IdentityHashMap<TrieEntry<K, V>, Integer>(size);
+        Object[] keys = new Object[size];
+        int i = 0;
+        for (TrieEntry<K, V> entry = trie.nextEntry(null);
+                entry != null; entry = trie.nextEntry(entry)) {
+            index.put(entry, i);
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+
+        for (Map.Entry<TrieEntry<K, V>, Integer> e : index.entrySet()) {
+            TrieEntry<K, V> entry = e.getKey();
+            i = e.getValue();
+            bitIndex[i] = entry.bitIndex;
+            left[i] = indexOf(index, entry.left);
+            right[i] = indexOf(index, entry.right);
+        }
+
+        this.rootLeft = indexOf(index, trie.root.left);
+        this.keys = createKeys(keyAnalyzer, keys);
+    }
+
+    /**
+     * Returns the index of the given entry, {@link #EMPTY} for
+     * an empty root
+     */
+    private static <K, V> int indexOf(
+            Map<TrieEntry<K, V>, Integer> index, TrieEntry<K, V> entry) {
+        Integer i = index.get(entry);
+        return i != null ? i : EMPTY;
+    }
+
+    /**
+     * Packs the keys into a single array if the {@link KeyAnalyzer}
+     * tells us what equal keys are
+     */
+    private static <K> Keys<K> createKeys(
+            KeyAnalyzer<? super K> keyAnalyzer, Object[] keys) {
+        if (keyAnalyzer instanceof StringKeyAnalyzer) {
+            return Tries.<Keys<K>>cast(new StringKeys(keys));
+        } else if (keyAnalyzer instanceof ByteArrayKeyAnalyzer) {
+            return Tries.<Keys<K>>cast(new ByteArrayKeys(keys));
+        }
+        return new ObjectKeys<K>(keyAnalyzer, keys);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    int rootLeft() {
+        return rootLeft;
+    }
+
+    @Override
+    int bitIndex(int index) {
+        return bitIndex[index];
+    }
+
+    @Override
+    int left(int index) {
+        return left[index];
+    }
+
+    @Override
+    int right(int index) {
+        return right[index];
+    }
+
+    @Override
+    K keyAt(int index) {
+        return keys.get(index);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    @Override
+    boolean isKey(int index, K key) {
+        return keys.isKey(index, key);
+    }
+
+    /**
+     * The keys of a {@link FrozenTrie}
+     */
+    private abstract static class Keys<K> implements Serializable {
+
+        private static final long serialVersionUID = 1726563271856219325L;
+
+        /**
+         * Returns the key at the given index
+         */
+        public abstract K get(int index);
+
+        /**
+         * Returns true if the key at the given index is equal to
+         * the given key
+         */
+        public abstract boolean isKey(int index, K key);
+    }
+
+    /**
+     * The keys as they are
+     */
+    private static final class ObjectKeys<K> extends Keys<K> {
+
+        private static final long serialVersionUID = -6097584263593014512L;
+
+        private final KeyAnalyzer<? super K> keyAnalyzer;
+
+        private final Object[] keys;
+
+        public ObjectKeys(KeyAnalyzer<? super K> keyAnalyzer, Object[] keys) {
+            this.keyAnalyzer = keyAnalyzer;
+            this.keys = keys;
+        }
+
+        @Override
+        public K get(int index) {
+            return Tries.<K>cast(keys[index]);
+        }
+
+        @Override
+        public boolean isKey(int index, K key) {
+            return keyAnalyzer.compare(key, get(index)) == 0;
+        }
+    }
+
+    /**
+     * The characters of all the {@link String}s in a single array, the
+     * key at the index <tt>i</tt> goes from <tt>offsets[i]</tt> to
+     * <tt>offsets[i+1]</tt>
+     */
+    private static final class StringKeys extends Keys<String> {
+
+        private static final long serialVersionUID = 5195463297236780542L;
+
+        private final char[] chars;
+
+        private final int[] offsets;
+
+        public StringKeys(Object[] keys) {
+            offsets = new int[keys.length + 1];
+            for (int i = 0; i < keys.length; i++) {
+                offsets[i + 1] = offset(offsets[i], ((String)keys[i]).length());
+            }
+
+            chars = new char[offsets[keys.length]];
+            for (int i = 0; i < keys.length; i++) {
+                String key = (String)keys[i];
+                key.getChars(0, key.length(), chars, offsets[i]);
+            }
+        }
+
+        @Override
+        public String get(int index) {
+            return new String(chars, offsets[index],
+                    offsets[index + 1] - offsets[index]);
+        }
+
+        @Override
+        public boolean isKey(int index, String key) {
+            int offset = offsets[index];
+            int length = offsets[index + 1] - offset;
+            if (key.length() != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (key.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The bytes of all the keys in a single array
+     *
+     * @see StringKeys
+     */
+    private static final class ByteArrayKeys extends Keys<byte[]> {
+
+        private static final long serialVersionUID = -2870306373151598036L;
+
+        private final byte[] bytes;
+
+        private final int[] offsets;
+
+        public ByteArrayKeys(Object[] keys) {
+            offsets = new int[keys.length + 1];
+            for (int i = 0; i < keys.length; i++) {
+                offsets[i + 1] = offset(offsets[i], ((byte[])keys[i]).length);
+            }
+
+            bytes = new byte[offsets[keys.length]];
+            for (int i = 0; i < keys.length; i++) {
+                byte[] key = (byte[])keys[i];
+                System.arraycopy(key, 0, bytes, offsets[i], key.length);
+            }
+        }
+
+        @Override
+        public byte[] get(int index) {
+            return Arrays.copyOfRange(bytes, offsets[index], offsets[index + 1]);
+        }
+
+        @Override
+        public boolean isKey(int index, byte[] key) {
+            int offset = offsets[index];
+            int length = offsets[index + 1] - offset;
+            if (key.length != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the offset of the key that follows a key of the given
+     * length at the given offset
+     */
+    private static int offset(int offset, int length) {
+        if (length > Integer.MAX_VALUE - offset) {
+            throw new IllegalArgumentException(
+                    "The keys don't fit into a single array");
+        }
+        return offset + length;
+    }
+}
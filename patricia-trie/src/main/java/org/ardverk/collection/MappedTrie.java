@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only {@link Trie} that is read straight from a memory mapped 
+ * file, without loading it. The pages of the file are shared with the 
+ * other processes that map it.
+ * 
+ * <p>The file has the layout of the {@link FrozenTrie}, the links are 
+ * the indices of the entries and every number is big endian:
+ * 
+ * <pre>
+ * int            magic, version, size and the left link of the root
+ * int[size]      the bit indices
+ * int[size]      the left links
+ * int[size]      the right links
+ *                padding to a multiple of 8
+ * long[size+1]   the offsets of the keys in the keys 
+ * long[size+1]   the offsets of the values in the values, 
+ *                the first bit is set for null
+ * byte[]         the keys
+ * byte[]         the values
+ * </pre>
+ * 
+ * The file is mapped in segments of 1 GB, which are a multiple of the 
+ * size of the numbers, so that a number is never cut in two.
+ * 
+ * @see Tries#write(PatriciaTrie, Codec, Codec, File)
+ * @see Tries#map(File, KeyAnalyzer, Codec, Codec)
+ */
+final class MappedTrie<K, V> extends AbstractFrozenTrie<K, V> {
+    
+    private static final long serialVersionUID = -2470335587271853367L;
+
+    private static final int MAGIC = 0x50545249;
+    
+    private static final int VERSION = 1;
+    
+    private static final int HEADER = 16;
+    
+    private static final int SEGMENT_SHIFT = 30;
+    
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1L;
+    
+    private static final long NULL = Long.MIN_VALUE;
+    
+    private final Codec<K> keyCodec;
+    
+    private final Codec<V> valueCodec;
+    
+    private final ByteBuffer[] segments;
+    
+    private final int size;
+    
+    private final int rootLeft;
+    
+    /**
+     * The positions of the sections in the file
+     */
+    private final long keyOffsets, valueOffsets, keys, values;
+    
+    public MappedTrie(File file, KeyAnalyzer<? super K> keyAnalyzer, 
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        super(keyAnalyzer);
+        
+        this.keyCodec = Tries.notNull(keyCodec, "keyCodec");
+        this.valueCodec = Tries.notNull(valueCodec, "valueCodec");
+        
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mappings stay valid when the file is closed
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            segments = new ByteBuffer[(int)((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long)i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+                        position, Math.min(SEGMENT_MASK + 1L, length - position));
+            }
+            
+            if (length < HEADER || getInt(0) != MAGIC) {
+                throw new IOException("Not a Trie: " + file);
+            }
+            
+            if (getInt(4) != VERSION) {
+                throw new IOException("Unknown version: " + getInt(4));
+            }
+            
+            size = getInt(8);
+            rootLeft = getInt(12);
+            keyOffsets = position(size);
+            valueOffsets = keyOffsets + 8L * (size + 1);
+            keys = valueOffsets + 8L * (size + 1);
+            
+            if (length < keys) {
+                throw new IOException("Truncated Trie: " + file);
+            }
+            
+            values = keys + getLong(keyOffsets + 8L * size);
+            if (length != values + (getLong(valueOffsets + 8L * size) & ~NULL)) {
+                throw new IOException("Truncated Trie: " + file);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Returns the position of the key offsets in a file 
+     * of the given size
+     */
+    private static long position(int size) {
+        long position = HEADER + 12L * size;
+        return (position + 7L) & ~7L;
+    }
+    
+    /**
+     * Writes the given {@link Trie} into the given file
+     */
+    public static <K, V> void write(AbstractFrozenTrie<K, V> trie, 
+            Codec<? super K> keyCodec, Codec<? super V> valueCodec, 
+            File file) throws IOException {
+        
+        int size = trie.size();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(trie.rootLeft());
+            
+            for (int i = 0; i < size; i++) {
+                out.writeInt(trie.bitIndex(i));
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(trie.left(i));
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(trie.right(i));
+            }
+            for (long i = HEADER + 12L * size; i < position(size); i++) {
+                out.writeByte(0);
+            }
+            
+            // The keys and values are encoded twice, once for the 
+            // offsets and once for the bytes, to keep only one in memory
+            long offset = 0L;
+            out.writeLong(offset);
+            for (int i = 0; i < size; i++) {
+                offset += keyCodec.encode(trie.keyAt(i)).length;
+                out.writeLong(offset);
+            }
+            
+            offset = 0L;
+            out.writeLong(offset);
+            for (int i = 0; i < size; i++) {
+                V value = trie.valueAt(i);
+                if (value != null) {
+                    offset += valueCodec.encode(value).length;
+                    out.writeLong(offset);
+                } else {
+                    out.writeLong(offset | NULL);
+                }
+            }
+            
+            for (int i = 0; i < size; i++) {
+                out.write(keyCodec.encode(trie.keyAt(i)));
+            }
+            for (int i = 0; i < size; i++) {
+                V value = trie.valueAt(i);
+                if (value != null) {
+                    out.write(valueCodec.encode(value));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    int rootLeft() {
+        return rootLeft;
+    }
+
+    @Override
+    int bitIndex(int index) {
+        return getInt(HEADER + 4L * index);
+    }
+
+    @Override
+    int left(int index) {
+        return getInt(HEADER + 4L * (size + index));
+    }
+
+    @Override
+    int right(int index) {
+        return getInt(HEADER + 4L * (2 * size + index));
+    }
+
+    @Override
+    K keyAt(int index) {
+        long start = getLong(keyOffsets + 8L * index);
+        long end = getLong(keyOffsets + 8L * (index + 1));
+        return keyCodec.decode(getBytes(keys + start, (int)(end - start)));
+    }
+
+    @Override
+    V valueAt(int index) {
+        long end = getLong(valueOffsets + 8L * (index + 1));
+        if ((end & NULL) != 0L) {
+            return null;
+        }
+        
+        long start = getLong(valueOffsets + 8L * index) & ~NULL;
+        return valueCodec.decode(getBytes(values + start, (int)(end - start)));
+    }
+
+    /**
+     * Compares the bytes of the key with the ones in the file
+     */
+    @Override
+    boolean isKey(int index, K key) {
+        long start = getLong(keyOffsets + 8L * index);
+        long end = getLong(keyOffsets + 8L * (index + 1));
+        
+        byte[] data = keyCodec.encode(key);
+        if (data.length != end - start) {
+            return false;
+        }
+        
+        long position = keys + start;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != getByte(position + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private ByteBuffer segment(long position) {
+        return segments[(int)(position >>> SEGMENT_SHIFT)];
+    }
+    
+    private byte getByte(long position) {
+        return segment(position).get((int)(position & SEGMENT_MASK));
+    }
+    
+    private int getInt(long position) {
+        return segment(position).getInt((int)(position & SEGMENT_MASK));
+    }
+    
+    private long getLong(long position) {
+        return segment(position).getLong((int)(position & SEGMENT_MASK));
+    }
+    
+    private byte[] getBytes(long position, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = getByte(position + i);
+        }
+        return data;
+    }
+    
+    /**
+     * The mapped file can't be serialized, {@link Tries#freeze(PatriciaTrie)}
+     * can be serialized
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+}
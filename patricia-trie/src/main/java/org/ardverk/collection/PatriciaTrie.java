@@ -85,7 +85,25 @@ public class PatriciaTrie<K, V> extends AbstractPatriciaTrie<K, V>
             Map<? extends K, ? extends V> m) {
         super(keyAnalyzer, m);
     }
-    
+
+    /**
+     * Returns a {@link PatriciaTrie} with the given entries, which must be
+     * sorted in the order of the {@link Trie} (the order of its iterators)
+     * and have distinct keys. The {@link Trie} is built in a single pass
+     * that only compares each key with the previous one, which is much
+     * faster than calling {@link #put(Object, Object)} for every entry.
+     *
+     * @throws IllegalArgumentException if the keys are not sorted or
+     * a key is repeated
+     */
+    public static <K, V> PatriciaTrie<K, V> bulkLoad(
+            Iterator<? extends Map.Entry<? extends K, ? extends V>> sorted,
+            KeyAnalyzer<? super K> keyAnalyzer) {
+        PatriciaTrie<K, V> trie = new PatriciaTrie<K, V>(keyAnalyzer);
+        trie.addSorted(sorted);
+        return trie;
+    }
+
     @Override
     public Comparator<? super K> comparator() {
         return keyAnalyzer;
@@ -508,7 +526,7 @@ public class PatriciaTrie<K, V> extends AbstractPatriciaTrie<K, V>
      * A range view of the {@link Trie}
      */
     private abstract class RangeMap extends AbstractMap<K, V> 
-            implements SortedMap<K, V> {
+            implements SortedMap<K, V>, Splittable<K, V> {
 
         /**
          * The {@link #entrySet()} view
@@ -822,6 +840,22 @@ public class PatriciaTrie<K, V> extends AbstractPatriciaTrie<K, V>
                K toKey, boolean toInclusive) {
            return new RangeEntryMap(fromKey, fromInclusive, toKey, toInclusive);
        }
+       
+       @Override
+       public Splitter<Map.Entry<K, V>> splitter() {
+           TrieEntry<K, V> first = null;
+           TrieEntry<K, V> last = null;
+           try {
+               first = getEntry(firstKey());
+               last = getEntry(lastKey());
+           } catch (NoSuchElementException empty) {
+           }
+           
+           // The size of the range is not known without counting 
+           // its entries, the size of the Trie is an estimate.
+           return PatriciaTrie.this.splitter(first, last, 
+                   first != null ? PatriciaTrie.this.size() : 0);
+       }
    }
    
     /**
@@ -1130,6 +1164,28 @@ public class PatriciaTrie<K, V> extends AbstractPatriciaTrie<K, V>
                 K toKey, boolean toInclusive) {
             return new RangeEntryMap(fromKey, fromInclusive, toKey, toInclusive);
         }
+        
+        /**
+         * Splits the subtree of the prefix, unlike {@link #firstKey()}
+         * and {@link #lastKey()} it doesn't count the entries first.
+         */
+        @Override
+        public Splitter<Map.Entry<K, V>> splitter() {
+            TrieEntry<K, V> subtree = subtree(prefix);
+            if (subtree == null) {
+                return PatriciaTrie.this.splitter(null, null, 0);
+            } else if (lengthInBits(prefix) >= subtree.bitIndex) {
+                return PatriciaTrie.this.splitter(subtree, subtree, 1);
+            }
+            
+            TrieEntry<K, V> node = subtree;
+            while (node.right.bitIndex > node.bitIndex) {
+                node = node.right;
+            }
+            
+            return PatriciaTrie.this.splitter(followLeft(subtree), 
+                    node.right, PatriciaTrie.this.size());
+        }
     }
     
     /**
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.util.Map;
+
+/**
+ * Implemented by the {@link Trie}s and their views that can split their
+ * entries into {@link Splitter}s.
+ * 
+ * @see Tries#splitter(java.util.SortedMap)
+ */
+interface Splittable<K, V> {
+    
+    /**
+     * Returns a {@link Splitter} for all entries
+     */
+    public Splitter<Map.Entry<K, V>> splitter();
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.util.Iterator;
+
+/**
+ * A {@link Splitter} is an {@link Iterator} over a part of a {@link Trie}
+ * that can hand the first half of its remaining elements to another 
+ * {@link Splitter}. The parts are split along the subtrees of the 
+ * {@link Trie} and can be iterated by different threads.
+ * 
+ * <p>A {@link Splitter} is not thread-safe and the {@link Trie} must not
+ * be modified while it's split or iterated. It does not support 
+ * {@link #remove()}.
+ * 
+ * @see Tries#splitter(java.util.SortedMap)
+ * @see Tries#split(java.util.SortedMap, int)
+ */
+public interface Splitter<E> extends Iterator<E> {
+    
+    /**
+     * Returns a {@link Splitter} for the elements this {@link Splitter} 
+     * would return first and keeps the rest, or returns null if its
+     * elements can't be split.
+     */
+    public Splitter<E> trySplit();
+    
+    /**
+     * Returns an estimate of the number of elements left, or 
+     * {@link Long#MAX_VALUE} if it's unknown
+     */
+    public long estimateSize();
+}
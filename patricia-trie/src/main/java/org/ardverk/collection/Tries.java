@@ -16,11 +16,16 @@
 
 package org.ardverk.collection;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -114,7 +119,117 @@ public class Tries {
         
         return new UnmodifiableTrie<K, V>(trie);
     }
+
+    /**
+     * Returns a read-only copy of a {@link PatriciaTrie} that stores its
+     * structure in <tt>int</tt> arrays instead of one object per entry,
+     * and the {@link String} and <tt>byte[]</tt> keys in a single array.
+     * It is meant for large {@link Trie}s that are built once and read
+     * many times.
+     */
+    public static <K, V> Trie<K, V> freeze(PatriciaTrie<K, V> trie) {
+        return new FrozenTrie<K, V>(trie);
+    }
+
+    /**
+     * Writes a {@link PatriciaTrie} into a file that {@link #map(File, 
+     * KeyAnalyzer, Codec, Codec)} reads without loading it.
+     */
+    public static <K, V> void write(PatriciaTrie<K, V> trie, 
+            Codec<? super K> keyCodec, Codec<? super V> valueCodec, 
+            File file) throws IOException {
+        MappedTrie.write(new FrozenTrie<K, V>(trie), keyCodec, valueCodec, file);
+    }
+
+    /**
+     * Returns a read-only {@link Trie} that reads the file of {@link 
+     * #write(PatriciaTrie, Codec, Codec, File)} from memory mapped 
+     * pages. The {@link KeyAnalyzer} and the {@link Codec}s must be 
+     * the ones the {@link Trie} was written with.
+     */
+    public static <K, V> Trie<K, V> map(File file, 
+            KeyAnalyzer<? super K> keyAnalyzer, Codec<K> keyCodec, 
+            Codec<V> valueCodec) throws IOException {
+        return new MappedTrie<K, V>(file, keyAnalyzer, keyCodec, valueCodec);
+    }
+
+    /**
+     * Returns a {@link Splitter} for the entries of the given 
+     * {@link SortedMap}. The {@link Trie}s of this package and their 
+     * prefix and range views split along their subtrees, any other
+     * {@link SortedMap} returns a {@link Splitter} that doesn't split.
+     * 
+     * <p>The {@link Splitter} of a {@link PatriciaTrie} view must be 
+     * created before the parts are handed to other threads.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Splitter<Map.Entry<K, V>> splitter(SortedMap<K, V> map) {
+        if (map instanceof Splittable<?, ?>) {
+            return ((Splittable<K, V>)map).splitter();
+        }
+        
+        return new IteratorSplitter<Map.Entry<K, V>>(map.entrySet().iterator());
+    }
+    
+    /**
+     * Returns a {@link Splitter} for the keys of the given {@link SortedMap}
+     * 
+     * @see #splitter(SortedMap)
+     */
+    public static <K, V> Splitter<K> keySplitter(SortedMap<K, V> map) {
+        return new KeySplitter<K, V>(splitter(map));
+    }
+    
+    /**
+     * Returns a {@link Splitter} for the values of the given {@link SortedMap}
+     * 
+     * @see #splitter(SortedMap)
+     */
+    public static <K, V> Splitter<V> valueSplitter(SortedMap<K, V> map) {
+        return new ValueSplitter<K, V>(splitter(map));
+    }
     
+    /**
+     * Splits the entries of the given {@link SortedMap} into at most the 
+     * given number of {@link Splitter}s, which are returned in the order 
+     * of their entries. The parts can be iterated by different threads, 
+     * by the tasks of an {@link java.util.concurrent.ExecutorService} 
+     * for example. The parts are subtrees and their sizes depend on 
+     * the keys, ask for a few times more parts than there are threads.
+     * 
+     * @see #splitter(SortedMap)
+     */
+    public static <K, V> List<Splitter<Map.Entry<K, V>>> split(
+            SortedMap<K, V> map, int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("parts=" + parts);
+        }
+        
+        List<Splitter<Map.Entry<K, V>>> splitters 
+            = new LinkedList<Splitter<Map.Entry<K, V>>>();
+        splitters.add(splitter(map));
+        
+        // Splits every part once per round, until there are 
+        // enough parts or none of them can be split anymore
+        boolean split = true;
+        while (split && splitters.size() < parts) {
+            split = false;
+            
+            ListIterator<Splitter<Map.Entry<K, V>>> it = splitters.listIterator();
+            while (it.hasNext() && splitters.size() < parts) {
+                Splitter<Map.Entry<K, V>> prefix = it.next().trySplit();
+                if (prefix != null) {
+                    it.previous();
+                    it.add(prefix);
+                    it.next();
+                    split = true;
+                }
+            }
+        }
+        
+        return splitters;
+    }
+
     /**
      * A synchronized {@link Trie}
      */
@@ -757,4 +872,118 @@ public class Tries {
             return delegate.toString();
         }
     }
+    
+    /**
+     * A {@link Splitter} for the elements of an {@link Iterator}, 
+     * it doesn't split.
+     */
+    private static class IteratorSplitter<E> implements Splitter<E> {
+        
+        private final Iterator<E> iterator;
+        
+        public IteratorSplitter(Iterator<E> iterator) {
+            this.iterator = iterator;
+        }
+        
+        @Override
+        public Splitter<E> trySplit() {
+            return null;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+        
+        @Override
+        public E next() {
+            return iterator.next();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    /**
+     * A {@link Splitter} for the keys of a {@link Splitter} of entries
+     */
+    private static class KeySplitter<K, V> implements Splitter<K> {
+        
+        private final Splitter<Map.Entry<K, V>> splitter;
+        
+        public KeySplitter(Splitter<Map.Entry<K, V>> splitter) {
+            this.splitter = splitter;
+        }
+        
+        @Override
+        public Splitter<K> trySplit() {
+            Splitter<Map.Entry<K, V>> prefix = splitter.trySplit();
+            return prefix != null ? new KeySplitter<K, V>(prefix) : null;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return splitter.estimateSize();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return splitter.hasNext();
+        }
+        
+        @Override
+        public K next() {
+            return splitter.next().getKey();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    /**
+     * A {@link Splitter} for the values of a {@link Splitter} of entries
+     */
+    private static class ValueSplitter<K, V> implements Splitter<V> {
+        
+        private final Splitter<Map.Entry<K, V>> splitter;
+        
+        public ValueSplitter(Splitter<Map.Entry<K, V>> splitter) {
+            this.splitter = splitter;
+        }
+        
+        @Override
+        public Splitter<V> trySplit() {
+            Splitter<Map.Entry<K, V>> prefix = splitter.trySplit();
+            return prefix != null ? new ValueSplitter<K, V>(prefix) : null;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return splitter.estimateSize();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return splitter.hasNext();
+        }
+        
+        @Override
+        public V next() {
+            return splitter.next().getValue();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.ardverk.collection.AbstractPatriciaTrie.TrieEntry;
+import org.junit.Test;
+
+public class ConcurrentPatriciaTrieTest {
+
+    @Test
+    public void testSameAsPatriciaTrie() {
+        PatriciaTrie<String, Integer> expected
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        ConcurrentPatriciaTrie<String, Integer> trie
+            = new ConcurrentPatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            String key = Integer.toString(random.nextInt(500), 4);
+            if (random.nextInt(3) == 0) {
+                TestCase.assertEquals(expected.remove(key), trie.remove(key));
+            } else {
+                TestCase.assertEquals(expected.put(key, i), trie.put(key, i));
+            }
+        }
+
+        TestCase.assertEquals(expected.size(), trie.size());
+        TestCase.assertEquals(expected, trie);
+        TestCase.assertEquals(new ArrayList<String>(expected.keySet()),
+                new ArrayList<String>(trie.keySet()));
+        TestCase.assertEquals(expected.firstKey(), trie.firstKey());
+        TestCase.assertEquals(expected.lastKey(), trie.lastKey());
+        TestCase.assertEquals(expected.prefixMap("12"), trie.prefixMap("12"));
+        TestCase.assertEquals(expected.subMap("1", "3"), trie.subMap("1", "3"));
+        TestCase.assertEquals(expected.selectKey("2101"), trie.selectKey("2101"));
+    }
+
+    @Test
+    public void testSnapshot() {
+        ConcurrentPatriciaTrie<String, String> trie
+            = new ConcurrentPatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        for (String key : new String[] { "", "a", "ab", "abc", "b", "ba", "c" }) {
+            trie.put(key, key);
+        }
+        trie.remove("ab"); // an internal entry
+
+        PatriciaTrie<String, String> snapshot = trie.snapshot();
+        TestCase.assertEquals(trie, snapshot);
+
+        snapshot.put("abcd", "abcd");
+        snapshot.remove("a");
+        TestCase.assertEquals(6, trie.size());
+        TestCase.assertTrue(trie.containsKey("a"));
+        TestCase.assertFalse(trie.containsKey("abcd"));
+        TestCase.assertEquals(2, snapshot.prefixMap("abc").size());
+    }
+
+    @Test
+    public void testCopyEntries() {
+        Random random = new Random(7);
+        PatriciaTrie<String, Integer> trie
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        for (int i = 0; i < 5000; i++) {
+            String key = Integer.toString(random.nextInt(2000), 2);
+            if (random.nextInt(3) == 0) {
+                trie.remove(key);
+            } else {
+                trie.put(key, i);
+            }
+            
+            if (i % 500 == 0 || i == 4999) {
+                PatriciaTrie<String, Integer> copy 
+                    = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+                copy.copyEntries(trie);
+                assertSameLinks(trie, copy);
+                TestCase.assertEquals(trie, copy);
+            }
+        }
+        
+        PatriciaTrie<String, Integer> empty 
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        trie.copyEntries(empty);
+        assertSameLinks(empty, trie);
+        TestCase.assertTrue(trie.isEmpty());
+        trie.put("1", 1);
+        TestCase.assertEquals(Integer.valueOf(1), trie.get("1"));
+    }
+    
+    /**
+     * Asserts that the entries of both {@link Trie}s are linked in the 
+     * same way
+     */
+    private static void assertSameLinks(PatriciaTrie<String, Integer> expected, 
+            PatriciaTrie<String, Integer> actual) {
+        IdentityHashMap<TrieEntry<?, ?>, TrieEntry<?, ?>> copies 
+            = new IdentityHashMap<TrieEntry<?, ?>, TrieEntry<?, ?>>();
+        copies.put(expected.root, actual.root);
+        for (TrieEntry<String, Integer> entry = expected.nextEntry(null), 
+                copy = actual.nextEntry(null); entry != null; 
+                entry = expected.nextEntry(entry), copy = actual.nextEntry(copy)) {
+            TestCase.assertNotSame(entry, copy);
+            TestCase.assertEquals(entry.getKey(), copy.getKey());
+            copies.put(entry, copy);
+        }
+        
+        for (Map.Entry<TrieEntry<?, ?>, TrieEntry<?, ?>> e : copies.entrySet()) {
+            TrieEntry<?, ?> entry = e.getKey();
+            TrieEntry<?, ?> copy = e.getValue();
+            TestCase.assertEquals(entry.bitIndex, copy.bitIndex);
+            TestCase.assertSame(copies.get(entry.parent), copy.parent);
+            TestCase.assertSame(copies.get(entry.left), copy.left);
+            TestCase.assertSame(copies.get(entry.right), copy.right);
+            TestCase.assertSame(copies.get(entry.predecessor), copy.predecessor);
+        }
+    }
+    
+    @Test
+    public void testWeaklyConsistentIterator() {
+        ConcurrentPatriciaTrie<String, String> trie
+            = new ConcurrentPatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        trie.put("a", "a");
+        trie.put("b", "b");
+        trie.put("c", "c");
+
+        List<String> keys = new ArrayList<String>();
+        for (Iterator<String> it = trie.keySet().iterator(); it.hasNext(); ) {
+            String key = it.next();
+            keys.add(key);
+            trie.put(key + key, key);
+            if (key.equals("b")) {
+                it.remove();
+            }
+        }
+
+        TestCase.assertEquals(3, keys.size());
+        TestCase.assertEquals(5, trie.size());
+        TestCase.assertFalse(trie.containsKey("b"));
+    }
+
+    @Test
+    public void testViews() {
+        ConcurrentPatriciaTrie<String, String> trie
+            = new ConcurrentPatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        trie.put("Anna", "1");
+        trie.put("Andreas", "2");
+        trie.put("Bob", "3");
+
+        SortedMap<String, String> prefix = trie.prefixMap("An");
+        TestCase.assertEquals(2, prefix.size());
+        trie.put("Andrea", "4");
+        TestCase.assertEquals(3, prefix.size());
+        TestCase.assertEquals("Andrea", prefix.firstKey());
+
+        try {
+            prefix.put("Bill", "5");
+            TestCase.fail("Bill is not in the prefix map");
+        } catch (IllegalArgumentException expected) {
+        }
+        TestCase.assertFalse(trie.containsKey("Bill"));
+
+        Map.Entry<String, String> entry = prefix.entrySet().iterator().next();
+        entry.setValue("6");
+        TestCase.assertEquals("6", trie.get("Andrea"));
+
+        prefix.remove("Anna");
+        TestCase.assertFalse(trie.containsKey("Anna"));
+
+        SortedMap<String, String> head = trie.headMap("B");
+        TestCase.assertEquals(2, head.size());
+        head.clear();
+        TestCase.assertEquals(1, trie.size());
+        TestCase.assertEquals("Bob", trie.firstKey());
+    }
+
+    @Test
+    public void testCursor() {
+        ConcurrentPatriciaTrie<String, String> trie
+            = new ConcurrentPatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        trie.put("a", "a");
+        trie.put("b", "b");
+        trie.put("c", "c");
+
+        Map.Entry<String, String> entry = trie.traverse(
+                new Cursor<String, String>() {
+            @Override
+            public Decision select(Map.Entry<? extends String, ? extends String> entry) {
+                if (entry.getKey().equals("a")) {
+                    return Decision.REMOVE;
+                } else if (entry.getKey().equals("b")) {
+                    return Decision.REMOVE_AND_EXIT;
+                }
+                return Decision.CONTINUE;
+            }
+        });
+
+        TestCase.assertEquals("b", entry.getKey());
+        TestCase.assertEquals(1, trie.size());
+        TestCase.assertEquals("c", trie.firstKey());
+    }
+
+    @Test
+    public void testConsistentReads() throws InterruptedException {
+        final ConcurrentPatriciaTrie<String, Integer> trie
+            = new ConcurrentPatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        final Map<String, Integer> version = new TreeMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            version.put("route/" + i, 0);
+        }
+        trie.putAll(version);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        // putAll changes all the routes at once
+                        Integer expected = null;
+                        for (Integer value : trie.prefixMap("route/").values()) {
+                            if (expected == null) {
+                                expected = value;
+                            } else if (!expected.equals(value)) {
+                                failure.set(expected + " != " + value);
+                            }
+                        }
+                        if (trie.get("route/42") == null) {
+                            failure.set("route/42 is missing");
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+
+        for (int i = 1; i <= 200; i++) {
+            for (Map.Entry<String, Integer> entry : version.entrySet()) {
+                entry.setValue(i);
+            }
+            trie.putAll(version);
+        }
+
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        TestCase.assertNull(failure.get());
+        TestCase.assertEquals(Integer.valueOf(200), trie.get("route/0"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ConcurrentPatriciaTrie<String, String> trie1
+            = new ConcurrentPatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        trie1.put("Hello", "World");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(trie1);
+        oos.close();
+
+        ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray()));
+
+        @SuppressWarnings("unchecked")
+        Trie<String, String> trie2 = (Trie<String, String>)ois.readObject();
+        ois.close();
+
+        TestCase.assertEquals("World", trie2.get("Hello"));
+        trie2.put("Hello", "Trie");
+        TestCase.assertEquals("Trie", trie2.get("Hello"));
+    }
+}
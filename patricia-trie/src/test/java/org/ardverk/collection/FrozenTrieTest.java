@@ -0,0 +1,223 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class FrozenTrieTest {
+
+    @Test
+    public void testSameAsPatriciaTrie() {
+        Random random = new Random(11);
+        PatriciaTrie<String, Integer> expected = TrieTestUtils.randomTrie(random);
+        expected.remove(expected.firstKey());
+
+        Trie<String, Integer> trie = Tries.freeze(expected);
+        TrieTestUtils.assertSameMap(expected, trie);
+        TestCase.assertEquals(expected.firstKey(), trie.firstKey());
+        TestCase.assertEquals(expected.lastKey(), trie.lastKey());
+        TestCase.assertTrue(trie.containsValue(2999));
+
+        TrieTestUtils.assertSameLookups(expected, trie, random);
+        TrieTestUtils.assertSameMap(expected.headMap("2"), trie.headMap("2"));
+        TrieTestUtils.assertSameMap(expected.tailMap("31"), trie.tailMap("31"));
+        TrieTestUtils.assertSameMap(expected.subMap("1", "130"),
+                trie.subMap("1", "130"));
+        TrieTestUtils.assertSameMap(expected.subMap("1", "3").headMap("24"),
+                trie.subMap("1", "3").headMap("24"));
+        TrieTestUtils.assertSameMap(expected.subMap("33", "4"),
+                trie.prefixMap("3").tailMap("33"));
+    }
+
+    @Test
+    public void testRoot() {
+        PatriciaTrie<String, String> expected
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        Trie<String, String> trie = Tries.freeze(expected);
+        TestCase.assertTrue(trie.isEmpty());
+        TestCase.assertNull(trie.get(""));
+        TestCase.assertNull(trie.select("a"));
+        TestCase.assertTrue(trie.prefixMap("a").isEmpty());
+
+        // The root stores the key without any bits
+        expected.put("", "root");
+        trie = Tries.freeze(expected);
+        TestCase.assertEquals("root", trie.get(""));
+        TestCase.assertEquals("", trie.selectKey("a"));
+
+        for (String key : new String[] { "a", "ab", "b", "ba", "\u0000a" }) {
+            expected.put(key, key);
+        }
+        trie = Tries.freeze(expected);
+        TrieTestUtils.assertSameMap(expected, trie);
+        TestCase.assertEquals("root", trie.get(""));
+        TestCase.assertEquals(expected.selectKey("\u0000"), trie.selectKey("\u0000"));
+        TrieTestUtils.assertSameMap(expected.prefixMap("a"), trie.prefixMap("a"));
+    }
+
+    @Test
+    public void testKeys() {
+        PatriciaTrie<byte[], Integer> bytes
+            = new PatriciaTrie<byte[], Integer>(ByteArrayKeyAnalyzer.VARIABLE);
+        bytes.put(new byte[] { 1, 2 }, 1);
+        bytes.put(new byte[] { 1, 2, 3 }, 2);
+        bytes.put(new byte[] { -1 }, 3);
+
+        Trie<byte[], Integer> frozen = Tries.freeze(bytes);
+        TestCase.assertEquals(Integer.valueOf(2), frozen.get(new byte[] { 1, 2, 3 }));
+        TestCase.assertNull(frozen.get(new byte[] { 1 }));
+        TestCase.assertTrue(Arrays.equals(new byte[] { -1 }, frozen.lastKey()));
+        TestCase.assertEquals(2, frozen.prefixMap(new byte[] { 1, 2 }).size());
+
+        PatriciaTrie<Integer, Integer> integers
+            = new PatriciaTrie<Integer, Integer>(IntegerKeyAnalyzer.INSTANCE);
+        for (int i = -50; i < 50; i += 3) {
+            integers.put(i, -i);
+        }
+        Trie<Integer, Integer> trie = Tries.freeze(integers);
+        TrieTestUtils.assertSameMap(integers, trie);
+        TestCase.assertEquals(Integer.valueOf(-49), trie.get(49));
+        TestCase.assertEquals(integers.selectKey(20), trie.selectKey(20));
+    }
+
+    @Test
+    public void testCursor() {
+        PatriciaTrie<String, String> expected
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        for (String key : new String[] { "a", "b", "c", "d" }) {
+            expected.put(key, key);
+        }
+        Trie<String, String> trie = Tries.freeze(expected);
+
+        final List<String> keys = new ArrayList<String>();
+        Map.Entry<String, String> entry = trie.traverse(
+                new Cursor<String, String>() {
+            @Override
+            public Decision select(Map.Entry<? extends String, ? extends String> entry) {
+                keys.add(entry.getKey());
+                return entry.getKey().equals("c") ? Decision.EXIT : Decision.CONTINUE;
+            }
+        });
+        TestCase.assertEquals("c", entry.getKey());
+        TestCase.assertEquals(Arrays.asList("a", "b", "c"), keys);
+
+        final List<String> selected = new ArrayList<String>();
+        entry = trie.select("d", new Cursor<String, String>() {
+            @Override
+            public Decision select(Map.Entry<? extends String, ? extends String> entry) {
+                selected.add(entry.getKey());
+                return Decision.CONTINUE;
+            }
+        });
+        TestCase.assertNull(entry);
+        TestCase.assertEquals("d", selected.get(0));
+        TestCase.assertEquals(4, selected.size());
+
+        try {
+            trie.traverse(new Cursor<String, String>() {
+                @Override
+                public Decision select(Map.Entry<? extends String, ? extends String> entry) {
+                    return Decision.REMOVE;
+                }
+            });
+            TestCase.fail("A frozen Trie is read-only");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+        TestCase.assertEquals(4, trie.size());
+    }
+
+    @Test
+    public void testReadOnly() {
+        PatriciaTrie<String, String> expected
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        expected.put("Anna", "1");
+        expected.put("Andreas", "2");
+        expected.put("Bob", "3");
+        Trie<String, String> trie = Tries.freeze(expected);
+
+        // The frozen Trie is a copy
+        expected.put("Andrea", "4");
+        TestCase.assertEquals(3, trie.size());
+
+        try {
+            trie.put("Bill", "5");
+            TestCase.fail("A frozen Trie is read-only");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+
+        try {
+            trie.entrySet().iterator().next().setValue("6");
+            TestCase.fail("A frozen Trie is read-only");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+
+        try {
+            trie.prefixMap("An").keySet().clear();
+            TestCase.fail("A frozen Trie is read-only");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+
+        try {
+            trie.subMap("Bob", "Anna");
+            TestCase.fail("Bob is greater than Anna");
+        } catch (IllegalArgumentException expectedException) {
+        }
+        TestCase.assertTrue(trie.prefixMap("An").tailMap("Bob").isEmpty());
+
+        try {
+            trie.prefixMap("C").firstKey();
+            TestCase.fail("The prefix map is empty");
+        } catch (NoSuchElementException expectedException) {
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        PatriciaTrie<String, String> expected
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        expected.put("Hello", "World");
+        expected.put("Help", "Me");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(Tries.freeze(expected));
+        oos.close();
+
+        ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray()));
+
+        @SuppressWarnings("unchecked")
+        Trie<String, String> trie = (Trie<String, String>)ois.readObject();
+        ois.close();
+
+        TrieTestUtils.assertSameMap(expected, trie);
+        TestCase.assertEquals(2, trie.prefixMap("Hel").size());
+    }
+}
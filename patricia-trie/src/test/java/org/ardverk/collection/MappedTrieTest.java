@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MappedTrieTest {
+
+    @Test
+    public void testSameAsPatriciaTrie() throws IOException {
+        Random random = new Random(13);
+        PatriciaTrie<String, Integer> expected = TrieTestUtils.randomTrie(random);
+        expected.put("", -1);
+        expected.put("nothing", null);
+
+        Trie<String, Integer> trie = write(expected, 
+                StringKeyAnalyzer.CHAR, Codecs.STRING, Codecs.INTEGER);
+        TrieTestUtils.assertSameMap(expected, trie);
+        TestCase.assertEquals(Integer.valueOf(-1), trie.get(""));
+        TestCase.assertTrue(trie.containsKey("nothing"));
+        TestCase.assertNull(trie.get("nothing"));
+
+        TrieTestUtils.assertSameLookups(expected, trie, random);
+        TrieTestUtils.assertSameMap(expected.subMap("1", "130"),
+                trie.subMap("1", "130"));
+
+        final StringBuilder keys = new StringBuilder();
+        Map.Entry<String, Integer> entry = trie.traverse(
+                new Cursor<String, Integer>() {
+            @Override
+            public Decision select(Map.Entry<? extends String, ? extends Integer> entry) {
+                keys.append(entry.getKey());
+                return keys.length() > 10 ? Decision.EXIT : Decision.CONTINUE;
+            }
+        });
+        TestCase.assertNotNull(entry);
+        TestCase.assertTrue(keys.toString().endsWith(entry.getKey()));
+    }
+
+    @Test
+    public void testKeys() throws IOException {
+        PatriciaTrie<byte[], Long> bytes
+            = new PatriciaTrie<byte[], Long>(ByteArrayKeyAnalyzer.VARIABLE);
+        bytes.put(new byte[] { 10, 0, 0, 0 }, 1L);
+        bytes.put(new byte[] { 10, 0, 1 }, 2L);
+        bytes.put(new byte[] { -64, -88 }, Long.MIN_VALUE);
+
+        Trie<byte[], Long> trie = write(bytes, 
+                ByteArrayKeyAnalyzer.VARIABLE, Codecs.BYTE_ARRAY, Codecs.LONG);
+        TestCase.assertEquals(3, trie.size());
+        TestCase.assertEquals(Long.valueOf(2L), trie.get(new byte[] { 10, 0, 1 }));
+        TestCase.assertEquals(Long.valueOf(Long.MIN_VALUE), 
+                trie.get(new byte[] { -64, -88 }));
+        TestCase.assertNull(trie.get(new byte[] { 10, 0 }));
+        TestCase.assertEquals(2, trie.prefixMap(new byte[] { 10, 0 }).size());
+        TestCase.assertTrue(Arrays.equals(new byte[] { 10, 0, 0, 0 },
+                trie.selectKey(new byte[] { 10, 0, 0, 1 })));
+
+        PatriciaTrie<String, String> empty
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        Trie<String, String> none = write(empty, 
+                StringKeyAnalyzer.CHAR, Codecs.STRING, Codecs.STRING);
+        TestCase.assertTrue(none.isEmpty());
+        TestCase.assertNull(none.get("a"));
+        TestCase.assertNull(none.select("a"));
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        File file = File.createTempFile("trie", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 'n', 'o', 't', ' ', 'a', ' ', 't', 'r', 'i', 'e' });
+        out.close();
+
+        try {
+            Tries.map(file, StringKeyAnalyzer.CHAR, Codecs.STRING, Codecs.STRING);
+            TestCase.fail("The file is not a Trie");
+        } catch (IOException expected) {
+        }
+
+        PatriciaTrie<String, String> expected
+            = new PatriciaTrie<String, String>(StringKeyAnalyzer.CHAR);
+        expected.put("Hello", "World");
+        Trie<String, String> trie = write(expected, 
+                StringKeyAnalyzer.CHAR, Codecs.STRING, Codecs.STRING);
+        try {
+            new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(trie);
+            TestCase.fail("The mapped file can't be serialized");
+        } catch (NotSerializableException expectedException) {
+        }
+
+        try {
+            trie.put("Hello", "Trie");
+            TestCase.fail("A mapped Trie is read-only");
+        } catch (UnsupportedOperationException expectedException) {
+        }
+    }
+
+    private static <K, V> Trie<K, V> write(PatriciaTrie<K, V> trie, 
+            KeyAnalyzer<? super K> keyAnalyzer, Codec<K> keyCodec, 
+            Codec<V> valueCodec) throws IOException {
+        File file = File.createTempFile("trie", ".bin");
+        file.deleteOnExit();
+        Tries.write(trie, keyCodec, valueCodec, file);
+        return Tries.map(file, keyAnalyzer, keyCodec, valueCodec);
+    }
+}
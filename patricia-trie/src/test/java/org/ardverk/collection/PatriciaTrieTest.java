@@ -19,11 +19,13 @@ package org.ardverk.collection;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -971,7 +973,87 @@ public class PatriciaTrieTest {
         });
         TestCase.assertEquals(1, strings.size());
     }
-    
+
+    @Test
+    public void testBulkLoad() {
+        TreeMap<String, Integer> sorted = new TreeMap<String, Integer>();
+        Random random = new Random(17);
+        for (int i = 0; i < 3000; i++) {
+            sorted.put(Integer.toString(random.nextInt(5000), 3), i);
+        }
+        sorted.put("", -1);
+
+        PatriciaTrie<String, Integer> expected
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR, sorted);
+        PatriciaTrie<String, Integer> trie = PatriciaTrie.bulkLoad(
+                sorted.entrySet().iterator(), StringKeyAnalyzer.CHAR);
+        TestCase.assertEquals(expected, trie);
+        TestCase.assertEquals(new ArrayList<String>(expected.keySet()),
+                new ArrayList<String>(trie.keySet()));
+        TestCase.assertEquals(expected.lastKey(), trie.lastKey());
+        TestCase.assertEquals(expected.prefixMap("12"), trie.prefixMap("12"));
+        TestCase.assertEquals(expected.selectKey("2101"), trie.selectKey("2101"));
+
+        // The links must be right for the updates too
+        for (int i = 0; i < 3000; i++) {
+            String key = Integer.toString(random.nextInt(5000), 3);
+            if (random.nextBoolean()) {
+                TestCase.assertEquals(expected.remove(key), trie.remove(key));
+            } else {
+                TestCase.assertEquals(expected.put(key, i), trie.put(key, i));
+            }
+        }
+        TestCase.assertEquals(new ArrayList<String>(expected.keySet()),
+                new ArrayList<String>(trie.keySet()));
+        TestCase.assertEquals(expected.prefixMap("1"), trie.prefixMap("1"));
+
+        // Bit order, where the negative numbers follow the positive ones
+        PatriciaTrie<Integer, Integer> integers
+            = new PatriciaTrie<Integer, Integer>(IntegerKeyAnalyzer.INSTANCE);
+        for (int i = -100; i < 100; i += 7) {
+            integers.put(i, i);
+        }
+        PatriciaTrie<Integer, Integer> copy = PatriciaTrie.bulkLoad(
+                integers.entrySet().iterator(), IntegerKeyAnalyzer.INSTANCE);
+        TestCase.assertEquals(new ArrayList<Integer>(integers.keySet()),
+                new ArrayList<Integer>(copy.keySet()));
+        copy.remove(-2);
+        copy.put(0, 0);
+        TestCase.assertEquals(Integer.valueOf(0), copy.firstKey());
+        TestCase.assertEquals(integers.size(), copy.size());
+    }
+
+    @Test
+    public void testBulkLoadUnsorted() {
+        Map<String, Integer> unsorted = new LinkedHashMap<String, Integer>();
+        unsorted.put("a", 1);
+        unsorted.put("c", 2);
+        unsorted.put("b", 3);
+        try {
+            PatriciaTrie.bulkLoad(unsorted.entrySet().iterator(),
+                    StringKeyAnalyzer.CHAR);
+            TestCase.fail("b follows c");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        List<Map.Entry<String, Integer>> duplicates
+            = new ArrayList<Map.Entry<String, Integer>>();
+        duplicates.add(new AbstractMap.SimpleEntry<String, Integer>("a", 1));
+        duplicates.add(new AbstractMap.SimpleEntry<String, Integer>("a", 2));
+        try {
+            PatriciaTrie.bulkLoad(duplicates.iterator(), StringKeyAnalyzer.CHAR);
+            TestCase.fail("a is repeated");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        PatriciaTrie<String, Integer> empty = PatriciaTrie.bulkLoad(
+                new TreeMap<String, Integer>().entrySet().iterator(),
+                StringKeyAnalyzer.CHAR);
+        TestCase.assertTrue(empty.isEmpty());
+        empty.put("a", 1);
+        TestCase.assertEquals("a", empty.firstKey());
+    }
+
     private static class TestCursor implements Cursor<Object, Object> {
         private List<Object> keys;
         private List<Object> values;
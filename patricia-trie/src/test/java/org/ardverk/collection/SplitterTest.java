@@ -0,0 +1,205 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class SplitterTest {
+
+    @Test
+    public void testSplitPatriciaTrie() {
+        PatriciaTrie<String, Integer> trie = createTrie();
+        assertSplits(trie);
+        
+        List<Splitter<Map.Entry<String, Integer>>> parts = Tries.split(trie, 16);
+        TestCase.assertEquals(16, parts.size());
+        TestCase.assertEquals(new ArrayList<Map.Entry<String, Integer>>(trie.entrySet()), 
+                drain(parts));
+        
+        // The root holds the key without any bits
+        trie.put("", -1);
+        assertSplits(trie);
+        
+        TestCase.assertEquals(new ArrayList<String>(trie.keySet()), 
+                drain(Tries.keySplitter(trie)));
+        TestCase.assertEquals(new ArrayList<Integer>(trie.values()), 
+                drain(Tries.valueSplitter(trie)));
+    }
+    
+    @Test
+    public void testSplitViews() {
+        PatriciaTrie<String, Integer> trie = createTrie();
+        List<Trie<String, Integer>> maps 
+            = new ArrayList<Trie<String, Integer>>();
+        maps.add(trie);
+        maps.add(Tries.freeze(trie));
+        maps.add(new ConcurrentPatriciaTrie<String, Integer>(
+                StringKeyAnalyzer.CHAR, trie));
+        
+        for (Trie<String, Integer> map : maps) {
+            for (String prefix : new String[] { "1", "12", "4043", "9", "2222" }) {
+                assertSplits(map.prefixMap(prefix));
+            }
+            assertSplits(map.headMap("2"));
+            assertSplits(map.tailMap("31"));
+            assertSplits(map.subMap("1", "130"));
+            assertSplits(map.subMap("5", "6"));
+        }
+        
+        PatriciaTrie<Integer, Integer> integers
+            = new PatriciaTrie<Integer, Integer>(IntegerKeyAnalyzer.INSTANCE);
+        for (int i = -500; i < 500; i += 7) {
+            integers.put(i, i);
+        }
+        assertSplits(integers);
+        assertSplits(integers.headMap(100));
+    }
+    
+    @Test
+    public void testParallel() throws Exception {
+        PatriciaTrie<String, Integer> trie = createTrie();
+        SortedMap<String, Integer> prefixMap = trie.prefixMap("3");
+        
+        long expected = 0;
+        for (Integer value : prefixMap.values()) {
+            expected += value;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (final Splitter<Map.Entry<String, Integer>> splitter 
+                    : Tries.split(prefixMap, 8)) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        long sum = 0;
+                        while (splitter.hasNext()) {
+                            sum += splitter.next().getValue();
+                        }
+                        return sum;
+                    }
+                }));
+            }
+            
+            long sum = 0;
+            for (Future<Long> future : futures) {
+                sum += future.get();
+            }
+            TestCase.assertEquals(expected, sum);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testEmpty() {
+        PatriciaTrie<String, Integer> trie
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        Splitter<Map.Entry<String, Integer>> splitter = Tries.splitter(trie);
+        TestCase.assertFalse(splitter.hasNext());
+        TestCase.assertNull(splitter.trySplit());
+        TestCase.assertEquals(0L, splitter.estimateSize());
+        
+        trie.put("a", 1);
+        TestCase.assertFalse(Tries.splitter(trie.prefixMap("b")).hasNext());
+        TestCase.assertEquals(1, Tries.split(trie, 4).size());
+    }
+    
+    @Test
+    public void testFailFast() {
+        PatriciaTrie<String, Integer> trie = createTrie();
+        Splitter<Map.Entry<String, Integer>> splitter = Tries.splitter(trie);
+        splitter.next();
+        
+        trie.put("Hello", 1);
+        try {
+            splitter.next();
+            TestCase.fail("The Trie has been modified");
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+    
+    private static PatriciaTrie<String, Integer> createTrie() {
+        PatriciaTrie<String, Integer> trie
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            trie.put(Integer.toString(random.nextInt(5000), 5), i);
+        }
+        return trie;
+    }
+    
+    /**
+     * Asserts that splitting the entries of the given {@link SortedMap}
+     * as far as possible returns them all in order
+     */
+    private static <K, V> void assertSplits(SortedMap<K, V> map) {
+        List<Map.Entry<K, V>> expected 
+            = new ArrayList<Map.Entry<K, V>>(map.entrySet());
+        
+        List<Map.Entry<K, V>> actual = new ArrayList<Map.Entry<K, V>>();
+        int parts = splitAll(Tries.splitter(map), actual);
+        TestCase.assertEquals(expected, actual);
+        
+        if (expected.size() > 1) {
+            TestCase.assertTrue(parts > 1);
+        }
+    }
+    
+    /**
+     * Splits the given {@link Splitter} recursively and returns 
+     * the number of parts
+     */
+    private static <E> int splitAll(Splitter<E> splitter, List<E> elements) {
+        Splitter<E> prefix = splitter.trySplit();
+        if (prefix == null) {
+            elements.addAll(drain(splitter));
+            return 1;
+        }
+        return splitAll(prefix, elements) + splitAll(splitter, elements);
+    }
+    
+    private static <E> List<E> drain(Splitter<E> splitter) {
+        List<E> elements = new ArrayList<E>();
+        while (splitter.hasNext()) {
+            elements.add(splitter.next());
+        }
+        return elements;
+    }
+    
+    private static <E> List<E> drain(List<? extends Splitter<E>> splitters) {
+        List<E> elements = new ArrayList<E>();
+        for (Splitter<E> splitter : splitters) {
+            elements.addAll(drain(splitter));
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2005-2010 Roger Kapsi, Sam Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.collection;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SortedMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Fixture and assertions shared by the tests of the {@link Trie}s built
+ * from a {@link PatriciaTrie}
+ */
+class TrieTestUtils {
+
+    private TrieTestUtils() {}
+
+    /**
+     * Returns a {@link PatriciaTrie} of 3000 random keys in base 5
+     */
+    static PatriciaTrie<String, Integer> randomTrie(Random random) {
+        PatriciaTrie<String, Integer> trie
+            = new PatriciaTrie<String, Integer>(StringKeyAnalyzer.CHAR);
+        for (int i = 0; i < 3000; i++) {
+            trie.put(Integer.toString(random.nextInt(5000), 5), i);
+        }
+        return trie;
+    }
+
+    /**
+     * Asserts that both {@link Trie}s answer the same to the look ups of
+     * random keys and return the same prefix maps
+     */
+    static void assertSameLookups(Trie<String, Integer> expected,
+            Trie<String, Integer> actual, Random random) {
+        for (int i = 0; i < 500; i++) {
+            String key = Integer.toString(random.nextInt(10000), 5);
+            TestCase.assertEquals(expected.get(key), actual.get(key));
+            TestCase.assertEquals(expected.containsKey(key), actual.containsKey(key));
+            TestCase.assertEquals(expected.selectKey(key), actual.selectKey(key));
+        }
+
+        for (String prefix : new String[] { "1", "12", "4043", "2", "44444", "0" }) {
+            assertSameMap(expected.prefixMap(prefix), actual.prefixMap(prefix));
+        }
+    }
+
+    /**
+     * Asserts that both {@link SortedMap}s contain the same entries in
+     * the same order
+     */
+    static <K, V> void assertSameMap(
+            SortedMap<K, V> expected, SortedMap<K, V> actual) {
+        TestCase.assertEquals(expected.size(), actual.size());
+        TestCase.assertEquals(expected, actual);
+        TestCase.assertEquals(new ArrayList<K>(expected.keySet()),
+                new ArrayList<K>(actual.keySet()));
+        TestCase.assertEquals(new ArrayList<V>(expected.values()),
+                new ArrayList<V>(actual.values()));
+    }
+}
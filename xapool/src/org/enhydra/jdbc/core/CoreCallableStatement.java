@@ -53,6 +53,9 @@ public abstract class CoreCallableStatement
 	// the CallableStatement which does most of the work.
 	protected CallableStatement cs;
 
+	// the connection whose batched updates are executed first, may be null
+	protected CoreConnection batchConnection;
+
 	public Array getArray(int i) throws SQLException {
 		preInvoke();
 		try {
@@ -302,6 +305,7 @@ public abstract class CoreCallableStatement
 	public void addBatch() throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			cs.addBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -320,6 +324,7 @@ public abstract class CoreCallableStatement
 	public boolean execute() throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.execute();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -330,6 +335,7 @@ public abstract class CoreCallableStatement
 	public ResultSet executeQuery() throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeQuery();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -340,6 +346,7 @@ public abstract class CoreCallableStatement
 	public int executeUpdate() throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeUpdate();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -648,6 +655,7 @@ public abstract class CoreCallableStatement
 	public int[] executeBatch() throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -868,6 +876,7 @@ public abstract class CoreCallableStatement
 	public void addBatch(String s) throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			cs.addBatch(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -877,6 +886,7 @@ public abstract class CoreCallableStatement
 	public boolean execute(String s) throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.execute(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -887,6 +897,7 @@ public abstract class CoreCallableStatement
 	public ResultSet executeQuery(String s) throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeQuery(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -897,6 +908,7 @@ public abstract class CoreCallableStatement
 	public int executeUpdate(String s) throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeUpdate(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -915,6 +927,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.execute(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -925,6 +938,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.execute(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -935,6 +949,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.execute(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -945,6 +960,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeUpdate(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -955,6 +971,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeUpdate(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -965,6 +982,7 @@ public abstract class CoreCallableStatement
 		throws SQLException {
 		preInvoke();
 		try {
+			flushConnectionBatch();
 			return cs.executeUpdate(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -1520,6 +1538,15 @@ public abstract class CoreCallableStatement
 		}
 	}
 
+	/*
+	 * executes the updates batched on the connection, so that they are
+	 * seen by this execution
+	 */
+	private void flushConnectionBatch() throws SQLException {
+		if (batchConnection != null)
+			batchConnection.flushBatch();
+	}
+
 	/**
 	 * Methods used to do some works before and during the catch
 	 * clause, to prevent the pool that a connection is broken.
@@ -23,6 +23,7 @@ package org.enhydra.jdbc.core;
 
 import org.enhydra.jdbc.util.JdbcUtil;
 
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -31,13 +32,39 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This is an implementation of java.sql.Connection which simply delegates
  * everything to an underlying physical implemention of the same interface.
+ * <p>
+ * When updateBatchSize is set, the executeUpdate() of the prepared
+ * statements of the connection are batched (write-behind) while the
+ * connection is not in auto-commit mode: consecutive executions of the same
+ * statement are added to its batch, and executeUpdate returns 1. The batch
+ * is executed when it holds updateBatchSize executions, before any other
+ * execution on the connection (query, other statement, ...), and before
+ * commit, setAutoCommit, the savepoints and close; rollback discards it.
+ * The real update counts of the executions are known only once the batch
+ * is executed: they are returned by flushBatch, and kept by the statement
+ * for getBatchUpdateCounts. A driver may report
+ * Statement.SUCCESS_NO_INFO (-2) for an execution, its row count is then
+ * unknown. The statements returned by the physical connection without a
+ * wrapper do not flush the batch when executed.
  */
 public abstract class CoreConnection extends JdbcUtil implements Connection {
+	private static final int[] NO_COUNTS = new int[0];
+
 	public Connection con; // the physical database connection
+	// serializes the batched updates and, in the handles, close and the
+	// statement cache lookups. Unlike a monitor, it lets a virtual thread
+	// unmount while it waits or runs a JDBC call
+	protected final ReentrantLock lock = new ReentrantLock();
+
+	private int updateBatchSize; // 0: no batching
+
+	// the statement whose batch is pending, null if none
+	CorePreparedStatement batchStatement;
 
 	/**
 	 * Constructor
@@ -65,7 +92,11 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public void close() throws SQLException {
 		preInvoke();
 		try {
-			con.close();
+			try {
+				flushBatch();
+			} finally {
+				con.close(); // even if the batch fails
+			}
 		} catch (SQLException e) {
 			catchInvoke(e);
 		}
@@ -74,6 +105,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public void commit() throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			con.commit();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -184,6 +216,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public CallableStatement prepareCall(String sql) throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			return con.prepareCall(sql);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -216,6 +249,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public void rollback() throws SQLException {
 		preInvoke();
 		try {
+			discardBatch();
 			con.rollback();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -224,11 +258,14 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 
 	public void setAutoCommit(boolean autoCommit) throws SQLException {
 		boolean con_autocommit = con.getAutoCommit();
-		log.debug("CoreConnection:Setautocommit autoCommit was = "
-				+ con_autocommit);
-		log.debug("CoreConnection:Setautocommit = " + autoCommit);
+		if (log.isDebugEnabled()) {
+			log.debug("CoreConnection:Setautocommit autoCommit was = "
+					+ con_autocommit);
+			log.debug("CoreConnection:Setautocommit = " + autoCommit);
+		}
 		preInvoke();
 		try {
+			flushBatch();
 			if (autoCommit != con_autocommit) { // lets not set the same state
 												// again and again
 				con.setAutoCommit(autoCommit);
@@ -262,6 +299,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public void setTransactionIsolation(int level) throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			con.setTransactionIsolation(level);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -309,6 +347,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 			throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			return con.prepareCall(sql, resultSetType, resultSetConcurrency,
 					resultSetHoldability);
 		} catch (SQLException e) {
@@ -367,6 +406,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 			throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			con.releaseSavepoint(savepoint);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -377,6 +417,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public void rollback(java.sql.Savepoint savepoint) throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			con.rollback(savepoint);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -396,6 +437,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public java.sql.Savepoint setSavepoint() throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			return con.setSavepoint();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -406,6 +448,7 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 	public java.sql.Savepoint setSavepoint(String name) throws SQLException {
 		preInvoke();
 		try {
+			flushBatch();
 			return con.setSavepoint(name);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -413,6 +456,101 @@ public abstract class CoreConnection extends JdbcUtil implements Connection {
 		return null;
 	}
 
+	/**
+	 * sets the maximum number of executions batched by executeUpdate on a
+	 * prepared statement, 0 (default) to execute each update at once. A
+	 * pending batch is executed at the next execution
+	 */
+	public void setUpdateBatchSize(int size) {
+		updateBatchSize = Math.max(0, size);
+	}
+
+	public int getUpdateBatchSize() {
+		return updateBatchSize;
+	}
+
+	/**
+	 * executeUpdate of a prepared statement of the connection, batched if
+	 * possible
+	 */
+	int executeUpdate(CorePreparedStatement st)
+			throws SQLException {
+		lock.lock();
+		try {
+			if (batchStatement != st) {
+				flushBatch();
+				if (updateBatchSize <= 0 || con.getAutoCommit())
+					return st.ps.executeUpdate();
+				batchStatement = st;
+			}
+			st.ps.addBatch();
+			if (++st.batched >= updateBatchSize)
+				flushBatch();
+			return 1;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * executes the pending batch of updates, if any, and returns their
+	 * update counts, which are also kept by the statement (see
+	 * CorePreparedStatement.getBatchUpdateCounts)
+	 */
+	public int[] flushBatch() throws SQLException {
+		lock.lock();
+		try {
+			CorePreparedStatement st = batchStatement;
+			if (st == null)
+				return NO_COUNTS;
+			batchStatement = null;
+			int n = st.batched;
+			st.batched = 0;
+			try {
+				st.batchUpdateCounts = st.ps.executeBatch();
+			} catch (BatchUpdateException e) {
+				st.batchUpdateCounts = e.getUpdateCounts();
+				throw e;
+			} finally {
+				st.batchDone();
+			}
+			if (log.isDebugEnabled())
+				log.debug("CoreConnection:flushBatch " + n + " updates executed");
+			return st.batchUpdateCounts;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * drops the pending batch of updates, if any
+	 */
+	public void discardBatch() throws SQLException {
+		lock.lock();
+		try {
+			CorePreparedStatement st = batchStatement;
+			if (st == null)
+				return;
+			batchStatement = null;
+			st.batched = 0;
+			st.batchUpdateCounts = null;
+			try {
+				st.ps.clearBatch();
+			} finally {
+				st.batchDone();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * returns the statement whose batch is pending, null if none
+	 */
+	protected CorePreparedStatement getBatchStatement() {
+		return batchStatement;
+	}
+
 	/**
 	 * Methods used to do some works before and during the catch clause, to
 	 * prevent the pool that a connection is broken.
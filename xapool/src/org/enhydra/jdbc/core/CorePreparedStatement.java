@@ -54,6 +54,13 @@ public abstract class CorePreparedStatement
 	public PreparedStatement ps;
 	// the PreparedStatement which does most of the work.
 
+	// the connection which batches executeUpdate, null if it is not used
+	protected CoreConnection batchConnection;
+
+	int batched; // executions in the pending batch of the connection
+
+	int[] batchUpdateCounts; // counts of the last batch executed
+
 	public void setLogger(Logger alog) {
 		log = alog;
 	}
@@ -61,6 +68,7 @@ public abstract class CorePreparedStatement
 	public void addBatch() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			ps.addBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -79,6 +87,7 @@ public abstract class CorePreparedStatement
 	public boolean execute() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.execute();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -89,6 +98,7 @@ public abstract class CorePreparedStatement
 	public ResultSet executeQuery() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.executeQuery();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -99,6 +109,8 @@ public abstract class CorePreparedStatement
 	public int executeUpdate() throws SQLException {
 		//preInvoke();
 		try {
+			if (batchConnection != null)
+				return batchConnection.executeUpdate(this);
 			return ps.executeUpdate();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -407,6 +419,7 @@ public abstract class CorePreparedStatement
 	public int[] executeBatch() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.executeBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -520,6 +533,7 @@ public abstract class CorePreparedStatement
 	public ResultSet getResultSet() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.getResultSet();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -530,6 +544,7 @@ public abstract class CorePreparedStatement
 	public int getUpdateCount() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.getUpdateCount();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -540,6 +555,7 @@ public abstract class CorePreparedStatement
 	public boolean getMoreResults() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.getMoreResults();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -618,6 +634,7 @@ public abstract class CorePreparedStatement
 	public void clearBatch() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			ps.clearBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -627,6 +644,7 @@ public abstract class CorePreparedStatement
 	public void addBatch(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			ps.addBatch(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -636,6 +654,7 @@ public abstract class CorePreparedStatement
 	public boolean execute(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.execute(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -646,6 +665,7 @@ public abstract class CorePreparedStatement
 	public ResultSet executeQuery(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.executeQuery(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -656,6 +676,7 @@ public abstract class CorePreparedStatement
 	public int executeUpdate(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return ps.executeUpdate(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -671,6 +692,7 @@ public abstract class CorePreparedStatement
 	// java.sql.Statements methods
 	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
         	try {
+			flushConnectionBatch();
 			return ps.execute(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -679,6 +701,7 @@ public abstract class CorePreparedStatement
 	}
 	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.execute(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -687,6 +710,7 @@ public abstract class CorePreparedStatement
 	}
 	public boolean execute(String sql, String[] columnNames) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.execute(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -695,6 +719,7 @@ public abstract class CorePreparedStatement
 	}
 	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.executeUpdate(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -703,6 +728,7 @@ public abstract class CorePreparedStatement
 	}
 	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.executeUpdate(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -711,6 +737,7 @@ public abstract class CorePreparedStatement
 	}
 	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.executeUpdate(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -719,6 +746,7 @@ public abstract class CorePreparedStatement
 	}
 	public java.sql.ResultSet getGeneratedKeys() throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.getGeneratedKeys();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -727,6 +755,7 @@ public abstract class CorePreparedStatement
 	}
 	public boolean getMoreResults(int current) throws SQLException {
 		try {
+			flushConnectionBatch();
 			return ps.getMoreResults(current);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -758,6 +787,52 @@ public abstract class CorePreparedStatement
 		}
 	}
 
+	/**
+	 * returns the update counts of the last batch of executeUpdate of this
+	 * statement executed by the connection, in the order of the executions,
+	 * null if none has been executed since the last discarded batch. An
+	 * executeUpdate batched returns 1, its real count is known here once
+	 * the batch is executed: a count may be Statement.SUCCESS_NO_INFO (-2)
+	 * when the driver doesn't report the rows changed, and the counts of a
+	 * failed batch are those of its BatchUpdateException
+	 */
+	public int[] getBatchUpdateCounts() {
+		return batchUpdateCounts;
+	}
+
+	/**
+	 * true if executions of this statement are batched and not yet executed
+	 */
+	protected boolean isBatchPending() {
+		return batched > 0;
+	}
+
+	/**
+	 * takes over the pending batch of an other wrapper of the same
+	 * PreparedStatement, which has been closed
+	 */
+	protected void adoptBatch(CorePreparedStatement st) {
+		batched = st.batched;
+		st.batched = 0;
+		batchConnection.batchStatement = this;
+	}
+
+	/**
+	 * called when the pending batch of this statement has been executed or
+	 * discarded
+	 */
+	protected void batchDone() throws SQLException {
+	}
+
+	/*
+	 * executes the updates batched on the connection, so that they are
+	 * seen by this execution
+	 */
+	private void flushConnectionBatch() throws SQLException {
+		if (batchConnection != null)
+			batchConnection.flushBatch();
+	}
+
 	/**
 	 * Methods used to do some works before and during the catch
 	 * clause, to prevent the pool that a connection is broken.
@@ -39,6 +39,8 @@ import java.sql.Statement;
 public abstract class CoreStatement extends JdbcUtil implements Statement {
 
     public Statement statement;
+    // the connection whose batched updates are executed first, may be null
+    protected CoreConnection batchConnection;
     public String theQuery;
     public boolean inCache = false;
 
@@ -50,6 +52,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public void addBatch(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			statement.addBatch(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -83,18 +86,16 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 		}
 	}
 
-        public void close() throws SQLException {
-	       if (statement != null) {
-	            RequestCache uc = RequestCache.getInstance();
-		    if (! uc.isInCache(theQuery)) {
+	public void close() throws SQLException {
+		if (statement != null) {
 			statement.close();
-		    }
 		}
 	}
 
 	public boolean execute(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return statement.execute(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -105,6 +106,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public int[] executeBatch() throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return statement.executeBatch();
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -115,30 +117,20 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public ResultSet executeQuery(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 
-		    // si dans le cache, on renvoie le resultset
-		    //		    log.debug("CoreStatement:executeQuery");
-		    // sinon on cree le statement
+		    // a cached result is read through a cursor of its own,
+		    // otherwise the statement is executed and its result cached
+		    // if the request matches a pattern of the cache
 		    RequestCache uc = RequestCache.getInstance();
-		    ResultSet rset = null;
 		    theQuery = s;
-		    if (uc.isInCache(s)) {
-			rset = (ResultSet) (uc.getResult(s));
-			rset.beforeFirst();
+		    ResultSet rset = uc.getResultSet(s, this);
+		    if (rset != null) {
 			inCache = true;
 		    } else {
-			String rsql = uc.getSqlPattern(s);
-			rset = statement.executeQuery(s);
-			    
-			if (rsql != null) {
-			    // we need to cache the ResultSet object
-			    uc.setResult(rsql, rset);
-			    uc.setLink(s, rsql);
-			    inCache = true;
-			} else {
-			    // sql request is not a cacheable request :-(
-			    uc.setLink(s, "null");
-			}
+			ResultSet result = statement.executeQuery(s);
+			rset = uc.cache(s, result, this);
+			inCache = rset != result;
 		    }
 		    
 		    return rset;
@@ -152,6 +144,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public int executeUpdate(String s) throws SQLException {
 		//preInvoke();
 		try {
+			flushConnectionBatch();
 			return statement.executeUpdate(s);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -360,6 +353,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public boolean execute(String sql, int autoGeneratedKeys)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.execute(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -369,6 +363,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public boolean execute(String sql, int[] columnIndexes)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.execute(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -378,6 +373,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public boolean execute(String sql, String[] columnNames)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.execute(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -387,6 +383,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public int executeUpdate(String sql, int autoGeneratedKeys)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.executeUpdate(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -396,6 +393,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public int executeUpdate(String sql, int[] columnIndexes)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.executeUpdate(sql, columnIndexes);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -405,6 +403,7 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
 	public int executeUpdate(String sql, String[] columnNames)
 		throws SQLException {
 		try {
+			flushConnectionBatch();
 			return statement.executeUpdate(sql, columnNames);
 		} catch (SQLException e) {
 			catchInvoke(e);
@@ -430,6 +429,15 @@ public abstract class CoreStatement extends JdbcUtil implements Statement {
                 return 0;                
 	}
 
+	/*
+	 * executes the updates batched on the connection, so that they are
+	 * seen by this execution
+	 */
+	private void flushConnectionBatch() throws SQLException {
+		if (batchConnection != null)
+			batchConnection.flushBatch();
+	}
+
 	/**
 	 * Methods used to do some works before and during the catch
 	 * clause, to prevent the pool that a connection is broken.
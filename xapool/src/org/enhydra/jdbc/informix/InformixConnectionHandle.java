@@ -35,22 +35,32 @@ public class InformixConnectionHandle extends StandardConnectionHandle {
         super (pooledCon, preparedStatementCache,preparedStmtCacheSize);
     }
 
-    public synchronized void setLockModeToWait(int seconds) throws SQLException {
-        if (lockModeWait != seconds) {
-            if (seconds >0) {
-                execute("SET LOCK MODE TO WAIT " + seconds);
-            } else if (seconds == 0) {
-                execute("SET LOCK MODE TO NOT WAIT ");
-            } else {
-                execute("SET LOCK MODE TO WAIT ");
+    public void setLockModeToWait(int seconds) throws SQLException {
+        lock.lock();
+        try {
+            if (lockModeWait != seconds) {
+                if (seconds >0) {
+                    execute("SET LOCK MODE TO WAIT " + seconds);
+                } else if (seconds == 0) {
+                    execute("SET LOCK MODE TO NOT WAIT ");
+                } else {
+                    execute("SET LOCK MODE TO WAIT ");
+                }
+                lockModeWait = seconds;
             }
-            lockModeWait = seconds;
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void execute (String sql) throws SQLException {
-        Statement stat = createStatement();
-        stat.execute(sql);
+    public void execute (String sql) throws SQLException {
+        lock.lock();
+        try {
+            Statement stat = createStatement();
+            stat.execute(sql);
+        } finally {
+            lock.unlock();
+        }
     }
 
 }
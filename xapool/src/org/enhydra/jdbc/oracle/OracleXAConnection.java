@@ -56,7 +56,8 @@ public final class OracleXAConnection extends StandardXAConnection {
     private OracleXid getOracleXid(Xid xid) throws XAException {
         if (!(xid instanceof OracleXid)) {
             byte[] txctx = (byte[])txctxs.get(xid);
-            dataSource.log.debug("txctx is " + txctx);
+            if (dataSource.log.isDebugEnabled())
+                dataSource.log.debug("txctx is " + txctx);
             OracleXid newXid = new OracleXid(xid.getFormatId(), xid.getGlobalTransactionId(), xid.getBranchQualifier(), txctx);
             return newXid;
         } else {
@@ -65,26 +66,30 @@ public final class OracleXAConnection extends StandardXAConnection {
     }
 
     public void commit(Xid xid, boolean flag) throws XAException {
-        dataSource.log.debug("commit:" + xid.getGlobalTransactionId());
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("commit:" + xid.getGlobalTransactionId());
         xarsrc.commit(getOracleXid(xid), flag);
         xaDataSource.freeConnection(xid, false);
         txctxs.remove(xid);
     }
 
     public void end(Xid xid, int flags) throws XAException {
-        dataSource.log.debug("end" + ":" + xid.getFormatId() + ":" + xid.getGlobalTransactionId() + ":" + xid.getBranchQualifier() + ":" + flags);
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("end" + ":" + xid.getFormatId() + ":" + xid.getGlobalTransactionId() + ":" + xid.getBranchQualifier() + ":" + flags);
         xarsrc.end(getOracleXid(xid), flags);
     }
 
     public void forget(Xid xid) throws XAException {
-        dataSource.log.debug("forget" + ":" + xid.getGlobalTransactionId());
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("forget" + ":" + xid.getGlobalTransactionId());
         xarsrc.forget(getOracleXid(xid));
         xaDataSource.freeConnection(xid, false);
         txctxs.remove(xid);
     }
 
     public int prepare(Xid xid) throws XAException {
-        dataSource.log.debug("prepare" + ":" + xid.getGlobalTransactionId());
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("prepare" + ":" + xid.getGlobalTransactionId());
         int res = xarsrc.prepare(getOracleXid(xid));
         if (res == XA_RDONLY) {
             xaDataSource.freeConnection(xid, false);
@@ -94,14 +99,16 @@ public final class OracleXAConnection extends StandardXAConnection {
     }
 
     public void rollback(Xid xid) throws XAException {
-        dataSource.log.debug("rollback" + ":" + xid.getGlobalTransactionId());
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("rollback" + ":" + xid.getGlobalTransactionId());
         xarsrc.rollback(getOracleXid(xid));
         xaDataSource.freeConnection(xid, false);
         txctxs.remove(xid);
     }
 
     public void start(Xid xid, int flags) throws XAException {
-        dataSource.log.debug("start" + ":" + xid.getFormatId() + ":" + xid.getGlobalTransactionId() + ":" + xid.getBranchQualifier() + ":" + flags);
+        if (dataSource.log.isDebugEnabled())
+            dataSource.log.debug("start" + ":" + xid.getFormatId() + ":" + xid.getGlobalTransactionId() + ":" + xid.getBranchQualifier() + ":" + flags);
         doStart(xid, flags);
         xarsrc = new OracleXAResource(curCon.con);
         OracleXid oXid = getOracleXid(xid);
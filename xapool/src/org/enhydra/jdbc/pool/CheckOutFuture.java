@@ -0,0 +1,222 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Result of an asynchronous check out (GenericPool.checkOutAsync,
+ * StandardPoolDataSource.getConnectionAsync). No thread waits for the
+ * object: when the pool is exhausted the check out is queued, and it is
+ * completed by the thread which gives an object back, which then calls
+ * the listeners. The check out fails at its timeout.<p>
+ * cancel withdraws a check out which is still queued; once an object has
+ * been handed to it, cancel returns false and the object goes to the
+ * listeners. The timeout of get(long, TimeUnit) only limits the wait of
+ * the caller, the check out goes on.
+ */
+public class CheckOutFuture implements Future {
+	private static final int WAITING = 0;
+
+	private static final int DONE = 1;
+
+	private static final int FAILED = 2;
+
+	private static final int CANCELLED = 3;
+
+	// futures whose listeners are to be called by the thread, set while it
+	// calls listeners: a listener which gives its object back completes an
+	// other check out, whose listeners are called after its own returns
+	// rather than deeper in the stack
+	private static final ThreadLocal pending = new ThreadLocal();
+
+	private final AtomicInteger state = new AtomicInteger(WAITING);
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private volatile Object value;
+
+	private volatile Exception failure;
+
+	private List listeners; // guarded by this, null once taken to be called
+
+	/**
+	 * withdraws the check out from the pool, returns false if an object
+	 * (or a failure) has already been handed to it
+	 */
+	boolean abandon() {
+		return true;
+	}
+
+	boolean complete(Object obj) {
+		value = obj;
+		return finish(DONE);
+	}
+
+	boolean fail(Exception e) {
+		failure = e;
+		return finish(FAILED);
+	}
+
+	private boolean finish(int result) {
+		if (!state.compareAndSet(WAITING, result))
+			return false;
+		done.countDown();
+		synchronized (this) {
+			if (listeners == null)
+				return true;
+		}
+		LinkedList queue = (LinkedList) pending.get();
+		if (queue != null) {
+			queue.addLast(this);
+			return true;
+		}
+		queue = new LinkedList();
+		pending.set(queue);
+		try {
+			CheckOutFuture f = this;
+			for (;;) {
+				f.callListeners();
+				if (queue.isEmpty())
+					break;
+				f = (CheckOutFuture) queue.removeFirst();
+			}
+		} finally {
+			pending.set(null);
+		}
+		return true;
+	}
+
+	private void callListeners() {
+		List called;
+		synchronized (this) {
+			called = listeners;
+			listeners = null;
+		}
+		for (int i = 0; i < called.size(); i++)
+			call((CheckOutListener) called.get(i));
+	}
+
+	/*
+	 * the listeners of the other futures are called even if one throws
+	 */
+	private void call(CheckOutListener l) {
+		try {
+			switch (state.get()) {
+			case DONE:
+				l.checkedOut(value);
+				break;
+			case FAILED:
+				l.failed(failure);
+				break;
+			default:
+				l.failed(new CancellationException());
+			}
+		} catch (RuntimeException e) {
+			// ignored, like an exception of a ConnectionEventListener
+		}
+	}
+
+	/**
+	 * adds a listener, called at once by this thread if the check out is
+	 * already completed
+	 */
+	public void addListener(CheckOutListener l) {
+		synchronized (this) {
+			if (state.get() == WAITING) {
+				if (listeners == null)
+					listeners = new ArrayList(2);
+				listeners.add(l);
+				return;
+			}
+		}
+		call(l);
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (state.get() != WAITING || !abandon())
+			return false;
+		return finish(CANCELLED);
+	}
+
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
+	}
+
+	public boolean isDone() {
+		return state.get() != WAITING;
+	}
+
+	public Object get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit))
+			throw new TimeoutException(
+					"CheckOutFuture:get the object is not checked out yet");
+		return result();
+	}
+
+	private Object result() throws ExecutionException {
+		switch (state.get()) {
+		case DONE:
+			return value;
+		case FAILED:
+			throw new ExecutionException(failure.getMessage(), failure);
+		default:
+			throw new CancellationException();
+		}
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("CheckOutFuture:\n");
+		sb.append("     state=<");
+		switch (state.get()) {
+		case WAITING:
+			sb.append("waiting");
+			break;
+		case DONE:
+			sb.append("done");
+			break;
+		case FAILED:
+			sb.append("failed: " + failure);
+			break;
+		default:
+			sb.append("cancelled");
+		}
+		sb.append(">\n");
+		return sb.toString();
+	}
+}
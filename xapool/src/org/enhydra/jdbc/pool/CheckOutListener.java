@@ -0,0 +1,45 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+/**
+ * Receives the result of an asynchronous check out (CheckOutFuture). It is
+ * called by the thread which completes the check out: the caller of
+ * checkOutAsync if an object was free, otherwise the thread which gives an
+ * object back to the pool, or the timer of the pool. It must not block
+ * this thread, and it must give the object back to the pool when it is
+ * done with it.
+ */
+public interface CheckOutListener {
+	/**
+	 * the check out succeeded, obj is the pooled object (a
+	 * java.sql.Connection for StandardPoolDataSource.getConnectionAsync)
+	 */
+	public void checkedOut(Object obj);
+
+	/**
+	 * the check out failed: timeout, creation of the object, stop of the
+	 * pool, or java.util.concurrent.CancellationException if it has been
+	 * cancelled
+	 */
+	public void failed(Exception e);
+}
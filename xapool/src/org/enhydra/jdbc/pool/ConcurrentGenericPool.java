@@ -0,0 +1,1670 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.lang.ref.WeakReference;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ConcurrentGenericPool is a pool engine with the same API as GenericPool,
+ * built on java.util.concurrent structures instead of the two synchronized
+ * hashtables. Every pooled object is indexed by identity in a concurrent
+ * map and the number of objects is reserved with an atomic counter.
+ * checkOut and checkIn are O(1) and never take the pool monitor.<p>
+ * The objects are grouped in a sub-pool per user (credentials), found by
+ * a hash lookup, with its own lock-free stack of free objects: a check out
+ * never looks at the objects of the other users. maxSize is the maximum
+ * for all the users, userMaxSize and userMinSize bound the objects of each
+ * user. When the pool is full and the user has no free object, a free
+ * object of an other user is closed to make room. When the pool is
+ * exhausted the threads are queued in arrival order and each object which
+ * is checked in is handed directly to the oldest waiting thread of the same
+ * user. With
+ * threadAffinity a thread gets back the object it has checked in last, if
+ * it is still free, without touching the shared structures.<p>
+ * With spareSize, objects are created in background (at most
+ * createConcurrency at a time) to keep spareSize free objects, and a thread
+ * which finds no free object waits for an object created in background
+ * instead of creating it. With validationIdleTime, free objects are
+ * verified in background and at check out only when they have not been
+ * used or verified for validationIdleTime.<p>
+ * Each GenerationObject carries a state which is changed with
+ * compare-and-set: the thread which moves an object out of the FREE state
+ * owns it. Checking levels 3 and 4 are applied to the candidate object
+ * only, the check of all the free objects is done by the clean up.<p>
+ * There is no PoolKeeper thread: the clean up runs every sleepTime on the
+ * executor of the pool, whose delay queue is also used as a timer for each
+ * object. An object is removed by its own timer when it has been free for
+ * lifeTime, so the expiry never scans the whole pool. With maxLifeTime the
+ * retirement time of each object is drawn in the last MAXLIFETIME_SPREAD
+ * percent of maxLifeTime, so the objects created together (at start) are
+ * not all closed and replaced at the same time; an object which is checked
+ * out at its retirement time is removed when it is checked in.<p>
+ * With leakThreshold, the checked out objects are checked for leaks every
+ * leakThreshold / 2 on the executor, as well as by the clean up and when a
+ * thread has to wait.
+ */
+public class ConcurrentGenericPool extends GenericPool {
+
+	// states of a GenerationObject
+	static final int NEW = 0; // created, not yet in the pool
+	static final int FREE = 1; // in the free stack, can be checked out
+	static final int RESERVED = 2; // owned by the pool (verification)
+	static final int IN_USE = 3; // checked out by the user
+	static final int REMOVED = 4; // out of the pool, waiting to be killed
+
+	private static final AtomicIntegerFieldUpdater STATE = AtomicIntegerFieldUpdater
+			.newUpdater(GenerationObject.class, "state");
+
+	private ConcurrentHashMap objects; // pooled object -> GenerationObject
+
+	// sub-pools of the users, by credentials (Credentials -> UserPool)
+	private ConcurrentHashMap users;
+
+	// sub-pool of the last checkOut, most pools have a single user whose
+	// sub-pool is found without building a Credentials key
+	private volatile UserPool lastUserPool;
+
+	// number of objects in the pool, reserved before the creation
+	private final AtomicInteger slots = new AtomicInteger();
+
+	private final AtomicInteger freeCount = new AtomicInteger();
+
+	private ConcurrentLinkedQueue hitList; // objects to be killed by the reaper
+
+	// runs the timers of the objects and the clean up, creates and verifies
+	// objects in background (spareSize, validationIdleTime)
+	private volatile ScheduledThreadPoolExecutor executor;
+
+	// number of objects being created by the executor
+	private final AtomicInteger creating = new AtomicInteger();
+
+	// kills the removed objects, run by the executor
+	private final Runnable reaper = new Runnable() {
+		public void run() {
+			killRemoved();
+		}
+	};
+
+	private final Random random = new Random();
+
+	// the retirement of the objects is spread on the last 10% of maxLifeTime
+	static final int MAXLIFETIME_SPREAD = 10;
+
+	// last object checked in by the thread (threadAffinity), held by its
+	// weak reference so that a thread of an other pool doesn't keep the
+	// removed objects, and this pool once stopped, reachable
+	private final ThreadLocal lastObject = new ThreadLocal();
+
+	// threads waiting for an object, oldest first
+	private final ConcurrentLinkedQueue waiters = new ConcurrentLinkedQueue();
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	// handed to a waiting thread: a slot has been reserved for it
+	private static final Object SLOT = new Object();
+
+	// set by a waiting thread which gives up
+	private static final Object CANCELLED = new Object();
+
+	/**
+	 * Creates an ConcurrentGenericPool with the default params.
+	 */
+	public ConcurrentGenericPool(PoolHelper helper) {
+		super(helper);
+	}
+
+	public ConcurrentGenericPool(PoolHelper helper, int initSize) {
+		super(helper, initSize);
+	}
+
+	public ConcurrentGenericPool(PoolHelper helper, int minSize, int maxSize,
+			long lifeTime, long sleepTime, long maxLifeTime) {
+		super(helper, minSize, maxSize, lifeTime, sleepTime, maxLifeTime);
+	}
+
+	/**
+	 * Start method, to initialize independant values of the pool
+	 */
+	public void start() {
+		synchronized (this) {
+			init();
+		}
+		// the pool serves the objects as soon as they are created
+		warmUp(getMinSize());
+		fillSpare();
+		log.debug("ConcurrentGenericPool:start pool started");
+	}
+
+	private void init() {
+		objects = new ConcurrentHashMap();
+		users = new ConcurrentHashMap();
+		lastUserPool = null;
+		hitList = new ConcurrentLinkedQueue();
+		slots.set(0);
+		freeCount.set(0);
+		setGC(false);
+
+		// the executor replaces the PoolKeeper thread: it runs the clean up,
+		// the timers of the objects, and the background creation and
+		// verification of the objects
+		executor = new ScheduledThreadPoolExecutor(Math.max(1,
+				getCreateConcurrency()), new PoolThreadFactory(getThreadFactory()));
+		if (getSleepTime() > 0) {
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					cleanUp();
+				}
+			}, getSleepTime(), getSleepTime(), TimeUnit.MILLISECONDS);
+		}
+		if (getValidationIdleTime() > 0) {
+			long period = Math.max(100, getValidationIdleTime() / 2);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					validateIdle();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+		if (getLeakThreshold() > 0) {
+			long period = Math.max(100, getLeakThreshold() / 2);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					checkLeaks();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+
+		// the slots of the minSize objects of the warm up
+		slots.set(getMinSize());
+	}
+
+	boolean addWarmUpObject(GenerationObject genObject) {
+		if (objects == null)
+			return false;
+		register(genObject, null);
+		release(genObject);
+		return true;
+	}
+
+	void cancelWarmUpObject() {
+		if (objects != null) {
+			freeSlot(null);
+			slotFreed();
+		}
+	}
+
+	/**
+	 * return pooled object. If the pool is exhausted the thread is queued,
+	 * the objects which are checked in are handed to the oldest waiting
+	 * thread of the same user.
+	 * @param timeout maximum time to wait if the pool is exhausted (in
+	 * nanoseconds)
+	 */
+	public Object checkOut(String user, String password, long timeout)
+			throws Exception {
+		log.debug("ConcurrentGenericPool:checkOut an object");
+		UserPool up = userPool(user, password);
+		GenerationObject o = getFromPool(up, true);
+		long waited = 0;
+		if (o == null && timeout > 0) {
+			long start = System.nanoTime();
+			o = await(up, start + timeout);
+			waited = System.nanoTime() - start;
+		}
+		if (o == null) {
+			metrics.timedOut(waited);
+			throw new Exception(
+					"GenericPool:checkOut ERROR  impossible to obtain a new object from the pool");
+		}
+		traceCheckOut(o);
+		metrics.checkedOut(waited);
+		return o.getObj();
+	}
+
+	/*
+	 * Queues the thread until an object, or a slot to create one, is handed
+	 * to it. Returns null if nothing was received before the deadline.
+	 */
+	private GenerationObject await(UserPool up, long deadline)
+			throws Exception {
+		if (log.isInfoEnabled())
+			log.info("ConcurrentGenericPool:checkOut waiting for an object :"
+					+ this.poolHelper.toString());
+		// the objects may be held by threads which never give them back
+		checkLeaks();
+		Waiter w = new Waiter(up);
+		boolean interrupted = false;
+		waiting.incrementAndGet();
+		waiters.offer(w);
+		up.waiters.offer(w);
+		try {
+			for (;;) {
+				// objects may have been released before the thread was queued,
+				// or while an hand off was lost in a race
+				GenerationObject o = getFromPool(up, !isBackgroundCreation());
+				if (o != null) {
+					if (!w.cancel())
+						giveBack(w.grant, up);
+					return o;
+				}
+				Object grant = w.grant;
+				if (grant == null) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining > 0) {
+						long poll = getDeadLockRetryWait() * 1000000L;
+						LockSupport.parkNanos((poll > 0 && poll < remaining) ? poll
+								: remaining);
+						if (Thread.interrupted()) {
+							interrupted = true;
+							log.error("ConcurrentGenericPool:checkOut ERROR Failed while waiting for an object: interrupted");
+						}
+						grant = w.grant;
+						if (grant == null)
+							continue;
+					} else if (w.cancel()) {
+						return null;
+					} else {
+						grant = w.grant; // served meanwhile
+					}
+				}
+				o = accept(grant, up);
+				if (o != null)
+					return o;
+				// the object failed the verification, wait again
+				w.grant = null;
+				waiters.offer(w);
+				up.waiters.offer(w);
+			}
+		} finally {
+			waiting.decrementAndGet();
+			waiters.remove(w);
+			up.waiters.remove(w);
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Takes what has been handed to a waiting thread
+	 */
+	private GenerationObject accept(Object grant, UserPool up) throws Exception {
+		if (grant == SLOT)
+			return create(up);
+		if (grant instanceof Exception)
+			throw (Exception) grant; // the creation of the object failed
+		GenerationObject o = (GenerationObject) grant;
+		long now = System.currentTimeMillis();
+		if (!needsVerify(o, now) || verify(o.getObj())) {
+			o.lastTouched = now;
+			o.state = IN_USE;
+			return o;
+		}
+		log.debug("ConcurrentGenericPool:checkOut kill an object from the pool");
+		remove(o);
+		return null;
+	}
+
+	/*
+	 * Gives back what has been handed to a waiting thread which does not
+	 * need it anymore
+	 */
+	private void giveBack(Object grant, UserPool up) {
+		if (grant == SLOT) {
+			freeSlot(up);
+			slotFreed();
+		} else if (grant instanceof GenerationObject) {
+			release((GenerationObject) grant);
+		}
+	}
+
+	/**
+	 * return pooled object without blocking. If the pool is exhausted the
+	 * check out is queued with the waiting threads: the object which is
+	 * checked in is handed to it and the check out is completed by the
+	 * thread which checks in. A slot is turned into a new object by the
+	 * executor.
+	 * @param timeout maximum time to wait if the pool is exhausted (in
+	 * nanoseconds)
+	 */
+	public CheckOutFuture checkOutAsync(String user, String password,
+			long timeout) {
+		log.debug("ConcurrentGenericPool:checkOutAsync an object");
+		UserPool up = userPool(user, password);
+		AsyncCheckOut f = new AsyncCheckOut(up, timeout);
+		GenerationObject o;
+		try {
+			o = getFromPool(up, true);
+		} catch (Exception e) {
+			f.fail(e);
+			return f;
+		}
+		if (o != null) {
+			traceCheckOut(o);
+			metrics.checkedOut(0);
+			f.complete(o.getObj());
+		} else if (timeout <= 0) {
+			metrics.timedOut(0);
+			f.fail(new Exception(
+					"ConcurrentGenericPool:checkOutAsync ERROR  impossible to obtain a new object from the pool"));
+		} else {
+			if (log.isInfoEnabled())
+				log.info("ConcurrentGenericPool:checkOutAsync waiting for an object :"
+						+ this.poolHelper.toString());
+			// the objects may be held by threads which never give them back
+			checkLeaks();
+			f.enqueue();
+			// objects may have been released before it was queued
+			f.run();
+		}
+		return f;
+	}
+
+	/**
+	 * An asynchronous check out waiting for an object. Between the hand
+	 * offs it is polled every deadLockRetryWait by the executor, as a
+	 * waiting thread would do, and it fails at its deadline.
+	 */
+	final class AsyncCheckOut extends CheckOutFuture implements Runnable {
+		private final UserPool up;
+
+		private final Waiter waiter;
+
+		private final long start = System.nanoTime();
+
+		private final long deadline;
+
+		AsyncCheckOut(UserPool up, long timeout) {
+			this.up = up;
+			this.waiter = new Waiter(up, this);
+			this.deadline = start + timeout;
+		}
+
+		void enqueue() {
+			waiting.incrementAndGet();
+			waiters.offer(waiter);
+			up.waiters.offer(waiter);
+		}
+
+		private void dequeue() {
+			waiting.decrementAndGet();
+			waiters.remove(waiter);
+			up.waiters.remove(waiter);
+		}
+
+		boolean abandon() {
+			if (!waiter.cancel())
+				return false;
+			dequeue();
+			return true;
+		}
+
+		/*
+		 * an object, a slot or the failure of a creation has been handed to
+		 * the check out, by the thread which calls offer
+		 */
+		void granted(final Object grant) {
+			dequeue();
+			if (grant != SLOT) {
+				serve(grant);
+				return;
+			}
+			// the object is not created by the thread which freed the slot
+			ScheduledThreadPoolExecutor timers = executor;
+			try {
+				if (timers != null) {
+					timers.execute(new Runnable() {
+						public void run() {
+							serve(grant);
+						}
+					});
+					return;
+				}
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped
+			}
+			giveBack(grant, up);
+			fail(new Exception(
+					"ConcurrentGenericPool:checkOutAsync ERROR the pool is stopped"));
+		}
+
+		private void serve(Object grant) {
+			GenerationObject o;
+			try {
+				o = accept(grant, up);
+			} catch (Exception e) {
+				fail(e);
+				return;
+			}
+			if (o != null) {
+				traceCheckOut(o);
+				metrics.checkedOut(System.nanoTime() - start);
+				complete(o.getObj());
+			} else {
+				// the object failed the verification, wait again
+				waiter.grant = null;
+				enqueue();
+				schedule(deadline - System.nanoTime());
+			}
+		}
+
+		private void schedule(long remaining) {
+			long poll = getDeadLockRetryWait() * 1000000L;
+			ScheduledThreadPoolExecutor timers = executor;
+			try {
+				if (timers != null) {
+					timers.schedule(this, Math.max(1,
+							(poll > 0 && poll < remaining) ? poll : remaining),
+							TimeUnit.NANOSECONDS);
+					return;
+				}
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped
+			}
+			if (abandon())
+				fail(new Exception(
+						"ConcurrentGenericPool:checkOutAsync ERROR the pool is stopped"));
+		}
+
+		/*
+		 * polls the pool, run by the executor
+		 */
+		public void run() {
+			if (waiter.grant != null)
+				return; // served or cancelled
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				if (abandon()) {
+					metrics.timedOut(System.nanoTime() - start);
+					fail(new Exception(
+							"ConcurrentGenericPool:checkOutAsync ERROR  impossible to obtain a new object from the pool"));
+				}
+				return;
+			}
+			GenerationObject o;
+			try {
+				o = getFromPool(up, !isBackgroundCreation());
+			} catch (Exception e) {
+				if (abandon())
+					fail(e);
+				return;
+			}
+			if (o == null) {
+				schedule(remaining);
+			} else if (abandon()) {
+				traceCheckOut(o);
+				metrics.checkedOut(System.nanoTime() - start);
+				complete(o.getObj());
+			} else {
+				// an object has been handed to it meanwhile
+				o.state = RESERVED;
+				release(o);
+			}
+		}
+	}
+
+	/*
+	 * creates an object with the executor and puts it in the pool, the slot
+	 * has been reserved by the caller. A null sub-pool means the default
+	 * user.
+	 */
+	private void createInBackground(final UserPool up) {
+		creating.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						GenerationObject genObject = (up == null)
+								? newObject()
+								: newObject(up.user, up.password);
+						register(genObject, up);
+						release(genObject);
+					} catch (Exception e) {
+						freeSlot(up);
+						log.error("ConcurrentGenericPool:createInBackground Could not create a new object: "
+								+ e);
+						// the oldest thread waiting for this user gets the error
+						if (up != null) {
+							for (Iterator it = up.waiters.iterator(); it.hasNext();) {
+								Waiter w = (Waiter) it.next();
+								if (w.grant == null && w.offer(e)) {
+									it.remove();
+									break;
+								}
+							}
+						}
+						slotFreed(); // for the threads of the other users
+					} finally {
+						creating.decrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) { // the pool is stopped
+			creating.decrementAndGet();
+			freeSlot(up);
+		}
+	}
+
+	/*
+	 * creates in background the objects missing to have spareSize free
+	 * objects
+	 */
+	private void fillSpare() {
+		int spare = getSpareSize();
+		if (spare <= 0 || executor == null)
+			return;
+		while (freeCount.get() + creating.get() < spare && reserveSlot())
+			createInBackground(null);
+	}
+
+	/*
+	 * verifies the free objects which have not been used or verified for
+	 * validationIdleTime, run by the executor
+	 */
+	private void validateIdle() {
+		ConcurrentHashMap all = objects;
+		if (all == null || getCheckLevelObject() == 0)
+			return;
+		long now = System.currentTimeMillis();
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			GenerationObject o = (GenerationObject) it.next();
+			if (o.state == FREE && needsVerify(o, now)
+					&& STATE.compareAndSet(o, FREE, RESERVED)) {
+				freeCount.decrementAndGet();
+				if (verify(o.getObj())) {
+					o.lastVerified = System.currentTimeMillis();
+					release(o);
+				} else {
+					log.debug("ConcurrentGenericPool:validateIdle kill an object from the pool");
+					remove(o);
+				}
+			}
+		}
+		fillSpare();
+	}
+
+	/*
+	 * Takes a free object of the user or creates a new one if the pool is
+	 * not full and create is true. Returns null if the pool is exhausted or
+	 * if the object is created in background.
+	 */
+	private GenerationObject getFromPool(UserPool up, boolean create)
+			throws Exception {
+		long now = System.currentTimeMillis();
+		if (isThreadAffinity()) {
+			// the object given back by this thread, if nobody took it
+			WeakReference last = (WeakReference) lastObject.get();
+			GenerationObject o = (last == null) ? null
+					: (GenerationObject) last.get();
+			if (last != null && (o == null || o.state == REMOVED))
+				lastObject.remove(); // removed, don't keep the reference
+			else if (o != null && o.pool == up && o.state == FREE
+					&& STATE.compareAndSet(o, FREE, RESERVED)) {
+				freeCount.decrementAndGet();
+				if (!isExpired(o, now)
+						&& (!needsVerify(o, now) || verify(o.getObj()))) {
+					o.lastTouched = now;
+					o.state = IN_USE;
+					return o;
+				}
+				remove(o);
+			}
+		}
+		// the stack of the user holds only its objects
+		GenerationObject o;
+		while ((o = up.free.pop()) != null) {
+			if (!STATE.compareAndSet(o, FREE, RESERVED))
+				continue; // stale entry of the stack
+			freeCount.decrementAndGet();
+			if (isExpired(o, now)) {
+				log.debug("ConcurrentGenericPool:getFromPool an object has expired");
+				remove(o);
+			} else if (!needsVerify(o, now) || verify(o.getObj())) {
+				o.lastTouched = now;
+				o.state = IN_USE;
+				fillSpare();
+				return o;
+			} else {
+				log.debug("ConcurrentGenericPool:getFromPool kill an object from the pool");
+				remove(o);
+			}
+		}
+
+		// if no objects available, create a new one
+		boolean reserved = create && reserveSlot(up);
+		if (!reserved && (create || creating.get() == 0)
+				&& slots.get() >= getMaxSize() && evictOther(up)) {
+			// the slot of the evicted object goes to the oldest waiting
+			// thread, or to the caller
+			reserved = create && reserveSlot(up);
+		}
+		if (!reserved)
+			return null;
+		if (isBackgroundCreation()) {
+			// the caller waits for the object created in background
+			createInBackground(up);
+			return null;
+		}
+		log.debug("ConcurrentGenericPool:getFromPool no objects available, create a new one");
+		return create(up);
+	}
+
+	/*
+	 * the pool is full, closes a free object of an other user so that the
+	 * user can get one. The objects of the users which have more than
+	 * userMinSize objects are taken first; if there is none, userMinSize
+	 * can't be kept for all the users and any free object is taken.
+	 */
+	private boolean evictOther(UserPool up) {
+		int max = getUserMaxSize();
+		if (max > 0 && up.count.get() >= max)
+			return false; // the user can't have more objects anyway
+		return evictOther(up, getUserMinSize()) || evictOther(up, 0);
+	}
+
+	private boolean evictOther(UserPool up, int keep) {
+		for (Iterator it = users.values().iterator(); it.hasNext();) {
+			UserPool other = (UserPool) it.next();
+			if (other == up || other.count.get() <= keep)
+				continue;
+			GenerationObject o;
+			while ((o = other.free.pop()) != null) {
+				if (STATE.compareAndSet(o, FREE, RESERVED)) {
+					log.debug("ConcurrentGenericPool:getFromPool close an object of an other user");
+					freeCount.decrementAndGet();
+					remove(o);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Creates a checked out object, the slot has been reserved by the caller
+	 */
+	private GenerationObject create(UserPool up) throws Exception {
+		try {
+			GenerationObject genObject = newObject(up.user, up.password);
+			genObject.lastTouched = System.currentTimeMillis();
+			genObject.state = IN_USE;
+			register(genObject, up);
+			return genObject;
+		} catch (Exception excp) {
+			freeSlot(up); // our reservation failed. rollback.
+			slotFreed();
+			log.error("ConcurrentGenericPool:getFromPool Error Exception in ConcurrentGenericPool:getFromPool");
+			throw excp;
+		}
+	}
+
+	/**
+	 * remove object from locked pool
+	 */
+	public void checkIn(Object o) {
+		log.debug("ConcurrentGenericPool:checkIn return an object to the pool");
+		GenerationObject obj = lookup(o);
+		if (obj == null || !STATE.compareAndSet(obj, IN_USE, RESERVED))
+			return; // not checked out, or already returned
+		metrics.checkedIn(System.nanoTime() - obj.checkOutTime);
+		obj.checkOutTime = 0; // not checked out (leak detection)
+
+		// we have to verify if the generation of the object is still valid
+		if (generation > obj.getGeneration() && !checkObject(o)) {
+			remove(obj);
+		} else if (obj.retirement > 0
+				&& System.currentTimeMillis() >= obj.retirement) {
+			log.debug("ConcurrentGenericPool:checkIn an object has reached maxLifeTime");
+			remove(obj);
+			fillMinimum();
+		} else if (slots.get() > getMaxSize()
+				|| (getUserMaxSize() > 0 && ((UserPool) obj.pool).count.get() > getUserMaxSize())) {
+			log.info("ConcurrentGenericPool:checkIn more than maxSize object in the pool");
+			remove(obj);
+		} else {
+			obj.lastTouched = System.currentTimeMillis();
+			if (release(obj) && isThreadAffinity()) {
+				if (obj.self == null) // once per object, not per check in
+					obj.self = new WeakReference(obj);
+				lastObject.set(obj.self);
+			}
+		}
+	}
+
+	public boolean checkOwner(GenerationObject genObject, String user,
+			String password) {
+		return same(user, genObject.getUser())
+				&& same(password, genObject.getPassword());
+	}
+
+	public void minimumObject(String user, String password) {
+		if (objects == null)
+			return;
+		UserPool up = ((user != null) && (password != null)) ? userPool(user,
+				password) : null;
+		while (slots.get() < getMinSize()
+				&& ((up == null) ? reserveSlot() : reserveSlot(up))) {
+			try {
+				GenerationObject genObject;
+				if (up != null)
+					genObject = newObject(user, password);
+				else
+					genObject = newObject();
+				register(genObject, up);
+				release(genObject);
+			} catch (Exception e) {
+				freeSlot(up);
+				slotFreed();
+				log.error("ConcurrentGenericPool:minimumObject Error Exception in ConcurrentGenericPool:minimumObject");
+				break;
+			}
+		}
+	}
+
+	public void removeUnlockedObject(GenerationObject obj) {
+		if (STATE.compareAndSet(obj, FREE, RESERVED)) {
+			freeCount.decrementAndGet();
+			remove(obj);
+		}
+	}
+
+	/**
+	 * removes an object for the locked pool, when an error has occurred
+	 */
+	public void removeLockedObject(Object obj) {
+		log.debug("ConcurrentGenericPool:removeObject remove an object");
+		GenerationObject o = lookup(obj);
+		if (o != null && STATE.compareAndSet(o, IN_USE, REMOVED)) {
+			unregister(o);
+			forget(o);
+			o.killObject();
+		}
+	}
+
+	/**
+	 * removes an object for the locked pool, when an error has occurred
+	 */
+	public void fullRemoveLockedObject(Object obj) {
+		log.debug("ConcurrentGenericPool:removeObject remove an object");
+		GenerationObject o;
+		if (obj instanceof GenerationObject)
+			o = (GenerationObject) obj;
+		else
+			o = lookup(obj);
+		if (o != null && STATE.compareAndSet(o, IN_USE, REMOVED)) {
+			unregister(o);
+			forget(o);
+			destroy(o); // try to "kill" it
+		}
+	}
+
+	/**
+	 * Allows to verify if objects from the pool - for the o generation - are
+	 * valid or not. (only for the unlocked pool, to avoid to allocate non-valid
+	 * object
+	 */
+	public void nextGeneration(Object obj) {
+		log.debug("ConcurrentGenericPool:nextGeneration");
+		ConcurrentHashMap all = objects;
+		if (all == null)
+			return;
+		GenerationObject failed = lookup(obj);
+		int genObj = (failed == null) ? 0 : failed.getGeneration();
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			GenerationObject o = (GenerationObject) it.next();
+			// all objects of the same generation or earlier are checked
+			if (o.getGeneration() <= genObj && STATE.compareAndSet(o, FREE, RESERVED)) {
+				freeCount.decrementAndGet();
+				if (checkObject(o.getObj()))
+					release(o);
+				else
+					remove(o);
+			}
+		}
+		++this.generation; // now, we work with the next generation of object
+	}
+
+	public synchronized void setMaxSize(int max) throws Exception {
+		super.setMaxSize(max);
+		ConcurrentHashMap all = users;
+		if (all == null)
+			return;
+		// remove free objects, the others will be removed at check in
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			UserPool up = (UserPool) it.next();
+			GenerationObject o;
+			while (slots.get() > max && (o = up.free.pop()) != null) {
+				if (STATE.compareAndSet(o, FREE, RESERVED)) {
+					freeCount.decrementAndGet();
+					remove(o);
+				}
+			}
+		}
+		if (slots.get() > max)
+			log.warn("ConcurrentGenericPool:setMaxSize Be careful, the maximum size of "
+					+ "the pool does not correspond to your data. When objects "
+					+ "will be check in, the pool will decrease");
+	}
+
+	/**
+	 * switch off the pool
+	 */
+	public void stop() {
+		log.debug("ConcurrentGenericPool:stop start to stop the pool");
+		stopWarmUp();
+		if (poolKeeper != null)
+			poolKeeper.stop(); // release the pool.
+		if (keeper != null)
+			keeper.interrupt(); // and interrupt the pool keeper
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		// the threads which wait give up at their deadline, the
+		// asynchronous check outs can't be polled anymore
+		for (Iterator it = waiters.iterator(); it.hasNext();) {
+			Waiter w = (Waiter) it.next();
+			if (w.async != null && w.async.abandon())
+				w.async.fail(new Exception(
+						"ConcurrentGenericPool:checkOutAsync ERROR the pool is stopped"));
+		}
+		if (objects != null) {
+			expireAll(); // try to kill all the objects
+			objects.clear();
+			objects = null;
+			users.clear();
+			users = null;
+			lastUserPool = null;
+			slots.set(0);
+			freeCount.set(0);
+		}
+		// the other threads keep only cleared references
+		lastObject.remove();
+		log.debug("ConcurrentGenericPool:stop pool stopped");
+	}
+
+	/**
+	 * close all object in the pool
+	 */
+	void expireAll() {
+		log.debug("ConcurrentGenericPool:expireAll close all object in the pool");
+		for (Iterator it = objects.values().iterator(); it.hasNext();) {
+			GenerationObject o = (GenerationObject) it.next();
+			o.state = REMOVED;
+			forget(o);
+			destroy(o); // try to "kill" the object
+		}
+	}
+
+	/**
+	 * Clean up of the pool, run every sleepTime by the executor. The
+	 * expired objects are removed by their own timers, the clean up only
+	 * verifies all the free objects for the checking levels 3 and 4, kills
+	 * the removed objects and creates the objects missing to have minSize.
+	 */
+	protected void cleanUp() {
+		ConcurrentHashMap all = objects;
+		if (all == null) // During shutdown
+			return;
+		int level = getCheckLevelObject();
+		if (level == 3 || level == 4) {
+			for (Iterator it = all.values().iterator(); it.hasNext();) {
+				GenerationObject o = (GenerationObject) it.next();
+				if (o.state == FREE && STATE.compareAndSet(o, FREE, RESERVED)) {
+					freeCount.decrementAndGet();
+					if (verify(o.getObj()))
+						release(o);
+					else
+						remove(o);
+				}
+			}
+		}
+		ConcurrentHashMap sub = users;
+		if (sub != null) {
+			for (Iterator it = sub.values().iterator(); it.hasNext();)
+				((UserPool) it.next()).free.purge();
+		}
+
+		checkLeaks();
+		killRemoved();
+
+		if (isGC()) // if the pool is GCeable
+			System.gc(); // launch system call to clean up unused objects
+
+		fillMinimum();
+	}
+
+	/**
+	 * reports the objects checked out for more than leakThreshold, and
+	 * removes them if leakReclaim is set: the slot goes to a waiting thread
+	 * and the object is closed by the reaper
+	 */
+	protected void checkLeaks() {
+		ConcurrentHashMap all = objects;
+		if (all == null || getLeakThreshold() <= 0)
+			return;
+		long now = System.nanoTime();
+		boolean reclaimed = false;
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			GenerationObject o = (GenerationObject) it.next();
+			if (o.state != IN_USE || !isLeaked(o, now))
+				continue;
+			if (!isLeakReclaim()) {
+				reportLeak(o, now);
+			} else if (STATE.compareAndSet(o, IN_USE, RESERVED)) {
+				// the user can't check it in any more
+				reportLeak(o, now);
+				remove(o);
+				reclaimed = true;
+			}
+		}
+		if (reclaimed)
+			fillMinimum();
+	}
+
+	/*
+	 * Kill every object in the hit list, outside any lock.
+	 */
+	private void killRemoved() {
+		GenerationObject obj;
+		while ((obj = (GenerationObject) hitList.poll()) != null) {
+			log.debug("ConcurrentGenericPool:cleanUp killing an object");
+			destroy(obj); // try to "kill" it
+		}
+	}
+
+	/*
+	 * creates the objects missing to have minSize objects in the pool
+	 */
+	private void fillMinimum() {
+		if (objects != null && slots.get() < getMinSize()) {
+			log.info("ConcurrentGenericPool:cleanUp less than minSize objects in the pool "
+					+ "min=" + getMinSize() + " max=" + getMaxSize()
+					+ " count=" + slots.get());
+			while (slots.get() < getMinSize() && reserveSlot()) {
+				try {
+					GenerationObject genObject = newObject();
+					register(genObject, null);
+					release(genObject);
+				} catch (Exception e) {
+					freeSlot(null);
+					slotFreed();
+					log.error("ConcurrentGenericPool:cleanUp   Could not create new connections to fill pool size to minSize.");
+					break;
+				}
+			}
+			log.info("ConcurrentGenericPool:cleanUp done " + "min=" + getMinSize()
+					+ " max=" + getMaxSize() + " count=" + slots.get());
+		}
+		ConcurrentHashMap all = users;
+		int userMin = getUserMinSize();
+		if (all == null || userMin <= 0)
+			return;
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			UserPool up = (UserPool) it.next();
+			while (up.count.get() < userMin && reserveSlot(up)) {
+				try {
+					GenerationObject genObject = newObject(up.user, up.password);
+					register(genObject, up);
+					release(genObject);
+				} catch (Exception e) {
+					freeSlot(up);
+					slotFreed();
+					log.error("ConcurrentGenericPool:cleanUp   Could not create new connections to fill the pool of "
+							+ up.user + " to userMinSize.");
+					break;
+				}
+			}
+		}
+	}
+
+	public int getCount() {
+		return slots.get();
+	}
+
+	/**
+	 * returns the number of objects of a user
+	 */
+	public int getCount(String user, String password) {
+		ConcurrentHashMap all = users;
+		if (all == null)
+			return 0;
+		UserPool up = (UserPool) all.get(new Credentials(user, password));
+		return (up == null) ? 0 : up.count.get();
+	}
+
+	/**
+	 * returns the number of users which have a sub-pool
+	 */
+	public int getUserCount() {
+		ConcurrentHashMap all = users;
+		return (all == null) ? 0 : all.size();
+	}
+
+	/**
+	 * returns the number of threads waiting for a free object
+	 */
+	public int getWaitingCount() {
+		return waiting.get();
+	}
+
+	/**
+	 * returns the current number of objects that are locked
+	 */
+	public int getLockedObjectCount() {
+		ConcurrentHashMap all = objects;
+		if (all == null)
+			return 0;
+		return Math.max(0, all.size() - freeCount.get());
+	}
+
+	/**
+	 * returns the current number of objects that are unlocked
+	 */
+	public int getUnlockedObjectCount() {
+		return (objects == null) ? 0 : freeCount.get();
+	}
+
+	/**
+	 * returns a snapshot of the checked out objects with their check out time
+	 */
+	public Hashtable getLockedObject() {
+		return snapshot(IN_USE);
+	}
+
+	/**
+	 * returns a snapshot of the free objects with their check in time
+	 */
+	public Hashtable getUnlockedPool() {
+		return snapshot(FREE);
+	}
+
+	public Hashtable getLockedPool() {
+		return snapshot(IN_USE);
+	}
+
+	/**
+	 * returns information from the pool
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("ConcurrentGenericPool:\n");
+		sb.append("     num of element =<" + getCount() + ">\n");
+		sb.append("     minSize =<" + getMinSize() + ">\n");
+		sb.append("     maxSize =<" + getMaxSize() + ">\n");
+		sb.append("     userMinSize =<" + getUserMinSize() + ">\n");
+		sb.append("     userMaxSize =<" + getUserMaxSize() + ">\n");
+		sb.append("     users =<" + getUserCount() + ">\n");
+		sb.append("     lifeTime =<" + getLifeTime() + ">\n");
+		sb.append("     ngeneration =<" + generation + ">\n");
+		sb.append("     maxLifeTime =<" + getMaxLifeTime() + ">\n");
+		sb.append("     getLockedObjectCount() =<" + getLockedObjectCount()
+				+ ">\n");
+		sb.append("     getUnlockedObjectCount() =<" + getUnlockedObjectCount()
+				+ ">\n");
+		sb.append("     getDeadLockMaxWait() =<" + getDeadLockMaxWait() + ">\n");
+		sb.append("     getDeadLockRetryWait() =<" + getDeadLockRetryWait()
+				+ ">\n");
+		return sb.toString();
+	}
+
+	private Hashtable snapshot(int state) {
+		Hashtable ret = new Hashtable();
+		ConcurrentHashMap all = objects;
+		if (all == null)
+			return ret;
+		for (Iterator it = all.values().iterator(); it.hasNext();) {
+			GenerationObject o = (GenerationObject) it.next();
+			if (o.state == state)
+				ret.put(o, new Long(o.lastTouched));
+		}
+		return ret;
+	}
+
+	private GenerationObject lookup(Object realObject) {
+		ConcurrentHashMap all = objects;
+		if (all == null || realObject == null)
+			return null;
+		return (GenerationObject) all.get(realObject);
+	}
+
+	private boolean isExpired(GenerationObject o, long now) {
+		return (now - o.lastTouched) > getLifeTime()
+				|| (o.retirement > 0 && now >= o.retirement);
+	}
+
+	/*
+	 * checking of the candidate object, levels 3 and 4 are done as 1 and 2
+	 */
+	private boolean verify(Object realObject) {
+		switch (getCheckLevelObject()) {
+		case 1:
+		case 3:
+			return checkObject(realObject);
+		case 2:
+		case 4:
+			return testObject(realObject);
+		default:
+			return true;
+		}
+	}
+
+	private boolean isBackgroundCreation() {
+		return executor != null && getSpareSize() > 0;
+	}
+
+	/*
+	 * an object used or verified within validationIdleTime is not verified
+	 * again
+	 */
+	private boolean needsVerify(GenerationObject o, long now) {
+		long idle = getValidationIdleTime();
+		return idle <= 0
+				|| (now - Math.max(o.lastTouched, o.lastVerified)) > idle;
+	}
+
+	private boolean reserveSlot() {
+		for (;;) {
+			int current = slots.get();
+			if (current >= getMaxSize())
+				return false;
+			if (slots.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	/*
+	 * reserves a slot in the pool and in the sub-pool of the user
+	 */
+	private boolean reserveSlot(UserPool up) {
+		int max = getUserMaxSize();
+		for (;;) {
+			int current = up.count.get();
+			if (max > 0 && current >= max)
+				return false;
+			if (up.count.compareAndSet(current, current + 1))
+				break;
+		}
+		if (reserveSlot())
+			return true;
+		up.count.decrementAndGet();
+		return false;
+	}
+
+	/*
+	 * gives back a slot which has not been used, the caller calls slotFreed
+	 * if needed. A null sub-pool means a slot reserved with reserveSlot()
+	 */
+	private void freeSlot(UserPool up) {
+		if (up != null)
+			up.count.decrementAndGet();
+		slots.decrementAndGet();
+	}
+
+	/*
+	 * returns the sub-pool of the user, created at the first call
+	 */
+	private UserPool userPool(String user, String password) {
+		UserPool up = lastUserPool;
+		if (up != null && same(up.user, user) && same(up.password, password))
+			return up;
+		Credentials key = new Credentials(user, password);
+		up = (UserPool) users.get(key);
+		if (up == null) {
+			UserPool created = new UserPool(user, password);
+			up = (UserPool) users.putIfAbsent(key, created);
+			if (up == null)
+				up = created;
+		}
+		lastUserPool = up;
+		return up;
+	}
+
+	/*
+	 * puts a new object in the pool. up is the sub-pool in which the slot
+	 * has been reserved, null if the slot has been reserved with
+	 * reserveSlot(): the object goes to the sub-pool of its user.
+	 */
+	private void register(GenerationObject o, UserPool up) {
+		if (up == null) {
+			up = userPool(o.getUser(), o.getPassword());
+			up.count.incrementAndGet();
+		}
+		o.pool = up;
+		if (o.lastTouched == 0)
+			o.lastTouched = System.currentTimeMillis();
+		long maxLife = getMaxLifeTime();
+		if (maxLife > 0) {
+			// retire the object at a random time in the last part of its
+			// life, the objects created together are not all renewed together
+			long spread = maxLife * MAXLIFETIME_SPREAD / 100;
+			o.retirement = o.getCreated() + maxLife
+					- (long) (random.nextDouble() * spread);
+		}
+		objects.put(o.getObj(), o);
+		ScheduledThreadPoolExecutor timers = executor;
+		if (timers != null) {
+			try {
+				if (getLifeTime() > 0)
+					timers.schedule(new IdleExpiry(o), getLifeTime(),
+							TimeUnit.MILLISECONDS);
+				if (o.retirement > 0)
+					timers.schedule(new Retirement(o), o.retirement
+							- System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped
+			}
+		}
+	}
+
+	private void unregister(GenerationObject o) {
+		ConcurrentHashMap all = objects;
+		Object realObject = o.getObj();
+		if (all != null && realObject != null && all.remove(realObject) != null)
+			freeSlot((UserPool) o.pool);
+		slotFreed(); // there is room for a new object.
+	}
+
+	/*
+	 * the object is owned by the caller, hand it to a waiting thread or put
+	 * it back in the free stack. Returns true if the object is free.
+	 */
+	private boolean release(GenerationObject o) {
+		UserPool up = (UserPool) o.pool;
+		if (!up.waiters.isEmpty() && handOff(o))
+			return false;
+		o.state = FREE;
+		freeCount.incrementAndGet();
+		up.free.push(o);
+		// a thread may have been queued before the object was pushed
+		if (!up.waiters.isEmpty())
+			dispatch(up);
+		return true;
+	}
+
+	/*
+	 * hand the object to the oldest waiting thread of the same user
+	 */
+	private boolean handOff(GenerationObject o) {
+		for (Iterator it = ((UserPool) o.pool).waiters.iterator(); it.hasNext();) {
+			Waiter w = (Waiter) it.next();
+			if (w.grant != null) {
+				it.remove(); // already served or cancelled
+			} else if (w.offer(o)) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * hand the free objects of a user to its waiting threads
+	 */
+	private void dispatch(UserPool up) {
+		GenerationObject o;
+		while (!up.waiters.isEmpty() && (o = up.free.pop()) != null) {
+			if (!STATE.compareAndSet(o, FREE, RESERVED))
+				continue;
+			freeCount.decrementAndGet();
+			if (!handOff(o)) {
+				o.state = FREE;
+				freeCount.incrementAndGet();
+				up.free.push(o);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * a slot is free, reserve it for the oldest waiting thread whose user
+	 * has less than userMaxSize objects
+	 */
+	private void slotFreed() {
+		if (waiters.isEmpty())
+			return;
+		for (Iterator it = waiters.iterator(); it.hasNext();) {
+			Waiter w = (Waiter) it.next();
+			if (w.grant != null) {
+				it.remove();
+				continue;
+			}
+			if (slots.get() >= getMaxSize())
+				return;
+			if (!reserveSlot(w.pool))
+				continue; // the user has userMaxSize objects
+			if (isBackgroundCreation()) {
+				createInBackground(w.pool);
+				return;
+			}
+			if (w.offer(SLOT)) {
+				it.remove();
+				return;
+			}
+			freeSlot(w.pool); // cancelled meanwhile
+		}
+	}
+
+	/*
+	 * the object is owned by the caller, remove it from the pool, killing is
+	 * done by the reaper on the executor
+	 */
+	private void remove(GenerationObject o) {
+		o.state = REMOVED;
+		forget(o);
+		unregister(o);
+		hitList.offer(o);
+		ScheduledThreadPoolExecutor killer = executor;
+		if (killer != null) {
+			try {
+				killer.execute(reaper);
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped
+			}
+		}
+	}
+
+	/*
+	 * Clears the reference of a removed object kept by the threads for
+	 * the threadAffinity, the object can then be collected once killed.
+	 */
+	private static void forget(GenerationObject o) {
+		WeakReference self = o.self;
+		if (self != null)
+			self.clear();
+	}
+
+	/**
+	 * Timer of an object, removes it when it has been free for lifeTime.
+	 * Otherwise it is scheduled again at the time the object can expire.
+	 */
+	private final class IdleExpiry implements Runnable {
+		private final GenerationObject o;
+
+		IdleExpiry(GenerationObject o) {
+			this.o = o;
+		}
+
+		public void run() {
+			ScheduledThreadPoolExecutor timers = executor;
+			if (o.state == REMOVED || timers == null)
+				return;
+			long now = System.currentTimeMillis();
+			long next;
+			if (o.state == FREE && isExpired(o, now)) {
+				if (STATE.compareAndSet(o, FREE, RESERVED)) {
+					log.debug("ConcurrentGenericPool:IdleExpiry an object has expired");
+					freeCount.decrementAndGet();
+					remove(o);
+					return;
+				}
+				next = now + getLifeTime();
+			} else if (o.state == FREE) {
+				next = o.lastTouched + getLifeTime() + 1;
+			} else {
+				// checked out, it can't expire before lifeTime after the
+				// check in
+				next = now + getLifeTime();
+			}
+			try {
+				timers.schedule(this, Math.max(1, next - now),
+						TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped
+			}
+		}
+	}
+
+	/**
+	 * Timer of an object, removes it at its retirement time (maxLifeTime)
+	 * and replaces it. A checked out object is removed when it is checked
+	 * in.
+	 */
+	private final class Retirement implements Runnable {
+		private final GenerationObject o;
+
+		Retirement(GenerationObject o) {
+			this.o = o;
+		}
+
+		public void run() {
+			if (STATE.compareAndSet(o, FREE, RESERVED)) {
+				log.debug("ConcurrentGenericPool:Retirement an object has reached maxLifeTime");
+				freeCount.decrementAndGet();
+				remove(o);
+				fillMinimum();
+				fillSpare();
+			}
+		}
+	}
+
+	private static boolean same(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * A thread, or an asynchronous check out, waiting for an object. The
+	 * first compare-and-set on grant wins: an object or a slot handed by an
+	 * other thread, or the cancellation by the waiting thread itself (or by
+	 * the timeout or the cancel of the check out).
+	 */
+	static final class Waiter {
+		private static final AtomicReferenceFieldUpdater GRANT = AtomicReferenceFieldUpdater
+				.newUpdater(Waiter.class, Object.class, "grant");
+
+		final Thread thread = Thread.currentThread();
+
+		final UserPool pool; // sub-pool of the user of the thread
+
+		// the check out served by the thread which hands the grant, null
+		// for a waiting thread
+		final AsyncCheckOut async;
+
+		volatile Object grant; // null while waiting
+
+		Waiter(UserPool pool) {
+			this(pool, null);
+		}
+
+		Waiter(UserPool pool, AsyncCheckOut async) {
+			this.pool = pool;
+			this.async = async;
+		}
+
+		boolean offer(Object o) {
+			if (GRANT.compareAndSet(this, null, o)) {
+				if (async == null)
+					LockSupport.unpark(thread);
+				else
+					async.granted(o);
+				return true;
+			}
+			return false;
+		}
+
+		boolean cancel() {
+			return GRANT.compareAndSet(this, null, CANCELLED);
+		}
+	}
+
+	/**
+	 * The objects of a user: its free objects, the number of its objects
+	 * and its waiting threads. A sub-pool is kept for each user which has
+	 * checked out an object.
+	 */
+	static final class UserPool {
+		final String user;
+
+		final String password;
+
+		final FreeStack free = new FreeStack(); // most recently used first
+
+		// number of objects of the user, reserved before the creation
+		final AtomicInteger count = new AtomicInteger();
+
+		// threads of the user waiting for an object, oldest first
+		final ConcurrentLinkedQueue waiters = new ConcurrentLinkedQueue();
+
+		UserPool(String user, String password) {
+			this.user = user;
+			this.password = password;
+		}
+	}
+
+	/**
+	 * Key of a sub-pool, the user and the password may be null
+	 */
+	static final class Credentials {
+		private final String user;
+
+		private final String password;
+
+		Credentials(String user, String password) {
+			this.user = user;
+			this.password = password;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Credentials))
+				return false;
+			Credentials other = (Credentials) obj;
+			return same(user, other.user) && same(password, other.password);
+		}
+
+		public int hashCode() {
+			return ((user == null) ? 0 : user.hashCode()) * 31
+					+ ((password == null) ? 0 : password.hashCode());
+		}
+	}
+
+	/**
+	 * Lock-free stack (Treiber) of the free objects. Entries are not removed
+	 * when an object leaves the FREE state by another way than pop, they are
+	 * skipped by pop and unlinked by purge. An object whose last entry is
+	 * still linked is not pushed again, so that an object taken and given
+	 * back by the same thread does not grow the stack. The last object
+	 * pushed is kept in a slot in front of the stack when the slot is
+	 * empty, so that a checkOut / checkIn cycle without contention does not
+	 * allocate a node.
+	 */
+	static final class FreeStack {
+		private final AtomicReference head = new AtomicReference();
+
+		// an object out of the stack, taken first by pop
+		private final AtomicReference slot = new AtomicReference();
+
+		/*
+		 * the state of the object must be FREE before the call
+		 */
+		void push(GenerationObject o) {
+			Object first = slot.get();
+			if (first == o)
+				return; // still in the slot
+			Node last = (Node) o.node;
+			if (last != null && last.linked)
+				return; // still in the stack
+			if (first == null && slot.compareAndSet(null, o))
+				return;
+			Node node = new Node(o);
+			o.node = node;
+			Node top;
+			do {
+				top = (Node) head.get();
+				node.next = top;
+			} while (!head.compareAndSet(top, node));
+		}
+
+		/*
+		 * the caller has to check the state of the returned object
+		 */
+		GenerationObject pop() {
+			Object o = slot.get();
+			if (o != null && slot.compareAndSet(o, null))
+				return (GenerationObject) o;
+			Node top;
+			do {
+				top = (Node) head.get();
+				if (top == null)
+					return null;
+			} while (!head.compareAndSet(top, top.next));
+			top.linked = false;
+			return top.item;
+		}
+
+		/*
+		 * unlink the entries of objects which are no more free, only the
+		 * clean up calls it; push and pop never change a next link
+		 */
+		void purge() {
+			GenerationObject o = (GenerationObject) slot.get();
+			if (o != null && o.state != FREE && slot.compareAndSet(o, null)) {
+				// check again, the object may have been released while it
+				// was seen in the slot
+				if (o.state == FREE)
+					push(o);
+			}
+			Node prev = (Node) head.get();
+			if (prev == null)
+				return;
+			Node cur = prev.next;
+			while (cur != null) {
+				if (cur.item.state != FREE) {
+					cur.linked = false;
+					// check again, the object may have been released while
+					// its entry was seen as linked
+					if (cur.item.state != FREE)
+						prev.next = cur.next;
+					else
+						prev = cur;
+				} else {
+					prev = cur;
+				}
+				cur = cur.next;
+			}
+		}
+
+		private static final class Node {
+			final GenerationObject item;
+
+			volatile Node next;
+
+			// false once popped or unlinked; a node still in the stack may
+			// be seen unlinked, never the opposite
+			volatile boolean linked = true;
+
+			Node(GenerationObject item) {
+				this.item = item;
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.util.Hashtable;
+
+/**
+ * Maximum number of connections the database accepts from the pools of
+ * this JVM, shared by the pools whose size is tuned (PoolSizeTuner). Each
+ * tuned pool holds its maxSize in the budget: a pool grows only with the
+ * connections left by the others. A pool joins with its current maxSize
+ * even if the budget is exceeded, the pools then shrink, within their
+ * bounds, until it is not.<p>
+ * The budgets are found by name, the pools of the same database use the
+ * same name.
+ */
+public class ConnectionBudget {
+	private static final Hashtable budgets = new Hashtable();
+
+	private final String name;
+
+	private int limit; // 0: no limit
+
+	private int used; // sum of the maxSize of the pools
+
+	private int pools;
+
+	/**
+	 * returns the budget of this name, created without limit
+	 */
+	public static ConnectionBudget getBudget(String name) {
+		synchronized (budgets) {
+			ConnectionBudget b = (ConnectionBudget) budgets.get(name);
+			if (b == null) {
+				b = new ConnectionBudget(name);
+				budgets.put(name, b);
+			}
+			return b;
+		}
+	}
+
+	private ConnectionBudget(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * sets the maximum number of connections of all the pools, 0 for no
+	 * limit
+	 */
+	public synchronized void setLimit(int limit) {
+		this.limit = Math.max(0, limit);
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * returns the sum of the maxSize of the pools
+	 */
+	public synchronized int getUsed() {
+		return used;
+	}
+
+	public synchronized int getPoolCount() {
+		return pools;
+	}
+
+	/**
+	 * returns the number of connections by which the budget is exceeded, 0
+	 * if it is not
+	 */
+	public synchronized int getExcess() {
+		return (limit > 0 && used > limit) ? used - limit : 0;
+	}
+
+	synchronized void join(int size) {
+		pools++;
+		used += size;
+	}
+
+	synchronized void leave(int size) {
+		pools--;
+		used -= size;
+	}
+
+	/**
+	 * takes up to n connections, returns the number taken
+	 */
+	synchronized int acquire(int n) {
+		if (limit > 0)
+			n = Math.max(0, Math.min(n, limit - used));
+		used += n;
+		return n;
+	}
+
+	synchronized void release(int n) {
+		used -= n;
+	}
+
+	public synchronized String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("ConnectionBudget:\n");
+		sb.append("     name=<" + name + ">\n");
+		sb.append("     limit=<" + limit + ">\n");
+		sb.append("     used=<" + used + "> pools=<" + pools + ">\n");
+		return sb.toString();
+	}
+}
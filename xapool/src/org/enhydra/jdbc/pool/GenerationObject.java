@@ -21,6 +21,8 @@
  */
 package org.enhydra.jdbc.pool;
 
+import java.lang.ref.WeakReference;
+
 /**
  * This class allows to store multiple things in the Generic 
  * Pool hashtable. In our first implementation, we store the
@@ -36,6 +38,23 @@ public class GenerationObject {
     String	user;
     String	password;
 
+    // state and last check in/out time, used by ConcurrentGenericPool
+    // which manages them with compare-and-set instead of the pool monitor
+    volatile int state;
+    volatile long lastTouched;
+    volatile long lastVerified;
+    volatile long checkOutTime; // System.nanoTime() at the check out (metrics)
+    // leak detection: where and by whom the object has been checked out
+    // (the stack is sampled), and whether it has already been reported
+    volatile Throwable checkOutStack;
+    volatile String checkOutThread;
+    volatile boolean leakReported;
+    int checkOuts; // number of check outs, to sample the stacks
+    long retirement; // time to remove the object (maxLifeTime), 0 : never
+    Object node; // last entry of the object in the free stack
+    Object pool; // sub-pool of the user of the object
+    WeakReference self; // reference kept by the threads (threadAffinity)
+
     // Save the creation time of this object.
     private final long  created = System.currentTimeMillis();
     
@@ -23,10 +23,22 @@ package org.enhydra.jdbc.pool;
 
 import java.util.Hashtable;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.enhydra.jdbc.core.JdbcThreadFactory;
+import org.enhydra.jdbc.util.Histogram;
 import org.enhydra.jdbc.util.Logger;
+import org.enhydra.jdbc.util.PoolMetrics;
 
 /**
  * GenericPool is the main class of the Pool. It works with any kind of object
@@ -49,7 +61,7 @@ public class GenericPool {
 
 	private int maxSize; // maximum size of the pool, if set to 0 : unlimited
 
-	private PoolHelper poolHelper; // object type
+	protected PoolHelper poolHelper; // object type
 
 	private int count; // count the number of object in the pool
 
@@ -62,7 +74,7 @@ public class GenericPool {
 	// time to wait before deadlock (return exception)
 	private long deadLockRetryWait; // time to wait before 2 try of loop
 
-	private Logger log;
+	protected Logger log;
 
 	/**
 	 * checking level object 0 = no special checking 1 = just a check on an
@@ -77,6 +89,81 @@ public class GenericPool {
 
 	private long sleepTime; // sleeptime for the pool keeper
 
+	private volatile int waiting; // number of threads waiting for a free object
+
+	// the threads wait for a free object on this condition rather than in
+	// the monitor of the pool, so that a waiting virtual thread does not
+	// pin its carrier thread. signals counts the wake ups (guarded by
+	// waitLock), a thread waits only if there was none since its last try
+	private final ReentrantLock waitLock = new ReentrantLock();
+
+	private final Condition available = waitLock.newCondition();
+
+	private long signals;
+
+	// asynchronous check outs waiting for a free object, oldest first
+	// (guarded by waitLock). They are served by the threads which check in
+	// and polled by asyncTimer, created by the first one which waits
+	private final LinkedList asyncWaiters = new LinkedList();
+
+	private ScheduledThreadPoolExecutor asyncTimer; // guarded by waitLock
+
+	// a thread gets back the object it has checked in last (if supported)
+	private boolean threadAffinity;
+
+	// number of free objects created in advance in background (if supported)
+	private int spareSize;
+
+	// maximum number of objects created at the same time in background
+	private int createConcurrency = DEFAULT_CREATECONCURRENCY;
+
+	// the minSize objects of the start are created by warmUpConcurrency
+	// threads, start returns once warmUpReadyPercent of them are created
+	private int warmUpConcurrency = DEFAULT_WARMUPCONCURRENCY;
+
+	private int warmUpReadyPercent = DEFAULT_WARMUPREADYPERCENT;
+
+	private volatile WarmUpFuture warmUp; // null until the pool starts
+
+	private volatile ThreadPoolExecutor warmUpExecutor; // while warming up
+
+	// a free object is verified only if it has not been used or verified
+	// for this time (if supported), 0 : verified at each check out
+	private long validationIdleTime;
+
+	// minimum and maximum number of objects of each user (if supported),
+	// 0 : no limit other than minSize and maxSize for all the users
+	private int userMinSize;
+
+	private int userMaxSize;
+
+	// leak detection: an object checked out for more than leakThreshold
+	// (milliseconds, 0 : disabled) is reported, and closed if leakReclaim.
+	// The stack of one check out out of leakSampleRate is recorded
+	private long leakThreshold;
+
+	private int leakSampleRate = DEFAULT_LEAKSAMPLERATE;
+
+	private boolean leakReclaim;
+
+	// sets minSize and maxSize from the metrics, null : fixed sizes
+	private PoolSizeTuner sizeTuner;
+
+	// wait, hold, create, validation and destroy times of the objects
+	protected final PoolMetrics metrics = new PoolMetrics() {
+		public int getActiveCount() {
+			return getLockedObjectCount();
+		}
+
+		public int getIdleCount() {
+			return getUnlockedObjectCount();
+		}
+
+		public int getPendingCount() {
+			return getWaitingCount();
+		}
+	};
+
 	/**
 	 * Generation number. When an error occurs, all objects of the same
 	 * generation or earlier are dropped.
@@ -105,6 +192,14 @@ public class GenericPool {
 
 	public static final int DEFAULT_DEADLOCKRETRYWAIT = 10000; // 10 seconds
 
+	public static final int DEFAULT_CREATECONCURRENCY = 2; // 2 threads
+
+	public static final int DEFAULT_WARMUPCONCURRENCY = 1; // one at a time
+
+	public static final int DEFAULT_WARMUPREADYPERCENT = 100;
+
+	public static final int DEFAULT_LEAKSAMPLERATE = 10; // 1 stack out of 10
+
 	/**
 	 * Creates an GenericPool with the default params.
 	 */
@@ -139,43 +234,138 @@ public class GenericPool {
 	/**
 	 * Start method, to initialize independant values of the pool
 	 */
-	public synchronized void start() {
-		locked = new Hashtable(); // create locked objects pool
-		unlocked = new Hashtable(); // create unlocked objects pool
-		hitList = new Vector();
-		count = 0; // 0 element to start
-		gc = false; // do not actions concerning garbage collector
-		long now = System.currentTimeMillis(); // current time
+	public void start() {
+		int n;
+		synchronized (this) {
+			locked = new Hashtable(); // create locked objects pool
+			unlocked = new Hashtable(); // create unlocked objects pool
+			hitList = new Vector();
+			gc = false; // do not actions concerning garbage collector
+			// the minSize objects of the warm up are counted in advance
+			n = minSize;
+			count = n;
+
+			// keeper removes dead or useless objects
+			if (threadFactory != null) {
+				try {
+					this.poolKeeper = new PoolKeeper(sleepTime, this);
+					this.keeper = threadFactory.getThread(poolKeeper);
+				} catch (Exception e) {
+					throw new IllegalStateException(e.getMessage());
+				}
+			} else {
+				// keep a handle to the poolkeeper so we can destroy it later
+				this.poolKeeper = new PoolKeeper(sleepTime, this);
+				this.keeper = new Thread(poolKeeper);
 
-		// to obtain to the beginning minSize objects in the pool
-		for (int i = 0; i < minSize; i++) { // count have to be equal to minSize
-			try {
-				GenerationObject genObject = poolHelper.create();
-				unlocked.put(genObject, new Long(now));
-				// put it in the unlocked pool
-			} catch (Exception e) {
-				log.error("Error Exception in GenericPool:start " + e);
 			}
-			++count; // there is one more element in the pool
+			keeper.start();
+			// start the thread to verify element in the pool(unlocked)
 		}
+		// outside the monitor, the pool serves the objects already created
+		warmUp(n);
+		log.debug("GenericPool:start pool started");
+	}
 
-		// keeper removes dead or useless objects
-		if (threadFactory != null) {
+	/*
+	 * creates the n objects counted by start, warmUpConcurrency at a time,
+	 * and returns once warmUpReadyPercent of them are in the pool. The
+	 * others are created in background.
+	 */
+	void warmUp(int n) {
+		final WarmUpFuture f = new WarmUpFuture(n,
+				(n * warmUpReadyPercent + 99) / 100);
+		warmUp = f;
+		Runnable create = new Runnable() {
+			public void run() {
+				try {
+					GenerationObject genObject = newObject();
+					if (addWarmUpObject(genObject))
+						f.created();
+					else
+						f.failed(new Exception("GenericPool:warmUp the pool is stopped"));
+				} catch (Exception e) {
+					cancelWarmUpObject();
+					log.error("Error Exception in GenericPool:start " + e);
+					f.failed(e);
+				}
+			}
+		};
+		int threads = Math.min(n, warmUpConcurrency);
+		if (threads <= 1 && f.getReadyCount() == n) {
+			// one at a time by the caller
+			for (int i = 0; i < n; i++)
+				create.run();
+		} else if (n > 0) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1,
+					threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue(), new PoolThreadFactory(
+							threadFactory));
+			warmUpExecutor = executor;
+			for (int i = 0; i < n; i++)
+				executor.execute(create);
+			executor.shutdown(); // the threads end with the warm up
 			try {
-				this.poolKeeper = new PoolKeeper(sleepTime, this);
-				this.keeper = threadFactory.getThread(poolKeeper);
-			} catch (Exception e) {
-				throw new IllegalStateException(e.getMessage());
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				log.error("GenericPool:start " + e.getMessage());
 			}
-		} else {
-			// keep a handle to the poolkeeper so we can destroy it later
-			this.poolKeeper = new PoolKeeper(sleepTime, this);
-			this.keeper = new Thread(poolKeeper);
+		}
+		if (log.isInfoEnabled())
+			log.info("GenericPool:start ready with " + f.getCreatedCount()
+					+ " objects out of " + n + " in " + f.getReadyTime() + " ms");
+	}
 
+	/*
+	 * puts an object created by the warm up in the pool, returns false if
+	 * the pool has been stopped
+	 */
+	boolean addWarmUpObject(GenerationObject genObject) {
+		synchronized (this) {
+			if (unlocked == null)
+				return false;
+			unlocked.put(genObject, new Long(System.currentTimeMillis()));
+			signalWaiters();
 		}
-		keeper.start();
-		// start the thread to verify element in the pool(unlocked)
-		log.debug("GenericPool:start pool started");
+		serveAsync();
+		return true;
+	}
+
+	/*
+	 * the creation of an object of the warm up failed, there is room for a
+	 * new object
+	 */
+	void cancelWarmUpObject() {
+		synchronized (this) {
+			if (count > 0) // not reset by stop
+				--count;
+			signalWaiters();
+		}
+	}
+
+	/*
+	 * the objects of the warm up which are not created yet are abandoned
+	 */
+	void stopWarmUp() {
+		ThreadPoolExecutor executor = warmUpExecutor;
+		if (executor == null)
+			return;
+		warmUpExecutor = null;
+		List abandoned = executor.shutdownNow();
+		for (int i = 0; i < abandoned.size(); i++) {
+			cancelWarmUpObject();
+			warmUp.failed(new Exception("GenericPool:warmUp the pool is stopped"));
+		}
+	}
+
+	/**
+	 * returns the readiness of the objects created by the start of the pool,
+	 * null if the pool is not started
+	 */
+	public WarmUpFuture getWarmUp() {
+		return warmUp;
 	}
 
 	/*
@@ -235,11 +425,10 @@ public class GenericPool {
 						log.debug("GenericPool:getFromPool owner is verified");
 						// second, verification of the object if needed
 						if ((checkLevelObject == 0)
-								|| ((checkLevelObject == 1) && poolHelper
-										.checkThisObject(realObject))
-								|| ((checkLevelObject == 2) && poolHelper
-										.testThisObject(realObject))) {
+								|| ((checkLevelObject == 1) && checkObject(realObject))
+								|| ((checkLevelObject == 2) && testObject(realObject))) {
 
+							traceCheckOut(o);
 							locked.put(o, new Long(now));
 							// put it in the locked pool
 							log
@@ -273,9 +462,10 @@ public class GenericPool {
 					.debug("GenericPool:getFromPool no objects available, create a new one");
 			try {
 			    //			System.out.println("on doit creer une connection CREATE");
-				GenerationObject genObject = poolHelper.create(user, password);
+				GenerationObject genObject = newObject(user, password);
 				//			System.out.println("nouvel objet="+genObject.getObj());
 				//			System.out.println("on doit creer une connection PUT");
+				traceCheckOut(genObject);
 				locked.put(genObject, new Long(now));
 				// put it in the locked pool
 				return (genObject.getObj()); // and return this element
@@ -300,6 +490,41 @@ public class GenericPool {
 				&& equals(password, genObject.getPassword());
 	}
 
+	/**
+	 * copy the configuration of this pool to an other (not started) pool,
+	 * used when the pool engine of a data source is switched
+	 */
+	void copySettingsTo(GenericPool pool) {
+		pool.lifeTime = lifeTime;
+		pool.maxLifeTime = maxLifeTime;
+		pool.minSize = minSize;
+		pool.maxSize = maxSize;
+		pool.sleepTime = sleepTime;
+		pool.gc = gc;
+		pool.debug = debug;
+		pool.checkLevelObject = checkLevelObject;
+		pool.deadLockMaxWait = deadLockMaxWait;
+		pool.deadLockRetryWait = deadLockRetryWait;
+		pool.generation = generation;
+		pool.threadAffinity = threadAffinity;
+		pool.spareSize = spareSize;
+		pool.createConcurrency = createConcurrency;
+		pool.warmUpConcurrency = warmUpConcurrency;
+		pool.warmUpReadyPercent = warmUpReadyPercent;
+		pool.validationIdleTime = validationIdleTime;
+		pool.userMinSize = userMinSize;
+		pool.userMaxSize = userMaxSize;
+		pool.leakThreshold = leakThreshold;
+		pool.leakSampleRate = leakSampleRate;
+		pool.leakReclaim = leakReclaim;
+		metrics.copyListenersTo(pool.metrics);
+		pool.sizeTuner = sizeTuner;
+		if (sizeTuner != null)
+			sizeTuner.pool = pool;
+		pool.threadFactory = threadFactory;
+		pool.log = log;
+	}
+
 	JdbcThreadFactory getThreadFactory() {
 		return threadFactory;
 	}
@@ -317,21 +542,34 @@ public class GenericPool {
 	}
 
 	/**
-	 * return pooled object
+	 * return pooled object, waiting at most deadLockMaxWait if the pool is
+	 * exhausted
 	 */
 	public Object checkOut(String user, String password) throws Exception {
+		return checkOut(user, password, getDeadLockMaxWait() * 1000000L);
+	}
+
+	/**
+	 * return pooled object
+	 * @param timeout maximum time to wait if the pool is exhausted (in
+	 * nanoseconds)
+	 */
+	public Object checkOut(String user, String password, long timeout)
+			throws Exception {
 		log.debug("GenericPool:checkOut an object");
 		long now = System.currentTimeMillis(); // current time to compare
 		GenerationObject o;
 		Enumeration e;
 		Object realObject;
-		log.debug("GenericPool:checkOut UnlockedObjectCount="
-				+ getUnlockedObjectCount());
-		log.debug("GenericPool:checkOut LockedObjectCount="
-				+ getLockedObjectCount());
-		log
-				.debug("GenericPool:checkOut count=" + count + " maxSize="
-						+ maxSize);
+		if (log.isDebugEnabled()) {
+			log.debug("GenericPool:checkOut UnlockedObjectCount="
+					+ getUnlockedObjectCount());
+			log.debug("GenericPool:checkOut LockedObjectCount="
+					+ getLockedObjectCount());
+			log
+					.debug("GenericPool:checkOut count=" + count + " maxSize="
+							+ maxSize);
+		}
 
 		if (getUnlockedObjectCount() > 0) {
 			// if there are objects in the unlocked pool
@@ -361,13 +599,12 @@ public class GenericPool {
 						log
 								.debug("GenericPool:checkOut check the owner of the connection");
 						if (checkOwner(o, user, password)) {
-							if (((checkLevelObject == 3) && !poolHelper
-									.checkThisObject(realObject))
-									|| ((checkLevelObject == 4) && !poolHelper
-											.testThisObject(realObject))) {
-								log
-										.debug("GenericPool:checkOut remove object checkLevelObject="
-												+ checkLevelObject);
+							if (((checkLevelObject == 3) && !checkObject(realObject))
+									|| ((checkLevelObject == 4) && !testObject(realObject))) {
+								if (log.isDebugEnabled())
+									log
+											.debug("GenericPool:checkOut remove object checkLevelObject="
+													+ checkLevelObject);
 								removeUnlockedObject(o);
 								// minimumObject(user, password);
 								// build object in the pool if it is lesser than
@@ -380,40 +617,285 @@ public class GenericPool {
 
 		}
 
-		int currentWait = 0;
-
+		long seen = getSignals();
 		Object obj = getFromPool(user, password);
-		while ((obj == null) && (currentWait < getDeadLockMaxWait())) {
-			log.info("GenericPool:checkOut waiting for an object :"
-					+ this.poolHelper.toString());
-			try {
-				synchronized (this) {
-					wait(getDeadLockRetryWait());
+		long waited = 0;
+		if (obj == null) {
+			// the objects may be held by threads which never give them back
+			checkLeaks();
+			long start = System.nanoTime();
+			long remaining = timeout;
+			while ((obj == null) && (remaining > 0)) {
+				if (log.isInfoEnabled())
+					log.info("GenericPool:checkOut waiting for an object :"
+							+ this.poolHelper.toString());
+				try {
+					awaitSignal(seen, Math.max(1, Math.min(
+							getDeadLockRetryWait(), remaining / 1000000L)));
+				} catch (InterruptedException excp) {
+					log
+							.error("GenericPool:checkOut ERROR Failed while waiting for an object: "
+									+ excp);
 				}
-			} catch (InterruptedException excp) {
-				log
-						.error("GenericPool:checkOut ERROR Failed while waiting for an object: "
-								+ excp);
+				seen = getSignals();
+				obj = getFromPool(user, password);
+				remaining = timeout - (System.nanoTime() - start);
 			}
-			currentWait += getDeadLockRetryWait();
-			obj = getFromPool(user, password);
+			waited = System.nanoTime() - start;
 		}
 
-		if (obj == null)
+		if (obj == null) {
+			metrics.timedOut(waited);
 			throw new Exception(
 					"GenericPool:checkOut ERROR  impossible to obtain a new object from the pool");
+		}
 
+		metrics.checkedOut(waited);
 		return obj;
 	}
 
+	private long getSignals() {
+		waitLock.lock();
+		try {
+			return signals;
+		} finally {
+			waitLock.unlock();
+		}
+	}
+
+	/*
+	 * waits at most timeout ms for a wake up after the seen one
+	 */
+	private void awaitSignal(long seen, long timeout)
+			throws InterruptedException {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		waitLock.lock();
+		try {
+			++waiting;
+			try {
+				while (signals == seen && nanos > 0)
+					nanos = available.awaitNanos(nanos);
+			} finally {
+				--waiting;
+			}
+		} finally {
+			waitLock.unlock();
+		}
+	}
+
+	/**
+	 * wakes up the threads waiting for a free object, an object has been
+	 * checked in or there is room for a new one
+	 */
+	protected void signalWaiters() {
+		waitLock.lock();
+		try {
+			++signals;
+			available.signalAll();
+		} finally {
+			waitLock.unlock();
+		}
+	}
+
+	/**
+	 * return pooled object without blocking, waiting at most
+	 * deadLockMaxWait if the pool is exhausted
+	 */
+	public CheckOutFuture checkOutAsync(String user, String password) {
+		return checkOutAsync(user, password, getDeadLockMaxWait() * 1000000L);
+	}
+
+	/**
+	 * return pooled object without blocking. If the pool is exhausted the
+	 * check out is queued and completed by a thread which checks an object
+	 * in; it fails after timeout.
+	 * @param timeout maximum time to wait if the pool is exhausted (in
+	 * nanoseconds)
+	 */
+	public CheckOutFuture checkOutAsync(String user, String password,
+			long timeout) {
+		log.debug("GenericPool:checkOutAsync an object");
+		AsyncCheckOut w = new AsyncCheckOut(user, password, timeout);
+		Object obj;
+		try {
+			obj = getFromPool(user, password);
+		} catch (Exception e) {
+			w.fail(e);
+			return w;
+		}
+		if (obj != null) {
+			metrics.checkedOut(0);
+			w.complete(obj);
+		} else if (timeout <= 0) {
+			metrics.timedOut(0);
+			w.fail(new Exception(
+					"GenericPool:checkOutAsync ERROR  impossible to obtain a new object from the pool"));
+		} else {
+			if (log.isInfoEnabled())
+				log.info("GenericPool:checkOutAsync waiting for an object :"
+						+ this.poolHelper.toString());
+			// the objects may be held by threads which never give them back
+			checkLeaks();
+			waitLock.lock();
+			try {
+				asyncWaiters.addLast(w);
+				++waiting;
+			} finally {
+				waitLock.unlock();
+			}
+			// an object may have been checked in before it was queued
+			serveAsync();
+			w.schedule();
+		}
+		return w;
+	}
+
+	/*
+	 * hands the free objects to the asynchronous check outs, oldest first,
+	 * on the calling thread, until one of them gets nothing
+	 */
+	private void serveAsync() {
+		for (;;) {
+			AsyncCheckOut w;
+			waitLock.lock();
+			try {
+				if (asyncWaiters.isEmpty())
+					return;
+				w = (AsyncCheckOut) asyncWaiters.getFirst();
+			} finally {
+				waitLock.unlock();
+			}
+			if (!w.serve())
+				return;
+		}
+	}
+
+	/*
+	 * fails the asynchronous check outs which are still queued, the pool is
+	 * stopped
+	 */
+	private void stopAsync() {
+		AsyncCheckOut[] all;
+		waitLock.lock();
+		try {
+			all = (AsyncCheckOut[]) asyncWaiters
+					.toArray(new AsyncCheckOut[asyncWaiters.size()]);
+			if (asyncTimer != null) {
+				asyncTimer.shutdownNow();
+				asyncTimer = null;
+			}
+		} finally {
+			waitLock.unlock();
+		}
+		for (int i = 0; i < all.length; i++) {
+			if (all[i].abandon())
+				all[i].fail(new Exception(
+						"GenericPool:checkOutAsync ERROR the pool is stopped"));
+		}
+	}
+
+	/**
+	 * An asynchronous check out waiting for a free object. It is polled
+	 * every deadLockRetryWait by the timer of the pool, as a waiting thread
+	 * would do, and fails at its deadline.
+	 */
+	private final class AsyncCheckOut extends CheckOutFuture implements
+			Runnable {
+		private final String user;
+
+		private final String password;
+
+		private final long start = System.nanoTime();
+
+		private final long deadline;
+
+		AsyncCheckOut(String user, String password, long timeout) {
+			this.user = user;
+			this.password = password;
+			this.deadline = start + timeout;
+		}
+
+		boolean abandon() {
+			waitLock.lock();
+			try {
+				if (!asyncWaiters.remove(this))
+					return false;
+				--waiting;
+				return true;
+			} finally {
+				waitLock.unlock();
+			}
+		}
+
+		/*
+		 * tries to take an object for this check out, returns false if
+		 * the pool has none for it
+		 */
+		boolean serve() {
+			Object obj;
+			try {
+				obj = getFromPool(user, password);
+			} catch (Exception e) {
+				if (abandon())
+					fail(e);
+				return true;
+			}
+			if (obj == null)
+				return false;
+			if (abandon()) {
+				metrics.checkedOut(System.nanoTime() - start);
+				complete(obj);
+			} else {
+				checkIn(obj); // served or cancelled meanwhile
+			}
+			return true;
+		}
+
+		void schedule() {
+			long remaining = deadline - System.nanoTime();
+			long poll = getDeadLockRetryWait() * 1000000L;
+			waitLock.lock();
+			try {
+				if (isDone())
+					return;
+				if (asyncTimer == null) {
+					asyncTimer = new ScheduledThreadPoolExecutor(1,
+							new PoolThreadFactory(getThreadFactory()));
+				}
+				asyncTimer.schedule(this, Math.max(1,
+						(poll > 0 && poll < remaining) ? poll : remaining),
+						TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				// the pool is stopped, stopAsync fails the check out
+			} finally {
+				waitLock.unlock();
+			}
+		}
+
+		public void run() {
+			if (isDone())
+				return;
+			if (deadline - System.nanoTime() <= 0) {
+				if (abandon()) {
+					metrics.timedOut(System.nanoTime() - start);
+					fail(new Exception(
+							"GenericPool:checkOutAsync ERROR  impossible to obtain a new object from the pool"));
+				}
+			} else if (!serve()) {
+				schedule();
+			}
+		}
+	}
+
 	synchronized public void minimumObject() {
 		minimumObject(null, null);
 	}
 
 	synchronized public void minimumObject(String user, String password) {
-		log
-				.debug("GenericPool:minimumObject create object if there are less than minSize objects in the pool count ="
-						+ count);
+		if (log.isDebugEnabled())
+			log
+					.debug("GenericPool:minimumObject create object if there are less than minSize objects in the pool count ="
+							+ count);
 		if ((count < minSize) && (unlocked != null)) { // if pool has less than
 			// minSize elements
 			long now = System.currentTimeMillis(); // current time
@@ -423,9 +905,9 @@ public class GenericPool {
 				try {
 					GenerationObject genObject;
 					if ((user != null) && (password != null))
-						genObject = poolHelper.create();
+						genObject = newObject();
 					else
-						genObject = poolHelper.create(user, password);
+						genObject = newObject(user, password);
 					unlocked.put(genObject, new Long(now));
 					// put it in the unlocked pool
 				} catch (Exception e) {
@@ -433,18 +915,28 @@ public class GenericPool {
 							.error("GenericPool:minimumObject Error Exception in GenericPool:minimumObject");
 				}
 			}
-			log.debug("GenericPool:minimumObject count=" + count + " Unlocked="
-					+ this.getUnlockedObjectCount() + " locked="
-					+ this.getLockedObjectCount());
+			if (log.isDebugEnabled())
+				log.debug("GenericPool:minimumObject count=" + count + " Unlocked="
+						+ this.getUnlockedObjectCount() + " locked="
+						+ this.getLockedObjectCount());
 
 			count = minSize; // pool has now minSize element
 		}
 	}
 
 	/**
+	 * remove object from locked pool, then hand the free objects to the
+	 * asynchronous check outs
+	 */
+	public void checkIn(Object o) {
+		putBack(o);
+		serveAsync();
+	}
+
+	/*
 	 * remove object from locked pool
 	 */
-	public synchronized void checkIn(Object o) {
+	private synchronized void putBack(Object o) {
 		log.debug("GenericPool:checkIn return an object to the pool");
 
 		for (Enumeration enumeration = locked.keys(); enumeration.hasMoreElements();) { // for
@@ -457,6 +949,7 @@ public class GenericPool {
 			if (obj.getObj().equals(o)) {
 				locked.remove(obj); // remove the object from the locked pool
 				unlocked.put(obj, new Long(System.currentTimeMillis()));
+				metrics.checkedIn(System.nanoTime() - obj.checkOutTime);
 
 				// we have to verify if the generation of the object is still
 				// valid
@@ -465,12 +958,12 @@ public class GenericPool {
 				// if the generation number of the object is not valid, test the
 				// object
 				if (generation > genObj) {
-					if (!poolHelper.checkThisObject(obj.getObj()))
+					if (!checkObject(obj.getObj()))
 						// if the object is not valid
 						removeUnlockedObject(obj);
 
 				}
-				notifyAll();
+				signalWaiters();
 			}
 		}
 
@@ -503,7 +996,7 @@ public class GenericPool {
 
 	synchronized public void removeUnlockedObject(GenerationObject obj) {
 		--count;
-		notifyAll(); // there is room for new connections.
+		signalWaiters(); // there is room for new connections.
 		unlocked.remove(obj);
 		hitList.add(obj); // killing is done by the keeper thread.
 	}
@@ -589,6 +1082,15 @@ public class GenericPool {
 		this.gc = gc;
 	}
 
+	/**
+	 * a thread which checks out an object gets back the object it has
+	 * checked in last, if it is still free. Only ConcurrentGenericPool
+	 * supports it, GenericPool ignores this setting.
+	 */
+	public void setThreadAffinity(boolean threadAffinity) {
+		this.threadAffinity = threadAffinity;
+	}
+
 	/**
 	 * level are accepted between 0 and 4
 	 */
@@ -621,6 +1123,171 @@ public class GenericPool {
 		return gc;
 	}
 
+	public boolean isThreadAffinity() {
+		return threadAffinity;
+	}
+
+	/**
+	 * set the number of free objects to create in advance, in background.
+	 * When it is set, a thread which finds no free object waits for an
+	 * object created in background. Only ConcurrentGenericPool supports it,
+	 * the value is read when the pool starts
+	 */
+	public void setSpareSize(int spareSize) {
+		this.spareSize = spareSize;
+	}
+
+	public int getSpareSize() {
+		return spareSize;
+	}
+
+	/**
+	 * set the maximum number of objects created at the same time in
+	 * background, the value is read when the pool starts
+	 */
+	public void setCreateConcurrency(int createConcurrency) {
+		this.createConcurrency = createConcurrency;
+	}
+
+	public int getCreateConcurrency() {
+		return createConcurrency;
+	}
+
+	/**
+	 * set the number of threads which create the minSize objects when the
+	 * pool starts, 1 (default) creates them one at a time in the thread
+	 * which starts the pool
+	 */
+	public void setWarmUpConcurrency(int warmUpConcurrency) {
+		this.warmUpConcurrency = warmUpConcurrency;
+	}
+
+	public int getWarmUpConcurrency() {
+		return warmUpConcurrency;
+	}
+
+	/**
+	 * set the percentage of the minSize objects which must be created for
+	 * start to return, the others are created in background. 100 (default)
+	 * waits for all of them, 0 for none: see getWarmUp to know when the
+	 * pool is ready
+	 */
+	public void setWarmUpReadyPercent(int warmUpReadyPercent) {
+		this.warmUpReadyPercent = Math.max(0, Math.min(100, warmUpReadyPercent));
+	}
+
+	public int getWarmUpReadyPercent() {
+		return warmUpReadyPercent;
+	}
+
+	/**
+	 * set the time after which a free object which has not been used is
+	 * verified again (checking levels 1 to 4), in background and at check
+	 * out. 0 to verify objects at each check out. Only ConcurrentGenericPool
+	 * supports it, the value is read when the pool starts
+	 */
+	public void setValidationIdleTime(long validationIdleTime) {
+		this.validationIdleTime = validationIdleTime;
+	}
+
+	public long getValidationIdleTime() {
+		return validationIdleTime;
+	}
+
+	/**
+	 * set the minimum number of objects kept for each user which has
+	 * checked out an object, within maxSize. Only ConcurrentGenericPool
+	 * supports it
+	 */
+	public void setUserMinSize(int userMinSize) {
+		this.userMinSize = userMinSize;
+	}
+
+	public int getUserMinSize() {
+		return userMinSize;
+	}
+
+	/**
+	 * set the maximum number of objects of a user, maxSize stays the
+	 * maximum for all the users. 0 : a user may have maxSize objects. Only
+	 * ConcurrentGenericPool supports it
+	 */
+	public void setUserMaxSize(int userMaxSize) {
+		this.userMaxSize = userMaxSize;
+	}
+
+	public int getUserMaxSize() {
+		return userMaxSize;
+	}
+
+	/**
+	 * set the time after which a checked out object is reported as a
+	 * suspected leak (logged with the stack of its check out, and given to
+	 * PoolListener.leakSuspected). The objects are checked by the clean up,
+	 * every sleepTime (or more often, see ConcurrentGenericPool), and when
+	 * a thread finds the pool exhausted
+	 * @param leakThreshold in milliseconds, 0 to disable the leak detection
+	 */
+	public void setLeakThreshold(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+	}
+
+	public long getLeakThreshold() {
+		return leakThreshold;
+	}
+
+	/**
+	 * set the sampling of the stacks recorded at check out for the leak
+	 * detection: the stack of one check out out of leakSampleRate of each
+	 * object is recorded. 1 records every stack, 0 records none
+	 */
+	public void setLeakSampleRate(int leakSampleRate) {
+		this.leakSampleRate = leakSampleRate;
+	}
+
+	public int getLeakSampleRate() {
+		return leakSampleRate;
+	}
+
+	/**
+	 * set whether the objects suspected of leak are taken back from their
+	 * user and closed, to make room in the pool. The user gets an error the
+	 * next time it uses the object
+	 */
+	public void setLeakReclaim(boolean leakReclaim) {
+		this.leakReclaim = leakReclaim;
+	}
+
+	public boolean isLeakReclaim() {
+		return leakReclaim;
+	}
+
+	/**
+	 * set whether minSize and maxSize follow the wait and the use measured
+	 * by the metrics of the pool, see PoolSizeTuner
+	 */
+	public synchronized void setAutoTune(boolean autoTune) {
+		if (autoTune && sizeTuner == null) {
+			sizeTuner = new PoolSizeTuner(this);
+			metrics.addListener(sizeTuner);
+		} else if (!autoTune && sizeTuner != null) {
+			metrics.removeListener(sizeTuner);
+			sizeTuner.stop();
+			sizeTuner = null;
+		}
+	}
+
+	public synchronized boolean isAutoTune() {
+		return sizeTuner != null;
+	}
+
+	/**
+	 * returns the tuner of the sizes of the pool, null if not auto tuned
+	 */
+	public synchronized PoolSizeTuner getSizeTuner() {
+		return sizeTuner;
+	}
+
 	public int getCount() {
 		return count;
 	}
@@ -642,6 +1309,8 @@ public class GenericPool {
 	 */
 	public void stop() {
 		log.debug("GenericPool:stop start to stop the pool");
+		stopWarmUp();
+		stopAsync();
 		if ((getLockedObjectCount() != 0) || (getUnlockedObjectCount() != 0)) {
 			expireAll(); // try to kill all the objects in the 2 pools
 			if (poolKeeper != null)
@@ -680,6 +1349,175 @@ public class GenericPool {
 		return this.deadLockMaxWait;
 	}
 
+	/**
+	 * returns the number of threads waiting for a free object
+	 */
+	public int getWaitingCount() {
+		return waiting;
+	}
+
+	/**
+	 * returns the histogram of the time spent in checkOut (in nanoseconds)
+	 * by the threads which found the pool exhausted
+	 */
+	public Histogram getWaitTimeHistogram() {
+		return metrics.getWaitTime();
+	}
+
+	/**
+	 * returns the number of checkOut which failed after waiting
+	 */
+	public long getTimeoutCount() {
+		return metrics.getTimeoutCount();
+	}
+
+	/**
+	 * returns the metrics of the pool, which can be registered as a MBean
+	 */
+	public PoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * creates an object of the default user, timed for the metrics
+	 */
+	protected GenerationObject newObject() throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			GenerationObject o = poolHelper.create();
+			success = true;
+			return o;
+		} finally {
+			metrics.created(System.nanoTime() - start, success);
+		}
+	}
+
+	/**
+	 * creates an object of the user, timed for the metrics
+	 */
+	protected GenerationObject newObject(String user, String password)
+			throws Exception {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			GenerationObject o = poolHelper.create(user, password);
+			success = true;
+			return o;
+		} finally {
+			metrics.created(System.nanoTime() - start, success);
+		}
+	}
+
+	/**
+	 * checkThisObject of the helper, timed for the metrics
+	 */
+	protected boolean checkObject(Object realObject) {
+		long start = System.nanoTime();
+		boolean valid = poolHelper.checkThisObject(realObject);
+		metrics.validated(System.nanoTime() - start, valid);
+		return valid;
+	}
+
+	/**
+	 * testThisObject of the helper, timed for the metrics
+	 */
+	protected boolean testObject(Object realObject) {
+		long start = System.nanoTime();
+		boolean valid = poolHelper.testThisObject(realObject);
+		metrics.validated(System.nanoTime() - start, valid);
+		return valid;
+	}
+
+	/**
+	 * records the time of the check out of an object, its thread, and its
+	 * stack if it is sampled for the leak detection. Called by the thread
+	 * which checks out the object
+	 */
+	protected void traceCheckOut(GenerationObject o) {
+		if (leakThreshold > 0) {
+			o.leakReported = false;
+			o.checkOutThread = Thread.currentThread().getName();
+			if (leakSampleRate > 0 && (o.checkOuts++ % leakSampleRate) == 0)
+				o.checkOutStack = new Exception("checked out by thread "
+						+ o.checkOutThread);
+			else
+				o.checkOutStack = null;
+		}
+		o.checkOutTime = System.nanoTime();
+	}
+
+	/**
+	 * returns true if the checked out object has been held for more than
+	 * leakThreshold
+	 */
+	protected boolean isLeaked(GenerationObject o, long now) {
+		long time = o.checkOutTime;
+		return leakThreshold > 0 && time != 0
+				&& (now - time) > leakThreshold * 1000000L;
+	}
+
+	/**
+	 * reports a suspected leak once for each check out
+	 */
+	protected void reportLeak(GenerationObject o, long now) {
+		if (o.leakReported)
+			return;
+		o.leakReported = true;
+		long hold = now - o.checkOutTime;
+		String msg = "GenericPool:checkLeaks an object has been checked out for "
+				+ (hold / 1000000L) + " ms by thread " + o.checkOutThread
+				+ (leakReclaim ? ", reclaimed" : "");
+		Throwable stack = o.checkOutStack;
+		if (stack != null)
+			log.warn(msg, stack);
+		else
+			log.warn(msg + " (stack not sampled)");
+		metrics.leakSuspected(o.getObj(), hold);
+	}
+
+	/**
+	 * reports the objects checked out for more than leakThreshold, and
+	 * closes them if leakReclaim is set
+	 */
+	protected void checkLeaks() {
+		if (leakThreshold <= 0)
+			return;
+		long now = System.nanoTime();
+		Vector reclaimed = new Vector();
+		synchronized (this) {
+			if (locked == null) // During shutdown
+				return;
+			for (Enumeration e = locked.keys(); e.hasMoreElements();) {
+				GenerationObject o = (GenerationObject) e.nextElement();
+				if (isLeaked(o, now)) {
+					reportLeak(o, now);
+					if (leakReclaim)
+						reclaimed.add(o);
+				}
+			}
+			for (int i = 0; i < reclaimed.size(); i++) {
+				locked.remove(reclaimed.get(i));
+				--count;
+			}
+			if (!reclaimed.isEmpty())
+				signalWaiters(); // there is room for new objects.
+		}
+		// closing may take a while, lets do it outside synchronization.
+		for (int i = 0; i < reclaimed.size(); i++)
+			destroy((GenerationObject) reclaimed.get(i));
+	}
+
+	/**
+	 * expires an object with the helper and kills it, timed for the metrics
+	 */
+	protected void destroy(GenerationObject o) {
+		long start = System.nanoTime();
+		poolHelper.expire(o.getObj());
+		o.killObject();
+		metrics.destroyed(System.nanoTime() - start);
+	}
+
 	public long getDeadLockRetryWait() {
 		return this.deadLockRetryWait;
 	}
@@ -757,6 +1595,8 @@ public class GenericPool {
 			}
 		}
 
+		checkLeaks();
+
 		// Kill every object in the hit list. We do this outside synchronization
 		// in case it takes too long. Note that hitList only grows so this is
 		// a safe way to do this.
@@ -764,8 +1604,7 @@ public class GenericPool {
 			// this might take a while, lets do it outside synchronization.
 			GenerationObject obj = (GenerationObject) hitList.remove(0);
 			log.debug("GenericPool:cleanUp killing an object");
-			poolHelper.expire(obj.getObj()); // try to "kill" it
-			obj.killObject();
+			destroy(obj); // try to "kill" it
 		}
 
 		if (isGC()) // if the pool is GCeable
@@ -790,12 +1629,12 @@ public class GenericPool {
 							+ count);
 			while (true) {
 				try {
-					GenerationObject genObject = poolHelper.create();
+					GenerationObject genObject = newObject();
 					synchronized (this) {
 						unlocked.put(genObject, new Long(now));
 						// put it in the unlocked pool
 						++count; // there is one more element in the pool
-						notifyAll();
+						signalWaiters();
 
 						if (count >= minSize)
 							break;
@@ -808,9 +1647,7 @@ public class GenericPool {
 				    log.error("GenericPool:cleanUp   Could not create new connections to fill pool size to minSize.");
 				    break; // ADDED THE BREAK SO WE DON't GET AN ENDLESS LOOP WHEN THE DATABASE IS DOWN.
 				}
-				synchronized (this) {
-					notifyAll();
-				}
+				signalWaiters();
 			}
 			log.info("GenericPool:cleanUp done " + "min=" + minSize + " max="
 					+ maxSize + " count=" + count);
@@ -830,8 +1667,7 @@ public class GenericPool {
 			// of
 			GenerationObject o = (GenerationObject) enumeration.nextElement();
 			// the unlocked pool
-			poolHelper.expire(o.getObj()); // try to "kill" the object
-			o.killObject();
+			destroy(o); // try to "kill" the object
 			o = null;
 		}
 		for (Enumeration enumeration = locked.keys(); enumeration.hasMoreElements();) { // for
@@ -840,8 +1676,7 @@ public class GenericPool {
 			// of
 			GenerationObject o = (GenerationObject) enumeration.nextElement();
 			// the locked pool
-			poolHelper.expire(o.getObj()); // try to "kill" the object
-			o.killObject();
+			destroy(o); // try to "kill" the object
 			o = null;
 		}
 	}
@@ -875,7 +1710,7 @@ public class GenericPool {
 			if (o.getGeneration() <= genObj) {
 				// all objects of the same generation
 				// or earlier are dropped
-				if (!poolHelper.checkThisObject(o.getObj()))
+				if (!checkObject(o.getObj()))
 					// if the object is not valid
 					removeUnlockedObject(o);
 
@@ -903,6 +1738,7 @@ public class GenericPool {
 				System.out.println("GenericPool:removeObject remove found");
 				locked.remove(o); // remove the object from the locked pool
 				--count;
+				signalWaiters(); // there is room for new connections.
 				o.killObject();
 				o = null;
 			}
@@ -926,11 +1762,10 @@ public class GenericPool {
 			if (o.equals(obj)) {
 
 				System.out.println("GenericPool:removeObject remove found");
-				poolHelper.expire(o.getObj()); // try to "kill" it
-
 				locked.remove(o); // remove the object from the locked pool
 				--count;
-				o.killObject();
+				signalWaiters(); // there is room for new connections.
+				destroy(o); // try to "kill" it
 				o = null;
 			}
 		}
@@ -0,0 +1,419 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.enhydra.jdbc.util.PoolListener;
+import org.enhydra.jdbc.util.PoolMetrics;
+import org.enhydra.jdbc.util.StripedCounter;
+
+/**
+ * Sets minSize and maxSize of a pool from what its metrics measure, see
+ * GenericPool.setAutoTune.<p>
+ * The events of the pool are grouped in windows of windowTime ms, the
+ * window ends at the first check out after windowTime. At the end of a
+ * window:
+ * <ul>
+ * <li>if more than growWaitPercent % of the check outs waited, or one
+ * timed out, maxSize grows by a quarter, up to upperBound;</li>
+ * <li>if no check out waited during shrinkWindows windows in a row and
+ * the connections in use leave a third of maxSize free, maxSize shrinks
+ * by an eighth, down to lowerBound, and minSize is lowered;</li>
+ * <li>minSize is raised to the mean number of connections in use plus the
+ * number of check outs during the creation of a connection, so that the
+ * usual load does not wait for a creation.</li>
+ * </ul>
+ * The connections in use are the sum of the hold times divided by the
+ * window, or the connections checked out at the end of the window if
+ * more. The bounds default to the sizes of the pool at the first window:
+ * raise upperBound to let the pool grow beyond its configured maxSize.
+ * An idle pool ends no window, it keeps its sizes while its free objects
+ * above minSize expire.<p>
+ * With a ConnectionBudget, the pool grows only within the connections
+ * left by the other pools of the budget, and shrinks while the budget is
+ * exceeded. The changes are reported in the metrics of the pool
+ * (PoolMetrics.getResizeCount and getLastResize).
+ */
+public class PoolSizeTuner implements PoolListener, PoolSizeTunerMBean {
+	public static final long DEFAULT_WINDOW_TIME = 10000; // 10 seconds
+
+	public static final int DEFAULT_GROW_WAIT_PERCENT = 5;
+
+	public static final int DEFAULT_SHRINK_WINDOWS = 3;
+
+	// the pool engine of a data source may be replaced before it starts
+	volatile GenericPool pool;
+
+	private final StripedCounter checkOuts = new StripedCounter();
+
+	private final StripedCounter waits = new StripedCounter();
+
+	private final StripedCounter timeouts = new StripedCounter();
+
+	private final StripedCounter holdTime = new StripedCounter(); // ns
+
+	private final StripedCounter creates = new StripedCounter();
+
+	private final StripedCounter createTime = new StripedCounter(); // ns
+
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+	private volatile long windowTime = DEFAULT_WINDOW_TIME;
+
+	private volatile int growWaitPercent = DEFAULT_GROW_WAIT_PERCENT;
+
+	private volatile int shrinkWindows = DEFAULT_SHRINK_WINDOWS;
+
+	// bounds of maxSize, 0: the size of the pool at the first window
+	private volatile int lowerBound;
+
+	private volatile int upperBound;
+
+	private int minSizeFloor = -1; // minSize of the pool at the first window
+
+	private ConnectionBudget budget; // guarded by this
+
+	private int budgeted = -1; // maxSize held in the budget, -1: not joined
+
+	private int calmWindows; // windows without wait in a row
+
+	private long createMean; // ns, kept when a window creates nothing
+
+	// measures of the last window
+	private volatile double inUse;
+
+	private volatile int waitPercent;
+
+	private volatile long checkOutRate;
+
+	private volatile String lastDecision = "";
+
+	private ObjectName objectName; // set while registered
+
+	PoolSizeTuner(GenericPool pool) {
+		this.pool = pool;
+	}
+
+	public void checkedOut(PoolMetrics source, long waitTime) {
+		checkOuts.increment();
+		if (waitTime > 0)
+			waits.increment();
+		endWindowIfDue();
+	}
+
+	public void checkedIn(PoolMetrics source, long time) {
+		holdTime.add(time);
+	}
+
+	public void timedOut(PoolMetrics source, long waitTime) {
+		timeouts.increment();
+		endWindowIfDue();
+	}
+
+	public void created(PoolMetrics source, long time, boolean success) {
+		if (success) {
+			creates.increment();
+			createTime.add(time);
+		}
+	}
+
+	public void validated(PoolMetrics source, long time, boolean valid) {
+	}
+
+	public void destroyed(PoolMetrics source, long time) {
+	}
+
+	public void leakSuspected(PoolMetrics source, Object obj, long holdTime) {
+	}
+
+	private void endWindowIfDue() {
+		long start = windowStart.get();
+		long now = System.nanoTime();
+		if (now - start >= windowTime * 1000000L
+				&& windowStart.compareAndSet(start, now))
+			endWindow(now - start);
+	}
+
+	/*
+	 * measures the window and resizes the pool. Called by the thread which
+	 * sees the end of the window, outside the locks of the pool
+	 */
+	private synchronized void endWindow(long elapsed) {
+		GenericPool p = pool;
+		int max = p.getMaxSize();
+		int min = p.getMinSize();
+		if (minSizeFloor < 0) {
+			minSizeFloor = min;
+			if (upperBound == 0)
+				upperBound = max;
+			if (lowerBound == 0)
+				lowerBound = Math.max(1, min);
+		}
+		if (budget != null) {
+			// follows the changes of maxSize made by hand
+			if (budgeted < 0)
+				budget.join(max);
+			else if (budgeted != max)
+				budget.release(budgeted - max);
+			budgeted = max;
+		}
+
+		long n = checkOuts.get();
+		long w = waits.get();
+		long t = timeouts.get();
+		long hold = holdTime.get();
+		long c = creates.get();
+		long ct = createTime.get();
+		checkOuts.reset();
+		waits.reset();
+		timeouts.reset();
+		holdTime.reset();
+		creates.reset();
+		createTime.reset();
+
+		double used = Math.max((double) hold / elapsed, p.getMetrics()
+				.getActiveCount());
+		if (c > 0)
+			createMean = (createMean == 0) ? ct / c : (createMean + ct / c) / 2;
+		// check outs during the creation of a connection
+		double spare = (double) n * createMean / elapsed;
+		int percent = (n + t == 0) ? 0 : (int) ((w + t) * 100 / (n + t));
+		inUse = used;
+		waitPercent = percent;
+		checkOutRate = n * 1000000000L / elapsed;
+		int wanted = (int) Math.ceil(used + spare);
+		int excess = (budget == null) ? 0 : budget.getExcess();
+
+		int newMax = max;
+		int newMin = Math.max(minSizeFloor, wanted);
+		int acquired = 0; // taken from the budget
+		String reason;
+		if ((t > 0 || percent > growWaitPercent) && excess == 0) {
+			calmWindows = 0;
+			int step = Math.min(upperBound - max, Math.max(1, max / 4));
+			reason = percent + "% of the check outs waited, " + t
+					+ " timed out";
+			if (step <= 0) {
+				reason += ", maxSize is at its upper bound";
+			} else {
+				if (budget != null)
+					step = acquired = budget.acquire(step);
+				if (step == 0)
+					reason += ", the budget is exhausted";
+				newMax = max + step;
+			}
+		} else if (excess > 0 || (w + t == 0 && (used + spare) * 3 < max * 2)) {
+			if (++calmWindows >= shrinkWindows || excess > 0) {
+				calmWindows = 0;
+				int target = Math.max(lowerBound, (int) Math.ceil((used + spare)
+						* 1.25) + 1);
+				newMax = Math.max(target, max - Math.max(1, max / 8));
+				if (excess > 0)
+					newMax = Math.max(lowerBound, Math.min(newMax, max - excess));
+				newMax = Math.min(newMax, Math.min(max, upperBound));
+				reason = (excess > 0) ? "the budget is exceeded by " + excess
+						: shrinkWindows + " windows without wait, "
+								+ Math.round(used * 10) / 10.0
+								+ " connections in use";
+			} else {
+				newMin = Math.max(newMin, min); // lowered with maxSize only
+				reason = "no wait";
+			}
+		} else {
+			calmWindows = 0;
+			newMin = Math.max(newMin, min);
+			reason = "stable";
+		}
+		newMin = Math.min(newMin, newMax);
+		lastDecision = reason;
+		if (newMax == max && newMin == min)
+			return;
+		try {
+			if (newMax > max) {
+				p.setMaxSize(newMax);
+				p.setMinSize(newMin);
+			} else {
+				p.setMinSize(newMin);
+				p.setMaxSize(newMax);
+			}
+		} catch (Exception e) {
+			p.log.error("PoolSizeTuner:endWindow cannot resize the pool: " + e);
+			newMin = p.getMinSize();
+			newMax = p.getMaxSize();
+		}
+		if (budget != null) {
+			budget.release(budgeted + acquired - newMax);
+			budgeted = newMax;
+		}
+		if (p.log.isInfoEnabled())
+			p.log.info("PoolSizeTuner:endWindow minSize=" + newMin
+					+ " maxSize=" + newMax + " : " + reason);
+		p.getMetrics().resized(newMin, newMax, reason);
+	}
+
+	/**
+	 * stops the tuning, the pool keeps its sizes and leaves its budget
+	 */
+	synchronized void stop() {
+		if (budget != null && budgeted >= 0)
+			budget.leave(budgeted);
+		budgeted = -1;
+	}
+
+	/**
+	 * shares the connections of a budget with the other pools of the
+	 * database, null for none
+	 */
+	public synchronized void setBudget(ConnectionBudget budget) {
+		stop();
+		this.budget = budget;
+	}
+
+	public synchronized ConnectionBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * sets the budget by name, see ConnectionBudget.getBudget
+	 */
+	public void setBudgetName(String name) {
+		setBudget((name == null) ? null : ConnectionBudget.getBudget(name));
+	}
+
+	public void setWindowTime(long windowTime) {
+		if (windowTime > 0)
+			this.windowTime = windowTime;
+	}
+
+	public long getWindowTime() {
+		return windowTime;
+	}
+
+	public void setLowerBound(int lowerBound) {
+		if (lowerBound > 0)
+			this.lowerBound = lowerBound;
+	}
+
+	public int getLowerBound() {
+		return lowerBound;
+	}
+
+	public void setUpperBound(int upperBound) {
+		if (upperBound > 0)
+			this.upperBound = upperBound;
+	}
+
+	public int getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * percentage of the check outs of a window which have to wait for the
+	 * pool to grow
+	 */
+	public void setGrowWaitPercent(int percent) {
+		if (percent >= 0)
+			growWaitPercent = percent;
+	}
+
+	public int getGrowWaitPercent() {
+		return growWaitPercent;
+	}
+
+	/**
+	 * number of windows in a row without wait before the pool shrinks
+	 */
+	public void setShrinkWindows(int windows) {
+		if (windows > 0)
+			shrinkWindows = windows;
+	}
+
+	public int getShrinkWindows() {
+		return shrinkWindows;
+	}
+
+	public int getConnectionsInUse() {
+		return (int) Math.ceil(inUse);
+	}
+
+	public int getWaitPercent() {
+		return waitPercent;
+	}
+
+	public long getCheckOutRate() {
+		return checkOutRate;
+	}
+
+	public synchronized long getCreateTimeMean() {
+		return createMean / 1000;
+	}
+
+	public String getLastDecision() {
+		return lastDecision;
+	}
+
+	/**
+	 * registers the tuner in the platform MBean server
+	 * @param name object name, for instance
+	 * "org.enhydra.jdbc:type=PoolSizeTuner,name=myPool"
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		unregisterMBean();
+		ObjectName on = new ObjectName(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(new StandardMBean(this, PoolSizeTunerMBean.class),
+				on);
+		objectName = on;
+	}
+
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("PoolSizeTuner:\n");
+		sb.append("     bounds =<" + lowerBound + ", " + upperBound + ">\n");
+		sb.append("     in use =<" + Math.round(inUse * 10) / 10.0 + ">\n");
+		sb.append("     wait =<" + waitPercent + "%>\n");
+		sb.append("     check out rate =<" + checkOutRate + "/s>\n");
+		sb.append("     create time (us) =<" + getCreateTimeMean() + ">\n");
+		sb.append("     budget =<"
+				+ ((budget == null) ? null : budget.getName()) + ">\n");
+		sb.append("     last decision =<" + lastDecision + ">\n");
+		return sb.toString();
+	}
+}
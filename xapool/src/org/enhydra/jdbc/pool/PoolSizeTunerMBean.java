@@ -0,0 +1,52 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+/**
+ * JMX interface of PoolSizeTuner. The measures are the ones of the last
+ * window, durations are in microseconds.
+ */
+public interface PoolSizeTunerMBean {
+	// bounds of maxSize
+	public int getLowerBound();
+
+	public void setLowerBound(int lowerBound);
+
+	public int getUpperBound();
+
+	public void setUpperBound(int upperBound);
+
+	public long getWindowTime();
+
+	// mean number of connections in use, rounded up
+	public int getConnectionsInUse();
+
+	// check outs which waited, per 100 check outs
+	public int getWaitPercent();
+
+	// check outs per second
+	public long getCheckOutRate();
+
+	public long getCreateTimeMean();
+
+	public String getLastDecision();
+}
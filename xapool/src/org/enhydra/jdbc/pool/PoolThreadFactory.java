@@ -0,0 +1,54 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadFactory;
+
+import org.enhydra.jdbc.core.JdbcThreadFactory;
+
+/**
+ * Threads of the executors of the pools, given by the JdbcThreadFactory
+ * of the pool when there is one
+ */
+final class PoolThreadFactory implements ThreadFactory {
+	private final JdbcThreadFactory factory;
+
+	PoolThreadFactory(JdbcThreadFactory factory) {
+		this.factory = factory;
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread t = null;
+		if (factory != null) {
+			try {
+				t = factory.getThread(r, "xapool-worker");
+			} catch (SQLException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		} else {
+			t = new Thread(r, "xapool-worker");
+		}
+		t.setDaemon(true);
+		return t;
+	}
+}
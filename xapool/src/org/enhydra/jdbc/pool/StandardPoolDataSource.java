@@ -26,11 +26,14 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Hashtable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.Name;
 import javax.naming.NamingException;
+import javax.naming.RefAddr;
 import javax.naming.Reference;
 import javax.naming.StringRefAddr;
 import javax.sql.ConnectionEvent;
@@ -40,6 +43,8 @@ import javax.sql.DataSource;
 import javax.sql.PooledConnection;
 import org.enhydra.jdbc.core.CoreDataSource;
 import org.enhydra.jdbc.core.JdbcThreadFactory;
+import org.enhydra.jdbc.util.Histogram;
+import org.enhydra.jdbc.util.PoolMetrics;
 import org.enhydra.jdbc.util.Logger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -62,7 +67,7 @@ public class StandardPoolDataSource
 	public String dataSourceName; // jndi name for DataSource Factory
 	public String jdbcTestStmt;
 	// JDBC test statement for checkLevelObject=1 or 2
-	public boolean onOff; // If the pool is started or not
+	public volatile boolean onOff; // If the pool is started or not
 	public Context ictx; // the initial context
 	public Log glog = LogFactory.getLog("org.enhydra.jdbc.xapool");
 
@@ -169,38 +174,50 @@ public class StandardPoolDataSource
 	 * to the user. In this case, we return an PooledConnection
 	 */
 	public Connection getConnection(String _user, String _password)
+		throws SQLException {
+		return getConnection(
+			_user,
+			_password,
+			pool.getDeadLockMaxWait(),
+			TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * getConnection allows to get an object from the pool and returns it
+	 * to the user, waiting at most the given time if the pool is exhausted.
+	 * In this case, we return an PooledConnection
+	 */
+	public Connection getConnection(
+		String _user,
+		String _password,
+		long timeout,
+		TimeUnit unit)
 		throws SQLException {
 		log.debug("StandardPoolDataSource:getConnection");
 		Connection ret = null;
 		PooledConnection con = null;
-
-		synchronized (this) {
-			if (!onOff) {
-				log.debug(
-					"StandardPoolDataSource:getConnection must configure the pool...");
-				pool.start(); // the pool starts now
-				onOff = true; // and is initialized
-				log.debug(
-					"StandardPoolDataSource:getConnection pool config : \n"
-						+ pool.toString());
-			}
-		}
+		startPool();
 
 		try {
 			try {
 				log.debug(
 					"StandardPoolDataSource:getConnection Try to give a "
 						+ "connection (checkOut)");
-				con = (PooledConnection) pool.checkOut(_user, _password);
+				con =
+					(PooledConnection) pool.checkOut(
+						_user,
+						_password,
+						unit.toNanos(timeout));
 				// get a connection from the pool
 				log.debug(
 					"StandardPoolDataSource:getConnection checkOut return"
 						+ "a new connection");
 			} catch (Exception e) {
                                 e.printStackTrace();
-				log.debug(
-					"StandardPoolDataSource:getConnection SQLException in StandardPoolDataSource:getConnection"
-						+ e);
+				if (log.isDebugEnabled())
+					log.debug(
+						"StandardPoolDataSource:getConnection SQLException in StandardPoolDataSource:getConnection"
+							+ e);
 				throw new SQLException(
 					"SQLException in StandardPoolDataSource:getConnection no connection available "
 						+ e);
@@ -208,7 +225,8 @@ public class StandardPoolDataSource
 
 			ret = con.getConnection();
 		} catch (Exception e) {
-			log.debug("StandardPoolDataSource:getConnection exception" + e);
+			if (log.isDebugEnabled())
+				log.debug("StandardPoolDataSource:getConnection exception" + e);
                         e.printStackTrace();
 			SQLException sqle =
 				new SQLException(
@@ -225,6 +243,98 @@ public class StandardPoolDataSource
 		return ret;
 	}
 
+	/*
+	 * starts the pool at the first getConnection, the monitor is only
+	 * taken until the pool is started
+	 */
+	private void startPool() {
+		if (!onOff) {
+			synchronized (this) {
+				if (!onOff) {
+					log.debug(
+						"StandardPoolDataSource:getConnection must configure the pool...");
+					pool.start(); // the pool starts now
+					onOff = true; // and is initialized
+					if (log.isDebugEnabled())
+						log.debug(
+							"StandardPoolDataSource:getConnection pool config : \n"
+								+ pool.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * getConnectionAsync returns at once a future of a connection of the
+	 * pool, see getConnectionAsync(user, password, timeout, unit)
+	 */
+	public CheckOutFuture getConnectionAsync() {
+		return getConnectionAsync(
+			getUser(),
+			getPassword(),
+			pool.getDeadLockMaxWait(),
+			TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * getConnectionAsync returns at once a future of a connection
+	 * (java.sql.Connection) of the pool, without blocking the calling
+	 * thread. If the pool is exhausted, the future is completed by the
+	 * thread which closes a connection and its listeners are called by
+	 * this thread; it fails with a SQLException after timeout. cancel
+	 * withdraws the request while it is queued.
+	 */
+	public CheckOutFuture getConnectionAsync(
+		String _user,
+		String _password,
+		long timeout,
+		TimeUnit unit) {
+		log.debug("StandardPoolDataSource:getConnectionAsync");
+		startPool();
+		final CheckOutFuture checkOut =
+			pool.checkOutAsync(_user, _password, unit.toNanos(timeout));
+		final CheckOutFuture ret = new CheckOutFuture() {
+			boolean abandon() {
+				return checkOut.cancel(false);
+			}
+		};
+		checkOut.addListener(new CheckOutListener() {
+			public void checkedOut(Object obj) {
+				PooledConnection con = (PooledConnection) obj;
+				try {
+					ret.complete(con.getConnection());
+				} catch (Exception e) {
+					if (log.isDebugEnabled())
+						log.debug(
+							"StandardPoolDataSource:getConnectionAsync exception" + e);
+					pool.checkIn(con);
+					SQLException sqle =
+						new SQLException(
+							"SQLException in StandardPoolDataSource:getConnectionAsync exception: "
+								+ e);
+					if (e instanceof SQLException)
+						sqle.setNextException((SQLException) e);
+					ret.fail(sqle);
+				}
+			}
+
+			public void failed(Exception e) {
+				// cancelled by ret.cancel, which completes ret itself
+				if (e instanceof CancellationException)
+					return;
+				if (log.isDebugEnabled())
+					log.debug(
+						"StandardPoolDataSource:getConnectionAsync no connection available "
+							+ e);
+				ret.fail(
+					new SQLException(
+						"SQLException in StandardPoolDataSource:getConnectionAsync no connection available "
+							+ e));
+			}
+		});
+		return ret;
+	}
+
 	/**
 	 * connectionErrorOccurred and connectionClosed are methods
 	 * from ConnectionEventListener interface
@@ -430,6 +540,134 @@ public class StandardPoolDataSource
 		pool.setGC(gc);
 	}
 
+	/**
+	 * set the thread affinity of the pool: a thread gets back the connection
+	 * it has closed last, if no other thread took it. It is useful when a
+	 * thread gets and closes connections many times in a row.
+	 * Supported only by the concurrent pool
+	 * @param threadAffinity true to enable it
+	 */
+	public void setThreadAffinity(boolean threadAffinity) {
+		pool.setThreadAffinity(threadAffinity);
+	}
+
+	/**
+	 * set the number of free connections to open in advance, in background.
+	 * A thread which finds no free connection waits for a connection opened
+	 * in background instead of opening it. Supported only by the concurrent
+	 * pool
+	 * @param spareSize number of free connections, 0 to disable it
+	 */
+	public void setSpareSize(int spareSize) {
+		pool.setSpareSize(spareSize);
+	}
+
+	/**
+	 * set the maximum number of connections opened at the same time in
+	 * background
+	 * @param createConcurrency number of threads opening connections
+	 */
+	public void setCreateConcurrency(int createConcurrency) {
+		pool.setCreateConcurrency(createConcurrency);
+	}
+
+	/**
+	 * set the number of connections opened at the same time when the pool
+	 * starts, to reach minPoolSize without one handshake after the other
+	 * @param warmUpConcurrency number of threads, 1 (default) opens the
+	 * connections one at a time
+	 */
+	public void setWarmUpConcurrency(int warmUpConcurrency) {
+		pool.setWarmUpConcurrency(warmUpConcurrency);
+	}
+
+	/**
+	 * set the percentage of minPoolSize connections opened before the pool
+	 * serves its first getConnection (or before warmUp returns), the others
+	 * are opened in background
+	 */
+	public void setWarmUpReadyPercent(int warmUpReadyPercent) {
+		pool.setWarmUpReadyPercent(warmUpReadyPercent);
+	}
+
+	/**
+	 * starts the pool now rather than at the first getConnection, and
+	 * returns the readiness of its connections: a service can open its
+	 * connections at startup and wait (or register a listener) until the
+	 * pool is ready
+	 */
+	public WarmUpFuture warmUp() {
+		startPool();
+		return pool.getWarmUp();
+	}
+
+	/**
+	 * set the time after which a free connection is verified again
+	 * (checkLevelObject 1 to 4), in background and before using it.
+	 * Supported only by the concurrent pool
+	 * @param validationIdleTime in milliseconds, 0 to verify the connections
+	 * before each use
+	 */
+	public void setValidationIdleTime(long validationIdleTime) {
+		pool.setValidationIdleTime(validationIdleTime);
+	}
+
+	/**
+	 * set the minimum number of connections kept for each user which has
+	 * got a connection (getConnection(user, password)), within maxSize.
+	 * Supported only by the concurrent pool
+	 * @param userMinSize number of connections, 0 to disable it
+	 */
+	public void setUserMinSize(int userMinSize) {
+		pool.setUserMinSize(userMinSize);
+	}
+
+	/**
+	 * set the maximum number of connections of a user, maxSize stays the
+	 * maximum for all the users. Supported only by the concurrent pool
+	 * @param userMaxSize number of connections, 0 to disable it
+	 */
+	public void setUserMaxSize(int userMaxSize) {
+		pool.setUserMaxSize(userMaxSize);
+	}
+
+	/**
+	 * set the time after which a connection which has not been closed is
+	 * reported as a suspected leak, with the stack of the getConnection
+	 * (sampled, see setLeakSampleRate)
+	 * @param leakThreshold in milliseconds, 0 to disable the leak detection
+	 */
+	public void setLeakThreshold(long leakThreshold) {
+		pool.setLeakThreshold(leakThreshold);
+	}
+
+	/**
+	 * set the sampling of the stacks of getConnection recorded for the leak
+	 * detection, one out of leakSampleRate. 1 records every stack, 0 none
+	 */
+	public void setLeakSampleRate(int leakSampleRate) {
+		pool.setLeakSampleRate(leakSampleRate);
+	}
+
+	/**
+	 * set whether the connections suspected of leak are closed and their
+	 * place in the pool given to other users. Do not use it if connections
+	 * are legitimately held for longer than leakThreshold
+	 */
+	public void setLeakReclaim(boolean leakReclaim) {
+		pool.setLeakReclaim(leakReclaim);
+	}
+
+	/**
+	 * set whether minPoolSize and maxPoolSize are adjusted to the measured
+	 * wait for a connection and number of connections in use. The tuner
+	 * returned by getSizeTuner sets the bounds of the sizes and the
+	 * ConnectionBudget shared with the other pools of a database
+	 */
+	public void setAutoTune(boolean autoTune) {
+		pool.setAutoTune(autoTune);
+	}
+
 	/**
 	 * set the check level of the pooled object before using them
 	 * @param checkLevelObject (<br>
@@ -451,6 +689,26 @@ public class StandardPoolDataSource
 		this.jdbcTestStmt = jdbcTestStmt;
 	}
 
+	/**
+	 * set the pool engine, the configuration of the current pool is kept.
+	 * It must be called before the pool is started (first getConnection)
+	 * @param concurrentPool true: ConcurrentGenericPool (lock-free check
+	 * out and check in), false: GenericPool
+	 */
+	public synchronized void setConcurrentPool(boolean concurrentPool) {
+		if (concurrentPool == isConcurrentPool())
+			return;
+		if (onOff)
+			throw new IllegalStateException(
+				"StandardPoolDataSource:setConcurrentPool the pool is already started");
+		GenericPool newPool =
+			concurrentPool
+				? new ConcurrentGenericPool(this)
+				: new GenericPool(this);
+		pool.copySettingsTo(newPool);
+		pool = newPool;
+	}
+
 	/**
 	 * set the generation number for future connection, the generation number
 	 * is used to identify a group a created objects
@@ -504,6 +762,69 @@ public class StandardPoolDataSource
 		return pool.isGC();
 	}
 
+	public boolean isThreadAffinity() {
+		return pool.isThreadAffinity();
+	}
+
+	public int getSpareSize() {
+		return pool.getSpareSize();
+	}
+
+	public int getCreateConcurrency() {
+		return pool.getCreateConcurrency();
+	}
+
+	public int getWarmUpConcurrency() {
+		return pool.getWarmUpConcurrency();
+	}
+
+	public int getWarmUpReadyPercent() {
+		return pool.getWarmUpReadyPercent();
+	}
+
+	/**
+	 * returns the readiness of the connections opened when the pool
+	 * started, null if it is not started
+	 */
+	public WarmUpFuture getWarmUp() {
+		return pool.getWarmUp();
+	}
+
+	public long getValidationIdleTime() {
+		return pool.getValidationIdleTime();
+	}
+
+	public int getUserMinSize() {
+		return pool.getUserMinSize();
+	}
+
+	public int getUserMaxSize() {
+		return pool.getUserMaxSize();
+	}
+
+	public long getLeakThreshold() {
+		return pool.getLeakThreshold();
+	}
+
+	public int getLeakSampleRate() {
+		return pool.getLeakSampleRate();
+	}
+
+	public boolean isLeakReclaim() {
+		return pool.isLeakReclaim();
+	}
+
+	public boolean isAutoTune() {
+		return pool.isAutoTune();
+	}
+
+	/**
+	 * returns the tuner of the sizes of the pool, null if not auto tuned
+	 */
+	public PoolSizeTuner getSizeTuner() {
+		return pool.getSizeTuner();
+	}
+
 	public int getLockedObjectCount() {
 		return pool.getLockedObjectCount();
 	}
@@ -520,6 +841,10 @@ public class StandardPoolDataSource
 		return jdbcTestStmt;
 	}
 
+	public boolean isConcurrentPool() {
+		return pool instanceof ConcurrentGenericPool;
+	}
+
 	public long getDeadLockMaxWait() {
 		return pool.getDeadLockMaxWait();
 	}
@@ -528,6 +853,37 @@ public class StandardPoolDataSource
 		return pool.getDeadLockRetryWait();
 	}
 
+	/**
+	 * returns the number of threads waiting for a connection
+	 */
+	public int getWaitingCount() {
+		return pool.getWaitingCount();
+	}
+
+	/**
+	 * returns the histogram of the time (in nanoseconds) spent waiting for
+	 * a connection by the threads which found the pool exhausted
+	 */
+	public Histogram getWaitTimeHistogram() {
+		return pool.getWaitTimeHistogram();
+	}
+
+	/**
+	 * returns the number of getConnection which failed after waiting
+	 */
+	public long getTimeoutCount() {
+		return pool.getTimeoutCount();
+	}
+
+	/**
+	 * returns the metrics of the pool, which can be registered as a MBean.
+	 * The metrics belong to the pool engine: register them after
+	 * setConcurrentPool
+	 */
+	public PoolMetrics getMetrics() {
+		return pool.getMetrics();
+	}
+
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("StandardPoolDataSource:\n");
@@ -562,6 +918,10 @@ public class StandardPoolDataSource
 		ref.add(new StringRefAddr("maxSize", Integer.toString(getMaxSize())));
 		ref.add(new StringRefAddr("minSize", Integer.toString(getMinSize())));
 		ref.add(new StringRefAddr("dataSourceName", getDataSourceName()));
+		ref.add(
+			new StringRefAddr(
+				"concurrentPool",
+				String.valueOf(isConcurrentPool())));
 		return ref;
 	}
 
@@ -585,6 +945,11 @@ public class StandardPoolDataSource
 		this.setMinSize(
 			Integer.parseInt((String) ref.get("minSize").getContent()));
 		this.setDataSourceName((String) ref.get("dataSourceName").getContent());
+		RefAddr concurrentPool = ref.get("concurrentPool");
+		if (concurrentPool != null)
+			this.setConcurrentPool(
+				Boolean.valueOf((String) concurrentPool.getContent())
+					.booleanValue());
 		InitialContext ictx = new InitialContext(env);
 		cpds = (ConnectionPoolDataSource) ictx.lookup(this.dataSourceName);
 		return this;
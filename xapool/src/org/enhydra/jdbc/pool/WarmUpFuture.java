@@ -0,0 +1,242 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Readiness of a pool which creates its first objects (GenericPool.start,
+ * StandardPoolDataSource.warmUp). The pool is ready once readyCount of the
+ * targetCount objects are created; the other objects are created in
+ * background. get returns the number of objects created so far, and throws
+ * an ExecutionException, with the last error of the creation, when so many
+ * creations failed that the pool cannot be ready. The listeners are
+ * Runnables, called once the future is done by the thread which created the
+ * last object needed, or by the caller of addListener if it is already
+ * done. The warm up cannot be cancelled, stop the pool instead.
+ */
+public class WarmUpFuture implements Future {
+	private static final int WAITING = 0;
+
+	private static final int READY = 1;
+
+	private static final int FAILED = 2;
+
+	private final int targetCount;
+
+	private final int readyCount;
+
+	private final AtomicInteger state = new AtomicInteger(WAITING);
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private final CountDownLatch ready = new CountDownLatch(1);
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private final long start = System.currentTimeMillis();
+
+	private volatile long readyTime; // ms since the start of the warm up
+
+	private volatile Exception failure; // last error of the creation
+
+	private List listeners = new ArrayList(2); // guarded by this
+
+	WarmUpFuture(int targetCount, int readyCount) {
+		this.targetCount = targetCount;
+		this.readyCount = Math.min(readyCount, targetCount);
+		if (this.readyCount <= 0)
+			finish(READY);
+		if (targetCount <= 0)
+			finished.countDown();
+	}
+
+	/**
+	 * an object has been put in the pool
+	 */
+	void created() {
+		if (created.incrementAndGet() == readyCount)
+			finish(READY);
+		ended();
+	}
+
+	/**
+	 * the creation of an object failed, or was abandoned by the stop of the
+	 * pool
+	 */
+	void failed(Exception e) {
+		failure = e;
+		if (targetCount - failed.incrementAndGet() < readyCount)
+			finish(FAILED);
+		ended();
+	}
+
+	private void ended() {
+		if (created.get() + failed.get() == targetCount)
+			finished.countDown();
+	}
+
+	private void finish(int result) {
+		if (!state.compareAndSet(WAITING, result))
+			return;
+		readyTime = System.currentTimeMillis() - start;
+		ready.countDown();
+		List called;
+		synchronized (this) {
+			called = listeners;
+			listeners = null;
+		}
+		for (int i = 0; i < called.size(); i++)
+			call((Runnable) called.get(i));
+	}
+
+	private void call(Runnable r) {
+		try {
+			r.run();
+		} catch (RuntimeException e) {
+			// ignored, the other listeners are called
+		}
+	}
+
+	/**
+	 * adds a listener, run at once by this thread if the pool is already
+	 * ready or failed
+	 */
+	public void addListener(Runnable r) {
+		synchronized (this) {
+			if (listeners != null) {
+				listeners.add(r);
+				return;
+			}
+		}
+		call(r);
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	public boolean isCancelled() {
+		return false;
+	}
+
+	public boolean isDone() {
+		return state.get() != WAITING;
+	}
+
+	/**
+	 * returns true if readyCount objects have been created
+	 */
+	public boolean isReady() {
+		return state.get() == READY;
+	}
+
+	public Object get() throws InterruptedException, ExecutionException {
+		ready.await();
+		return result();
+	}
+
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!ready.await(timeout, unit))
+			throw new TimeoutException("WarmUpFuture:get the pool is not ready yet");
+		return result();
+	}
+
+	private Object result() throws ExecutionException {
+		if (state.get() == FAILED)
+			throw new ExecutionException("WarmUpFuture:get only "
+					+ created.get() + " objects out of " + readyCount
+					+ " could be created: " + failure, failure);
+		return new Integer(created.get());
+	}
+
+	/**
+	 * waits until all the objects have been created or have failed, returns
+	 * false if the timeout elapsed before
+	 */
+	public boolean awaitFinished(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	/**
+	 * returns true once all the objects have been created or have failed
+	 */
+	public boolean isFinished() {
+		return finished.getCount() == 0;
+	}
+
+	public int getTargetCount() {
+		return targetCount;
+	}
+
+	public int getReadyCount() {
+		return readyCount;
+	}
+
+	public int getCreatedCount() {
+		return created.get();
+	}
+
+	public int getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * returns the time (ms) the pool took to be ready or to fail, 0 while it
+	 * is not done
+	 */
+	public long getReadyTime() {
+		return readyTime;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("WarmUpFuture:\n");
+		sb.append("     state=<");
+		switch (state.get()) {
+		case WAITING:
+			sb.append("warming up");
+			break;
+		case READY:
+			sb.append("ready in " + readyTime + " ms");
+			break;
+		default:
+			sb.append("failed: " + failure);
+		}
+		sb.append(">\n");
+		sb.append("     created=<" + created.get() + "> failed=<" + failed.get()
+				+ "> ready count=<" + readyCount + "> target=<" + targetCount
+				+ ">\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.standard;
+
+import org.enhydra.jdbc.util.ConcurrentLRUCache;
+
+/**
+ * Cache of prepared statements on ConcurrentLRUCache: O(1) look up and
+ * eviction, used instead of PreparedStatementCache when the data source
+ * is configured with setConcurrentStatementCache(true)
+ */
+public class ConcurrentPreparedStatementCache extends ConcurrentLRUCache {
+
+	// statistics of the caches of the data source, may be null
+	private final StatementCacheManager manager;
+
+	/**
+	 * Constructor
+	 */
+	public ConcurrentPreparedStatementCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	public ConcurrentPreparedStatementCache(int maxSize, StatementCacheManager manager) {
+		super(maxSize);
+		this.manager = manager;
+	}
+
+	/**
+	 * Overriden to count the evictions
+	 */
+	protected void evicted(Object key) {
+		if (manager != null)
+			manager.evicted(key);
+	}
+
+	/**
+	 * Overriden to close the statement
+	 */
+	protected void cleanupObject(Object obj) {
+		PreparedStatementCache.close(obj, log);
+	}
+
+}
@@ -22,6 +22,7 @@
 package org.enhydra.jdbc.standard;
 
 import org.enhydra.jdbc.util.LRUCache;
+import org.enhydra.jdbc.util.Logger;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -32,23 +33,48 @@ import java.sql.SQLException;
  */
 public class PreparedStatementCache extends LRUCache {
 
+	// statistics of the caches of the data source, may be null
+	private final StatementCacheManager manager;
+
 	/**
 	 * Constructor
 	 */
 	public PreparedStatementCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	public PreparedStatementCache(int maxSize, StatementCacheManager manager) {
 		super(maxSize);
+		this.manager = manager;
+	}
+
+	/**
+	 * Overriden to count the evictions
+	 */
+	protected void evicted(Object key) {
+		if (manager != null)
+			manager.evicted(key);
 	}
 
 	/**
 	 * Overriden to close the statement
 	 */
 	protected void cleanupObject(Object obj) {
+		close(obj, log);
+	}
+
+	/**
+	 * closes a statement removed from a cache
+	 */
+	static void close(Object obj, Logger log) {
 		if (obj != null) {
-			log.debug("PreparedStatementCache:cleanupObject class='"
-					+ obj.getClass() + "'");
-			log
-					.debug("PreparedStatementCache:cleanupObject close a PreparedStatement o="
-							+ "'" + obj.toString() + "'");
+			if (log.isDebugEnabled()) {
+				log.debug("PreparedStatementCache:cleanupObject class='"
+						+ obj.getClass() + "'");
+				log
+						.debug("PreparedStatementCache:cleanupObject close a PreparedStatement o="
+								+ "'" + obj.toString() + "'");
+			}
 
 			try {
 				((PreparedStatement) obj).close();
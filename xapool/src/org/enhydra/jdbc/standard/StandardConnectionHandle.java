@@ -68,11 +68,13 @@ public class StandardConnectionHandle extends CoreConnection {
 		log = pooledCon.dataSource.log;
 		setupPreparedStatementCache();
 		inUse = new Hashtable(10, 0.5f);
+		setUpdateBatchSize(pooledCon.dataSource.getUpdateBatchSize());
 
-		log.debug(
-			"StandardConnectionHandle:new StandardConnectionHandle with "
-				+ preparedStmtCacheSize
-				+ " prepared statement");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardConnectionHandle:new StandardConnectionHandle with "
+					+ preparedStmtCacheSize
+					+ " prepared statement");
 	}
 
 	protected void setupPreparedStatementCache() {
@@ -87,12 +89,9 @@ public class StandardConnectionHandle extends CoreConnection {
 			log.warn("Connection is null");
 		else {
 			preparedStatementCache =
-				(LRUCache) masterPrepStmtCache.get(con.toString());
-			if (preparedStatementCache == null) {
-				preparedStatementCache =
-					new PreparedStatementCache(preparedStmtCacheSize);
-				preparedStatementCache.setLogger(log);
-				masterPrepStmtCache.put(con.toString(), preparedStatementCache);
+				pooledCon.dataSource.getStatementCache(con);
+			preparedStatementCache.setLogger(log);
+			if (log.isDebugEnabled())
 				log.debug(
 					"StandardConnectionHandle:setupPreparedStatementCache "
 						+ "preparedStatementCache.size(lru)='"
@@ -104,7 +103,6 @@ public class StandardConnectionHandle extends CoreConnection {
 						+ "masterPrepStmtCache.size='"
 						+ masterPrepStmtCache.size()
 						+ "' ");
-			} else preparedStatementCache.setLogger(log);
 		}
 		log.debug("StandardConnectionHandle:setupPreparedStatementCache end");
 	}
@@ -132,31 +130,91 @@ public class StandardConnectionHandle extends CoreConnection {
 	 * from being reused. It also returns used PreparedStatements
 	 * to the PreparedStatement cache and notifies all listeners.
 	 */
-	synchronized public void close() throws SQLException {
-		log.debug("StandardConnectionHandle:close");
-		// Note - we don't check to see if already closed. Some servers get confused.
-		closed = true; // connection now closed
-		Enumeration keys = inUse.keys(); // get any prepared statements in use
-		while (keys.hasMoreElements()) { // while more prepared statements used
-			Object key = keys.nextElement(); // get next key
-			returnToCache(key); // return prepared statement to cache
+	public void close() throws SQLException {
+		lock.lock();
+		try {
+			log.debug("StandardConnectionHandle:close");
+			// the statements closed with a pending batch are released by the flush
+			SQLException batchError = null;
+			try {
+				flushBatch();
+			} catch (SQLException e) {
+				batchError = e;
+				discardBatch();
+			}
+			// Note - we don't check to see if already closed. Some servers get confused.
+			closed = true; // connection now closed
+			Enumeration keys = inUse.keys(); // get any prepared statements in use
+			while (keys.hasMoreElements()) { // while more prepared statements used
+				Object key = keys.nextElement(); // get next key
+				returnToCache(key); // return prepared statement to cache
+			}
+			pooledCon.closeEvent(); // notify listeners
+
+	                if (preparedStatementCache != null && !keepsStatementCache())
+			        preparedStatementCache.cleanupAll();
+	                if ((preparedStatementCache != null) && (masterPrepStmtCache != null) && (log != null)
+	                    && log.isDebugEnabled())
+			log.debug(
+				"StandardConnectionHandle:close "
+					+ "preparedStatementCache.size(lru)='"
+					+ preparedStatementCache.LRUSize()
+					+ "' "
+					+ "preparedStatementCache.size(cache)='"
+					+ preparedStatementCache.cacheSize()
+					+ "' "
+					+ "masterPrepStmtCache.size='"
+					+ masterPrepStmtCache.size()
+					+ "' ");
+			if (batchError != null)
+				throw batchError;
+		} finally {
+			lock.unlock();
 		}
-		pooledCon.closeEvent(); // notify listeners
-
-                if (preparedStatementCache != null)
-		        preparedStatementCache.cleanupAll();
-                if ((preparedStatementCache != null) && (masterPrepStmtCache != null) && (log != null))
-		log.debug(
-			"StandardConnectionHandle:close "
-				+ "preparedStatementCache.size(lru)='"
-				+ preparedStatementCache.LRUSize()
-				+ "' "
-				+ "preparedStatementCache.size(cache)='"
-				+ preparedStatementCache.cacheSize()
-				+ "' "
-				+ "masterPrepStmtCache.size='"
-				+ masterPrepStmtCache.size()
-				+ "' ");
+	}
+
+	/**
+	 * returns the statement whose batch is pending if it has been closed
+	 * and has the given lookup key: the next wrapper of the same
+	 * PreparedStatement takes over its batch
+	 */
+	StandardPreparedStatement closedBatchStatement(Object lookupKey) {
+		Object st = getBatchStatement();
+		if (st instanceof StandardPreparedStatement) {
+			StandardPreparedStatement sps = (StandardPreparedStatement) st;
+			if (sps.closed && lookupKey.equals(sps.key))
+				return sps;
+		}
+		return null;
+	}
+
+	/**
+	 * true if the cached statements are kept for the next handles of the
+	 * physical connection, to keep the statements of the warm up
+	 */
+	protected boolean keepsStatementCache() {
+		return pooledCon.dataSource.getStatementCacheWarmUp() > 0;
+	}
+
+	/**
+	 * records a look up of the cache in the statistics of the data source
+	 */
+	void lookedUp(
+		Object lookupKey,
+		String sql,
+		int type,
+		int concurrency,
+		int holdability,
+		int autogeneratedkeys,
+		boolean hit) {
+		pooledCon.dataSource.statementCacheManager.lookedUp(
+			lookupKey.toString(),
+			sql,
+			type,
+			concurrency,
+			holdability,
+			autogeneratedkeys,
+			hit);
 	}
 
 	/**
@@ -188,95 +246,115 @@ public class StandardConnectionHandle extends CoreConnection {
 	 * thread does multiple prepares using the same SQL, then DIFFERENT
 	 * prepared statements will be returned.
 	 */
-	synchronized PreparedStatement checkPreparedCache(
+	PreparedStatement checkPreparedCache(
 		String sql,
 		int type,
 		int concurrency,
 		int holdability)
 		throws SQLException {
-		log.debug(
-			"StandardConnectionHandle:checkPreparedCache sql='" + sql + "'");
-		PreparedStatement ret = null; // the return value
-		// NOTE - We include the Connection in the lookup key. This has no
-		// effect here but is needed by StandardXAConnection where the the physical
-		// Connection used can vary over time depending on the global transaction.
-		String lookupKey = sql + type + concurrency;
-		// used to lookup statements
-		if (preparedStatementCache != null) {
-			Object obj = preparedStatementCache.get(lookupKey);
-			// see if there's a PreparedStatement already
-			if (obj != null) { // if there is
-				ret = (PreparedStatement) obj; // use as return value
-				try {
-					ret.clearParameters(); // make it look like new
-				} catch (SQLException e) {
-					// Bad statement, so we have to create a new one
+		lock.lock();
+		try {
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardConnectionHandle:checkPreparedCache sql='" + sql + "'");
+			PreparedStatement ret = null; // the return value
+			// NOTE - We include the Connection in the lookup key. This has no
+			// effect here but is needed by StandardXAConnection where the the physical
+			// Connection used can vary over time depending on the global transaction.
+			String lookupKey = sql + type + concurrency;
+			// used to lookup statements
+			StandardPreparedStatement pending = closedBatchStatement(lookupKey);
+			if (pending != null) // same statement, its batch goes on
+				return new StandardPreparedStatement(this, pending);
+			if (preparedStatementCache != null) {
+				Object obj = preparedStatementCache.get(lookupKey);
+				// see if there's a PreparedStatement already
+				lookedUp(lookupKey, sql, type, concurrency, holdability, -1, obj != null);
+				if (obj != null) { // if there is
+					ret = (PreparedStatement) obj; // use as return value
+					try {
+						ret.clearParameters(); // make it look like new
+					} catch (SQLException e) {
+						// Bad statement, so we have to create a new one
+						ret = createPreparedStatement(sql, type, concurrency, holdability);
+					}
+
+					preparedStatementCache.remove(lookupKey);
+					// make sure it cannot be re-used
+					inUse.put(lookupKey, ret);
+					// make sure it gets reused by later delegates
+				} else { // no PreparedStatement ready
 					ret = createPreparedStatement(sql, type, concurrency, holdability);
+					inUse.put(lookupKey, ret);
+					// will get saved in prepared statement cache
 				}
-
-				preparedStatementCache.remove(lookupKey);
-				// make sure it cannot be re-used
-				inUse.put(lookupKey, ret);
-				// make sure it gets reused by later delegates
-			} else { // no PreparedStatement ready
+			} else {
 				ret = createPreparedStatement(sql, type, concurrency, holdability);
-				inUse.put(lookupKey, ret);
-				// will get saved in prepared statement cache
 			}
-		} else {
-			ret = createPreparedStatement(sql, type, concurrency, holdability);
+			// We don't actually give the application a real PreparedStatement. Instead
+			// they get a StandardPreparedStatement that delegates everything except
+			// PreparedStatement.close();
+
+			ret = new StandardPreparedStatement(this, ret, lookupKey);
+			return ret;
+		} finally {
+			lock.unlock();
 		}
-		// We don't actually give the application a real PreparedStatement. Instead
-		// they get a StandardPreparedStatement that delegates everything except
-		// PreparedStatement.close();
-
-		ret = new StandardPreparedStatement(this, ret, lookupKey);
-		return ret;
 	}
 
 
-	synchronized PreparedStatement checkPreparedCache(
+	PreparedStatement checkPreparedCache(
 		String sql,
 		int autogeneratedkeys)
 		throws SQLException {
-		log.debug(
-			"StandardConnectionHandle:checkPreparedCache sql='" + sql + "'");
-		PreparedStatement ret = null; // the return value
-		// NOTE - We include the Connection in the lookup key. This has no
-		// effect here but is needed by StandardXAConnection where the the physical
-		// Connection used can vary over time depending on the global transaction.
-		String lookupKey = sql + autogeneratedkeys;
-		// used to lookup statements
-		if (preparedStatementCache != null) {
-			Object obj = preparedStatementCache.get(lookupKey);
-			// see if there's a PreparedStatement already
-			if (obj != null) { // if there is
-				ret = (PreparedStatement) obj; // use as return value
-				try {
-					ret.clearParameters(); // make it look like new
-				} catch (SQLException e) {
-					// Bad statement, so we have to create a new one
+		lock.lock();
+		try {
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardConnectionHandle:checkPreparedCache sql='" + sql + "'");
+			PreparedStatement ret = null; // the return value
+			// NOTE - We include the Connection in the lookup key. This has no
+			// effect here but is needed by StandardXAConnection where the the physical
+			// Connection used can vary over time depending on the global transaction.
+			String lookupKey = sql + autogeneratedkeys;
+			// used to lookup statements
+			StandardPreparedStatement pending = closedBatchStatement(lookupKey);
+			if (pending != null) // same statement, its batch goes on
+				return new StandardPreparedStatement(this, pending);
+			if (preparedStatementCache != null) {
+				Object obj = preparedStatementCache.get(lookupKey);
+				// see if there's a PreparedStatement already
+				lookedUp(lookupKey, sql, 0, 0, 0, autogeneratedkeys, obj != null);
+				if (obj != null) { // if there is
+					ret = (PreparedStatement) obj; // use as return value
+					try {
+						ret.clearParameters(); // make it look like new
+					} catch (SQLException e) {
+						// Bad statement, so we have to create a new one
+						ret = createPreparedStatement(sql, autogeneratedkeys);
+					}
+
+					preparedStatementCache.remove(lookupKey);
+					// make sure it cannot be re-used
+					inUse.put(lookupKey, ret);
+					// make sure it gets reused by later delegates
+				} else { // no PreparedStatement ready
 					ret = createPreparedStatement(sql, autogeneratedkeys);
+					inUse.put(lookupKey, ret);
+					// will get saved in prepared statement cache
 				}
-
-				preparedStatementCache.remove(lookupKey);
-				// make sure it cannot be re-used
-				inUse.put(lookupKey, ret);
-				// make sure it gets reused by later delegates
-			} else { // no PreparedStatement ready
+			} else {
 				ret = createPreparedStatement(sql, autogeneratedkeys);
-				inUse.put(lookupKey, ret);
-				// will get saved in prepared statement cache
 			}
-		} else {
-			ret = createPreparedStatement(sql, autogeneratedkeys);
+			// We don't actually give the application a real PreparedStatement. Instead
+			// they get a StandardPreparedStatement that delegates everything except
+			// PreparedStatement.close();
+
+			ret = new StandardPreparedStatement(this, ret, lookupKey);
+			return ret;
+		} finally {
+			lock.unlock();
 		}
-		// We don't actually give the application a real PreparedStatement. Instead
-		// they get a StandardPreparedStatement that delegates everything except
-		// PreparedStatement.close();
-
-		ret = new StandardPreparedStatement(this, ret, lookupKey);
-		return ret;
 	}
 
 
@@ -287,10 +365,11 @@ public class StandardConnectionHandle extends CoreConnection {
 		int concurrency,
 		int holdability)
 		throws SQLException {
-		log.debug(
-			"StandardConnectionHandle:createPreparedStatement type ='"
-				+ type
-				+ "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardConnectionHandle:createPreparedStatement type ='"
+					+ type
+					+ "'");
 		if (type == 0 && holdability == 0) { // if no type or concurrency specified
 			return con.prepareStatement(sql); // create new prepared statement
 		} else if (holdability == 0) {
@@ -304,10 +383,11 @@ public class StandardConnectionHandle extends CoreConnection {
 		String sql,
 		int autogeneratedkeys)
 		throws SQLException {
-		log.debug(
-			"StandardConnectionHandle:createPreparedStatement autogeneratedkeys ='"
-				+ autogeneratedkeys
-				+ "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardConnectionHandle:createPreparedStatement autogeneratedkeys ='"
+					+ autogeneratedkeys
+					+ "'");
 		return con.prepareStatement(sql, autogeneratedkeys); // create new prepared statement
 	}
 
@@ -316,8 +396,9 @@ public class StandardConnectionHandle extends CoreConnection {
 	 * statement is fetched from the cache.
 	 */
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		log.debug(
-			"StandardConnectionHandle:prepareStatement sql='" + sql + "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardConnectionHandle:prepareStatement sql='" + sql + "'");
 		preInvoke();
 		try {
 			return checkPreparedCache(sql, 0, 0, 0);
@@ -376,6 +457,7 @@ public class StandardConnectionHandle extends CoreConnection {
 		throws SQLException {
 		preInvoke();
 		try {
+			flushBatch(); // the call is not a wrapper, see CoreConnection
 			return con.prepareCall(sql, resultSetType, resultSetConcurrency);
 		} catch (SQLException e) {
 			catchInvoke(e);
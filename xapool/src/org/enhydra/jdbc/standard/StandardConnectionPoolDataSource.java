@@ -21,6 +21,7 @@
  */
 package org.enhydra.jdbc.standard;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Hashtable;
 import javax.sql.ConnectionPoolDataSource;
@@ -37,6 +38,11 @@ public class StandardConnectionPoolDataSource
 
 	private Hashtable masterPrepStmtCache;
 	int preparedStmtCacheSize; // size of prepared statement cache
+	// prepared statements cached in a ConcurrentPreparedStatementCache
+	boolean concurrentStatementCache;
+	// statistics and size of the caches, warm up of the new connections
+	final StatementCacheManager statementCacheManager;
+	int updateBatchSize; // executeUpdate batched by the connections, 0: none
 	public static final int DEFAULT_PREPAREDSTMTCACHESIZE = 16;
 
 	/**
@@ -46,6 +52,7 @@ public class StandardConnectionPoolDataSource
 		super();
 		masterPrepStmtCache = new Hashtable();
 		preparedStmtCacheSize = DEFAULT_PREPAREDSTMTCACHESIZE;
+		statementCacheManager = new StatementCacheManager(this);
 	}
 
 	/**
@@ -59,8 +66,9 @@ public class StandardConnectionPoolDataSource
 
 	/**
 	 * Create a standard pooled connection using the supplied username and password.
+	 * The physical connections are opened concurrently.
 	 */
-	synchronized public PooledConnection getPooledConnection(
+	public PooledConnection getPooledConnection(
 		String user,
 		String password)
 		throws SQLException {
@@ -76,6 +84,37 @@ public class StandardConnectionPoolDataSource
 		return masterPrepStmtCache;
 	}
 
+	/**
+	 * returns the prepared statement cache of a physical connection,
+	 * created if needed
+	 */
+	LRUCache getStatementCache(Connection con) {
+		synchronized (masterPrepStmtCache) {
+			LRUCache cache = (LRUCache) masterPrepStmtCache.get(con.toString());
+			if (cache == null) {
+				int size = statementCacheManager.getCacheSize();
+				if (concurrentStatementCache)
+					cache = new ConcurrentPreparedStatementCache(size,
+							statementCacheManager);
+				else
+					cache = new PreparedStatementCache(size,
+							statementCacheManager);
+				cache.setLogger(log);
+				masterPrepStmtCache.put(con.toString(), cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * returns the statistics of the prepared statement caches of the
+	 * physical connections, which also adapt their size and warm up the
+	 * new connections
+	 */
+	public StatementCacheManager getStatementCacheManager() {
+		return statementCacheManager;
+	}
+
 	/**
 	 * Gets the size of the prepared statement cache
 	 */
@@ -91,18 +130,75 @@ public class StandardConnectionPoolDataSource
 		if (preparedStmtCacheSize <= 0) {
 			masterPrepStmtCache.clear();
 		} else {
+			int size = statementCacheManager.getCacheSize();
 			Enumeration enumeration = masterPrepStmtCache.elements();
 			while (enumeration.hasMoreElements()) {
-				((LRUCache) enumeration.nextElement()).resize(value);
+				((LRUCache) enumeration.nextElement()).resize(size);
 			}
 		}
 	}
 
+	/**
+	 * the size of the prepared statement caches follows the number of
+	 * statements in use, see StatementCacheManager
+	 */
+	public void setAdaptiveStatementCache(boolean adaptive) {
+		statementCacheManager.setAdaptive(adaptive);
+	}
+
+	public boolean isAdaptiveStatementCache() {
+		return statementCacheManager.isAdaptive();
+	}
+
+	/**
+	 * number of the most used statements prepared on each new physical
+	 * connection. When it is set, a connection keeps its cached statements
+	 * when its handle is closed, until the connection itself is closed
+	 */
+	public void setStatementCacheWarmUp(int n) {
+		statementCacheManager.setWarmUpCount(n);
+	}
+
+	public int getStatementCacheWarmUp() {
+		return statementCacheManager.getWarmUpCount();
+	}
+
+	/**
+	 * maximum number of executeUpdate of a prepared statement batched by
+	 * the connections created from now on, outside auto-commit mode, see
+	 * CoreConnection. 0 (default) executes each update at once
+	 */
+	public void setUpdateBatchSize(int size) {
+		updateBatchSize = Math.max(0, size);
+	}
+
+	public int getUpdateBatchSize() {
+		return updateBatchSize;
+	}
+
+	/**
+	 * selects the cache of the prepared statements of the connections
+	 * created from now on: ConcurrentPreparedStatementCache, whose look up
+	 * and eviction are O(1), or PreparedStatementCache (default), whose
+	 * cost grows with the size of the cache
+	 */
+	public void setConcurrentStatementCache(boolean concurrentStatementCache) {
+		this.concurrentStatementCache = concurrentStatementCache;
+	}
+
+	public boolean isConcurrentStatementCache() {
+		return concurrentStatementCache;
+	}
+
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("StandardConnectionPoolDataSource:\n");
 		sb.append("     master prepared stmt cache size=<"+this.masterPrepStmtCache.size()+">\n");
 		sb.append("     prepared stmt cache size =<"+this.preparedStmtCacheSize+">\n");
+		sb.append("     concurrent stmt cache =<"+this.concurrentStatementCache+">\n");
+		sb.append("     adaptive stmt cache =<"+isAdaptiveStatementCache()+">\n");
+		sb.append("     stmt cache warm up =<"+getStatementCacheWarmUp()+">\n");
+		sb.append("     update batch size =<"+this.updateBatchSize+">\n");
 		sb.append(super.toString());
 		
 		return sb.toString();
@@ -34,6 +34,7 @@ import javax.sql.DataSource;
 import org.enhydra.jdbc.core.CoreDataSource;
 import java.sql.Driver;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 import org.enhydra.jdbc.util.Logger;
 import org.apache.commons.logging.LogFactory;
 
@@ -54,6 +55,9 @@ public class StandardDataSource extends CoreDataSource implements DataSource {
 	String url; // an explicit JDBC URL used to access this data source
 	private int transIsolation; // transaction isolation level
 	private boolean loadedFromCCL = false;
+	// taken to load the driver, the connections are opened outside any
+	// lock, concurrently, and without pinning a virtual thread
+	private final ReentrantLock driverLock = new ReentrantLock();
 
 	/**
 	 * Constructors
@@ -140,7 +144,7 @@ public class StandardDataSource extends CoreDataSource implements DataSource {
 	 * @return
 	 * @throws SQLException
 	 */
-	synchronized public Connection getConnection() throws SQLException {
+	public Connection getConnection() throws SQLException {
 		return getConnection(user, password);
 	}
 
@@ -151,7 +155,7 @@ public class StandardDataSource extends CoreDataSource implements DataSource {
 	 * @return
 	 * @throws SQLException
 	 */
-	synchronized public Connection getConnection(String u, String p)
+	public Connection getConnection(String u, String p)
 		throws SQLException {
 		Connection ret = null; // the connection that gets returned
 		Properties prop = new Properties();
@@ -162,32 +166,41 @@ public class StandardDataSource extends CoreDataSource implements DataSource {
 		if (url == null) { // if no explicit url provided
 			// Build URL from serverName, NetworkProtocol etc.
 		} else { // explicit URL provided
-			if (driver == null) {
-				try {
-					driver = (Driver) Class.forName(driverName).newInstance();
-					loadedFromCCL = false;
-					log.debug(
-						"StandardDataSource:getConnection a new driver instance is created");
-				} catch (Exception e) {
+			Driver drv;
+			boolean fromCCL;
+			driverLock.lock();
+			try {
+				if (driver == null) {
 					try {
-						driver =
-							(Driver) Class
-								.forName(
-									driverName,
-									true,
-									Thread
-										.currentThread()
-										.getContextClassLoader())
-								.newInstance();
-						loadedFromCCL = true;
-					} catch (Exception e2) {
-						throw new SQLException(
-							"Error trying to load driver: "
-								+ driverName
-								+ " : "
-								+ e2.getMessage());
+						driver = (Driver) Class.forName(driverName).newInstance();
+						loadedFromCCL = false;
+						log.debug(
+							"StandardDataSource:getConnection a new driver instance is created");
+					} catch (Exception e) {
+						try {
+							driver =
+								(Driver) Class
+									.forName(
+										driverName,
+										true,
+										Thread
+											.currentThread()
+											.getContextClassLoader())
+									.newInstance();
+							loadedFromCCL = true;
+						} catch (Exception e2) {
+							throw new SQLException(
+								"Error trying to load driver: "
+									+ driverName
+									+ " : "
+									+ e2.getMessage());
+						}
 					}
 				}
+				drv = driver;
+				fromCCL = loadedFromCCL;
+			} finally {
+				driverLock.unlock();
 			}
 			// commenting out since at least one driver will complain if you
 			// instantiate the driver outside the Driver Manager
@@ -199,8 +212,8 @@ public class StandardDataSource extends CoreDataSource implements DataSource {
 			}
 			*/
 			try {
-				if (loadedFromCCL) {
-					ret = driver.connect(url, prop);
+				if (fromCCL) {
+					ret = drv.connect(url, prop);
 					// Driver creates the connection
 				} else {
 					ret = DriverManager.getConnection(url, prop);
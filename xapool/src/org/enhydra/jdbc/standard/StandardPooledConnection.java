@@ -21,11 +21,13 @@
  */
 package org.enhydra.jdbc.standard;
 
+import org.enhydra.jdbc.util.LRUCache;
 import org.enhydra.jdbc.util.Logger;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Vector;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
 import javax.sql.PooledConnection;
@@ -51,6 +53,8 @@ public class StandardPooledConnection implements PooledConnection {
 	// the last StandardConnectionHandle created
 	Vector listeners; // objects listening for events on this connection
 	boolean isClosed; // true if this connection has been closed
+	// guards the handle and, for a XA connection, the transaction branch
+	protected final ReentrantLock lock = new ReentrantLock();
 	public Logger log;
 
 	/**
@@ -64,6 +68,7 @@ public class StandardPooledConnection implements PooledConnection {
 		this.dataSource = dataSource;
 		con = dataSource.getConnection(user, password);
 		listeners = new Vector(5, 5);
+		dataSource.statementCacheManager.warmUp(con);
 	}
 
 	/**
@@ -71,16 +76,21 @@ public class StandardPooledConnection implements PooledConnection {
 	 * If there is already a StandardConnectionHandle in use then it is
 	 * closed (i.e. the application has the connection withdrawn).
 	 */
-	synchronized public Connection getConnection()
+	public Connection getConnection()
 		throws java.sql.SQLException {
-		if (connectionHandle != null) {
-			// if there's already a connection handle
-			if (!connectionHandle.isClosed()) { // and it hasn't been closed
-				connectionHandle.close(); // close it now
+		lock.lock();
+		try {
+			if (connectionHandle != null) {
+				// if there's already a connection handle
+				if (!connectionHandle.isClosed()) { // and it hasn't been closed
+					connectionHandle.close(); // close it now
+				}
 			}
+			newConnectionHandle();
+			return connectionHandle;
+		} finally {
+			lock.unlock();
 		}
-		newConnectionHandle();
-		return connectionHandle;
 	}
 
 	protected void newConnectionHandle() {
@@ -93,8 +103,11 @@ public class StandardPooledConnection implements PooledConnection {
 	}
 
 	public void close() throws java.sql.SQLException {
+		LRUCache cache =
+			(LRUCache) dataSource.getMasterPrepStmtCache().remove(con.toString());
+		if (cache != null)
+			cache.cleanupAll(); // statements kept for the next handles
 		con.close();
-		dataSource.getMasterPrepStmtCache().remove(con.toString());
 	}
 
 	public void addConnectionEventListener(ConnectionEventListener listener) {
@@ -51,6 +51,20 @@ public class StandardPreparedStatement extends CorePreparedStatement {
 		this.con = con;
 		this.key = key;
 		ps = preparedStatement;
+		batchConnection = con;
+	}
+
+	/**
+	 * Constructor of the next wrapper of a statement closed while its
+	 * updates were batched, which takes over the batch
+	 */
+	StandardPreparedStatement(
+		StandardConnectionHandle con,
+		StandardPreparedStatement pending)
+		throws SQLException {
+		this(con, pending.ps, pending.key);
+		ps.clearParameters(); // make it look like new
+		adoptBatch(pending);
 	}
 
 	StandardPreparedStatement() {
@@ -63,6 +77,24 @@ public class StandardPreparedStatement extends CorePreparedStatement {
 	public void close() throws SQLException {
 		// Note no check for already closed - some servers make mistakes
 		closed = true;
+		if (isBatchPending())
+			return; // released by batchDone, or adopted by the next wrapper
+		release();
+	}
+
+	/**
+	 * a statement closed while its updates were batched is released once
+	 * the batch is executed
+	 */
+	protected void batchDone() throws SQLException {
+		if (closed)
+			release();
+	}
+
+	/**
+	 * closes the underlying statement, or returns it to the cache
+	 */
+	protected void release() throws SQLException {
 		if (con.preparedStmtCacheSize == 0) {
 			// no cache, so we just close
 			if (ps != null) {
@@ -38,6 +38,7 @@ public class StandardStatement extends CoreStatement {
 		      Statement stat) {
 	this.con = con;
 	statement = stat;
+	batchConnection = con;
     }
     
     StandardStatement() {
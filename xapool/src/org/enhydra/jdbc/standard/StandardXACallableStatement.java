@@ -23,6 +23,7 @@ package org.enhydra.jdbc.standard;
 
 import java.sql.SQLException;
 import java.sql.CallableStatement;
+import java.util.concurrent.locks.ReentrantLock;
 import org.enhydra.jdbc.core.CoreCallableStatement;
 import javax.transaction.Transaction;
 import javax.transaction.SystemException;
@@ -33,6 +34,7 @@ public class StandardXACallableStatement extends CoreCallableStatement {
 	private StandardXAConnectionHandle con;
 	// the StandardConnectionHandle that created this object
 	private boolean closed; // true when the Statement has been closed
+	private final ReentrantLock lock = new ReentrantLock();
 	private String sql;
 	private int resultSetType;
 	private int resultSetConcurrency;
@@ -55,6 +57,7 @@ public class StandardXACallableStatement extends CoreCallableStatement {
 		this.resultSetHoldability = resultSetHoldability;
 		log = con.log;
 		//cs = newStatement();
+		batchConnection = con;
 	}
 
 	private CallableStatement newStatement() throws SQLException {
@@ -77,62 +80,72 @@ public class StandardXACallableStatement extends CoreCallableStatement {
 	/**
 	 * Close this statement.
 	 */
-	public synchronized void close() throws SQLException {
-		super.close(); // we do not reuse the Statement, we have to close it
-		closed = true;
+	public void close() throws SQLException {
+		lock.lock();
+		try {
+			super.close(); // we do not reuse the Statement, we have to close it
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
 	 * Pre-invokation of the delegation, in case of the Statement is
 	 * closed, we throw an exception
 	 */
-	public synchronized void preInvoke() throws SQLException {
-		if (closed)
-			throw new SQLException("Prepare Statement is closed");
+	public void preInvoke() throws SQLException {
+		lock.lock();
+		try {
+			if (closed)
+				throw new SQLException("Prepare Statement is closed");
 
-		Transaction ntx = null;
-		if (con.tx == null) {
-			try {
+			Transaction ntx = null;
+			if (con.tx == null) {
 				try {
-					ntx =
-						(con.transactionManager != null)
-							? con.transactionManager.getTransaction()
-							: null;
-					if (ntx != null) {
-						con.tx = ntx;
-						con.xacon.thisAutoCommit = con.getAutoCommit();
-						con.setAutoCommit(false);
-						try {
-							con.tx.enlistResource(con.xacon.getXAResource());
-							// enlist the xaResource in the transaction
-							if (cs != null) {
-								cs.close();
-								cs = null;
+					try {
+						ntx =
+							(con.transactionManager != null)
+								? con.transactionManager.getTransaction()
+								: null;
+						if (ntx != null) {
+							con.tx = ntx;
+							con.xacon.thisAutoCommit = con.getAutoCommit();
+							con.setAutoCommit(false);
+							try {
+								con.tx.enlistResource(con.xacon.getXAResource());
+								// enlist the xaResource in the transaction
+								if (cs != null) {
+									cs.close();
+									cs = null;
+								}
+							} catch (RollbackException n) {
+								throw new SQLException(
+									"StandardXAStatement:preInvoke enlistResource exception: "
+										+ n.toString());
 							}
-						} catch (RollbackException n) {
-							throw new SQLException(
-								"StandardXAStatement:preInvoke enlistResource exception: "
-									+ n.toString());
 						}
-					}
-					//else con.setAutoCommit(true);
+						//else con.setAutoCommit(true);
 
-				} catch (SystemException n) {
+					} catch (SystemException n) {
+						throw new SQLException(
+							"StandardXAStatement:preInvoke getTransaction exception: "
+								+ n.toString());
+					}
+				} catch (NullPointerException n) {
+					// current is null: we are not in EJBServer.
 					throw new SQLException(
-						"StandardXAStatement:preInvoke getTransaction exception: "
+						"StandardXAStatement:preInvoke should not be used outside an EJBServer: "
 							+ n.toString());
 				}
-			} catch (NullPointerException n) {
-				// current is null: we are not in EJBServer.
-				throw new SQLException(
-					"StandardXAStatement:preInvoke should not be used outside an EJBServer: "
-						+ n.toString());
 			}
-		}
-		if (cs == null) {
-			cs = newStatement();
-		}
+			if (cs == null) {
+				cs = newStatement();
+			}
 
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -54,7 +54,7 @@ import javax.transaction.TransactionManager;
  */
 public class StandardXAConnection
 	extends StandardPooledConnection
-	implements XAConnection, XAResource, Referenceable, Runnable {
+	implements XAConnection, XAResource, Referenceable {
 
 	protected StandardXAStatefulConnection curCon;
 	// the "current" stateful connection, null if none
@@ -62,9 +62,6 @@ public class StandardXAConnection
 	// true if commit takes place during prepare call
 	boolean isClosed; // true if this connection has been closed
 	private int timeoutSecs; // timeout in seconds
-	private long timeoutPeriod = 60000; // interval in ms to check for timeouts
-	private long nextTimeout; // time when next timeout occurs
-	public Thread timerThread; // the thread that checks for timeouts
 	public TransactionManager transactionManager;
 	public StandardXAConnectionHandle connectionHandle;
 	protected StandardXADataSource xaDataSource;
@@ -90,20 +87,8 @@ public class StandardXAConnection
 		// so it is not eligible for re-use. It only goes on the data source list
 		// if it ever becomes associated with a global transaction.
 
-		/*
-		// get the timer thread
-		if (xaDataSource.getThreadFactory() != null) {
-		dataSource.log.debug("StandardXAConnection: Getting thread from factory");
-		timerThread = xaDataSource.getThreadFactory().getThread(this);
-		dataSource.log.debug("StandardXAConnection: Got thread from factory");
-		} else {
-		dataSource.log.debug("StandardXAConnection: Getting thread from new Thread()");
-		timerThread = new Thread (this);	// create the backgroup thread to check for timeouts
-		}
-		
-		timerThread.start();			// start the timer thread
-		//timerThread.suspend();			// and suspend until some timeouts get set up
-		*/
+		// The transaction timeouts are handled by the scheduler of the data
+		// source, shared by all its XA connections.
 		dataSource.log.debug("StandardXAConnection created");
 	}
 
@@ -126,27 +111,32 @@ public class StandardXAConnection
 	 * Start (Xid, flags) gets called, the Connection must do local
 	 * transaction processing.
 	 */
-	public synchronized Connection getConnection() throws SQLException {
-		dataSource.log.debug("StandardXAConnection:getConnection");
-		if (connectionHandle != null) {
-			// if there's already a delegated connection
-			if (!connectionHandle.isClosed()) // and it hasn't been closed
-				connectionHandle.close(); // close it now
-		}
-		if (curCon == null) { // if there's no current connection
-                    
-			curCon = xaDataSource.getFreeConnection();
-                        // find or create a free connection
-                        con = curCon.con; // save it's Connection
-		}
+	public Connection getConnection() throws SQLException {
+		lock.lock();
+		try {
+			dataSource.log.debug("StandardXAConnection:getConnection");
+			if (connectionHandle != null) {
+				// if there's already a delegated connection
+				if (!connectionHandle.isClosed()) // and it hasn't been closed
+					connectionHandle.close(); // close it now
+			}
+			if (curCon == null) { // if there's no current connection
 
-		// Note that we share the PreparedStatement cache across many physical
-		// connections. This is OK since the connection is used in the lookup key.
+				curCon = xaDataSource.getFreeConnection();
+	                        // find or create a free connection
+	                        con = curCon.con; // save it's Connection
+			}
 
-		this.newConnectionHandle();
-		dataSource.log.debug(
-			"StandardXAConnection:getConnection return a connection");
-		return connectionHandle;
+			// Note that we share the PreparedStatement cache across many physical
+			// connections. This is OK since the connection is used in the lookup key.
+
+			this.newConnectionHandle();
+			dataSource.log.debug(
+				"StandardXAConnection:getConnection return a connection");
+			return connectionHandle;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	protected void newConnectionHandle() {
@@ -165,45 +155,45 @@ public class StandardXAConnection
 	/**
 	 * Close this XA connection.
 	 */
-	public synchronized void close() throws java.sql.SQLException {
-		dataSource.log.debug("StandardXAConnection:close the XAConnection");
- //                if (con != null) { // if we have a current connection
-//                        con.close(); // then close it
-//                        dataSource.getMasterPrepStmtCache().remove(con.toString());
-//                 }
-                //commenented by karthicks - in case of transacted connection curcon will be null and physical connection con will not be null
-                //and physical will be part of freeconnection which would be used by some other instance of XAConnection object at this instant
-                //so only the curCon and its is associated connected should be closed 
-                //it will happen fro non transacted connections.
-                //in case of tx connectioins else part will come to play and close any freeconnections
-		if (curCon != null && !curCon.con.isClosed()) 
-                { // if we have a current connection
-			curCon.con.close(); // then close it
-			dataSource.getMasterPrepStmtCache().remove(curCon.toString());
-		} 
-                else { // no "current" connection
-			if (xaDataSource.freeConnections.size() > 1) {
-				// if there are some free connections
-				//curCon.con.setAutoCommit(thisAutoCommit);
-				curCon = xaDataSource.getFreeConnection();
-				// get one of the free connections
-				curCon.con.close(); // close it
-				dataSource.getMasterPrepStmtCache().remove(
-					curCon.con.toString());
+	public void close() throws java.sql.SQLException {
+		lock.lock();
+		try {
+			dataSource.log.debug("StandardXAConnection:close the XAConnection");
+	 //                if (con != null) { // if we have a current connection
+	//                        con.close(); // then close it
+	//                        dataSource.getMasterPrepStmtCache().remove(con.toString());
+	//                 }
+	                //commenented by karthicks - in case of transacted connection curcon will be null and physical connection con will not be null
+	                //and physical will be part of freeconnection which would be used by some other instance of XAConnection object at this instant
+	                //so only the curCon and its is associated connected should be closed 
+	                //it will happen fro non transacted connections.
+	                //in case of tx connectioins else part will come to play and close any freeconnections
+			if (curCon != null && !curCon.con.isClosed()) 
+	                { // if we have a current connection
+				curCon.con.close(); // then close it
+				dataSource.getMasterPrepStmtCache().remove(curCon.toString());
+			} 
+	                else { // no "current" connection
+				if (xaDataSource.getFreeCount() > 1) {
+					// if there are some free connections
+					//curCon.con.setAutoCommit(thisAutoCommit);
+					curCon = xaDataSource.getFreeConnection();
+					// get one of the free connections
+					curCon.con.close(); // close it
+					dataSource.getMasterPrepStmtCache().remove(
+						curCon.con.toString());
+				}
 			}
+			curCon = null; // remove stateful connection
+			con = null; // and physical connection
+			xaDataSource.connectionClosed();
+			// tell data source that connection's gone
+
+			isClosed = true; // connection is now closed
+			connectionHandle = null;
+		} finally {
+			lock.unlock();
 		}
-		curCon = null; // remove stateful connection
-		con = null; // and physical connection
-		xaDataSource.connectionClosed();
-		// tell data source that connection's gone
-		
-		isClosed = true; // connection is now closed
-		connectionHandle = null;
-		//timerThread.resume();					// stop the timeout checking
-		nextTimeout = 0; // I don't know how the above line was
-		// supposed to stop the thread but we
-		// should really just set the condition
-		// and let the thread stop itself
 	}
 
 	/**
@@ -211,141 +201,136 @@ public class StandardXAConnection
 	 * a separate method so that subclasses can call it and retain
 	 * the curCon property.
 	 */
-	public synchronized void doStart(Xid xid, int flags) throws XAException {
-		dataSource.log.debug(
-			"StandardXAConnection:doStart xid='"
-				+ xid
-				+ "' flags='"
-				+ flags
-				+ "'");
-		if (xid == null)
-			throw new XAException(XAException.XAER_INVAL);
-
-		// should only get called after a new/free connection has been made current
-                /* commented by karthick 
-		if (curCon == null) {
-			try {
-				curCon = xaDataSource.getFreeConnection();
-			} catch (Exception e) {
+	public void doStart(Xid xid, int flags) throws XAException {
+		lock.lock();
+		try {
+			if (dataSource.log.isDebugEnabled())
+				dataSource.log.debug(
+					"StandardXAConnection:doStart xid='"
+						+ xid
+						+ "' flags='"
+						+ flags
+						+ "'");
+			if (xid == null)
+				throw new XAException(XAException.XAER_INVAL);
+
+			// should only get called after a new/free connection has been made current
+	                /* commented by karthick 
+			if (curCon == null) {
+				try {
+					curCon = xaDataSource.getFreeConnection();
+				} catch (Exception e) {
+				}
+				dataSource.log.debug("StandardXAConnection:doStart curCon is null");
+				//throw new XAException (XAException.XAER_PROTO);
 			}
-			dataSource.log.debug("StandardXAConnection:doStart curCon is null");
-			//throw new XAException (XAException.XAER_PROTO);
-		}
-                */
-
-		/*
-		if ((curCon.getState() != Status.STATUS_NO_TRANSACTION) && (curCon.xid != xid )){
-		    dataSource.log.error("StandardXAConnection:doStart Invalid state:status="
-		            + curCon.getState() + ":id=" + curCon.id);
-		    throw new XAException (XAException.XAER_PROTO);
-		}
-		*/
+	                */
 
-		if (flags == TMRESUME
-			|| flags == TMJOIN) {
-			// if resuming or joining an existing transaction
-			try {
-				xaDataSource.processToWait();
-			} catch (Exception e) {
-				throw new XAException("Exception : " + e.toString());
-			}
-			synchronized (xaDataSource) {
-                            if(curCon != null)
-                            {
-                                //free connections will be added if this is a new XAConnection object or previously an non transacted connection
-                                // so no need to check fori contains any as a precaution
-                                //commented by karthicks
-                                if(!xaDataSource.freeConnections.contains(curCon))
-                                {
-                                    xaDataSource.freeConnections.addElement(curCon);
-                                }
-                            }
-                            // save the current connection
+			/*
+			if ((curCon.getState() != Status.STATUS_NO_TRANSACTION) && (curCon.xid != xid )){
+			    dataSource.log.error("StandardXAConnection:doStart Invalid state:status="
+			            + curCon.getState() + ":id=" + curCon.id);
+			    throw new XAException (XAException.XAER_PROTO);
 			}
-			curCon = xaDataSource.getConnection(xid, true);
-			// must find connection handling xid
-			con = curCon.con; // must use correct physical connection
-		} // else {
-// 			xaDataSource.getConnection(xid, false);
-// 			// must NOT find connection handling xid
-// 		}
-                //commented by karthicks -unnecessary fetch
-
-                //moved by karthicks
-                // should only get called after a new/free which has been called in different tx earlier 
-                if (curCon == null) {
-                    try {
-                        curCon = xaDataSource.getFreeConnection();
-                        con = curCon.con;
-                    } catch (Exception e) {
-                        dataSource.log.error("error while gettting connection "+e,e);
-                    }
-                    dataSource.log.debug("StandardXAConnection:doStart curCon is null");
-                    //throw new XAException (XAException.XAER_PROTO);
-		}
-
-
-                //on suspend all enlisted resource will get called so resetonresume will be set "true" to those StdxaconnHandle
-                //on resume viceversa(deleisted resource ) will get enlisted again so start will get called and current tx will be reset
-                //by -  karthicks
-		StandardXAConnectionHandle xad = connectionHandle;
-		try {
-			xad.setGlobalTransaction(true);
-                        if(flags == TMRESUME && xad.resetTxonResume)
-                        {
-                            xad.resetTxonResume = false;
-                            if(transactionManager != null &&  xad.tx == null)
-                            {
-                                try
-                                {
-                                    connectionHandle.tx =transactionManager.getTransaction();
-                                }
-                                catch(javax.transaction.SystemException se)
-                                {
-                                    throw new XAException(se.toString());
-                                }
-                            }
-                        }
-
-			// delegate must use current physical connection
-		} catch (SQLException e) {
-			throw new XAException(e.toString());
-		}
+			*/
 
-		if (timeoutSecs != 0) { // if a timeout has been defined
-				curCon.timeout = System.currentTimeMillis() // set the timeout
-	+timeoutSecs * 1000;
-			if (nextTimeout == 0) {
-				// if there are currently no timeouts set up
-				nextTimeout = curCon.timeout; // set new timeout
-				notify();
-				//timerThread.resume();				// start checking for timeouts
-			} else { // some timeouts already exist
-				if (curCon.timeout < nextTimeout) {
-					// if this expires sooner than next timeout
-					nextTimeout = curCon.timeout; // set new timeout
+			if (flags == TMRESUME
+				|| flags == TMJOIN) {
+				// if resuming or joining an existing transaction
+				try {
+					xaDataSource.processToWait();
+				} catch (Exception e) {
+					throw new XAException("Exception : " + e.toString());
 				}
+	                        if(curCon != null)
+	                        {
+	                            //free connections will be added if this is a new XAConnection object or previously an non transacted connection
+	                            // so no need to check fori contains any as a precaution
+	                            //commented by karthicks
+	                            xaDataSource.pushFreeConnection(curCon);
+	                        }
+	                        // save the current connection
+				curCon = xaDataSource.getConnection(xid, true);
+				// must find connection handling xid
+				con = curCon.con; // must use correct physical connection
+			} // else {
+	// 			xaDataSource.getConnection(xid, false);
+	// 			// must NOT find connection handling xid
+	// 		}
+	                //commented by karthicks -unnecessary fetch
+
+	                //moved by karthicks
+	                // should only get called after a new/free which has been called in different tx earlier 
+	                if (curCon == null) {
+	                    try {
+	                        curCon = xaDataSource.getFreeConnection();
+	                        con = curCon.con;
+	                    } catch (Exception e) {
+	                        dataSource.log.error("error while gettting connection "+e,e);
+	                    }
+	                    dataSource.log.debug("StandardXAConnection:doStart curCon is null");
+	                    //throw new XAException (XAException.XAER_PROTO);
 			}
-		}
 
-		curCon.xid = xid; // connection now associated with this XID
-		curCon.timedOut = false; // forget about any old timeouts
-		curCon.commitOnPrepare = commitOnPrepare;
-		// tell it when to do a commit
-		if (!xaDataSource.xidConnections.containsKey(xid)) {
+
+	                //on suspend all enlisted resource will get called so resetonresume will be set "true" to those StdxaconnHandle
+	                //on resume viceversa(deleisted resource ) will get enlisted again so start will get called and current tx will be reset
+	                //by -  karthicks
+			StandardXAConnectionHandle xad = connectionHandle;
 			try {
-				log.debug("StandardXAConnection:dostart before processToWait");
-				xaDataSource.processToWait();
-				log.debug("StandardXAConnection:dostart after processToWait");
-			} catch (Exception e) {
-				throw new XAException("Exception : " + e.toString());
+				xad.setGlobalTransaction(true);
+	                        if(flags == TMRESUME && xad.resetTxonResume)
+	                        {
+	                            xad.resetTxonResume = false;
+	                            if(transactionManager != null &&  xad.tx == null)
+	                            {
+	                                try
+	                                {
+	                                    connectionHandle.tx =transactionManager.getTransaction();
+	                                }
+	                                catch(javax.transaction.SystemException se)
+	                                {
+	                                    throw new XAException(se.toString());
+	                                }
+	                            }
+	                        }
+
+				// delegate must use current physical connection
+			} catch (SQLException e) {
+				throw new XAException(e.toString());
 			}
-			synchronized (xaDataSource) {
+
+			curCon.xid = xid; // connection now associated with this XID
+			curCon.timedOut = false; // forget about any old timeouts
+			curCon.commitOnPrepare = commitOnPrepare;
+			// tell it when to do a commit
+			if (!xaDataSource.xidConnections.containsKey(xid)) {
+				long waited;
+				try {
+					log.debug("StandardXAConnection:dostart before processToWait");
+					waited = xaDataSource.waitForConnection();
+					log.debug("StandardXAConnection:dostart after processToWait");
+				} catch (Exception e) {
+					throw new XAException("Exception : " + e.toString());
+				}
 				xaDataSource.xidConnections.put(xid, curCon);
 				// place on allocated list
+				curCon.checkOutTime = System.nanoTime();
+				xaDataSource.metrics.checkedOut(waited);
+			}
+			if (timeoutSecs != 0) { // if a timeout has been defined
+				// the scheduler rolls back the transaction when it times out,
+				// the timeout is cancelled when the connection is freed
+				xaDataSource.timeouts.schedule(
+					curCon,
+					System.currentTimeMillis() + timeoutSecs * 1000L);
+			} else {
+				xaDataSource.timeouts.cancel(curCon);
 			}
+			curCon.setState(Status.STATUS_ACTIVE); // set new connection state
+		} finally {
+			lock.unlock();
 		}
-		curCon.setState(Status.STATUS_ACTIVE); // set new connection state
 	}
 
 	/**
@@ -355,12 +340,17 @@ public class StandardXAConnection
 	 * connection which must have been previously established using
 	 * getConnection.
 	 */
-	public synchronized void start(Xid xid, int flags) throws XAException {
-		dataSource.log.debug(
-			"StandardXAConnection:start associate the current connection with a global transaction");
-		doStart(xid, flags); // do most of the work
-                 curCon = null; // no longer owned by this object
-		//con = null;						// ditto
+	public void start(Xid xid, int flags) throws XAException {
+		lock.lock();
+		try {
+			dataSource.log.debug(
+				"StandardXAConnection:start associate the current connection with a global transaction");
+			doStart(xid, flags); // do most of the work
+	                 curCon = null; // no longer owned by this object
+			//con = null;						// ditto
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -373,45 +363,64 @@ public class StandardXAConnection
 	 * <P>
 	 * Note that the only effect is to change the connection state.
 	 */
-	public synchronized void end(Xid xid, int flags)
+	public void end(Xid xid, int flags)
 		throws XAException { //not tested XS
-		dataSource.log.debug("StandardXAConnection:end");
-		dataSource.log.debug(
-			"StandardXAConnection:end xid='" + xid + "' flags='" + flags + "'");
-
-		if (xid == null)
-			throw new XAException(XAException.XAER_INVAL);
-		StandardXAStatefulConnection statecon =
-			xaDataSource.getConnection(xid, true);
-		// must find connection for this transaction
-		int state = statecon.getState(); // get current state of connection
-		if (state != Status.STATUS_ACTIVE) // must have had start() called
-			throw new XAException(XAException.XAER_PROTO);
-		/*System.out.println("connectionHandle.globalTransaction = false;\n"+
-		        "connectionHandle.setAutoCommit(true);");
-		connectionHandle.globalTransaction = false;
+		lock.lock();
 		try {
-		    connectionHandle.setAutoCommit(true);
-		} catch (SQLException sqle) {
-		    dataSource.log("StandardXAConnection pb: "+sqle);
-		}*/
-		//        try {
-
-                //on suspend all end of enlisted resource will get called so resetonresume will be set "true" to those StdxaconnHandle
-                //on resume viceversa(deleisted resource ) will get enlisted again so start will get called and current tx will be reset
-                //by -  karthicks
-                if(connectionHandle.tx != null)
-                {
-                    connectionHandle.resetTxonResume =true;
-                }
-		connectionHandle.tx = null;
-		connectionHandle.globalTransaction = false;
-
-		/*          connectionHandle.setGlobalTransaction(false);
-		      } catch (SQLException sqle) {
-		          dataSource.log.error("StandardXAConnection:end pb "+sqle);
-		      }
-		*/
+			dataSource.log.debug("StandardXAConnection:end");
+			if (dataSource.log.isDebugEnabled())
+				dataSource.log.debug(
+					"StandardXAConnection:end xid='" + xid + "' flags='" + flags + "'");
+
+			if (xid == null)
+				throw new XAException(XAException.XAER_INVAL);
+			StandardXAStatefulConnection statecon =
+				xaDataSource.getConnection(xid, true);
+			// must find connection for this transaction
+			int state = statecon.getState(); // get current state of connection
+			if (state != Status.STATUS_ACTIVE) // must have had start() called
+				throw new XAException(XAException.XAER_PROTO);
+			// the updates batched by the handle belong to the branch
+			if (connectionHandle != null) {
+				try {
+					if (flags == TMFAIL)
+						connectionHandle.discardBatch();
+					else
+						connectionHandle.flushBatch();
+				} catch (SQLException e) {
+					dataSource.log.error(
+						"StandardXAConnection:end batched updates failed: " + e);
+					throw new XAException(XAException.XA_RBROLLBACK);
+				}
+			}
+			/*System.out.println("connectionHandle.globalTransaction = false;\n"+
+			        "connectionHandle.setAutoCommit(true);");
+			connectionHandle.globalTransaction = false;
+			try {
+			    connectionHandle.setAutoCommit(true);
+			} catch (SQLException sqle) {
+			    dataSource.log("StandardXAConnection pb: "+sqle);
+			}*/
+			//        try {
+
+	                //on suspend all end of enlisted resource will get called so resetonresume will be set "true" to those StdxaconnHandle
+	                //on resume viceversa(deleisted resource ) will get enlisted again so start will get called and current tx will be reset
+	                //by -  karthicks
+	                if(connectionHandle.tx != null)
+	                {
+	                    connectionHandle.resetTxonResume =true;
+	                }
+			connectionHandle.tx = null;
+			connectionHandle.globalTransaction = false;
+
+			/*          connectionHandle.setGlobalTransaction(false);
+			      } catch (SQLException sqle) {
+			          dataSource.log.error("StandardXAConnection:end pb "+sqle);
+			      }
+			*/
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -463,75 +472,82 @@ public class StandardXAConnection
 	 * Performs a commit on this resource manager's branch of
 	 * the global transaction.
 	 */
-	public synchronized void commit(Xid xid, boolean onePhase)
+	public void commit(Xid xid, boolean onePhase)
 		throws XAException {
-		dataSource.log.debug("StandardXAConnection:commit perform a commit");
-		if (xid == null)
-			throw new XAException(XAException.XAER_INVAL);
+		lock.lock();
+		try {
+			dataSource.log.debug("StandardXAConnection:commit perform a commit");
+			if (xid == null)
+				throw new XAException(XAException.XAER_INVAL);
 
-		StandardXAStatefulConnection statecon =
-			xaDataSource.getConnection(xid, true);
-		// must find connection for this transaction
-		dataSource.log.debug("StandardXAConnection:commit case(state)");
+			StandardXAStatefulConnection statecon =
+				xaDataSource.getConnection(xid, true);
+			// must find connection for this transaction
+			dataSource.log.debug("StandardXAConnection:commit case(state)");
 
-		try {
-			switch (statecon.getState()) { // action depends on current state
-				case Status.STATUS_PREPARING : // already commited
-					break; // ...so do nothing
-				case Status.STATUS_PREPARED : // ready to do commit
-					try {
-						dataSource.log.debug(
-							"StandardXAConnection:commit try to commit a connection (STATUS_PREPARED)");
-						statecon.con.commit();
-						// perform the commit operation now
+			try {
+				switch (statecon.getState()) { // action depends on current state
+					case Status.STATUS_PREPARING : // already commited
+						break; // ...so do nothing
+					case Status.STATUS_PREPARED : // ready to do commit
+						try {
+							dataSource.log.debug(
+								"StandardXAConnection:commit try to commit a connection (STATUS_PREPARED)");
+							statecon.con.commit();
+							// perform the commit operation now
+							dataSource.log.debug(
+								"StandardXAConnection:commit commit is ok");
+						} catch (SQLException e) {
+							throw new XAException(XAException.XA_RBROLLBACK);
+							// rollback will have been performed
+						}
+						break;
+					case Status.STATUS_COMMITTED : // could be a 1-phase commit
+					case Status.STATUS_ACTIVE :
+						if (!onePhase) { // if not a one-phase commit
+							throw new XAException(XAException.XAER_PROTO);
+						}
+
+						try {
+							dataSource.log.debug(
+								"StandardXAConnection:commit try to commit a connection (STATUS_ACTIVE)");
+							statecon.con.commit();
+							// perform the commit operation now
+							dataSource.log.debug(
+								"StandardXAConnection:commit commit is ok");
+						} catch (SQLException e) {
+	                                            throw new XAException(XAException.XA_RBROLLBACK);
+							// rollback will have been performed
+						}
+						break;
+					default :
+						{
+							if (dataSource.log.isDebugEnabled())
+								dataSource.log.debug(
+									"StandardXAConnection:commit UNKNOWN STATUS!:"
+										+ statecon.getState());
+							throw new XAException(XAException.XAER_PROTO);
+						}
+				}
+			} catch (XAException e) {
+				throw e;
+			} finally {
+				try {
+					if (dataSource.log.isDebugEnabled())
 						dataSource.log.debug(
-							"StandardXAConnection:commit commit is ok");
-					} catch (SQLException e) {
-						throw new XAException(XAException.XA_RBROLLBACK);
-						// rollback will have been performed
-					}
-					break;
-				case Status.STATUS_COMMITTED : // could be a 1-phase commit
-				case Status.STATUS_ACTIVE :
-					if (!onePhase) { // if not a one-phase commit
-						throw new XAException(XAException.XAER_PROTO);
-					}
+							"StandardXAConnection:commit setAutoCommit to '"
+								+ thisAutoCommit
+								+ "'");
+					statecon.con.setAutoCommit(thisAutoCommit);
+				} catch (SQLException e) {
+					dataSource.log.debug(
+						"StandardXAConnection:commit setAutoCommit problem");
+				}
 
-					try {
-						dataSource.log.debug(
-							"StandardXAConnection:commit try to commit a connection (STATUS_ACTIVE)");
-						statecon.con.commit();
-						// perform the commit operation now
-						dataSource.log.debug(
-							"StandardXAConnection:commit commit is ok");
-					} catch (SQLException e) {
-                                            throw new XAException(XAException.XA_RBROLLBACK);
-						// rollback will have been performed
-					}
-					break;
-				default :
-					{
-						dataSource.log.debug(
-							"StandardXAConnection:commit UNKNOWN STATUS!:"
-								+ statecon.getState());
-						throw new XAException(XAException.XAER_PROTO);
-					}
+				xaDataSource.freeConnection(xid, false);
 			}
-		} catch (XAException e) {
-			throw e;
 		} finally {
-			try {
-				dataSource.log.debug(
-					"StandardXAConnection:commit setAutoCommit to '"
-						+ thisAutoCommit
-						+ "'");
-				statecon.con.setAutoCommit(thisAutoCommit);
-			} catch (SQLException e) {
-				dataSource.log.debug(
-					"StandardXAConnection:commit setAutoCommit problem");
-			}
-                        
-			xaDataSource.freeConnection(xid, false);
+			lock.unlock();
 		}
 	}
 
@@ -539,51 +555,57 @@ public class StandardXAConnection
 	 * PERFORMS a rollback on this resource manager's branch of
 	 * the global transaction.
 	 */
-	public synchronized void rollback(Xid xid) throws XAException {
-		dataSource.log.debug("StandardXAConnection:rollback");
-		if (xid == null)
-			throw new XAException(XAException.XAER_INVAL);
+	public void rollback(Xid xid) throws XAException {
+		lock.lock();
+		try {
+			dataSource.log.debug("StandardXAConnection:rollback");
+			if (xid == null)
+				throw new XAException(XAException.XAER_INVAL);
 
-		StandardXAStatefulConnection statecon =
-			xaDataSource.getConnection(xid, true);
-		// must find connection for this transaction
+			StandardXAStatefulConnection statecon =
+				xaDataSource.getConnection(xid, true);
+			// must find connection for this transaction
 
-		try {
-			switch (statecon.getState()) { // action depends on current state
-				case Status.STATUS_PREPARING : // already commited
-					throw new XAException(XAException.XA_HEURCOM);
-				case Status.STATUS_PREPARED : // ready to do rollback
-				case Status.STATUS_ROLLING_BACK :
-				case Status.STATUS_ACTIVE :
-					try {
-						dataSource.log.debug(
-							"StandardXAConnection:rollback try to perform the rollback operation");
-						statecon.con.rollback();
-						// perform the rollback operation
+			try {
+				switch (statecon.getState()) { // action depends on current state
+					case Status.STATUS_PREPARING : // already commited
+						throw new XAException(XAException.XA_HEURCOM);
+					case Status.STATUS_PREPARED : // ready to do rollback
+					case Status.STATUS_ROLLING_BACK :
+					case Status.STATUS_ACTIVE :
+						try {
+							dataSource.log.debug(
+								"StandardXAConnection:rollback try to perform the rollback operation");
+							statecon.con.rollback();
+							// perform the rollback operation
+							dataSource.log.debug(
+								"StandardXAConnection:rollback performed the rollback");
+						} catch (SQLException e) {
+							throw new XAException(XAException.XA_RBROLLBACK);
+							// rollback will have been performed
+						}
+						break;
+					default :
+						throw new XAException(XAException.XAER_PROTO);
+				}
+			} catch (XAException e) {
+				throw e;
+			} finally {
+				try {
+					if (dataSource.log.isDebugEnabled())
 						dataSource.log.debug(
-							"StandardXAConnection:rollback performed the rollback");
-					} catch (SQLException e) {
-						throw new XAException(XAException.XA_RBROLLBACK);
-						// rollback will have been performed
-					}
-					break;
-				default :
-					throw new XAException(XAException.XAER_PROTO);
+							"StandardXAConnection:rollback setAutoCommit to '"
+								+ thisAutoCommit
+								+ "'");
+					statecon.con.setAutoCommit(thisAutoCommit);
+				} catch (SQLException e) {
+					dataSource.log.debug(
+						"StandardXAConnection:rollback setAutoCommit problem");
+				}
+				xaDataSource.freeConnection(xid, false);
 			}
-		} catch (XAException e) {
-			throw e;
 		} finally {
-			try {
-				dataSource.log.debug(
-					"StandardXAConnection:rollback setAutoCommit to '"
-						+ thisAutoCommit
-						+ "'");
-				statecon.con.setAutoCommit(thisAutoCommit);
-			} catch (SQLException e) {
-				dataSource.log.debug(
-					"StandardXAConnection:rollback setAutoCommit problem");
-			}
-			xaDataSource.freeConnection(xid, false);
+			lock.unlock();
 		}
 	}
 
@@ -634,8 +656,9 @@ public class StandardXAConnection
 	 * does nothing - we need to know about database internals to do that.
 	 */
 	public Xid[] recover(int flag) throws XAException {
-		dataSource.log.debug(
-			"StandardXAConnection:recover recover flag=" + flag);
+		if (dataSource.log.isDebugEnabled())
+			dataSource.log.debug(
+				"StandardXAConnection:recover recover flag=" + flag);
 		if (flag != TMSTARTRSCAN && flag != TMENDRSCAN && flag != TMNOFLAGS) {
 			throw new XAException(XAException.XAER_INVAL);
 		}
@@ -646,11 +669,14 @@ public class StandardXAConnection
 	}
 
 	/**
-	 * Accessor methods for timeout.
+	 * Accessor methods for timeout. The timeout applies to the
+	 * transactions started after the call.
 	 */
-	public boolean setTransactionTimeout(int seconds) {
+	public boolean setTransactionTimeout(int seconds) throws XAException {
+		if (seconds < 0)
+			throw new XAException(XAException.XAER_INVAL);
 		timeoutSecs = seconds;
-		return false;
+		return true;
 	}
 
 	public int getTransactionTimeout() {
@@ -665,53 +691,6 @@ public class StandardXAConnection
 		return commitOnPrepare;
 	}
 
-	/**
-	 * Periodically checks for timed out connections.
-	 */
-	public void run() {
-		//dataSource.log.debug("StandardXAConnection:run check for timed out connections");
-		while (true) { // loop forever
-			/*
-			if (nextTimeout == 0) {			// if there are no more timeouts scheduled
-			timerThread.suspend();			// then go to sleep
-			if (isClosed) return;						// exit if connection is closed
-			}
-			*/
-			try {
-				synchronized (this) {
-					while (nextTimeout == 0) {
-						wait();
-					}
-				}
-			} catch (InterruptedException e) {
-			}
-
-			if (isClosed) {
-				return;
-			}
-
-			try {
-				Thread.sleep(timeoutPeriod); // sleep for a few seconds
-				if (isClosed)
-					return; // exit if connection is closed
-			} catch (InterruptedException e) {
-				e.printStackTrace(); // we don't expect any of these
-			}
-
-			long curTime = System.currentTimeMillis(); // get system time
-			if (curTime < nextTimeout)
-				continue; // check for time still to go
-
-			// One or more transactions have timeout out.
-			try {
-				nextTimeout = xaDataSource.checkTimeouts(curTime);
-				// check to see if connections have timeout out
-			} catch (Exception e) {
-				e.printStackTrace(); // we don't expect any of these
-			}
-		}
-	}
-
 	public Reference getReference() throws NamingException {
 		// Note that we use getClass().getName() to provide the factory
 		// class name. It is assumed that this class, and all of its
@@ -738,8 +717,6 @@ public class StandardXAConnection
 		sb.append("     is closed =<"+this.isClosed + ">\n");
 		sb.append("     this autoCommit =<"+this.thisAutoCommit + ">\n");
 		sb.append("     listeners size =<"+this.listeners.size() + ">\n");
-		sb.append("     next timeOut =<"+this.nextTimeout + ">\n");
-		sb.append("     timeOut period =<"+this.timeoutPeriod + ">\n");
 		sb.append("     timeOut secs =<"+this.timeoutSecs + ">\n");
 		sb.append("     transaction manager=<"+this.transactionManager + ">\n");
 		sb.append(this.xaDataSource.toString());
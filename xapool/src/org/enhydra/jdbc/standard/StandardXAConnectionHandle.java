@@ -62,38 +62,46 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 		this.transactionManager = tm;
 	}
 
-	synchronized public void close() throws SQLException {
-		Transaction ttx = tx;
-		// note: ttx is used instead of tx because super.close(), call end()
-		// on StdXAConnection which call tx = null;
-		//		super.close();
-		log.debug("StandardXAConnectionHandle:close");
-		log.debug(
-			"StandardXAConnectionHandle:close globalTransaction='"
-				+ globalTransaction
-				+ "' con.getAutoCommit='"
-				+ con.getAutoCommit()
-				+ "' ttx='"
-				+ ttx
-				+ "'");
-
-		if ((!con.getAutoCommit()) && (ttx == null)) {
-			log.debug(
-				"StandardXAConnectionHandle:close rollback the connection");
-			con.rollback();
-			con.setAutoCommit(thisAutoCommit);
-		} else
-			log.debug("StandardXAConnectionHandle:close do nothing else");
-		isReallyUsed = false;
-		log.debug(
-			"StandardXAConnectionHandle:close AFTER globalTransaction='"
-				+ globalTransaction
-				+ "' con.getAutoCommit='"
-				+ con.getAutoCommit()
-				+ "' ttx='"
-				+ ttx
-				+ "'");
-		super.close();
+	public void close() throws SQLException {
+		lock.lock();
+		try {
+			Transaction ttx = tx;
+			// note: ttx is used instead of tx because super.close(), call end()
+			// on StdXAConnection which call tx = null;
+			//		super.close();
+			log.debug("StandardXAConnectionHandle:close");
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXAConnectionHandle:close globalTransaction='"
+						+ globalTransaction
+						+ "' con.getAutoCommit='"
+						+ con.getAutoCommit()
+						+ "' ttx='"
+						+ ttx
+						+ "'");
+
+			if ((!con.getAutoCommit()) && (ttx == null)) {
+				log.debug(
+					"StandardXAConnectionHandle:close rollback the connection");
+				discardBatch();
+				con.rollback();
+				con.setAutoCommit(thisAutoCommit);
+			} else
+				log.debug("StandardXAConnectionHandle:close do nothing else");
+			isReallyUsed = false;
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXAConnectionHandle:close AFTER globalTransaction='"
+						+ globalTransaction
+						+ "' con.getAutoCommit='"
+						+ con.getAutoCommit()
+						+ "' ttx='"
+						+ ttx
+						+ "'");
+			super.close();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -101,10 +109,11 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 	 * gets associated with this connection.
 	 */
 	void setGlobalTransaction(boolean setting) throws SQLException {
-		log.debug(
-			"StandardXAConnectionHandle:setGlobalTransaction gTransaction='"
-				+ setting
-				+ "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardXAConnectionHandle:setGlobalTransaction gTransaction='"
+					+ setting
+					+ "'");
 		globalTransaction = setting; // set global flag
 		con = pooledCon.getPhysicalConnection(); // get the real connection
 		if (con == null)
@@ -139,110 +148,124 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 		//tx = null;
 	}
 
-	synchronized PreparedStatement checkPreparedCache(
+	PreparedStatement checkPreparedCache(
 		String sql,
 		int type,
 		int concurrency,
 		int holdability,
 		Object lookupKey)
 		throws SQLException {
-		PreparedStatement ret = null; // the return value
-		// NOTE - We include the Connection in the lookup key. This has no
-		// effect here but is needed by StandardXAConnection where the the physical
-		// Connection used can vary over time depending on the global transaction.
-		if (preparedStatementCache != null) {
-			Object obj = preparedStatementCache.get(lookupKey);
-			// see if there's a PreparedStatement already
-			if (obj != null) { // if there is
-				log.debug(
-					"StandardXAConnectionHandle:checkPreparedCache object is found");
-				ret = (PreparedStatement) obj; // use as return value
-				try {
-					ret.clearParameters(); // make it look like new
-				} catch (SQLException e) {
-					// Bad statement, so we have to create a new one
+		lock.lock();
+		try {
+			PreparedStatement ret = null; // the return value
+			// NOTE - We include the Connection in the lookup key. This has no
+			// effect here but is needed by StandardXAConnection where the the physical
+			// Connection used can vary over time depending on the global transaction.
+			if (preparedStatementCache != null) {
+				Object obj = preparedStatementCache.get(lookupKey);
+				// see if there's a PreparedStatement already
+				lookedUp(lookupKey, sql, type, concurrency, holdability, -1, obj != null);
+				if (obj != null) { // if there is
+					log.debug(
+						"StandardXAConnectionHandle:checkPreparedCache object is found");
+					ret = (PreparedStatement) obj; // use as return value
+					try {
+						ret.clearParameters(); // make it look like new
+					} catch (SQLException e) {
+						// Bad statement, so we have to create a new one
+						ret = createPreparedStatement(sql, type, concurrency, holdability);
+						// create new prepared statement
+					}
+					preparedStatementCache.remove(lookupKey);
+					// make sure it cannot be re-used
+					inUse.put(lookupKey, ret);
+					// make sure it gets reused by later delegates
+				} else { // no PreparedStatement ready
+					log.debug(
+						"StandardXAConnectionHandle:checkPreparedCache object is *NOT* found");
 					ret = createPreparedStatement(sql, type, concurrency, holdability);
 					// create new prepared statement
+					inUse.put(lookupKey, ret);
+					// will get saved in prepared statement cache
 				}
-				preparedStatementCache.remove(lookupKey);
-				// make sure it cannot be re-used
-				inUse.put(lookupKey, ret);
-				// make sure it gets reused by later delegates
-			} else { // no PreparedStatement ready
+			} else {
 				log.debug(
-					"StandardXAConnectionHandle:checkPreparedCache object is *NOT* found");
+					"StandardXAConnectionHandle:checkPreparedCache object the cache is out");
 				ret = createPreparedStatement(sql, type, concurrency, holdability);
 				// create new prepared statement
-				inUse.put(lookupKey, ret);
-				// will get saved in prepared statement cache
 			}
-		} else {
-			log.debug(
-				"StandardXAConnectionHandle:checkPreparedCache object the cache is out");
-			ret = createPreparedStatement(sql, type, concurrency, holdability);
-			// create new prepared statement
+			// We don't actually give the application a real PreparedStatement. Instead
+			// they get a StandardPreparedStatement that delegates everything except
+			// PreparedStatement.close();
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXAConnectionHandle:checkPreparedCache pstmt='"
+						+ ret.toString()
+						+ "'");
+			return ret;
+		} finally {
+			lock.unlock();
 		}
-		// We don't actually give the application a real PreparedStatement. Instead
-		// they get a StandardPreparedStatement that delegates everything except
-		// PreparedStatement.close();
-		log.debug(
-			"StandardXAConnectionHandle:checkPreparedCache pstmt='"
-				+ ret.toString()
-				+ "'");
-		return ret;
 	}
 
 
 
-	synchronized PreparedStatement checkPreparedCache(
+	PreparedStatement checkPreparedCache(
 		String sql,
 		int autogeneratedkeys,
 		Object lookupKey)
 		throws SQLException {
-		PreparedStatement ret = null; // the return value
-		// NOTE - We include the Connection in the lookup key. This has no
-		// effect here but is needed by StandardXAConnection where the the physical
-		// Connection used can vary over time depending on the global transaction.
-		if (preparedStatementCache != null) {
-			Object obj = preparedStatementCache.get(lookupKey);
-			// see if there's a PreparedStatement already
-			if (obj != null) { // if there is
-				log.debug(
-					"StandardXAConnectionHandle:checkPreparedCache object is found");
-				ret = (PreparedStatement) obj; // use as return value
-				try {
-					ret.clearParameters(); // make it look like new
-				} catch (SQLException e) {
-					// Bad statement, so we have to create a new one
+		lock.lock();
+		try {
+			PreparedStatement ret = null; // the return value
+			// NOTE - We include the Connection in the lookup key. This has no
+			// effect here but is needed by StandardXAConnection where the the physical
+			// Connection used can vary over time depending on the global transaction.
+			if (preparedStatementCache != null) {
+				Object obj = preparedStatementCache.get(lookupKey);
+				// see if there's a PreparedStatement already
+				lookedUp(lookupKey, sql, 0, 0, 0, autogeneratedkeys, obj != null);
+				if (obj != null) { // if there is
+					log.debug(
+						"StandardXAConnectionHandle:checkPreparedCache object is found");
+					ret = (PreparedStatement) obj; // use as return value
+					try {
+						ret.clearParameters(); // make it look like new
+					} catch (SQLException e) {
+						// Bad statement, so we have to create a new one
+						ret = createPreparedStatement(sql, autogeneratedkeys);
+						// create new prepared statement
+					}
+					preparedStatementCache.remove(lookupKey);
+					// make sure it cannot be re-used
+					inUse.put(lookupKey, ret);
+					// make sure it gets reused by later delegates
+				} else { // no PreparedStatement ready
+					log.debug(
+						"StandardXAConnectionHandle:checkPreparedCache object is *NOT* found");
 					ret = createPreparedStatement(sql, autogeneratedkeys);
 					// create new prepared statement
+					inUse.put(lookupKey, ret);
+					// will get saved in prepared statement cache
 				}
-				preparedStatementCache.remove(lookupKey);
-				// make sure it cannot be re-used
-				inUse.put(lookupKey, ret);
-				// make sure it gets reused by later delegates
-			} else { // no PreparedStatement ready
+			} else {
 				log.debug(
-					"StandardXAConnectionHandle:checkPreparedCache object is *NOT* found");
+					"StandardXAConnectionHandle:checkPreparedCache object the cache is out");
 				ret = createPreparedStatement(sql, autogeneratedkeys);
 				// create new prepared statement
-				inUse.put(lookupKey, ret);
-				// will get saved in prepared statement cache
 			}
-		} else {
-			log.debug(
-				"StandardXAConnectionHandle:checkPreparedCache object the cache is out");
-			ret = createPreparedStatement(sql, autogeneratedkeys);
-			// create new prepared statement
+			// We don't actually give the application a real PreparedStatement. Instead
+			// they get a StandardPreparedStatement that delegates everything except
+			// PreparedStatement.close();
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXAConnectionHandle:checkPreparedCache pstmt='"
+						+ ret.toString()
+						+ "'");
+			return ret;
+		} finally {
+			lock.unlock();
 		}
-		// We don't actually give the application a real PreparedStatement. Instead
-		// they get a StandardPreparedStatement that delegates everything except
-		// PreparedStatement.close();
-		log.debug(
-			"StandardXAConnectionHandle:checkPreparedCache pstmt='"
-				+ ret.toString()
-				+ "'");
-		return ret;
 	}
 
 
@@ -290,9 +313,10 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 							tx.enlistResource(xacon.getXAResource());
 							// enlist the xaResource in the transaction
 						} catch (RollbackException n) {
-							log.debug(
-								"StandardXAConnectionHandle:prepareStatemnet enlistResource exception : "
-									+ n.toString());
+							if (log.isDebugEnabled())
+								log.debug(
+									"StandardXAConnectionHandle:prepareStatemnet enlistResource exception : "
+										+ n.toString());
 						}
 					} else {
 						log.debug(
@@ -345,9 +369,10 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 				tx.enlistResource(xacon.getXAResource());
 				// enlist the xaResource in the transaction
 			    } catch (RollbackException n) {
-				log.debug(
-					  "StandardXAConnectionHandle:prepareStatemnet enlistResource exception : "
-					  + n.toString());
+				if (log.isDebugEnabled())
+					log.debug(
+						  "StandardXAConnectionHandle:prepareStatemnet enlistResource exception : "
+						  + n.toString());
 			    }
 			} else {
 			    log.debug(
@@ -456,9 +481,10 @@ public class StandardXAConnectionHandle extends StandardConnectionHandle {
 							tx.enlistResource(xacon.getXAResource());
 							// enlist the xaResource in the transaction
 						} catch (RollbackException n) {
-							log.debug(
-								"StandardXAConnectionHandle:createStatement enlistResource exception: "
-									+ n.toString());
+							if (log.isDebugEnabled())
+								log.debug(
+									"StandardXAConnectionHandle:createStatement enlistResource exception: "
+										+ n.toString());
 						}
 					} else {
 						log.debug(
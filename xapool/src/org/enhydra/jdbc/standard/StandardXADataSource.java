@@ -21,15 +21,22 @@
  */
 package org.enhydra.jdbc.standard;
 
+import org.enhydra.jdbc.util.ConcurrentStack;
 import org.enhydra.jdbc.util.Logger;
+import org.enhydra.jdbc.util.PoolMetrics;
 import org.apache.commons.logging.LogFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Enumeration;
+import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.Vector;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -47,6 +54,13 @@ import javax.transaction.TransactionManager;
 
 /**
  * Data source for creating StandardXAConnections.
+ * <P>
+ * The physical connections are kept in a concurrent registry: a
+ * lock-free stack of free connections, and concurrent maps of the
+ * connections associated with a xid and of the timed out ones. The
+ * start, end, prepare, commit and rollback calls of the XA connections
+ * do not lock the data source, only the threads waiting for a connection
+ * when maxCon is reached do.
  */
 public class StandardXADataSource
 	extends StandardConnectionPoolDataSource
@@ -56,14 +70,44 @@ public class StandardXADataSource
 	public int maxCon; // maximum number of connections
 	public long deadLockMaxWait;
 	// time (in ms) to wait before return an exception
-	Vector freeConnections; // connections not currently associated with an XID
-	Hashtable xidConnections; // connections currently associated with an XID
-	Hashtable deadConnections;
+	ConcurrentStack freeConnections;
+	// connections not currently associated with an XID
+	ConcurrentHashMap xidConnections;
+	// connections currently associated with an XID
+	ConcurrentHashMap timedOutConnections;
+	// free connections whose transaction has timed out, by XID. They are
+	// reused after the other free connections, so that the TM has a chance
+	// to get the timeout exception
+	ConcurrentHashMap deadConnections;
 	// connections which should be discarded when the transaction finishes
 	public int connectionCount = 0; // total number of connections created
 	public long deadLockRetryWait; // time to wait before 2 try of loop
 	transient public TransactionManager transactionManager;
     private String transactionManagerName;
+	private volatile int waiting; // threads waiting in processToWait
+	// the threads wait for a freed connection on this condition rather
+	// than in the monitor, a waiting virtual thread does not pin its
+	// carrier thread
+	private final ReentrantLock freedLock = new ReentrantLock();
+	private final Condition freed = freedLock.newCondition();
+
+	// transaction timeouts of all the XA connections
+	final XATimeoutScheduler timeouts = new XATimeoutScheduler(this);
+
+	// wait, hold (association with a xid), create and close times
+	final PoolMetrics metrics = new PoolMetrics() {
+		public int getActiveCount() {
+			return xidConnections.size();
+		}
+
+		public int getIdleCount() {
+			return getFreeCount();
+		}
+
+		public int getPendingCount() {
+			return waiting;
+		}
+	};
 
 	public static final int DEFAULT_MIN_CON = 50;
 	// minimum number of connections
@@ -81,10 +125,11 @@ public class StandardXADataSource
 		maxCon = DEFAULT_MAX_CON;
 		deadLockMaxWait = DEFAULT_DEADLOCKMAXWAIT;
 		deadLockRetryWait = DEFAULT_DEADLOCKRETRYWAIT;
-		freeConnections = new Vector(minCon, 1);
-		// allow a reasonable size for free connections
-		xidConnections = new Hashtable(minCon * 2, 0.5f);
-		// ...and same for used connections
+		freeConnections = new ConcurrentStack();
+		xidConnections = new ConcurrentHashMap(minCon * 2);
+		// allow a reasonable size for used connections
+		timedOutConnections = new ConcurrentHashMap();
+		deadConnections = new ConcurrentHashMap();
 
 		log = new Logger(LogFactory.getLog("org.enhydra.jdbc.xapool"));
 		log.debug("StandardXADataSource is created");
@@ -94,10 +139,27 @@ public class StandardXADataSource
 		return connectionCount;
 	}
 
-	public Hashtable getXidConnections() {
+	public Map getXidConnections() {
 		return xidConnections;
 	}
 
+	/**
+	 * returns the metrics of the data source, which can be registered as a
+	 * MBean
+	 */
+	public PoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * not supported: the physical connections are shared by the XA
+	 * connections, whose handles drop the cached statements when closed
+	 */
+	public void setStatementCacheWarmUp(int n) {
+		if (n > 0)
+			log.warn("StandardXADataSource:setStatementCacheWarmUp not supported, ignored");
+	}
+
 	/**
 	 * Creates an XA connection using the default username and password.
 	 */
@@ -109,8 +171,10 @@ public class StandardXADataSource
 
 	/**
 	 * Creates an XA connection using the supplied username and password.
+	 * The physical connection is opened outside the monitor of the data
+	 * source.
 	 */
-	public synchronized XAConnection getXAConnection(
+	public XAConnection getXAConnection(
 		String user,
 		String password)
 		throws SQLException {
@@ -119,7 +183,9 @@ public class StandardXADataSource
 			new StandardXAConnection(this, user, password);
 		xac.setTransactionManager(transactionManager);
 		xac.setLogger(log);
-		connectionCount++;
+		synchronized (this) {
+			connectionCount++;
+		}
 		return xac;
 	}
 
@@ -179,25 +245,22 @@ public class StandardXADataSource
 		// deadConnections will temporarily hold pointers to the
 		// current ongoing transactions.  These will be discarded when
 		// freed
-		deadConnections = (Hashtable) xidConnections.clone();
 		deadConnections.putAll(xidConnections);
 
 		// now we'll just clear out the freeConnections
-		Enumeration enumeration = freeConnections.elements();
-		while (enumeration.hasMoreElements()) {
-			StandardXAStatefulConnection xasc =
-				(StandardXAStatefulConnection) enumeration.nextElement();
+		StandardXAStatefulConnection xasc;
+		while ((xasc = pollFreeConnection()) != null) {
 			try {
-				log.debug(
-					"StandardXADataSource:resetCache closing Connection:"
-						+ xasc.con);
-				xasc.con.close();
+				if (log.isDebugEnabled())
+					log.debug(
+						"StandardXADataSource:resetCache closing Connection:"
+							+ xasc.con);
+				close(xasc);
 			} catch (SQLException e) {
 				log.error(
 					"StandardXADataSource:resetCache Error closing connection:"
 						+ xasc.con);
 			}
-			freeConnections.removeElement(xasc);
 		}
 	}
 
@@ -214,17 +277,17 @@ public class StandardXADataSource
 		if (connectionCount == 0) { // if no connections left
 
 			// Close any connections still associated with XIDs.
-			Enumeration cons = xidConnections.keys();
+			Iterator cons = xidConnections.keySet().iterator();
 			// used to iterate through the used connections
-			while (cons.hasMoreElements()) {
+			while (cons.hasNext()) {
 				// while there are more connections
-				Object key = cons.nextElement(); // get the next connection
+				Object key = cons.next(); // get the next connection
                                 StandardXAStatefulConnection cur =
 					(StandardXAStatefulConnection)xidConnections.remove(key);
                                 if(cur != null)
                                 {
-
-                                    cur.con.close(); // close the physical connection
+                                    timeouts.cancel(cur);
+                                    close(cur); // close the physical connection
                                 }
 				// cast to something more convenient
 
@@ -233,12 +296,10 @@ public class StandardXADataSource
 			}
                  
                         
-                        Iterator connIterator = freeConnections.iterator();
-                        while (connIterator.hasNext())
+                        StandardXAStatefulConnection cur;
+                        while ((cur = pollFreeConnection()) != null)
                         {
-                            StandardXAStatefulConnection cur =(StandardXAStatefulConnection)connIterator.next();
-                            cur.con.close();
-                            connIterator.remove();
+                            close(cur);
                             log.debug(
                                       "StandardXADataSource:connectionClosed close any free connections");
                         }
@@ -252,23 +313,10 @@ public class StandardXADataSource
 	 * prepared or heuristically completed.
 	 */
 	public int getXidCount() {
-		int count = 0; // the return value
-		Enumeration cons = xidConnections.elements();
-		// used to iterate through the used connections
-		while (cons.hasMoreElements()) { // while there are more connections
-			Object o = cons.nextElement(); // get the next connection
-			StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
-			// cast to something more convenient
-			if ((cur.getState() == Status.STATUS_PREPARED)
-				|| // if prepared
-			 (
-					cur.getState() == Status.STATUS_PREPARING)) {
-				// ...or heuristically committed
-				count++; // one more connection with a valid xid
-			}
-		}
-		log.debug(
-			"StandardXADataSource:getXidCount return XidCount=<" + count + ">");
+		int count = recover().length;
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardXADataSource:getXidCount return XidCount=<" + count + ">");
 		return count;
 	}
 
@@ -276,158 +324,156 @@ public class StandardXADataSource
 	 * Constructs a list of all prepared connections' xids.
 	 */
 	Xid[] recover() {
-		int nodeCount = getXidCount();
-		// get number of connections in transactions
-		Xid[] xids = new Xid[nodeCount]; // create the return array
-		int i = 0; // used as xids index
-		Enumeration cons = xidConnections.elements();
+		List xids = new ArrayList();
+		Iterator cons = xidConnections.values().iterator();
 		// used to iterate through the used connections
-		while (cons.hasMoreElements()) { // while there are more connections
-			Object o = cons.nextElement(); // get the next connection
-			StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
-			// cast to something more convenient
+		while (cons.hasNext()) { // while there are more connections
+			StandardXAStatefulConnection cur =
+				(StandardXAStatefulConnection) cons.next();
 			if ((cur.getState() == Status.STATUS_PREPARED)
 				|| // if prepared
 			 (
 					cur.getState() == Status.STATUS_PREPARING)) {
 				// ...or heuristically committed
-				xids[i++] = cur.xid; // save in list
+				xids.add(cur.xid); // save in list
 			}
 		}
-		return xids;
+		return (Xid[]) xids.toArray(new Xid[xids.size()]);
 	}
 
 	/**
 	 * Frees a connection to make it eligible for reuse. The free list
-	 * is normally a last in, first out list (LIFO). This is efficient.
-	 * However, timed out connections are nice to hang onto for error
-	 * reporting, so they can be placed at the start. This is less
-	 * efficient, but hopefully is a rare occurence.
+	 * is a last in, first out list (LIFO). However, timed out connections
+	 * are nice to hang onto for error reporting, so with placeAtStart they
+	 * are kept aside, by Xid, and reused only when there are no other free
+	 * connections.
 	 *
 	 * Here, no need to verify the number of connections, we remove an
 	 * object from the xidConnections to put it in th freeConnections
 	 *
 	 */
-	public synchronized void freeConnection(Xid id, boolean placeAtStart) {
+	public void freeConnection(Xid id, boolean placeAtStart) {
 		log.debug("StandardXADataSource:freeConnection");
-		Object o = xidConnections.get(id); // lookup the connection by XID
-		StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
-		// cast to something more convenient
-		xidConnections.remove(id); // remove connection from in use list
+		StandardXAStatefulConnection cur =
+			(StandardXAStatefulConnection) xidConnections.remove(id);
+		// remove connection from in use list
+		if (cur == null) // already freed
+			return;
 		log.debug(
 			"StandardXADataSource:freeConnection remove id from xidConnections");
+		timeouts.cancel(cur); // the transaction is over
+		if (cur.checkOutTime != 0) {
+			metrics.checkedIn(System.nanoTime() - cur.checkOutTime);
+			cur.checkOutTime = 0;
+		}
 
-		if (!deadConnections.containsKey(id)) {
+		if (deadConnections.remove(id) == null) {
 			// if this isn't to be discarded
-			/*
-			 try {
-			     log.debug("StandardXADataSource:freeConnection setAutoCommit(true):" + cur.id);
-			     log.debug("con='"+cur.con.toString()+"'");
-			     cur.con.setAutoCommit(acommit);
-			 } catch(SQLException e) {
-			     log.error("ERROR: Failed while autocommiting a connection: "+e);
-			 }
-			 */
 			cur.setState(Status.STATUS_NO_TRANSACTION);
 			// set its new internal state
-			if (!freeConnections.contains(cur)) {
-				if (placeAtStart) { // if we want to keep for as long as possible
-					freeConnections.insertElementAt(cur, 0);
-					// then place it at the start of the list
-				} else {
-					freeConnections.addElement(cur);
-					// otherwise it's a LIFO list
-				}
+			if (placeAtStart && cur.timedOut) {
+				// keep it for as long as possible
+				timedOutConnections.put(id, cur);
+			} else {
+				pushFreeConnection(cur); // otherwise it's a LIFO list
 			}
 		} else {
-			deadConnections.remove(id);
 			try {
-				cur.con.close();
+				close(cur);
 			} catch (SQLException e) {
 				//ignore
 			}
 		}
-		notify();
+		if (waiting > 0) {
+			freedLock.lock();
+			try {
+				freed.signal();
+			} finally {
+				freedLock.unlock();
+			}
+		}
+	}
 
+	/**
+	 * Places a connection on the free list, unless it's already there.
+	 */
+	void pushFreeConnection(StandardXAStatefulConnection cur) {
+		if (cur.free.compareAndSet(false, true))
+			freeConnections.push(cur);
 	}
 
 	/**
-	 * Invoked by the timer thread to check all transactions
-	 * for timeouts. Returns the time of the next timeout event
-	 * after current timeouts have expired.
+	 * Removes a connection from the free list, the timed out connections
+	 * are used last. Returns null if there are no free connections.
 	 */
-	synchronized long checkTimeouts(long curTime) throws SQLException {
-		//log.debug("StandardXADataSource:checkTimeouts");
-		long nextTimeout = 0; // the earliest non-expired timeout in the list
-		Enumeration cons = xidConnections.elements();
-		// used to iterate through the used connections
-		while (cons.hasMoreElements()) { // while there are more connections
-			Object o = cons.nextElement(); // get the next connection
-			StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
-			// cast to something more convenient
-			if ((cur.timeout != 0)
-				&& // if connection has a timeout
-			 (
-					curTime > cur.timeout)) {
-				// ...and transaction has timed out
-				//log.debug("StandardXADataSource:checkTimeouts connection timeout");
-				cur.con.rollback();
-				// undo everything to do with this transaction
-				cur.timedOut = true; // flag that it has timed out
-				//log.debug(cur.toString()+" timed out");
-				freeConnection(cur.xid, true);
-				// make the connection eligible for reuse
-				// The timed out connection is eligible for reuse. The Xid and timedOut
-				// flag will nevertheless remain valid until it is reallocated to another
-				// global transaction. This gives the TM a *chance* to get a timeout
-				// exception, but we won't hang on to it forever.
-			} else { // transaction has not timed out
-				if (cur.timeout != 0) { // but it has a timeout scheduled
-					if ((cur.timeout < nextTimeout)
-						|| // and it's the next timeout to expire
-					 (
-							nextTimeout == 0)) {
-						// ...or first timeout we've found
-						nextTimeout = cur.timeout; // set up next timeout
-					}
-				}
-			}
+	private StandardXAStatefulConnection pollFreeConnection() {
+		StandardXAStatefulConnection cur =
+			(StandardXAStatefulConnection) freeConnections.pop();
+		if (cur != null) {
+			cur.free.set(false);
+			return cur;
+		}
+		Iterator it = timedOutConnections.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry e = (Map.Entry) it.next();
+			if (timedOutConnections.remove(e.getKey(), e.getValue()))
+				return (StandardXAStatefulConnection) e.getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of free connections, timed out ones included.
+	 */
+	int getFreeCount() {
+		return freeConnections.size() + timedOutConnections.size();
+	}
+
+	/**
+	 * Invoked by the timeout scheduler when the transaction of a connection
+	 * has timed out. The connection is rolled back and freed, unless the
+	 * transaction has completed or started again meanwhile.
+	 */
+	void timeout(StandardXAStatefulConnection cur, long sequence) {
+		Xid xid = cur.xid;
+		if (xid == null
+			|| xidConnections.get(xid) != cur
+			|| !timeouts.isExpired(cur, sequence))
+			return;
+		if (log.isDebugEnabled())
+			log.debug("StandardXADataSource:timeout transaction timed out xid=" + xid);
+		try {
+			cur.con.rollback();
+			// undo everything to do with this transaction
+		} catch (SQLException e) {
+			log.error(
+				"StandardXADataSource:timeout rollback failed xid=" + xid + ": " + e);
 		}
-		return nextTimeout;
+		cur.timedOut = true; // flag that it has timed out
+		freeConnection(xid, true);
+		// make the connection eligible for reuse
+		// The timed out connection is eligible for reuse. The Xid and timedOut
+		// flag will nevertheless remain valid until it is reallocated to another
+		// global transaction. This gives the TM a *chance* to get a timeout
+		// exception, but we won't hang on to it forever.
 	}
 
 	/**
-	 * Checks the start of the free list to see if the connection
-	 * previously associated with the supplied Xid has timed out.
-	 * <P>
-	 * Note that this can be an expensive operation as it has to
-	 * scan all free connections. so it should only be called in
-	 * the event of an error.
+	 * Checks if the connection previously associated with the supplied Xid
+	 * has timed out. The timeout is reported once, the connection is then
+	 * eligible for reuse as any free connection.
 	 */
-	synchronized private void checkTimeouts(Xid xid) throws XAException {
+	private void checkTimeouts(Xid xid) throws XAException {
 		log.debug("StandardXADataSource:checkTimeouts");
-		for (int i = 0;
-			i < freeConnections.size();
-			i++) { // check each free connection
-			Object o = freeConnections.elementAt(i); // get next connection
-			StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
-			// cast to something more convenient
-			if (!cur.timedOut) { // if it hasn't timed out
-				continue; // skip it
-			}
-			log.debug(
-				"StandardXADataSource:checkTimeouts ("
-					+ i
-					+ "/"
-					+ freeConnections.size()
-					+ ") xid     = "
-					+ xid);
-			log.debug(
-				"StandardXADataSource:checkTimeouts cur.xid = " + cur.xid);
-			if (xid.equals(cur.xid)) { // if we've found our xid
-				cur.timedOut = false; // cancel time out
-				throw new XAException(XAException.XA_RBTIMEOUT);
-			}
+		StandardXAStatefulConnection cur =
+			(StandardXAStatefulConnection) timedOutConnections.remove(xid);
+		if (cur != null) { // if we've found our xid
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXADataSource:checkTimeouts cur.xid = " + cur.xid);
+			cur.timedOut = false; // cancel time out
+			pushFreeConnection(cur);
+			throw new XAException(XAException.XA_RBTIMEOUT);
 		}
 	}
 
@@ -435,18 +481,20 @@ public class StandardXADataSource
 	 * Returns the connection associated with a given XID.
 	 * is reached, the Xid is found or an exception is thrown.
 	 */
-	synchronized StandardXAStatefulConnection getConnection(
+	StandardXAStatefulConnection getConnection(
 		Xid xid,
 		boolean mustFind)
 		throws XAException {
-		log.debug(
-			"StandardXADataSource:getConnection (xid="
-				+ xid
-				+ ", mustFind="
-				+ mustFind
-				+ ")");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardXADataSource:getConnection (xid="
+					+ xid
+					+ ", mustFind="
+					+ mustFind
+					+ ")");
 		Object o = xidConnections.get(xid); // lookup the connection by XID
-		log.debug("XID: " + o);
+		if (log.isDebugEnabled())
+			log.debug("XID: " + o);
 		StandardXAStatefulConnection cur = (StandardXAStatefulConnection) o;
 		// cast to something more convenient
 		if (mustFind) { // if we expected to find the connection
@@ -472,26 +520,27 @@ public class StandardXADataSource
 	 * in the process. If none area available then a new
 	 * connection is created.
 	 */
-	synchronized StandardXAStatefulConnection getFreeConnection()
+	StandardXAStatefulConnection getFreeConnection()
 		throws SQLException {
 		log.debug("StandardXADataSource:getFreeConnection");
-		StandardXAStatefulConnection cur = null;
+		StandardXAStatefulConnection cur = pollFreeConnection();
 		// this will be the return value
-		int freeCount = freeConnections.size();
-		// get number of free connections
-		if (freeCount == 0) { // if there are no free connections
+		if (cur == null) { // if there are no free connections
 			log.debug(
 				"StandardXADataSource:getFreeConnection  there are no free connections, get a new database connection");
-			Connection con = super.getConnection(user, password);
+			long start = System.nanoTime();
+			Connection con;
+			try {
+				con = super.getConnection(user, password);
+			} catch (SQLException e) {
+				metrics.created(System.nanoTime() - start, false);
+				throw e;
+			}
+			metrics.created(System.nanoTime() - start, true);
 			// get a new database connection
 			cur = new StandardXAStatefulConnection(this, con);
 			// make the connection stateful
 		} else {
-			Object o = freeConnections.lastElement(); // get the last element
-			cur = (StandardXAStatefulConnection) o;
-			// cast to something more convenient
-			freeConnections.removeElementAt(freeCount - 1);
-			// remove from free list
 			cur.timeout = 0; // no timeout until start() called
 			cur.timedOut = false; // cancel any time old out
 		}
@@ -541,21 +590,40 @@ public class StandardXADataSource
 	}
 
 	public int getAllConnections() {
-		return xidConnections.size() + freeConnections.size();
+		return xidConnections.size() + getFreeCount();
+	}
+
+	public void processToWait() throws Exception {
+		waitForConnection();
 	}
 
-	public synchronized void processToWait() throws Exception {
+	/**
+	 * waits while there are maxCon connections, returns the time waited
+	 * (in nanoseconds)
+	 */
+	long waitForConnection() throws Exception {
+		if (maxCon == 0 || getAllConnections() < maxCon)
+			return 0; // no need to lock
+		return waitForFreedConnection();
+	}
+
+	private long waitForFreedConnection() throws Exception {
 		log.debug("StandardXADataSource:processToWait");
 		int currentWait = 0;
+		long start = 0;
 
-		if (maxCon != 0) {
+		// waiting is incremented before the check, so freeConnection,
+		// which removes then checks waiting, can't miss this thread
+		freedLock.lock();
+		waiting++;
+		try {
 			while ((getAllConnections() >= maxCon)
 				&& (currentWait < getDeadLockMaxWait())) {
+				if (start == 0)
+					start = System.nanoTime();
 				dump();
 				try {
-					synchronized (this) {
-						wait(getDeadLockRetryWait());
-					}
+					freed.await(getDeadLockRetryWait(), TimeUnit.MILLISECONDS);
 				} catch (InterruptedException e) {
 					log.error(
 						"StandardXADataSource:processToWait ERROR: Failed while waiting for an object: "
@@ -563,22 +631,45 @@ public class StandardXADataSource
 				}
 				currentWait += getDeadLockRetryWait();
 			}
-			if (getAllConnections() >= getMaxCon())
+			if (getAllConnections() >= getMaxCon()) {
+				metrics.timedOut((start == 0) ? 0 : System.nanoTime() - start);
 				throw new Exception("StandardXADataSource:processToWait ERROR : impossible to obtain a new xa connection");
+			}
+		} finally {
+			waiting--;
+			freedLock.unlock();
+		}
+		return (start == 0) ? 0 : System.nanoTime() - start;
+	}
+
+	/*
+	 * closes the physical connection, timed for the metrics
+	 */
+	private void close(StandardXAStatefulConnection cur) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			cur.con.close();
+		} finally {
+			metrics.destroyed(System.nanoTime() - start);
 		}
 	}
 
 	public void dump() {
-		for (int i = 0; i < freeConnections.size(); i++) {
-			log.debug(
-				"freeConnection:<"
-					+ freeConnections.elementAt(i).toString()
-					+ ">");
+		if (!log.isDebugEnabled())
+			return;
+		Object[] free = freeConnections.toArray();
+		for (int i = 0; i < free.length; i++) {
+			log.debug("freeConnection:<" + free[i].toString() + ">");
+		}
+		for (Iterator it = timedOutConnections.values().iterator();
+			it.hasNext();
+			) {
+			log.debug("timedOutConnection:<" + it.next().toString() + ">");
 		}
-		for (Enumeration enumeration = xidConnections.elements();
-			enumeration.hasMoreElements();
+		for (Iterator it = xidConnections.values().iterator();
+			it.hasNext();
 			) {
-			log.debug("xidConnection:<" + enumeration.nextElement().toString() + ">");
+			log.debug("xidConnection:<" + it.next().toString() + ">");
 		}
 
 	}
@@ -603,12 +694,13 @@ public class StandardXADataSource
 			sb.append("     driver=<"+this.driver.toString()+">\n");
 		sb.append("     driver name=<"+this.driverName+">\n");
 		if (freeConnections != null) 
-		    sb.append("     number of *free* connections=<"+this.freeConnections.size()+">\n");
+		    sb.append("     number of *free* connections=<"+getFreeCount()+">\n");
 		sb.append("     max con=<"+this.maxCon+">\n");
 		sb.append("     min con=<"+this.minCon+">\n");
 		sb.append("     prepared stmt cache size=<"+this.preparedStmtCacheSize+">\n");
 		sb.append("     transaction manager=<"+this.transactionManager+">\n");
 		sb.append("     xid connection size=<"+this.xidConnections.size()+">\n");
+		sb.append("     transaction timeouts=<"+this.timeouts.size()+">\n");
 		sb.append(super.toString());
 		return sb.toString();
 	}
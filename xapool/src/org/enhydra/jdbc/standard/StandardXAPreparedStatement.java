@@ -22,6 +22,7 @@
 package org.enhydra.jdbc.standard;
 
 import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class StandardXAPreparedStatement extends StandardPreparedStatement {
 
@@ -32,6 +33,7 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 	public int resultSetConcurrency;
         public int resultSetHoldability;
         public int autoGeneratedKeys;
+	private final ReentrantLock lock = new ReentrantLock();
 
 	StandardXAPreparedStatement(
 		StandardXAConnectionHandle con_,
@@ -48,10 +50,11 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 		this.resultSetHoldability = resultSetHoldability_;
 
 		log = con_.log;
-		log.debug(
-			"StandardXAPreparedStatement: Create an XAPreparedStatement with sql='"
-				+ sql
-				+ "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardXAPreparedStatement: Create an XAPreparedStatement with sql='"
+					+ sql
+					+ "'");
 
 		key =
 			sql
@@ -59,13 +62,21 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 				+ resultSetConcurrency
 		                + resultSetHoldability
 				+ ((con.tx != null) ? true : false);
-		ps =
-			con.checkPreparedCache(
-				sql,
-				resultSetType,
-				resultSetConcurrency,
-                                resultSetHoldability,
-				key);
+		batchConnection = con;
+		StandardPreparedStatement pending = con.closedBatchStatement(key);
+		if (pending != null) {
+			ps = pending.ps;
+			ps.clearParameters();
+			adoptBatch(pending);
+		} else {
+			ps =
+				con.checkPreparedCache(
+					sql,
+					resultSetType,
+					resultSetConcurrency,
+					resultSetHoldability,
+					key);
+		}
 		// from cney
 		// ps = con.checkPreparedCache(sql, resultSetType, resultSetConcurrency,key);
 	}
@@ -81,20 +92,29 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 		this.autoGeneratedKeys= autoGeneratedKeys_;
 
 		log = con_.log;
-		log.debug(
-			"StandardXAPreparedStatement: Create an XAPreparedStatement with sql='"
-				+ sql
-				+ "'");
+		if (log.isDebugEnabled())
+			log.debug(
+				"StandardXAPreparedStatement: Create an XAPreparedStatement with sql='"
+					+ sql
+					+ "'");
 
 		key =
 			sql
 				+ autoGeneratedKeys
 				+ ((con.tx != null) ? true : false);
-		ps =
-			con.checkPreparedCache(
-				sql,
-				autoGeneratedKeys,
-				key);
+		batchConnection = con;
+		StandardPreparedStatement pending = con.closedBatchStatement(key);
+		if (pending != null) {
+			ps = pending.ps;
+			ps.clearParameters();
+			adoptBatch(pending);
+		} else {
+			ps =
+				con.checkPreparedCache(
+					sql,
+					autoGeneratedKeys,
+					key);
+		}
 		// from cney
 		// ps = con.checkPreparedCache(sql, resultSetType, resultSetConcurrency,key);
 	}
@@ -103,11 +123,25 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 	/**
 	 * Close this statement.
 	 */
-	public synchronized void close() throws SQLException {
-		log.debug(
-			"StandardXAPreparedStatement:close the XA prepared statement");
-		// Note no check for already closed - some servers make mistakes
-		closed = true;
+	public void close() throws SQLException {
+		lock.lock();
+		try {
+			log.debug(
+				"StandardXAPreparedStatement:close the XA prepared statement");
+			// Note no check for already closed - some servers make mistakes
+			closed = true;
+			if (isBatchPending())
+				return; // released by batchDone, or adopted by the next wrapper
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * closes the underlying statement, or returns it to the cache
+	 */
+	protected void release() throws SQLException {
 		if (con.preparedStmtCacheSize == 0) {
 			log.debug(
 				"StandardXAPreparedStatement:close preparedStmtCacheSize == 0");
@@ -115,11 +149,12 @@ public class StandardXAPreparedStatement extends StandardPreparedStatement {
 				ps.close(); // no cache, so we can close
 			}
 		} else {
-			log.debug(
-				"StandardXAPreparedStatement:close preparedStmtCacheSize="
-					+ "'"
-					+ con.preparedStmtCacheSize
-					+ "'");
+			if (log.isDebugEnabled())
+				log.debug(
+					"StandardXAPreparedStatement:close preparedStmtCacheSize="
+						+ "'"
+						+ con.preparedStmtCacheSize
+						+ "'");
 			con.returnToCache(key);
 			// return the underlying statement to the cache
 		}
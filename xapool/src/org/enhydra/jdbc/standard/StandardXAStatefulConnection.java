@@ -22,6 +22,7 @@
 package org.enhydra.jdbc.standard;
 
 import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.transaction.xa.Xid;
 import javax.transaction.Status;
 
@@ -43,6 +44,10 @@ public class StandardXAStatefulConnection {
 	public boolean commitOnPrepare; // true if commit takes place on prepare
 	long timeout; // time when this transaction times out
 	boolean timedOut; // true if this transaction branch has timed out
+	int timeoutIndex = -1; // position in the timeout scheduler, -1 if none
+	long timeoutSequence; // registration of the timeout in the scheduler
+	long checkOutTime; // System.nanoTime() of the association with xid (metrics)
+	final AtomicBoolean free = new AtomicBoolean(); // true if on the free list
 
 	/**
 	 * Creates a new stateful connection in the FREE state (NO_TRANSACTION)
@@ -61,19 +66,21 @@ public class StandardXAStatefulConnection {
 	 * Accessor methods for "state" property.
 	 */
 	synchronized void setState(int newState) {
-		dataSource.log.debug(
-			"StandardXAStatefulConnection:setState Stateful connection: "
-				+ id
-				+ " (state before="
-				+ state
-				+ ")");
+		if (dataSource.log.isDebugEnabled())
+			dataSource.log.debug(
+				"StandardXAStatefulConnection:setState Stateful connection: "
+					+ id
+					+ " (state before="
+					+ state
+					+ ")");
 		state = newState;
-		dataSource.log.debug(
-			"StandardXAStatefulConnection:setState Stateful connection: "
-				+ id
-				+ " (state after="
-				+ state
-				+ ")");
+		if (dataSource.log.isDebugEnabled())
+			dataSource.log.debug(
+				"StandardXAStatefulConnection:setState Stateful connection: "
+					+ id
+					+ " (state after="
+					+ state
+					+ ")");
 	}
 
 	int getState() {
@@ -23,6 +23,7 @@ package org.enhydra.jdbc.standard;
 
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
 import org.enhydra.jdbc.core.CoreStatement;
 
 public class StandardXAStatement extends CoreStatement {
@@ -30,6 +31,7 @@ public class StandardXAStatement extends CoreStatement {
 	private StandardXAConnectionHandle con;
 	// the StandardConnectionHandle that created this object
 	private boolean closed; // true when the Statement has been closed
+	private final ReentrantLock lock = new ReentrantLock();
 	private int resultSetType;
 	private int resultSetConcurrency;
         private int resultSetHoldability;
@@ -49,6 +51,7 @@ public class StandardXAStatement extends CoreStatement {
 		this.resultSetHoldability = resultSetHoldability;
 		log = con.log;
 		statement = newStatement();
+		batchConnection = con;
 	}
 
 	private Statement newStatement() throws SQLException {
@@ -62,9 +65,14 @@ public class StandardXAStatement extends CoreStatement {
 	/**
 	 * Close this statement.
 	 */
-	public synchronized void close() throws SQLException {
-		super.close(); // we do not reuse the Statement, we have to close it
-		closed = true;
+	public void close() throws SQLException {
+		lock.lock();
+		try {
+			super.close(); // we do not reuse the Statement, we have to close it
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 
@@ -0,0 +1,506 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.standard;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.enhydra.jdbc.util.LRUCache;
+import org.enhydra.jdbc.util.StripedCounter;
+
+/**
+ * Statistics and sizing of the prepared statement caches of all the
+ * physical connections of a StandardConnectionPoolDataSource.<p>
+ * Each look up of a cache is recorded by statement (sql, result set type,
+ * concurrency...): hits, misses and evictions. The look ups are grouped in
+ * windows of windowTime ms. At the end of a window, the working set is the
+ * number of statements used during the window; when the cache is adaptive,
+ * the size of the caches is set to the working set plus 25%, within
+ * minCacheSize and maxCacheSize. The working set of the pool bounds the one
+ * of each connection, since any connection may run any request.<p>
+ * Each statement has a score, the number of uses of the last window plus
+ * half the previous score. When warmUpCount is set, the warmUpCount
+ * statements of highest score are prepared on each new physical connection
+ * and put in its cache, so that a connection replacing an expired one does
+ * not start with an empty cache.<p>
+ * At most maxStatements statements are tracked, the ones unused for a
+ * window are dropped when there are more.
+ */
+public class StatementCacheManager implements StatementCacheManagerMBean {
+	public static final long DEFAULT_WINDOW_TIME = 60000; // 1 minute
+
+	public static final int DEFAULT_MIN_CACHE_SIZE = 4;
+
+	public static final int DEFAULT_MAX_CACHE_SIZE = 256;
+
+	public static final int DEFAULT_MAX_STATEMENTS = 1024;
+
+	private final StandardConnectionPoolDataSource dataSource;
+
+	// lookup key -> StatementStats
+	private final ConcurrentHashMap statements = new ConcurrentHashMap();
+
+	private final StripedCounter hits = new StripedCounter();
+
+	private final StripedCounter misses = new StripedCounter();
+
+	private final StripedCounter evictions = new StripedCounter();
+
+	private final AtomicLong windowStart = new AtomicLong(System
+			.currentTimeMillis());
+
+	private volatile long windowTime = DEFAULT_WINDOW_TIME;
+
+	private volatile boolean adaptive;
+
+	private volatile int minCacheSize = DEFAULT_MIN_CACHE_SIZE;
+
+	private volatile int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+	private volatile int maxStatements = DEFAULT_MAX_STATEMENTS;
+
+	private volatile int warmUpCount;
+
+	private volatile int workingSet;
+
+	// size chosen from the working set, 0 before the first window
+	private volatile int adaptedSize;
+
+	private ObjectName objectName; // set while registered
+
+	StatementCacheManager(StandardConnectionPoolDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * records a look up of the cache of a connection
+	 * @param key lookup key of the statement in the cache
+	 */
+	void lookedUp(String key, String sql, int type, int concurrency,
+			int holdability, int autoGeneratedKeys, boolean hit) {
+		if (hit)
+			hits.increment();
+		else
+			misses.increment();
+		StatementStats s = (StatementStats) statements.get(key);
+		if (s == null && statements.size() < 2 * maxStatements) {
+			s = new StatementStats(key, sql, type, concurrency, holdability,
+					autoGeneratedKeys);
+			StatementStats old = (StatementStats) statements.putIfAbsent(key,
+					s);
+			if (old != null)
+				s = old;
+		}
+		if (s != null) {
+			if (hit)
+				s.hits.incrementAndGet();
+			else
+				s.misses.incrementAndGet();
+			s.windowUses.incrementAndGet();
+		}
+		long start = windowStart.get();
+		long now = System.currentTimeMillis();
+		if (now - start >= windowTime && windowStart.compareAndSet(start, now))
+			endWindow();
+	}
+
+	/**
+	 * records the eviction of a statement from the cache of a connection
+	 */
+	void evicted(Object key) {
+		evictions.increment();
+		StatementStats s = (StatementStats) statements.get(key);
+		if (s != null)
+			s.evictions.incrementAndGet();
+	}
+
+	/*
+	 * computes the working set and the scores of the window, and resizes the
+	 * caches. Called by one thread at a time, the one which sees the end of
+	 * the window
+	 */
+	private void endWindow() {
+		int used = 0;
+		List unused = new ArrayList();
+		for (Iterator it = statements.values().iterator(); it.hasNext();) {
+			StatementStats s = (StatementStats) it.next();
+			int uses = s.windowUses.getAndSet(0);
+			s.score = s.score / 2 + uses;
+			if (uses > 0)
+				used++;
+			else
+				unused.add(s);
+		}
+		int extra = statements.size() - maxStatements;
+		if (extra > 0) {
+			// drops the coldest of the statements unused during the window
+			unused = byScore(unused);
+			for (int i = unused.size() - 1; i >= 0 && extra > 0; i--, extra--)
+				statements.remove(((StatementStats) unused.get(i)).key);
+		}
+		workingSet = used;
+		if (used == 0)
+			return;
+		int size = used + (used + 3) / 4;
+		size = Math.max(minCacheSize, Math.min(maxCacheSize, size));
+		if (size != adaptedSize) {
+			adaptedSize = size;
+			if (adaptive) {
+				if (dataSource.log.isDebugEnabled())
+					dataSource.log.debug("StatementCacheManager:endWindow working set="
+							+ used + " cache size=" + size);
+				resizeCaches(size);
+			}
+		}
+	}
+
+	private void resizeCaches(int size) {
+		Enumeration en = dataSource.getMasterPrepStmtCache().elements();
+		while (en.hasMoreElements())
+			((LRUCache) en.nextElement()).resize(size);
+	}
+
+	/**
+	 * returns the size of the caches of the connections: the size adapted
+	 * to the working set if the cache is adaptive, the prepared statement
+	 * cache size of the data source otherwise
+	 */
+	public int getCacheSize() {
+		int size = dataSource.getPreparedStmtCacheSize();
+		if (size <= 0 || !adaptive || adaptedSize == 0)
+			return size;
+		return adaptedSize;
+	}
+
+	/**
+	 * prepares the hot statements on a new physical connection and puts
+	 * them in its cache. The statements which fail are skipped
+	 */
+	void warmUp(Connection con) {
+		int n = Math.min(warmUpCount, getCacheSize());
+		if (n <= 0)
+			return;
+		List hot = getHotStatements(n);
+		if (hot.isEmpty())
+			return;
+		LRUCache cache = dataSource.getStatementCache(con);
+		int done = 0;
+		for (int i = 0; i < hot.size(); i++) {
+			StatementStats s = (StatementStats) hot.get(i);
+			try {
+				cache.put(s.key, s.prepare(con));
+				done++;
+			} catch (SQLException e) {
+				if (dataSource.log.isDebugEnabled())
+					dataSource.log.debug("StatementCacheManager:warmUp cannot prepare sql='"
+							+ s.sql + "': " + e);
+			}
+		}
+		if (dataSource.log.isDebugEnabled())
+			dataSource.log.debug("StatementCacheManager:warmUp " + done
+					+ " statements prepared");
+	}
+
+	/**
+	 * returns the StatementStats of the n statements of highest score
+	 */
+	public List getHotStatements(int n) {
+		List l = getStatementStats();
+		return (l.size() <= n) ? l : new ArrayList(l.subList(0, n));
+	}
+
+	/**
+	 * returns the StatementStats of the tracked statements, by score
+	 */
+	public List getStatementStats() {
+		return byScore(statements.values());
+	}
+
+	/*
+	 * returns the statements by score, then by key. The scores change while
+	 * the statements are used, so each one is read once before the sort
+	 */
+	private static List byScore(Collection c) {
+		List l = new ArrayList(c.size());
+		for (Iterator it = c.iterator(); it.hasNext();)
+			l.add(new Scored((StatementStats) it.next()));
+		Collections.sort(l);
+		for (int i = 0; i < l.size(); i++)
+			l.set(i, ((Scored) l.get(i)).stats);
+		return l;
+	}
+
+	// a statement with its score at the time of the sort
+	private static final class Scored implements Comparable {
+		final StatementStats stats;
+
+		final long score;
+
+		Scored(StatementStats stats) {
+			this.stats = stats;
+			this.score = stats.getScore();
+		}
+
+		public int compareTo(Object o) {
+			Scored other = (Scored) o;
+			if (score != other.score)
+				return (score > other.score) ? -1 : 1;
+			return stats.key.compareTo(other.stats.key);
+		}
+	}
+
+	/**
+	 * the size of the caches follows the working set, the prepared
+	 * statement cache size of the data source is used until the end of the
+	 * first window
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+		int size = getCacheSize();
+		if (size > 0)
+			resizeCaches(size);
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	public void setWindowTime(long windowTime) {
+		if (windowTime > 0)
+			this.windowTime = windowTime;
+	}
+
+	public long getWindowTime() {
+		return windowTime;
+	}
+
+	public void setMinCacheSize(int min) {
+		if (min > 0)
+			minCacheSize = min;
+	}
+
+	public int getMinCacheSize() {
+		return minCacheSize;
+	}
+
+	public void setMaxCacheSize(int max) {
+		if (max > 0)
+			maxCacheSize = max;
+	}
+
+	public int getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	public void setMaxStatements(int max) {
+		if (max > 0)
+			maxStatements = max;
+	}
+
+	public int getMaxStatements() {
+		return maxStatements;
+	}
+
+	/**
+	 * number of hot statements prepared on each new physical connection, 0
+	 * (default) for none. Set by the data source
+	 */
+	void setWarmUpCount(int n) {
+		warmUpCount = Math.max(0, n);
+	}
+
+	public int getWarmUpCount() {
+		return warmUpCount;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public int getHitRatio() {
+		long h = hits.get();
+		long n = h + misses.get();
+		return (n == 0) ? 0 : (int) (h * 100 / n);
+	}
+
+	public int getWorkingSetSize() {
+		return workingSet;
+	}
+
+	public int getStatementCount() {
+		return statements.size();
+	}
+
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+		statements.clear();
+		workingSet = 0;
+	}
+
+	/**
+	 * registers the statistics in the platform MBean server
+	 * @param name object name, for instance
+	 * "org.enhydra.jdbc:type=StatementCache,name=myPool"
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		unregisterMBean();
+		ObjectName on = new ObjectName(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(new StandardMBean(this,
+				StatementCacheManagerMBean.class), on);
+		objectName = on;
+	}
+
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("StatementCacheManager:\n");
+		sb.append("     hit =<" + getHitCount() + ">\n");
+		sb.append("     miss =<" + getMissCount() + ">\n");
+		sb.append("     eviction =<" + getEvictionCount() + ">\n");
+		sb.append("     working set =<" + workingSet + ">\n");
+		sb.append("     cache size =<" + getCacheSize() + "> adaptive =<"
+				+ adaptive + ">\n");
+		sb.append("     warm up =<" + warmUpCount + ">\n");
+		List hot = getHotStatements(10);
+		for (int i = 0; i < hot.size(); i++)
+			sb.append("     " + hot.get(i) + "\n");
+		return sb.toString();
+	}
+
+	/**
+	 * statistics of one statement of the caches, with what is needed to
+	 * prepare it again
+	 */
+	public static final class StatementStats {
+		final String key;
+
+		final String sql;
+
+		final int type;
+
+		final int concurrency;
+
+		final int holdability;
+
+		// -1 if the statement is not prepared with auto generated keys
+		final int autoGeneratedKeys;
+
+		final AtomicLong hits = new AtomicLong();
+
+		final AtomicLong misses = new AtomicLong();
+
+		final AtomicLong evictions = new AtomicLong();
+
+		final AtomicInteger windowUses = new AtomicInteger();
+
+		volatile long score;
+
+		StatementStats(String key, String sql, int type, int concurrency,
+				int holdability, int autoGeneratedKeys) {
+			this.key = key;
+			this.sql = sql;
+			this.type = type;
+			this.concurrency = concurrency;
+			this.holdability = holdability;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		PreparedStatement prepare(Connection con) throws SQLException {
+			if (autoGeneratedKeys >= 0)
+				return con.prepareStatement(sql, autoGeneratedKeys);
+			if (type == 0 && holdability == 0)
+				return con.prepareStatement(sql);
+			if (holdability == 0)
+				return con.prepareStatement(sql, type, concurrency);
+			return con.prepareStatement(sql, type, concurrency, holdability);
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public long getHitCount() {
+			return hits.get();
+		}
+
+		public long getMissCount() {
+			return misses.get();
+		}
+
+		public long getEvictionCount() {
+			return evictions.get();
+		}
+
+		/**
+		 * uses of the current window plus the decayed uses of the previous
+		 * ones
+		 */
+		public long getScore() {
+			return score + windowUses.get();
+		}
+
+		public String toString() {
+			StringBuffer sb = new StringBuffer();
+			sb.append("sql=<" + sql + "> hit=<" + hits.get() + "> miss=<"
+					+ misses.get() + "> eviction=<" + evictions.get()
+					+ "> score=<" + getScore() + ">");
+			return sb.toString();
+		}
+	}
+}
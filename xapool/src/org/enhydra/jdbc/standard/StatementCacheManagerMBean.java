@@ -0,0 +1,56 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.standard;
+
+/**
+ * JMX interface of StatementCacheManager. The counters are the sums of the
+ * caches of all the physical connections of the data source.
+ */
+public interface StatementCacheManagerMBean {
+	public long getHitCount();
+
+	public long getMissCount();
+
+	public long getEvictionCount();
+
+	// hits per 100 look ups
+	public int getHitRatio();
+
+	// statements used during the last window
+	public int getWorkingSetSize();
+
+	// statements tracked
+	public int getStatementCount();
+
+	public int getCacheSize();
+
+	public boolean isAdaptive();
+
+	public void setAdaptive(boolean adaptive);
+
+	public int getWarmUpCount();
+
+	/**
+	 * resets the counters and forgets the statements
+	 */
+	public void reset();
+}
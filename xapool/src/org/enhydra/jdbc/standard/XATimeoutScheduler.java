@@ -0,0 +1,219 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.standard;
+
+/**
+ * Transaction timeouts of a StandardXADataSource. The connections
+ * associated with a xid are kept in a heap ordered by their timeout, and
+ * one thread sleeps until the earliest one: each timeout is handled when
+ * it expires, without scanning the other connections. A timeout is
+ * registered by StandardXAConnection.doStart and cancelled when the
+ * connection is freed (commit, rollback, forget). The thread is started
+ * by the first timeout and stops after it has been idle for a minute.
+ */
+final class XATimeoutScheduler implements Runnable {
+	// time (in ms) without timeouts after which the thread stops
+	static final long IDLE_TIME = 60000;
+
+	private final StandardXADataSource dataSource;
+
+	// binary heap on timeout, the index of a connection is timeoutIndex
+	private StandardXAStatefulConnection[] heap =
+		new StandardXAStatefulConnection[16];
+
+	private int size;
+
+	private long sequence; // identifies each registration
+
+	private Thread thread; // null when stopped
+
+	XATimeoutScheduler(StandardXADataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * registers (or moves) the timeout of a connection
+	 * @param timeout time (System.currentTimeMillis()) of the timeout
+	 */
+	synchronized void schedule(StandardXAStatefulConnection cur, long timeout) {
+		if (cur.timeoutIndex >= 0)
+			removeAt(cur.timeoutIndex);
+		cur.timeout = timeout;
+		cur.timeoutSequence = ++sequence;
+		if (size == heap.length) {
+			StandardXAStatefulConnection[] h =
+				new StandardXAStatefulConnection[size * 2];
+			System.arraycopy(heap, 0, h, 0, size);
+			heap = h;
+		}
+		heap[size] = cur;
+		cur.timeoutIndex = size;
+		siftUp(size++);
+		if (thread == null)
+			start();
+		else if (heap[0] == cur)
+			notify(); // the thread sleeps until a later timeout
+	}
+
+	/**
+	 * cancels the timeout of a connection, if any
+	 */
+	synchronized void cancel(StandardXAStatefulConnection cur) {
+		if (cur.timeoutIndex >= 0)
+			removeAt(cur.timeoutIndex);
+		cur.timeout = 0;
+		cur.timeoutSequence = 0;
+	}
+
+	/**
+	 * returns true if the timeout which has been given to the data source
+	 * is still the timeout of the connection: it has not been cancelled or
+	 * registered again since
+	 */
+	synchronized boolean isExpired(StandardXAStatefulConnection cur,
+		long sequence) {
+		return cur.timeoutIndex < 0 && cur.timeoutSequence == sequence;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	private void start() {
+		Thread t = null;
+		if (dataSource.getThreadFactory() != null) {
+			try {
+				t = dataSource.getThreadFactory().getThread(this,
+					"xapool-xa-timeout");
+			} catch (Exception e) {
+				dataSource.log.error(
+					"XATimeoutScheduler:start thread factory failed: " + e);
+			}
+		}
+		if (t == null)
+			t = new Thread(this, "xapool-xa-timeout");
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+
+	public void run() {
+		long idle = 0; // time when the thread stops if there is no timeout
+		while (true) {
+			StandardXAStatefulConnection cur;
+			long seq;
+			synchronized (this) {
+				try {
+					while (true) {
+						long now = System.currentTimeMillis();
+						if (size == 0) {
+							if (idle == 0) {
+								idle = now + IDLE_TIME;
+							} else if (now >= idle) {
+								thread = null;
+								return;
+							}
+							wait(idle - now);
+							continue;
+						}
+						idle = 0;
+						long delay = heap[0].timeout - now;
+						if (delay <= 0)
+							break;
+						wait(delay);
+					}
+				} catch (InterruptedException e) {
+					// stopped, the next timeout starts a new thread
+					thread = null;
+					return;
+				}
+				cur = heap[0];
+				seq = cur.timeoutSequence;
+				removeAt(0);
+			}
+			try {
+				dataSource.timeout(cur, seq);
+			} catch (Throwable t) {
+				dataSource.log.error(
+					"XATimeoutScheduler:run timeout of connection "
+						+ cur.id
+						+ " failed: "
+						+ t);
+			}
+		}
+	}
+
+	private void removeAt(int i) {
+		StandardXAStatefulConnection removed = heap[i];
+		removed.timeoutIndex = -1;
+		StandardXAStatefulConnection last = heap[--size];
+		heap[size] = null;
+		if (i == size)
+			return;
+		heap[i] = last;
+		last.timeoutIndex = i;
+		siftDown(i);
+		if (heap[i] == last)
+			siftUp(i);
+	}
+
+	private void siftUp(int i) {
+		StandardXAStatefulConnection cur = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			StandardXAStatefulConnection p = heap[parent];
+			if (p.timeout <= cur.timeout)
+				break;
+			heap[i] = p;
+			p.timeoutIndex = i;
+			i = parent;
+		}
+		heap[i] = cur;
+		cur.timeoutIndex = i;
+	}
+
+	private void siftDown(int i) {
+		StandardXAStatefulConnection cur = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && heap[right].timeout < heap[child].timeout)
+				child = right;
+			StandardXAStatefulConnection c = heap[child];
+			if (cur.timeout <= c.timeout)
+				break;
+			heap[i] = c;
+			c.timeoutIndex = i;
+			i = child;
+		}
+		heap[i] = cur;
+		cur.timeoutIndex = i;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("XATimeoutScheduler: timeouts=<").append(size());
+		sb.append(">");
+		return sb.toString();
+	}
+}
@@ -32,13 +32,18 @@ public class SybaseConnectionHandle extends StandardConnectionHandle {
         super (pooledCon, preparedStatementCache,preparedStmtCacheSize);
     }
 
-    synchronized public void setAutoCommit(boolean autoCommit) throws SQLException {
-        preInvoke();
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        lock.lock();
         try {
-            con.commit();
-            con.setAutoCommit(autoCommit);
-        } catch (SQLException e) {
-            catchInvoke(e);
+            preInvoke();
+            try {
+                con.commit();
+                con.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                catchInvoke(e);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
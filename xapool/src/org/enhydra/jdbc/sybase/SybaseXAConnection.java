@@ -41,20 +41,8 @@ public class SybaseXAConnection extends StandardXAConnection {
         // so it is not eligible for re-use. It only goes on the data source list
         // if it ever becomes associated with a global transaction.
 
-        /*
-        // get the timer thread
-        if (dataSource.getThreadFactory() != null) {
-        dataSource.log("StandardXAConnection: Getting thread from factory");
-        timerThread = dataSource.getThreadFactory().getThread(this);
-        dataSource.log("StandardXAConnection: Got thread from factory");
-        } else {
-        dataSource.log("StandardXAConnection: Getting thread from new Thread()");
-        timerThread = new Thread (this);	// create the backgroup thread to check for timeouts
-        }
-
-        timerThread.start();			// start the timer thread
-        //timerThread.suspend();			// and suspend until some timeouts get set up
-        */
+        // The transaction timeouts are handled by the scheduler of the data
+        // source, shared by all its XA connections.
         dataSource.log.debug("SybaseXAConnection created");
     }
 
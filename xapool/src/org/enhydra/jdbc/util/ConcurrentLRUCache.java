@@ -0,0 +1,199 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache with the API of LRUCache, whose operations are O(1): the
+ * entries are kept in access ordered hash maps (LinkedHashMap), the least
+ * recently used entry is the first one. Large caches are split in
+ * segments chosen by the hash of the key, each one with its own lock and
+ * its own part of maxSize, so that threads using different keys do not
+ * contend; the eviction is then LRU within a segment. cleanupObject is
+ * called on the evicted and replaced objects, outside the locks,
+ * after evicted for the keys removed because the cache was full.
+ */
+public class ConcurrentLRUCache extends LRUCache {
+	// entries per segment below which the cache is not split
+	static final int SEGMENT_SIZE = 32;
+
+	static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] segments;
+
+	private int maxSize;
+
+	public ConcurrentLRUCache(int maxSize) {
+		super(maxSize);
+		int n = 1;
+		while (n < MAX_SEGMENTS && n * 2 * SEGMENT_SIZE <= maxSize)
+			n <<= 1;
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++)
+			segments[i] = new Segment();
+		setMaxSize(maxSize);
+	}
+
+	/*
+	 * shares maxSize among the segments
+	 */
+	private void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		int n = segments.length;
+		for (int i = 0; i < n; i++)
+			segments[i].maxSize = maxSize / n + ((i < maxSize % n) ? 1 : 0);
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (segments.length - 1)];
+	}
+
+	public int LRUSize() {
+		return cacheSize();
+	}
+
+	public int cacheSize() {
+		int size = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				size += segments[i].size();
+			}
+		}
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Puts a new object in the cache. If the cache is full, it removes the
+	 * least recently used object. The new object becomes the most recently
+	 * used object.
+	 */
+	public void put(Object key, Object value) {
+		List removed = new ArrayList(1);
+		List evicted = new ArrayList(1);
+		Segment s = segmentFor(key);
+		synchronized (s) {
+			Object old = s.put(key, value);
+			if (old != null && old != value)
+				removed.add(old);
+			s.evict(evicted, removed);
+		}
+		evictedAll(evicted);
+		cleanupAll(removed);
+	}
+
+	/**
+	 * Gets an object from the cache. This object is set to be the most
+	 * recenty used
+	 */
+	public Object get(Object key) {
+		Segment s = segmentFor(key);
+		synchronized (s) {
+			return s.get(key);
+		}
+	}
+
+	/**
+	 * Removes the object from the cache
+	 */
+	public Object remove(Object key) {
+		Segment s = segmentFor(key);
+		synchronized (s) {
+			return s.remove(key);
+		}
+	}
+
+	/**
+	 * Resize the cache
+	 */
+	public void resize(int newSize) {
+		if (newSize <= 0) {
+			return;
+		}
+		List removed = new ArrayList();
+		List evicted = new ArrayList();
+		synchronized (segments) {
+			setMaxSize(newSize);
+		}
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].evict(evicted, removed);
+			}
+		}
+		evictedAll(evicted);
+		cleanupAll(removed);
+	}
+
+	public void cleanupAll() {
+		List removed = new ArrayList();
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				removed.addAll(segments[i].values());
+				segments[i].clear();
+			}
+		}
+		cleanupAll(removed);
+	}
+
+	private void cleanupAll(List removed) {
+		for (int i = 0; i < removed.size(); i++)
+			cleanupObject(removed.get(i));
+	}
+
+	/**
+	 * part of the cache, in access order, guarded by its own monitor
+	 */
+	private static final class Segment extends LinkedHashMap {
+		private static final long serialVersionUID = 1L;
+
+		volatile int maxSize;
+
+		Segment() {
+			super(16, 0.75f, true);
+		}
+
+		/*
+		 * removes the least recently used entries above maxSize, adds
+		 * their keys to evicted and their objects to removed
+		 */
+		void evict(List evicted, List removed) {
+			Iterator it = entrySet().iterator();
+			for (int n = size(); n > maxSize; n--) {
+				Map.Entry e = (Map.Entry) it.next();
+				evicted.add(e.getKey());
+				removed.add(e.getValue());
+				it.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free stack (Treiber stack): push and pop are a compare and set on
+ * the head, each pushed object gets a new node so that a node is never
+ * reused while an other thread may still see it. size() and toArray() are
+ * not atomic with the updates.
+ */
+public class ConcurrentStack {
+	private final AtomicReference head = new AtomicReference();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private static final class Node {
+		final Object item;
+
+		Node next;
+
+		Node(Object item) {
+			this.item = item;
+		}
+	}
+
+	public void push(Object item) {
+		Node node = new Node(item);
+		Node h;
+		do {
+			h = (Node) head.get();
+			node.next = h;
+		} while (!head.compareAndSet(h, node));
+		size.incrementAndGet();
+	}
+
+	/**
+	 * removes the last pushed object, returns null if the stack is empty
+	 */
+	public Object pop() {
+		Node h;
+		do {
+			h = (Node) head.get();
+			if (h == null)
+				return null;
+		} while (!head.compareAndSet(h, h.next));
+		size.decrementAndGet();
+		return h.item;
+	}
+
+	public Object peek() {
+		Node h = (Node) head.get();
+		return (h == null) ? null : h.item;
+	}
+
+	public boolean isEmpty() {
+		return head.get() == null;
+	}
+
+	public int size() {
+		return Math.max(0, size.get());
+	}
+
+	/**
+	 * returns the objects of the stack, the last pushed first
+	 */
+	public Object[] toArray() {
+		int n = 0;
+		for (Node h = (Node) head.get(); h != null; h = h.next)
+			n++;
+		Object[] a = new Object[n];
+		int i = 0;
+		for (Node h = (Node) head.get(); h != null && i < n; h = h.next)
+			a[i++] = h.item;
+		if (i < n) {
+			Object[] b = new Object[i];
+			System.arraycopy(a, 0, b, 0, i);
+			a = b;
+		}
+		return a;
+	}
+
+	public String toString() {
+		return "ConcurrentStack: size=<" + size() + ">";
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations (or any positive values) with power of two
+ * buckets: bucket i counts the values v with 2^(i-1) <= v < 2^i, bucket 0
+ * counts the values lesser than 1. Recording is lock-free, percentiles are
+ * given as the upper bound of the matching bucket.<p>
+ * The buckets are striped like StripedCounter: each thread records in its
+ * own set of buckets, the readers sum them.
+ */
+public class Histogram {
+	public static final int BUCKETS = 64;
+
+	// sets of buckets, at most 8 (4 KB)
+	private static final int STRIPES = Math.min(8, StripedCounter.STRIPES);
+
+	private final AtomicLongArray buckets = new AtomicLongArray(STRIPES
+			* BUCKETS);
+
+	private final StripedCounter sum = new StripedCounter();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * records one value
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		int stripe = StripedCounter.stripe() & (STRIPES - 1);
+		buckets.incrementAndGet(stripe * BUCKETS + bucketOf(value));
+		sum.add(value);
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value))
+				break;
+		}
+	}
+
+	public long getCount() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += getBucket(i);
+		return n;
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = getCount();
+		return (n == 0) ? 0 : getSum() / n;
+	}
+
+	/**
+	 * returns the number of values of a bucket
+	 */
+	public long getBucket(int i) {
+		long n = 0;
+		for (int s = 0; s < STRIPES; s++)
+			n += buckets.get(s * BUCKETS + i);
+		return n;
+	}
+
+	/**
+	 * returns the upper bound of the bucket holding the given percentile
+	 * @param percentile between 0 and 100
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = getBucket(i);
+			n += counts[i];
+		}
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < STRIPES * BUCKETS; i++)
+			buckets.set(i, 0);
+		sum.reset();
+		max.set(0);
+	}
+
+	static int bucketOf(long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	static long upperBound(int bucket) {
+		return (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("count=").append(getCount());
+		sb.append(" mean=").append(getMean());
+		sb.append(" p50=").append(getPercentile(50));
+		sb.append(" p99=").append(getPercentile(99));
+		sb.append(" max=").append(getMax());
+		return sb.toString();
+	}
+}
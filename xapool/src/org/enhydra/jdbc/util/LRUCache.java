@@ -65,9 +65,11 @@ public class LRUCache {
      */
     public void put(Object key, Object value) {
         List removed = new ArrayList();
+        List evicted = new ArrayList();
         synchronized (this) {
             // make room if needed
             while (cache.size() + 1 > maxSize) {
+                evicted.add(lru.getFirst());
                 removed.add(removeLRU());
             }
             // remove the key from the list if it's in the cache already
@@ -83,6 +85,7 @@ public class LRUCache {
             // put it in the actual cache
             cache.put(key, value);
         }
+        evictedAll(evicted);
         cleanupAll(removed);
     }
 
@@ -131,12 +134,15 @@ public class LRUCache {
             return;
         }
         List removed = new ArrayList();
+        List evicted = new ArrayList();
         synchronized (this) {
             maxSize = newSize;
             while (cache.size() > maxSize) {
+                evicted.add(lru.getFirst());
                 removed.add(removeLRU());
             }
         }
+        evictedAll(evicted);
         cleanupAll(removed);
     }
 
@@ -147,6 +153,18 @@ public class LRUCache {
         }
     }
     
+    void evictedAll(List keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            evicted(keys.get(i));
+        }
+    }
+
+    /**
+     * Override this method to be told of the keys removed because the
+     * cache was full, called before cleanupObject of their objects
+     */
+    protected void evicted(Object key) {}
+
     /**
      * Override this method to do special cleanup on an object,
      * such as closing a statement or a connection
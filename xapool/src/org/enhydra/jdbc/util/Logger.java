@@ -25,6 +25,15 @@ import org.apache.commons.logging.Log;
 
 import java.io.PrintWriter;
 
+/**
+ * Logger of XAPool, on commons-logging. The messages built by
+ * concatenation are guarded by isDebugEnabled() (or the other levels), so
+ * that nothing is allocated when the level is off:
+ * <pre>
+ * if (log.isDebugEnabled())
+ *     log.debug("GenericPool:checkOut count=" + count);
+ * </pre>
+ */
 public class Logger extends PrintWriter{
     private Log log;
 
@@ -33,6 +42,19 @@ public class Logger extends PrintWriter{
         this.log = log;
     }
 
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+    public boolean isInfoEnabled() {
+        return log.isInfoEnabled();
+    }
+    public boolean isWarnEnabled() {
+        return log.isWarnEnabled();
+    }
+    public boolean isErrorEnabled() {
+        return log.isErrorEnabled();
+    }
+
     public void debug(Object o) {
         log.debug(o);
     }
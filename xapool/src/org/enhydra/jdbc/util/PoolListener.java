@@ -0,0 +1,67 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+/**
+ * Receives the events of a pool (or of a StandardXADataSource), to feed
+ * an external metrics registry. Listeners are added with
+ * PoolMetrics.addListener and are called by the thread which does the
+ * operation: they must be fast and must not throw. Durations are in
+ * nanoseconds.
+ */
+public interface PoolListener {
+	/**
+	 * an object has been checked out, waitTime is 0 if the pool was not
+	 * exhausted
+	 */
+	public void checkedOut(PoolMetrics source, long waitTime);
+
+	/**
+	 * an object has been checked in after being used for holdTime
+	 */
+	public void checkedIn(PoolMetrics source, long holdTime);
+
+	/**
+	 * a thread gave up waiting for an object
+	 */
+	public void timedOut(PoolMetrics source, long waitTime);
+
+	/**
+	 * an object has been created, or its creation has failed
+	 */
+	public void created(PoolMetrics source, long time, boolean success);
+
+	/**
+	 * an object has been checked or tested
+	 */
+	public void validated(PoolMetrics source, long time, boolean valid);
+
+	/**
+	 * an object has been closed
+	 */
+	public void destroyed(PoolMetrics source, long time);
+
+	/**
+	 * an object has been checked out for longer than the leak threshold
+	 */
+	public void leakSuspected(PoolMetrics source, Object obj, long holdTime);
+}
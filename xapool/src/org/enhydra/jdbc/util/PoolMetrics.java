@@ -0,0 +1,345 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Metrics of a pool or of a StandardXADataSource: histograms of the wait,
+ * hold, create, validation and destroy times, counters of the timeouts,
+ * failures and leak suspects, and gauges of the active, idle and pending
+ * objects given by the owner. The changes of the size of the pool made by
+ * its tuner are counted, with the reason of the last one. Recording uses
+ * striped counters and never takes a lock, reading is cheap enough to be
+ * polled by a monitoring tool. The metrics can be registered as a MBean,
+ * and listeners can be added to receive each event.
+ */
+public abstract class PoolMetrics implements PoolMetricsMBean {
+	private static final PoolListener[] NO_LISTENERS = new PoolListener[0];
+
+	// nanoseconds
+	private final Histogram waitTime = new Histogram();
+
+	private final Histogram holdTime = new Histogram();
+
+	private final Histogram createTime = new Histogram();
+
+	private final Histogram validationTime = new Histogram();
+
+	private final Histogram destroyTime = new Histogram();
+
+	private final StripedCounter checkOuts = new StripedCounter();
+
+	private final StripedCounter timeouts = new StripedCounter();
+
+	private final StripedCounter createFailures = new StripedCounter();
+
+	private final StripedCounter validationFailures = new StripedCounter();
+
+	private final StripedCounter leakSuspects = new StripedCounter();
+
+	private final StripedCounter resizes = new StripedCounter();
+
+	private volatile String lastResize = "";
+
+	// copied on write, read at each event
+	private volatile PoolListener[] listeners = NO_LISTENERS;
+
+	private ObjectName objectName; // set while registered
+
+	public abstract int getActiveCount();
+
+	public abstract int getIdleCount();
+
+	public abstract int getPendingCount();
+
+	public void checkedOut(long wait) {
+		checkOuts.increment();
+		if (wait > 0)
+			waitTime.record(wait);
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].checkedOut(this, wait);
+	}
+
+	public void checkedIn(long hold) {
+		holdTime.record(hold);
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].checkedIn(this, hold);
+	}
+
+	public void timedOut(long wait) {
+		timeouts.increment();
+		waitTime.record(wait);
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].timedOut(this, wait);
+	}
+
+	public void created(long time, boolean success) {
+		if (success)
+			createTime.record(time);
+		else
+			createFailures.increment();
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].created(this, time, success);
+	}
+
+	public void validated(long time, boolean valid) {
+		validationTime.record(time);
+		if (!valid)
+			validationFailures.increment();
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].validated(this, time, valid);
+	}
+
+	public void destroyed(long time) {
+		destroyTime.record(time);
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].destroyed(this, time);
+	}
+
+	public void leakSuspected(Object obj, long hold) {
+		leakSuspects.increment();
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			l[i].leakSuspected(this, obj, hold);
+	}
+
+	/**
+	 * the tuner of the pool has changed its size
+	 * @param reason what the tuner has measured
+	 */
+	public void resized(int minSize, int maxSize, String reason) {
+		resizes.increment();
+		lastResize = "minSize=" + minSize + " maxSize=" + maxSize + " : "
+				+ reason;
+	}
+
+	public synchronized void addListener(PoolListener listener) {
+		PoolListener[] l = new PoolListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, l, 0, listeners.length);
+		l[listeners.length] = listener;
+		listeners = l;
+	}
+
+	public synchronized void removeListener(PoolListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				PoolListener[] l = new PoolListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, l, 0, i);
+				System.arraycopy(listeners, i + 1, l, i, l.length - i);
+				listeners = l;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * adds the listeners of this metrics to an other one, used when the
+	 * pool engine of a data source is switched
+	 */
+	public void copyListenersTo(PoolMetrics metrics) {
+		PoolListener[] l = listeners;
+		for (int i = 0; i < l.length; i++)
+			metrics.addListener(l[i]);
+	}
+
+	/**
+	 * registers the metrics in the platform MBean server
+	 * @param name object name, for instance
+	 * "org.enhydra.jdbc:type=StandardPoolDataSource,name=myPool"
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		unregisterMBean();
+		ObjectName on = new ObjectName(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(new StandardMBean(this, PoolMetricsMBean.class),
+				on);
+		objectName = on;
+	}
+
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	public Histogram getWaitTime() {
+		return waitTime;
+	}
+
+	public Histogram getHoldTime() {
+		return holdTime;
+	}
+
+	public Histogram getCreateTime() {
+		return createTime;
+	}
+
+	public Histogram getValidationTime() {
+		return validationTime;
+	}
+
+	public Histogram getDestroyTime() {
+		return destroyTime;
+	}
+
+	public long getCheckOutCount() {
+		return checkOuts.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public long getCreateCount() {
+		return createTime.getCount();
+	}
+
+	public long getCreateFailureCount() {
+		return createFailures.get();
+	}
+
+	public long getValidationCount() {
+		return validationTime.getCount();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailures.get();
+	}
+
+	public long getDestroyCount() {
+		return destroyTime.getCount();
+	}
+
+	public long getLeakSuspectCount() {
+		return leakSuspects.get();
+	}
+
+	public long getResizeCount() {
+		return resizes.get();
+	}
+
+	public String getLastResize() {
+		return lastResize;
+	}
+
+	public long getWaitTimeMean() {
+		return waitTime.getMean() / 1000;
+	}
+
+	public long getWaitTime99Percentile() {
+		return waitTime.getPercentile(99) / 1000;
+	}
+
+	public long getWaitTimeMax() {
+		return waitTime.getMax() / 1000;
+	}
+
+	public long getHoldTimeMean() {
+		return holdTime.getMean() / 1000;
+	}
+
+	public long getHoldTime99Percentile() {
+		return holdTime.getPercentile(99) / 1000;
+	}
+
+	public long getHoldTimeMax() {
+		return holdTime.getMax() / 1000;
+	}
+
+	public long getCreateTimeMean() {
+		return createTime.getMean() / 1000;
+	}
+
+	public long getCreateTimeMax() {
+		return createTime.getMax() / 1000;
+	}
+
+	public long getValidationTimeMean() {
+		return validationTime.getMean() / 1000;
+	}
+
+	public long getValidationTimeMax() {
+		return validationTime.getMax() / 1000;
+	}
+
+	public long getDestroyTimeMean() {
+		return destroyTime.getMean() / 1000;
+	}
+
+	public long getDestroyTimeMax() {
+		return destroyTime.getMax() / 1000;
+	}
+
+	public void reset() {
+		waitTime.reset();
+		holdTime.reset();
+		createTime.reset();
+		validationTime.reset();
+		destroyTime.reset();
+		checkOuts.reset();
+		timeouts.reset();
+		createFailures.reset();
+		validationFailures.reset();
+		leakSuspects.reset();
+		resizes.reset();
+		lastResize = "";
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("PoolMetrics:\n");
+		sb.append("     active =<" + getActiveCount() + ">\n");
+		sb.append("     idle =<" + getIdleCount() + ">\n");
+		sb.append("     pending =<" + getPendingCount() + ">\n");
+		sb.append("     checkOut =<" + getCheckOutCount() + ">\n");
+		sb.append("     timeout =<" + getTimeoutCount() + ">\n");
+		sb.append("     create failure =<" + getCreateFailureCount() + ">\n");
+		sb.append("     validation failure =<" + getValidationFailureCount()
+				+ ">\n");
+		sb.append("     leak suspect =<" + getLeakSuspectCount() + ">\n");
+		sb.append("     resize =<" + getResizeCount() + "> last =<"
+				+ lastResize + ">\n");
+		sb.append("     wait time (ns) =<" + waitTime + ">\n");
+		sb.append("     hold time (ns) =<" + holdTime + ">\n");
+		sb.append("     create time (ns) =<" + createTime + ">\n");
+		sb.append("     validation time (ns) =<" + validationTime + ">\n");
+		sb.append("     destroy time (ns) =<" + destroyTime + ">\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+/**
+ * JMX interface of PoolMetrics. Durations are in microseconds, the
+ * percentiles are the upper bounds of power of two buckets.
+ */
+public interface PoolMetricsMBean {
+	// gauges
+	public int getActiveCount();
+
+	public int getIdleCount();
+
+	public int getPendingCount();
+
+	// counters
+	public long getCheckOutCount();
+
+	public long getTimeoutCount();
+
+	public long getCreateCount();
+
+	public long getCreateFailureCount();
+
+	public long getValidationCount();
+
+	public long getValidationFailureCount();
+
+	public long getDestroyCount();
+
+	public long getLeakSuspectCount();
+
+	// changes of the size of the pool by its tuner
+	public long getResizeCount();
+
+	public String getLastResize();
+
+	// checkOut of the threads which had to wait
+	public long getWaitTimeMean();
+
+	public long getWaitTime99Percentile();
+
+	public long getWaitTimeMax();
+
+	// time between checkOut and checkIn
+	public long getHoldTimeMean();
+
+	public long getHoldTime99Percentile();
+
+	public long getHoldTimeMax();
+
+	public long getCreateTimeMean();
+
+	public long getCreateTimeMax();
+
+	public long getValidationTimeMean();
+
+	public long getValidationTimeMax();
+
+	public long getDestroyTimeMean();
+
+	public long getDestroyTimeMax();
+
+	/**
+	 * resets the counters and the histograms
+	 */
+	public void reset();
+}
@@ -1,37 +1,77 @@
 package org.enhydra.jdbc.util;
 
-import java.util.Hashtable;
-import java.util.Enumeration;
-import java.io.FileInputStream;
-import java.io.DataInputStream;
-import java.util.regex.Pattern;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.enhydra.jdbc.util.Logger;
 
 import org.apache.commons.logging.LogFactory;
 
-
+/**
+ * Cache of the results of the requests matching the patterns of a
+ * configuration file. Each line of the file is a regular expression,
+ * optionally preceded by the time to live of the results in ms:
+ * <pre>
+ * # comment
+ * ttl=60000 SELECT \* FROM COUNTRY.*
+ * SELECT NAME FROM CURRENCY WHERE ID=\d+
+ * </pre>
+ * The patterns are compiled into a single regular expression, and the
+ * classification of the requests is kept in a bounded LRU cache. The
+ * results are copied into immutable ResultSnapshots, one per sql request,
+ * and each caller reads them with its own cursor. The results are evicted
+ * when their time to live is over, and when there are more than
+ * maxResults of them; a result of more than maxRows rows is not cached.
+ */
 public class RequestCache {
-	// the cache objects
-	// there are only the requests found in the configuration file
-	private static Hashtable cache_ = null;
+	public static final long DEFAULT_TTL = 86400000; // 1 day
+
+	public static final int DEFAULT_MAX_RESULTS = 256;
 
-	private static Hashtable dsCache_ = null;
+	public static final int DEFAULT_MAX_ROWS = 10000;
 
-	// all requests , given by the application
-	// be careful, this object may be large, but with a minimum of
-	// object size (only String objects stored in the value part)
-	private static Hashtable requests_ = null;
+	public static final int DEFAULT_CLASSIFICATION_SIZE = 1024;
+
+	// classification of the requests which do not match any pattern
+	private static final Object NOT_CACHEABLE = new Object();
+
+	// the patterns which cannot be merged with the other ones: back
+	// references, which are renumbered, flags, which are not scoped, and
+	// quotes, which may not be closed
+	private static final Pattern NOT_MERGEABLE = Pattern
+			.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[idmsuxU-]+\\)");
 
 	// the current singleton object
 	private static RequestCache theCache_ = null;
 
-	private long timeToLive_ = 86400000; // 1 day
+	private static Logger logger = new Logger(LogFactory
+			.getLog("org.enhydra.jdbc.util"));
 
-	private String path = null;
+	// the patterns of the configuration file and the classification of the
+	// requests, replaced by reset()
+	private volatile Rules rules_;
 
-	private static Logger logger;
+	// sql request -> Result
+	private volatile ConcurrentLRUCache results_ = new ConcurrentLRUCache(
+			DEFAULT_MAX_RESULTS);
+
+	private volatile int maxRows_ = DEFAULT_MAX_ROWS;
+
+	private volatile int classificationSize_ = DEFAULT_CLASSIFICATION_SIZE;
+
+	private long timeToLive_ = DEFAULT_TTL;
+
+	private String path = null;
 
 	/**
 	 * This method is used to obtain the cache, if it does not exist, it creates
@@ -52,241 +92,326 @@ public class RequestCache {
 	}
 
 	public RequestCache() {
-		if (logger == null)
-			logger = new Logger(LogFactory.getLog("org.enhydra.jdbc.util"));
-
-		if (cache_ == null)
-			cache_ = new Hashtable();
-
-		if (requests_ == null)
-			requests_ = new Hashtable();
-
-		if (dsCache_ == null)
-			dsCache_ = new Hashtable();
-
-		readConfigurationFile();
+		this(null);
 	}
 
 	public RequestCache(String path) {
-		if (cache_ == null)
-			cache_ = new Hashtable();
-
-		if (requests_ == null)
-			requests_ = new Hashtable();
-
 		this.path = path;
-
-		readConfigurationFile();
+		rules_ = new Rules(readConfigurationFile(), classificationSize_);
 	}
 
-	public void readConfigurationFile() {
-		if (path != null) {
-			try {
-				logger
-						.debug("RequestCache: readConfigurationFile try to open file="
-								+ path);
-				FileInputStream fstream = new FileInputStream(path);
-				DataInputStream in = new DataInputStream(fstream);
-				logger
-						.debug("RequestCache: readConfigurationFile open done file="
-								+ path);
-
-				while (in.available() != 0) {
-					String req = ((String) in.readLine()).trim();
-					logger.debug("RequestCache:readConfigurationFile line:"
-							+ req);
-					if (!req.startsWith("#")) {
-						long ttl = timeToLive_;
-						String newreq = null;
-						if (req.startsWith("ttl")) {
-							StringTokenizer st = new StringTokenizer(req);
-							String ttls = st.nextToken();
-							logger
-									.debug("RequestCache:readConfigurationFile ttls:<"
-											+ ttls + ">");
-							ttl = Integer.parseInt(ttls.substring(4));
-							newreq = req.substring(ttls.length()).trim();
-						} else
-							newreq = req;
-
-						Pattern p = Pattern.compile(newreq);
-						logger
-								.debug("RequestCache:readConfigurationFile newreq:<"
-										+ newreq + ">");
-						logger.debug("RequestCache:readConfigurationFile ttl:<"
-								+ ttl + ">");
-						RequestCacheObject uco = new RequestCacheObject(newreq,
-								p, ttl);
-						cache_.put(newreq, uco);
-					}
+	/**
+	 * returns the patterns of the configuration file
+	 */
+	public List readConfigurationFile() {
+		List objects = new ArrayList();
+		if (path == null)
+			return objects;
+		BufferedReader in = null;
+		try {
+			if (logger.isDebugEnabled())
+				logger.debug("RequestCache:readConfigurationFile open file="
+						+ path);
+			in = new BufferedReader(new FileReader(path));
+			String line;
+			while ((line = in.readLine()) != null) {
+				String req = line.trim();
+				if (req.length() == 0 || req.startsWith("#"))
+					continue;
+				long ttl = timeToLive_;
+				if (req.startsWith("ttl")) {
+					StringTokenizer st = new StringTokenizer(req);
+					String ttls = st.nextToken();
+					ttl = Long.parseLong(ttls.substring(4));
+					req = req.substring(ttls.length()).trim();
+				}
+				try {
+					objects.add(new RequestCacheObject(req, Pattern
+							.compile(req), ttl));
+					if (logger.isDebugEnabled())
+						logger.debug("RequestCache:readConfigurationFile req=<"
+								+ req + "> ttl=<" + ttl + ">");
+				} catch (PatternSyntaxException e) {
+					logger.error("RequestCache:readConfigurationFile invalid pattern <"
+							+ req + ">: " + e.getMessage());
+				}
+			}
+		} catch (Exception e) {
+			logger.error("RequestCache:readConfigurationFile file=" + path
+					+ " exception: " + e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
 				}
-
-				in.close();
-			} catch (Exception e) {
-				System.err.println("File input error");
-				e.printStackTrace();
 			}
 		}
+		return objects;
 	}
 
-	public boolean isInCache(String req) {
-		if (cache_ != null)
-			if (cache_.size() == 0)
-				return false;
+	/**
+	 * adds a pattern to the cache, as if it was in the configuration file.
+	 * The patterns added are lost by reset()
+	 */
+	public synchronized void addRequest(String req, long ttl) {
+		List objects = new ArrayList(rules_.objects);
+		objects.add(new RequestCacheObject(req, Pattern.compile(req), ttl));
+		rules_ = new Rules(objects, classificationSize_);
+	}
 
-		if ((cache_ == null) || (requests_ == null) || (req == null)
-				|| (req.compareTo("") == 0)) {
-			return false;
+	/**
+	 * returns the pattern matching the sql request, null if the request is
+	 * not cacheable
+	 */
+	public RequestCacheObject getRequest(String sql) {
+		Rules r = rules_;
+		if (r.objects.isEmpty() || sql == null)
+			return null;
+		Object o = r.classification.get(sql);
+		if (o == null) {
+			o = r.match(sql);
+			if (o == null)
+				o = NOT_CACHEABLE;
+			r.classification.put(sql, o);
 		}
+		return (o == NOT_CACHEABLE) ? null : (RequestCacheObject) o;
+	}
 
-		// optimization for the real life, all application requests
-		// may be found in the requests object, and we need to save time
-		String redir = (String) requests_.get(req);
-		if (redir != null) {
-			if (redir.compareTo("null") != 0) {
-				// logger.debug("RequestCache:isInCache requests_
-				// contains(req)");
-				return ((RequestCacheObject) (cache_.get(redir))).isAlive();
-			} else
-				// this is a non-cacheable request
-				return false;
-
-		} else {
-
-			// if the cache contains the sql request
-			if (cache_.containsKey(req)) {
-				// logger.debug("RequestCache:isInCache contains(req)");
-				return ((RequestCacheObject) (cache_.get(req))).isAlive();
-			} else {
-				// if the cache does not contain the sql request
-				// we are going to test all items in cache to test the pattern
-				for (Enumeration e = cache_.keys(); e.hasMoreElements();) {
-					RequestCacheObject uco = (RequestCacheObject) (cache_.get(e
-							.nextElement()));
-					if (uco.getPattern().matcher(req).matches()) {
-						// if it matches, return if the RequestCacheObject is
-						// alive
-						// logger.debug("RequestCache:isInCache
-						// contains(pattern)");
-						return uco.isAlive();
-					}
-				}
-			}
-		}
+	/**
+	 * returns true if the result of the sql request is in the cache
+	 */
+	public boolean isInCache(String req) {
+		return getResult(req) != null;
+	}
 
-		return false;
+	public String getSqlPattern(String sql) {
+		RequestCacheObject uco = getRequest(sql);
+		return (uco == null) ? null : uco.getRequest();
 	}
 
-	public synchronized void setResult(String req, Object rset) {
+	private Result getResult(String sql) {
+		if (getRequest(sql) == null)
+			return null;
+		ConcurrentLRUCache results = results_;
+		Result r = (Result) results.get(sql);
+		if (r != null && r.expires - System.currentTimeMillis() < 0) {
+			if (logger.isDebugEnabled())
+				logger.debug("RequestCache:getResult out of live req=<" + sql
+						+ ">");
+			results.remove(sql);
+			return null;
+		}
+		return r;
+	}
 
-		// if the cache exists and the sql request (or pattern) is not null
-		if ((cache_ != null) && (req != null)) {
-			// first remove the RequestCacheObject to the cache
-			RequestCacheObject uco = (RequestCacheObject) (cache_.remove(req));
-			uco.setResult(rset);
-			// second, add the new changed object
-			cache_.put(req, uco);
+	/**
+	 * returns a new cursor over the cached result of the sql request, null if
+	 * the result is not in the cache
+	 * @param st statement returned by getStatement() of the cursor
+	 */
+	public ResultSet getResultSet(String sql, Statement st) {
+		Result r = getResult(sql);
+		return (r == null) ? null : new SnapshotResultSet(r.snapshot, st);
+	}
+
+	/**
+	 * caches the result of a sql request if it is cacheable. Returns the
+	 * ResultSet to give to the application: rs if the request is not
+	 * cacheable, otherwise a cursor over the copy of the rows
+	 */
+	public ResultSet cache(String sql, ResultSet rs, Statement st)
+			throws SQLException {
+		RequestCacheObject uco = getRequest(sql);
+		if (uco == null || rs == null)
+			return rs;
+		ResultSnapshot snapshot;
+		try {
+			snapshot = new ResultSnapshot(rs, maxRows_);
+		} catch (SQLException e) {
+			rs.close();
+			throw e;
+		}
+		if (!snapshot.isComplete()) {
+			if (logger.isDebugEnabled())
+				logger.debug("RequestCache:cache more than " + maxRows_
+						+ " rows, not cached req=<" + sql + ">");
+			return new SnapshotResultSet(snapshot, st, rs);
 		}
+		results_.put(sql, new Result(snapshot, System.currentTimeMillis()
+				+ uco.getTimeToLive()));
+		return new SnapshotResultSet(snapshot, st);
 	}
 
-	public Object getResult(String req) {
+	/**
+	 * maximum number of results in the cache, the least recently used ones
+	 * are evicted. The results already cached are dropped
+	 */
+	public synchronized void setMaxResults(int max) {
+		if (max <= 0)
+			return;
+		ConcurrentLRUCache old = results_;
+		results_ = new ConcurrentLRUCache(max);
+		old.cleanupAll();
+	}
 
-		// if the cache exists and it contains the pattern or sql request
-		if (cache_ != null) {
-			// return the stored object
-			String link = (String) (requests_.get(req));
-			if (link == null) {
-				// logger.debug("RequestCache:getResult link is null");
-				String rsql = getSqlPattern(req);
-				RequestCacheObject uco = (RequestCacheObject) (cache_.get(rsql));
+	public int getMaxResults() {
+		return results_.getMaxSize();
+	}
 
-				return uco;
-			}
-			RequestCacheObject uco = (RequestCacheObject) (cache_.get(link));
-			if (uco == null) {
-				// logger.debug("RequestCache:getResult uco is null");
-				return null;
-			}
-			Object obj = uco.getResult();
+	/**
+	 * maximum number of rows of a cached result
+	 */
+	public void setMaxRows(int max) {
+		if (max > 0)
+			maxRows_ = max;
+	}
 
-			if (obj != null)
-				return obj;
+	public int getMaxRows() {
+		return maxRows_;
+	}
 
-		}
-		return null;
+	/**
+	 * maximum number of sql requests whose pattern is remembered
+	 */
+	public synchronized void setClassificationSize(int size) {
+		if (size <= 0)
+			return;
+		classificationSize_ = size;
+		rules_ = new Rules(rules_.objects, size);
 	}
 
-	public String getSqlPattern(String sql) {
-		// try to parse all the cache to determine if the sql statement matches
-		// the defined pattern
-		if (cache_ != null)
-			if (cache_.size() == 0)
-				return null;
-
-		for (Enumeration e = cache_.keys(); e.hasMoreElements();) {
-			RequestCacheObject uco = (RequestCacheObject) (cache_.get(e
-					.nextElement()));
-
-			// if it matches, we return it
-			if (uco.getPattern().matcher(sql).matches()) {
-				// logger.debug("RequestCache:getSqlPattern yes, it matches
-				// req=<"+sql+">");
-				return uco.getRequest();
-			}
-		}
-		return null;
+	public int getClassificationSize() {
+		return classificationSize_;
 	}
 
 	/**
-	 * make the link between a application request (sql) and the pattern found
-	 * in the key of the cache_ object
-	 * 
-	 * @param pattern :
-	 *            may be "null" String
+	 * default time to live of the patterns without ttl, in ms. Applied to
+	 * the patterns read by the next reset()
 	 */
-	public void setLink(String sql, String pattern) {
+	public void setTimeToLive(long ttl) {
+		timeToLive_ = ttl;
+	}
 
-		if (cache_ != null)
-			if (cache_.size() != 0)
-				if ((requests_ != null) && (sql != null) && (pattern != null)) {
-					requests_.put(sql, pattern);
-				}
+	public long getTimeToLive() {
+		return timeToLive_;
 	}
 
-	public synchronized void reset() {
-		// we need to remove all elements in cache
-		for (Enumeration e = cache_.keys(); e.hasMoreElements();) {
-			RequestCacheObject uco = (RequestCacheObject) (cache_.get(e
-					.nextElement()));
-			uco.close();
-			uco = null;
-		}
+	public int getResultCount() {
+		return results_.cacheSize();
+	}
 
+	public synchronized void reset() {
 		// and now, to create again all elements from the configuration file
-		cache_.clear();
-		cache_ = null;
-		cache_ = new Hashtable();
-		requests_.clear();
-		requests_ = null;
-		requests_ = new Hashtable();
-		readConfigurationFile();
+		rules_ = new Rules(readConfigurationFile(), classificationSize_);
+		results_.cleanupAll();
 	}
 
 	public String toString() {
 		StringBuffer sbuf = new StringBuffer();
-		sbuf.append("=== DUMP REQUESTS ===\n");
-		for (Enumeration e = requests_.keys(); e.hasMoreElements();) {
-			String s = (String) e.nextElement();
-			sbuf.append("key=<" + s + "> value=<" + (String) requests_.get(s)
-					+ ">\n");
-		}
 		sbuf.append("=== DUMP CACHE ===\n");
-		for (Enumeration e = cache_.keys(); e.hasMoreElements();) {
-			String s = (String) e.nextElement();
-			RequestCacheObject uco = (RequestCacheObject) cache_.get(s);
-			sbuf.append("key(pattern)=<" + s + "> value(RequestCacheObject)=<"
-					+ uco.toString() + ">\n");
-		}
+		Rules r = rules_;
+		for (int i = 0; i < r.objects.size(); i++)
+			sbuf.append("pattern=<" + r.objects.get(i) + ">\n");
+		sbuf.append("classified requests=<" + r.classification.cacheSize()
+				+ ">\n");
+		sbuf.append("results=<" + results_.cacheSize() + "> maxResults=<"
+				+ getMaxResults() + "> maxRows=<" + maxRows_ + ">\n");
 		return sbuf.toString();
 	}
+
+	/**
+	 * a cached result
+	 */
+	private static final class Result {
+		final ResultSnapshot snapshot;
+
+		final long expires;
+
+		Result(ResultSnapshot snapshot, long expires) {
+			this.snapshot = snapshot;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * the patterns, merged in one regular expression (p1)|(p2)|..., and the
+	 * classification of the requests
+	 */
+	private static final class Rules {
+		final List objects;
+
+		final ConcurrentLRUCache classification;
+
+		// null if no pattern can be merged
+		private final Pattern merged;
+
+		// group of each merged pattern, in the order of the alternatives
+		private final int[] groups;
+
+		private final RequestCacheObject[] mergedObjects;
+
+		private RequestCacheObject[] others;
+
+		Rules(List objects, int classificationSize) {
+			this.objects = objects;
+			this.classification = new ConcurrentLRUCache(classificationSize);
+			List in = new ArrayList();
+			List out = new ArrayList();
+			for (int i = 0; i < objects.size(); i++) {
+				RequestCacheObject uco = (RequestCacheObject) objects.get(i);
+				if (NOT_MERGEABLE.matcher(uco.getRequest()).find())
+					out.add(uco);
+				else
+					in.add(uco);
+			}
+			mergedObjects = (RequestCacheObject[]) in
+					.toArray(new RequestCacheObject[in.size()]);
+			others = (RequestCacheObject[]) out
+					.toArray(new RequestCacheObject[out.size()]);
+			groups = new int[mergedObjects.length];
+			if (mergedObjects.length == 0) {
+				merged = null;
+				return;
+			}
+			StringBuffer sb = new StringBuffer();
+			int group = 1;
+			for (int i = 0; i < mergedObjects.length; i++) {
+				if (i > 0)
+					sb.append('|');
+				sb.append('(').append(mergedObjects[i].getRequest()).append(')');
+				groups[i] = group;
+				group += 1 + mergedObjects[i].getPattern().matcher("")
+						.groupCount();
+			}
+			Pattern p = null;
+			try {
+				p = Pattern.compile(sb.toString());
+			} catch (PatternSyntaxException e) {
+				// the patterns are matched one by one
+				logger.error("RequestCache: cannot merge the patterns: "
+						+ e.getMessage());
+				others = (RequestCacheObject[]) objects
+						.toArray(new RequestCacheObject[objects.size()]);
+			}
+			merged = p;
+		}
+
+		RequestCacheObject match(String sql) {
+			if (merged != null) {
+				Matcher m = merged.matcher(sql);
+				if (m.matches()) {
+					for (int i = 0; i < groups.length; i++) {
+						if (m.start(groups[i]) != -1)
+							return mergedObjects[i];
+					}
+				}
+			}
+			for (int i = 0; i < others.length; i++) {
+				if (others[i].matches(sql))
+					return others[i];
+			}
+			return null;
+		}
+	}
 }
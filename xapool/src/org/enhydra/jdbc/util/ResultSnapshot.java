@@ -0,0 +1,419 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Immutable copy of the rows of a ResultSet, stored by column: the
+ * integer and floating point columns in arrays of primitives (with a
+ * bitmap of the null values), the other ones in arrays of objects. BLOB
+ * and CLOB values are read into byte arrays and strings, so the copy does
+ * not depend on the connection. The copy is shared by all the threads,
+ * each one reads it through its own SnapshotResultSet. It is also the
+ * ResultSetMetaData of the cursors, copied from the original ResultSet.
+ */
+public final class ResultSnapshot implements ResultSetMetaData {
+	// storage of a column
+	static final int OBJECT = 0;
+
+	static final int INT = 1;
+
+	static final int LONG = 2;
+
+	static final int DOUBLE = 3;
+
+	private final Column[] columns;
+
+	// lower case label or name -> Integer (1 based)
+	private final HashMap index = new HashMap();
+
+	private int rows;
+
+	// false if the ResultSet had more than maxRows rows, it is then left on
+	// the first row which has not been copied
+	private boolean complete;
+
+	/**
+	 * copies at most maxRows rows of rs, from its current position. If all
+	 * the rows have been copied, rs is closed
+	 */
+	public ResultSnapshot(ResultSet rs, int maxRows) throws SQLException {
+		ResultSetMetaData md = rs.getMetaData();
+		int n = md.getColumnCount();
+		columns = new Column[n];
+		for (int i = 0; i < n; i++) {
+			columns[i] = new Column(md, i + 1);
+			Integer col = new Integer(i + 1);
+			String name = columns[i].name;
+			if (name != null && !index.containsKey(name.toLowerCase()))
+				index.put(name.toLowerCase(), col);
+		}
+		// the labels are looked up first
+		for (int i = n - 1; i >= 0; i--) {
+			String label = columns[i].label;
+			if (label != null)
+				index.put(label.toLowerCase(), new Integer(i + 1));
+		}
+		complete = true;
+		while (rs.next()) {
+			if (rows == maxRows) {
+				complete = false;
+				break;
+			}
+			for (int i = 0; i < n; i++)
+				columns[i].read(rs, i + 1, rows);
+			rows++;
+		}
+		for (int i = 0; i < n; i++)
+			columns[i].trim(rows);
+		if (complete)
+			rs.close();
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * returns false if the ResultSet had more rows than the copy
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * returns the index of a column, 0 if there is no such column
+	 */
+	int findColumn(String label) {
+		Integer i = (Integer) index.get(label.toLowerCase());
+		return (i == null) ? 0 : i.intValue();
+	}
+
+	Column column(int column) throws SQLException {
+		if (column < 1 || column > columns.length)
+			throw new SQLException("ResultSnapshot: invalid column index "
+					+ column);
+		return columns[column - 1];
+	}
+
+	/**
+	 * a column: its meta data and its values
+	 */
+	static final class Column {
+		final String label;
+
+		final String name;
+
+		final String schemaName;
+
+		final String tableName;
+
+		final String catalogName;
+
+		final String typeName;
+
+		final String className;
+
+		final int type;
+
+		final int precision;
+
+		final int scale;
+
+		final int displaySize;
+
+		final int nullable;
+
+		final boolean autoIncrement;
+
+		final boolean caseSensitive;
+
+		final boolean searchable;
+
+		final boolean currency;
+
+		final boolean signed;
+
+		final int kind;
+
+		int[] ints;
+
+		long[] longs;
+
+		double[] doubles;
+
+		Object[] objects;
+
+		BitSet nulls;
+
+		Column(ResultSetMetaData md, int i) throws SQLException {
+			label = md.getColumnLabel(i);
+			name = md.getColumnName(i);
+			schemaName = md.getSchemaName(i);
+			tableName = md.getTableName(i);
+			catalogName = md.getCatalogName(i);
+			typeName = md.getColumnTypeName(i);
+			className = md.getColumnClassName(i);
+			type = md.getColumnType(i);
+			precision = md.getPrecision(i);
+			scale = md.getScale(i);
+			displaySize = md.getColumnDisplaySize(i);
+			nullable = md.isNullable(i);
+			autoIncrement = md.isAutoIncrement(i);
+			caseSensitive = md.isCaseSensitive(i);
+			searchable = md.isSearchable(i);
+			currency = md.isCurrency(i);
+			signed = md.isSigned(i);
+			switch (type) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				kind = INT;
+				ints = new int[16];
+				break;
+			case Types.BIGINT:
+				kind = LONG;
+				longs = new long[16];
+				break;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				kind = DOUBLE;
+				doubles = new double[16];
+				break;
+			default:
+				kind = OBJECT;
+				objects = new Object[16];
+			}
+			if (kind != OBJECT)
+				nulls = new BitSet();
+		}
+
+		void read(ResultSet rs, int i, int row) throws SQLException {
+			switch (kind) {
+			case INT:
+				if (row == ints.length)
+					ints = copyOf(ints, row * 2);
+				ints[row] = rs.getInt(i);
+				break;
+			case LONG:
+				if (row == longs.length)
+					longs = copyOf(longs, row * 2);
+				longs[row] = rs.getLong(i);
+				break;
+			case DOUBLE:
+				if (row == doubles.length)
+					doubles = copyOf(doubles, row * 2);
+				doubles[row] = rs.getDouble(i);
+				break;
+			default:
+				if (row == objects.length)
+					objects = copyOf(objects, row * 2);
+				objects[row] = readObject(rs, i);
+				return;
+			}
+			if (rs.wasNull())
+				nulls.set(row);
+		}
+
+		private Object readObject(ResultSet rs, int i) throws SQLException {
+			switch (type) {
+			case Types.BLOB:
+				Blob blob = rs.getBlob(i);
+				return (blob == null) ? null : blob.getBytes(1, (int) blob
+						.length());
+			case Types.CLOB:
+				Clob clob = rs.getClob(i);
+				return (clob == null) ? null : clob.getSubString(1,
+						(int) clob.length());
+			default:
+				return rs.getObject(i);
+			}
+		}
+
+		void trim(int rows) {
+			switch (kind) {
+			case INT:
+				ints = copyOf(ints, rows);
+				break;
+			case LONG:
+				longs = copyOf(longs, rows);
+				break;
+			case DOUBLE:
+				doubles = copyOf(doubles, rows);
+				break;
+			default:
+				objects = copyOf(objects, rows);
+			}
+		}
+
+		boolean isNull(int row) {
+			return (kind == OBJECT) ? objects[row] == null : nulls.get(row);
+		}
+
+		/**
+		 * returns the value of a row, boxed as getObject would return it
+		 */
+		Object get(int row) {
+			switch (kind) {
+			case INT:
+				return nulls.get(row) ? null : new Integer(ints[row]);
+			case LONG:
+				return nulls.get(row) ? null : new Long(longs[row]);
+			case DOUBLE:
+				if (nulls.get(row))
+					return null;
+				if (type == Types.REAL)
+					return new Float((float) doubles[row]);
+				return new Double(doubles[row]);
+			default:
+				return objects[row];
+			}
+		}
+
+		private static int[] copyOf(int[] a, int length) {
+			int[] b = new int[length];
+			System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+			return b;
+		}
+
+		private static long[] copyOf(long[] a, int length) {
+			long[] b = new long[length];
+			System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+			return b;
+		}
+
+		private static double[] copyOf(double[] a, int length) {
+			double[] b = new double[length];
+			System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+			return b;
+		}
+
+		private static Object[] copyOf(Object[] a, int length) {
+			Object[] b = new Object[length];
+			System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+			return b;
+		}
+	}
+
+	// ResultSetMetaData
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public boolean isAutoIncrement(int column) throws SQLException {
+		return column(column).autoIncrement;
+	}
+
+	public boolean isCaseSensitive(int column) throws SQLException {
+		return column(column).caseSensitive;
+	}
+
+	public boolean isSearchable(int column) throws SQLException {
+		return column(column).searchable;
+	}
+
+	public boolean isCurrency(int column) throws SQLException {
+		return column(column).currency;
+	}
+
+	public int isNullable(int column) throws SQLException {
+		return column(column).nullable;
+	}
+
+	public boolean isSigned(int column) throws SQLException {
+		return column(column).signed;
+	}
+
+	public int getColumnDisplaySize(int column) throws SQLException {
+		return column(column).displaySize;
+	}
+
+	public String getColumnLabel(int column) throws SQLException {
+		return column(column).label;
+	}
+
+	public String getColumnName(int column) throws SQLException {
+		return column(column).name;
+	}
+
+	public String getSchemaName(int column) throws SQLException {
+		return column(column).schemaName;
+	}
+
+	public int getPrecision(int column) throws SQLException {
+		return column(column).precision;
+	}
+
+	public int getScale(int column) throws SQLException {
+		return column(column).scale;
+	}
+
+	public String getTableName(int column) throws SQLException {
+		return column(column).tableName;
+	}
+
+	public String getCatalogName(int column) throws SQLException {
+		return column(column).catalogName;
+	}
+
+	public int getColumnType(int column) throws SQLException {
+		return column(column).type;
+	}
+
+	public String getColumnTypeName(int column) throws SQLException {
+		return column(column).typeName;
+	}
+
+	public boolean isReadOnly(int column) {
+		return true;
+	}
+
+	public boolean isWritable(int column) {
+		return false;
+	}
+
+	public boolean isDefinitelyWritable(int column) {
+		return false;
+	}
+
+	public String getColumnClassName(int column) throws SQLException {
+		return column(column).className;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("ResultSnapshot: columns=<").append(columns.length);
+		sb.append("> rows=<").append(rows);
+		sb.append("> complete=<").append(complete).append(">");
+		return sb.toString();
+	}
+}
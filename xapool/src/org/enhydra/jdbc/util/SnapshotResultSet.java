@@ -0,0 +1,1059 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * Read only cursor over a ResultSnapshot, each caller of a cached request
+ * gets its own one. The cursor is scrollable when the snapshot holds all
+ * the rows. Otherwise the rows after the snapshot are read from the
+ * original ResultSet, and the cursor is forward only.
+ */
+public class SnapshotResultSet implements ResultSet {
+	private final ResultSnapshot snapshot;
+
+	private final Statement statement;
+
+	private final int rows;
+
+	// the snapshot is not complete
+	private final boolean forwardOnly;
+
+	// rows after the snapshot, null if the snapshot is complete
+	private ResultSet rest;
+
+	// the current row is read from rest
+	private boolean onRest;
+
+	// rest is on the first row after the snapshot, next() has not reached it
+	private boolean restPending;
+
+	// 0 before the first row, rows + 1 after the last one
+	private int row;
+
+	private boolean wasNull;
+
+	private boolean closed;
+
+	private int fetchSize;
+
+	private int fetchDirection = FETCH_FORWARD;
+
+	public SnapshotResultSet(ResultSnapshot snapshot, Statement statement) {
+		this(snapshot, statement, null);
+	}
+
+	/**
+	 * @param rest original ResultSet, positioned on the first row which is
+	 * not in the snapshot, closed with the cursor
+	 */
+	public SnapshotResultSet(ResultSnapshot snapshot, Statement statement,
+			ResultSet rest) {
+		this.snapshot = snapshot;
+		this.statement = statement;
+		this.rows = snapshot.getRowCount();
+		this.rest = rest;
+		this.restPending = rest != null;
+		this.forwardOnly = rest != null;
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed)
+			throw new SQLException("SnapshotResultSet: ResultSet is closed");
+	}
+
+	private void checkScrollable() throws SQLException {
+		checkOpen();
+		if (forwardOnly)
+			throw new SQLException(
+					"SnapshotResultSet: the result is too large to be cached, ResultSet is TYPE_FORWARD_ONLY");
+	}
+
+	private static SQLException readOnly() {
+		return new SQLException("SnapshotResultSet: ResultSet is read only");
+	}
+
+	/**
+	 * returns the column of the current row, and sets wasNull
+	 */
+	private ResultSnapshot.Column current(int column) throws SQLException {
+		checkOpen();
+		if (row < 1 || row > rows)
+			throw new SQLException("SnapshotResultSet: no current row");
+		ResultSnapshot.Column c = snapshot.column(column);
+		wasNull = c.isNull(row - 1);
+		return c;
+	}
+
+	/**
+	 * returns the value of a column of the current row, the mutable values
+	 * are copied
+	 */
+	private Object value(int column) throws SQLException {
+		Object o = current(column).get(row - 1);
+		if (o instanceof byte[])
+			return ((byte[]) o).clone();
+		if (o instanceof Timestamp) {
+			Timestamp t = new Timestamp(((Timestamp) o).getTime());
+			t.setNanos(((Timestamp) o).getNanos());
+			return t;
+		}
+		if (o instanceof Date)
+			return new Date(((Date) o).getTime());
+		if (o instanceof Time)
+			return new Time(((Time) o).getTime());
+		return o;
+	}
+
+	// navigation
+
+	public boolean next() throws SQLException {
+		checkOpen();
+		if (onRest) {
+			row++;
+			if (rest.next())
+				return true;
+			onRest = false;
+			rest.close();
+			rest = null;
+			return false;
+		}
+		if (row < rows) {
+			row++;
+			return true;
+		}
+		if (restPending) {
+			restPending = false;
+			onRest = true;
+			row++;
+			return true;
+		}
+		row = rows + 1;
+		return false;
+	}
+
+	public boolean previous() throws SQLException {
+		checkScrollable();
+		if (row > 0)
+			row--;
+		return row > 0;
+	}
+
+	public boolean absolute(int n) throws SQLException {
+		checkScrollable();
+		if (n >= 0)
+			row = Math.min(n, rows + 1);
+		else
+			row = Math.max(0, rows + 1 + n);
+		return row >= 1 && row <= rows;
+	}
+
+	public boolean relative(int n) throws SQLException {
+		checkScrollable();
+		if (row < 1 || row > rows)
+			throw new SQLException("SnapshotResultSet: no current row");
+		return absolute(Math.max(0, row + n));
+	}
+
+	public boolean first() throws SQLException {
+		return absolute(1);
+	}
+
+	public boolean last() throws SQLException {
+		return absolute(-1);
+	}
+
+	public void beforeFirst() throws SQLException {
+		checkScrollable();
+		row = 0;
+	}
+
+	public void afterLast() throws SQLException {
+		checkScrollable();
+		row = rows + 1;
+	}
+
+	public boolean isBeforeFirst() throws SQLException {
+		checkOpen();
+		return row == 0 && (rows > 0 || restPending);
+	}
+
+	public boolean isAfterLast() throws SQLException {
+		checkOpen();
+		return row > rows && rows > 0 && !onRest && !restPending;
+	}
+
+	public boolean isFirst() throws SQLException {
+		checkOpen();
+		return row == 1 && (rows > 0 || onRest);
+	}
+
+	public boolean isLast() throws SQLException {
+		checkOpen();
+		if (onRest)
+			return rest.isLast();
+		return row == rows && rows > 0 && !restPending;
+	}
+
+	public int getRow() throws SQLException {
+		checkOpen();
+		return (row >= 1 && (row <= rows || onRest)) ? row : 0;
+	}
+
+	public void close() throws SQLException {
+		if (closed)
+			return;
+		closed = true;
+		onRest = false;
+		if (rest != null) {
+			ResultSet rs = rest;
+			rest = null;
+			rs.close();
+		}
+	}
+
+	public boolean wasNull() throws SQLException {
+		checkOpen();
+		return onRest ? rest.wasNull() : wasNull;
+	}
+
+	public int findColumn(String label) throws SQLException {
+		checkOpen();
+		int i = snapshot.findColumn(label);
+		if (i == 0)
+			throw new SQLException("SnapshotResultSet: no column " + label);
+		return i;
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException {
+		checkOpen();
+		return snapshot;
+	}
+
+	public Statement getStatement() throws SQLException {
+		checkOpen();
+		return statement;
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		checkOpen();
+		return (rest == null) ? null : rest.getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		checkOpen();
+		if (rest != null)
+			rest.clearWarnings();
+	}
+
+	public String getCursorName() throws SQLException {
+		throw new SQLException(
+				"SnapshotResultSet: a cached result has no cursor name");
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+		checkOpen();
+		if (direction != FETCH_FORWARD && direction != FETCH_REVERSE
+				&& direction != FETCH_UNKNOWN)
+			throw new SQLException("SnapshotResultSet: invalid direction "
+					+ direction);
+		if (direction != FETCH_FORWARD)
+			checkScrollable();
+		fetchDirection = direction;
+	}
+
+	public int getFetchDirection() throws SQLException {
+		checkOpen();
+		return fetchDirection;
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+		checkOpen();
+		if (rows < 0)
+			throw new SQLException("SnapshotResultSet: invalid fetch size "
+					+ rows);
+		fetchSize = rows;
+	}
+
+	public int getFetchSize() throws SQLException {
+		checkOpen();
+		return fetchSize;
+	}
+
+	public int getType() throws SQLException {
+		checkOpen();
+		return forwardOnly ? TYPE_FORWARD_ONLY : TYPE_SCROLL_INSENSITIVE;
+	}
+
+	public int getConcurrency() throws SQLException {
+		checkOpen();
+		return CONCUR_READ_ONLY;
+	}
+
+	// getters
+
+	public Object getObject(int column) throws SQLException {
+		return onRest ? rest.getObject(column) : value(column);
+	}
+
+	public Object getObject(int column, Map map) throws SQLException {
+		return onRest ? rest.getObject(column, map) : value(column);
+	}
+
+	public String getString(int column) throws SQLException {
+		if (onRest)
+			return rest.getString(column);
+		ResultSnapshot.Column c = current(column);
+		if (wasNull)
+			return null;
+		switch (c.kind) {
+		case ResultSnapshot.INT:
+			return Integer.toString(c.ints[row - 1]);
+		case ResultSnapshot.LONG:
+			return Long.toString(c.longs[row - 1]);
+		case ResultSnapshot.DOUBLE:
+			return c.get(row - 1).toString();
+		default:
+			Object o = c.objects[row - 1];
+			if (o instanceof byte[])
+				throw conversion(o, "String");
+			return o.toString();
+		}
+	}
+
+	public boolean getBoolean(int column) throws SQLException {
+		if (onRest)
+			return rest.getBoolean(column);
+		ResultSnapshot.Column c = current(column);
+		if (wasNull)
+			return false;
+		if (c.kind != ResultSnapshot.OBJECT)
+			return getDouble(column) != 0;
+		Object o = c.objects[row - 1];
+		if (o instanceof Boolean)
+			return ((Boolean) o).booleanValue();
+		if (o instanceof Number)
+			return ((Number) o).doubleValue() != 0;
+		if (o instanceof String) {
+			String s = ((String) o).trim();
+			return s.equalsIgnoreCase("true") || s.equals("1");
+		}
+		throw conversion(o, "boolean");
+	}
+
+	public byte getByte(int column) throws SQLException {
+		return onRest ? rest.getByte(column) : (byte) getLong(column);
+	}
+
+	public short getShort(int column) throws SQLException {
+		return onRest ? rest.getShort(column) : (short) getLong(column);
+	}
+
+	public int getInt(int column) throws SQLException {
+		if (onRest)
+			return rest.getInt(column);
+		ResultSnapshot.Column c = current(column);
+		if (c.kind == ResultSnapshot.INT)
+			return c.ints[row - 1];
+		return (int) getLong(column);
+	}
+
+	public long getLong(int column) throws SQLException {
+		if (onRest)
+			return rest.getLong(column);
+		ResultSnapshot.Column c = current(column);
+		switch (c.kind) {
+		case ResultSnapshot.INT:
+			return c.ints[row - 1];
+		case ResultSnapshot.LONG:
+			return c.longs[row - 1];
+		case ResultSnapshot.DOUBLE:
+			return (long) c.doubles[row - 1];
+		default:
+			Object o = c.objects[row - 1];
+			if (o == null)
+				return 0;
+			if (o instanceof Number)
+				return ((Number) o).longValue();
+			if (o instanceof Boolean)
+				return ((Boolean) o).booleanValue() ? 1 : 0;
+			if (o instanceof String) {
+				try {
+					return new BigDecimal(((String) o).trim()).longValue();
+				} catch (NumberFormatException e) {
+				}
+			}
+			throw conversion(o, "long");
+		}
+	}
+
+	public float getFloat(int column) throws SQLException {
+		return onRest ? rest.getFloat(column) : (float) getDouble(column);
+	}
+
+	public double getDouble(int column) throws SQLException {
+		if (onRest)
+			return rest.getDouble(column);
+		ResultSnapshot.Column c = current(column);
+		switch (c.kind) {
+		case ResultSnapshot.INT:
+			return c.ints[row - 1];
+		case ResultSnapshot.LONG:
+			return c.longs[row - 1];
+		case ResultSnapshot.DOUBLE:
+			return c.doubles[row - 1];
+		default:
+			Object o = c.objects[row - 1];
+			if (o == null)
+				return 0;
+			if (o instanceof Number)
+				return ((Number) o).doubleValue();
+			if (o instanceof Boolean)
+				return ((Boolean) o).booleanValue() ? 1 : 0;
+			if (o instanceof String) {
+				try {
+					return Double.parseDouble(((String) o).trim());
+				} catch (NumberFormatException e) {
+				}
+			}
+			throw conversion(o, "double");
+		}
+	}
+
+	public BigDecimal getBigDecimal(int column) throws SQLException {
+		if (onRest)
+			return rest.getBigDecimal(column);
+		ResultSnapshot.Column c = current(column);
+		if (wasNull)
+			return null;
+		switch (c.kind) {
+		case ResultSnapshot.INT:
+			return BigDecimal.valueOf(c.ints[row - 1]);
+		case ResultSnapshot.LONG:
+			return BigDecimal.valueOf(c.longs[row - 1]);
+		case ResultSnapshot.DOUBLE:
+			return new BigDecimal(getString(column));
+		default:
+			Object o = c.objects[row - 1];
+			if (o instanceof BigDecimal)
+				return (BigDecimal) o;
+			if (o instanceof Number || o instanceof String) {
+				try {
+					return new BigDecimal(o.toString().trim());
+				} catch (NumberFormatException e) {
+				}
+			}
+			if (o instanceof Boolean)
+				return BigDecimal.valueOf(((Boolean) o).booleanValue() ? 1 : 0);
+			throw conversion(o, "BigDecimal");
+		}
+	}
+
+	/**
+	 * @deprecated
+	 */
+	@Deprecated
+	public BigDecimal getBigDecimal(int column, int scale) throws SQLException {
+		if (onRest)
+			return rest.getBigDecimal(column, scale);
+		BigDecimal d = getBigDecimal(column);
+		return (d == null) ? null : d.setScale(scale, BigDecimal.ROUND_HALF_UP);
+	}
+
+	public byte[] getBytes(int column) throws SQLException {
+		if (onRest)
+			return rest.getBytes(column);
+		Object o = value(column);
+		if (o == null || o instanceof byte[])
+			return (byte[]) o;
+		throw conversion(o, "byte[]");
+	}
+
+	public Date getDate(int column) throws SQLException {
+		if (onRest)
+			return rest.getDate(column);
+		Object o = value(column);
+		if (o == null || o instanceof Date)
+			return (Date) o;
+		if (o instanceof java.util.Date)
+			return new Date(((java.util.Date) o).getTime());
+		if (o instanceof String) {
+			try {
+				return Date.valueOf(((String) o).trim());
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		throw conversion(o, "Date");
+	}
+
+	public Time getTime(int column) throws SQLException {
+		if (onRest)
+			return rest.getTime(column);
+		Object o = value(column);
+		if (o == null || o instanceof Time)
+			return (Time) o;
+		if (o instanceof java.util.Date)
+			return new Time(((java.util.Date) o).getTime());
+		if (o instanceof String) {
+			try {
+				return Time.valueOf(((String) o).trim());
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		throw conversion(o, "Time");
+	}
+
+	public Timestamp getTimestamp(int column) throws SQLException {
+		if (onRest)
+			return rest.getTimestamp(column);
+		Object o = value(column);
+		if (o == null || o instanceof Timestamp)
+			return (Timestamp) o;
+		if (o instanceof java.util.Date)
+			return new Timestamp(((java.util.Date) o).getTime());
+		if (o instanceof String) {
+			try {
+				return Timestamp.valueOf(((String) o).trim());
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		throw conversion(o, "Timestamp");
+	}
+
+	public Date getDate(int column, Calendar cal) throws SQLException {
+		if (onRest)
+			return rest.getDate(column, cal);
+		Date d = getDate(column);
+		return (d == null || cal == null) ? d : new Date(shift(d.getTime(),
+				cal));
+	}
+
+	public Time getTime(int column, Calendar cal) throws SQLException {
+		if (onRest)
+			return rest.getTime(column, cal);
+		Time t = getTime(column);
+		return (t == null || cal == null) ? t : new Time(shift(t.getTime(),
+				cal));
+	}
+
+	public Timestamp getTimestamp(int column, Calendar cal)
+			throws SQLException {
+		if (onRest)
+			return rest.getTimestamp(column, cal);
+		Timestamp t = getTimestamp(column);
+		if (t == null || cal == null)
+			return t;
+		Timestamp s = new Timestamp(shift(t.getTime(), cal));
+		s.setNanos(t.getNanos());
+		return s;
+	}
+
+	/**
+	 * the value has been read in the default time zone, returns the same
+	 * date and time in the time zone of the calendar
+	 */
+	private static long shift(long time, Calendar cal) {
+		Calendar local = Calendar.getInstance();
+		local.setTimeInMillis(time);
+		Calendar c = (Calendar) cal.clone();
+		c.clear();
+		for (int i = 0; i < FIELDS.length; i++)
+			c.set(FIELDS[i], local.get(FIELDS[i]));
+		return c.getTimeInMillis();
+	}
+
+	private static final int[] FIELDS = { Calendar.ERA, Calendar.YEAR,
+			Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY,
+			Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+
+	public InputStream getAsciiStream(int column) throws SQLException {
+		if (onRest)
+			return rest.getAsciiStream(column);
+		String s = getString(column);
+		try {
+			return (s == null) ? null : new ByteArrayInputStream(s
+					.getBytes("US-ASCII"));
+		} catch (UnsupportedEncodingException e) {
+			throw new SQLException("SnapshotResultSet: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @deprecated
+	 */
+	@Deprecated
+	public InputStream getUnicodeStream(int column) throws SQLException {
+		if (onRest)
+			return rest.getUnicodeStream(column);
+		String s = getString(column);
+		try {
+			return (s == null) ? null : new ByteArrayInputStream(s
+					.getBytes("UTF-16BE"));
+		} catch (UnsupportedEncodingException e) {
+			throw new SQLException("SnapshotResultSet: " + e.getMessage());
+		}
+	}
+
+	public InputStream getBinaryStream(int column) throws SQLException {
+		if (onRest)
+			return rest.getBinaryStream(column);
+		byte[] b = getBytes(column);
+		return (b == null) ? null : new ByteArrayInputStream(b);
+	}
+
+	public Reader getCharacterStream(int column) throws SQLException {
+		if (onRest)
+			return rest.getCharacterStream(column);
+		String s = getString(column);
+		return (s == null) ? null : new StringReader(s);
+	}
+
+	public Blob getBlob(int column) throws SQLException {
+		if (onRest)
+			return rest.getBlob(column);
+		byte[] b = getBytes(column);
+		return (b == null) ? null : new SerialBlob(b);
+	}
+
+	public Clob getClob(int column) throws SQLException {
+		if (onRest)
+			return rest.getClob(column);
+		String s = getString(column);
+		return (s == null) ? null : new SerialClob(s.toCharArray());
+	}
+
+	public Ref getRef(int column) throws SQLException {
+		if (onRest)
+			return rest.getRef(column);
+		Object o = value(column);
+		if (o == null || o instanceof Ref)
+			return (Ref) o;
+		throw conversion(o, "Ref");
+	}
+
+	public Array getArray(int column) throws SQLException {
+		if (onRest)
+			return rest.getArray(column);
+		Object o = value(column);
+		if (o == null || o instanceof Array)
+			return (Array) o;
+		throw conversion(o, "Array");
+	}
+
+	public URL getURL(int column) throws SQLException {
+		if (onRest)
+			return rest.getURL(column);
+		Object o = value(column);
+		if (o == null || o instanceof URL)
+			return (URL) o;
+		if (o instanceof String) {
+			try {
+				return new URL((String) o);
+			} catch (MalformedURLException e) {
+			}
+		}
+		throw conversion(o, "URL");
+	}
+
+	private static SQLException conversion(Object o, String type) {
+		return new SQLException("SnapshotResultSet: cannot convert "
+				+ o.getClass().getName() + " to " + type);
+	}
+
+	// getters by label
+
+	public Object getObject(String label) throws SQLException {
+		return getObject(findColumn(label));
+	}
+
+	public Object getObject(String label, Map map) throws SQLException {
+		return getObject(findColumn(label), map);
+	}
+
+	public String getString(String label) throws SQLException {
+		return getString(findColumn(label));
+	}
+
+	public boolean getBoolean(String label) throws SQLException {
+		return getBoolean(findColumn(label));
+	}
+
+	public byte getByte(String label) throws SQLException {
+		return getByte(findColumn(label));
+	}
+
+	public short getShort(String label) throws SQLException {
+		return getShort(findColumn(label));
+	}
+
+	public int getInt(String label) throws SQLException {
+		return getInt(findColumn(label));
+	}
+
+	public long getLong(String label) throws SQLException {
+		return getLong(findColumn(label));
+	}
+
+	public float getFloat(String label) throws SQLException {
+		return getFloat(findColumn(label));
+	}
+
+	public double getDouble(String label) throws SQLException {
+		return getDouble(findColumn(label));
+	}
+
+	public BigDecimal getBigDecimal(String label) throws SQLException {
+		return getBigDecimal(findColumn(label));
+	}
+
+	/**
+	 * @deprecated
+	 */
+	@Deprecated
+	public BigDecimal getBigDecimal(String label, int scale)
+			throws SQLException {
+		return getBigDecimal(findColumn(label), scale);
+	}
+
+	public byte[] getBytes(String label) throws SQLException {
+		return getBytes(findColumn(label));
+	}
+
+	public Date getDate(String label) throws SQLException {
+		return getDate(findColumn(label));
+	}
+
+	public Time getTime(String label) throws SQLException {
+		return getTime(findColumn(label));
+	}
+
+	public Timestamp getTimestamp(String label) throws SQLException {
+		return getTimestamp(findColumn(label));
+	}
+
+	public Date getDate(String label, Calendar cal) throws SQLException {
+		return getDate(findColumn(label), cal);
+	}
+
+	public Time getTime(String label, Calendar cal) throws SQLException {
+		return getTime(findColumn(label), cal);
+	}
+
+	public Timestamp getTimestamp(String label, Calendar cal)
+			throws SQLException {
+		return getTimestamp(findColumn(label), cal);
+	}
+
+	public InputStream getAsciiStream(String label) throws SQLException {
+		return getAsciiStream(findColumn(label));
+	}
+
+	/**
+	 * @deprecated
+	 */
+	@Deprecated
+	public InputStream getUnicodeStream(String label) throws SQLException {
+		return getUnicodeStream(findColumn(label));
+	}
+
+	public InputStream getBinaryStream(String label) throws SQLException {
+		return getBinaryStream(findColumn(label));
+	}
+
+	public Reader getCharacterStream(String label) throws SQLException {
+		return getCharacterStream(findColumn(label));
+	}
+
+	public Blob getBlob(String label) throws SQLException {
+		return getBlob(findColumn(label));
+	}
+
+	public Clob getClob(String label) throws SQLException {
+		return getClob(findColumn(label));
+	}
+
+	public Ref getRef(String label) throws SQLException {
+		return getRef(findColumn(label));
+	}
+
+	public Array getArray(String label) throws SQLException {
+		return getArray(findColumn(label));
+	}
+
+	public URL getURL(String label) throws SQLException {
+		return getURL(findColumn(label));
+	}
+
+	// updates, not supported
+
+	public boolean rowUpdated() throws SQLException {
+		checkOpen();
+		return false;
+	}
+
+	public boolean rowInserted() throws SQLException {
+		checkOpen();
+		return false;
+	}
+
+	public boolean rowDeleted() throws SQLException {
+		checkOpen();
+		return false;
+	}
+
+	public void insertRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void deleteRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void refreshRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void cancelRowUpdates() throws SQLException {
+		throw readOnly();
+	}
+
+	public void moveToInsertRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void moveToCurrentRow() throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateNull(int column) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateNull(String label) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBoolean(int column, boolean x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBoolean(String label, boolean x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateByte(int column, byte x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateByte(String label, byte x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateShort(int column, short x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateShort(String label, short x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateInt(int column, int x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateInt(String label, int x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateLong(int column, long x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateLong(String label, long x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateFloat(int column, float x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateFloat(String label, float x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateDouble(int column, double x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateDouble(String label, double x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBigDecimal(int column, BigDecimal x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBigDecimal(String label, BigDecimal x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateString(int column, String x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateString(String label, String x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBytes(int column, byte[] x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBytes(String label, byte[] x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateDate(int column, Date x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateDate(String label, Date x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateTime(int column, Time x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateTime(String label, Time x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateTimestamp(int column, Timestamp x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateTimestamp(String label, Timestamp x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateAsciiStream(int column, InputStream x, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateAsciiStream(String label, InputStream x, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBinaryStream(int column, InputStream x, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBinaryStream(String label, InputStream x, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateCharacterStream(int column, Reader reader, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateCharacterStream(String label, Reader reader, int length) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateObject(int column, Object x, int scale) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateObject(String label, Object x, int scale) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateObject(int column, Object x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateObject(String label, Object x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateRef(int column, Ref x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateRef(String label, Ref x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBlob(int column, Blob x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateBlob(String label, Blob x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateClob(int column, Clob x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateClob(String label, Clob x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateArray(int column, Array x) throws SQLException {
+		throw readOnly();
+	}
+
+	public void updateArray(String label, Array x) throws SQLException {
+		throw readOnly();
+	}
+}
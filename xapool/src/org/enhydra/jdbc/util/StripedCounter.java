@@ -0,0 +1,81 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter for values updated by many threads and read rarely. Each thread
+ * adds to one of several cells, chosen by its thread id, which are kept on
+ * different cache lines: the threads do not contend on a single atomic
+ * value. get() sums the cells, it is not an atomic snapshot.
+ */
+public class StripedCounter {
+	// number of cells, a power of two
+	static final int STRIPES = stripes();
+
+	// longs between two cells, 64 bytes
+	private static final int PAD = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+	public void add(long value) {
+		cells.addAndGet(stripe() * PAD, value);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++)
+			sum += cells.get(i * PAD);
+		return sum;
+	}
+
+	public void reset() {
+		for (int i = 0; i < STRIPES; i++)
+			cells.set(i * PAD, 0);
+	}
+
+	public String toString() {
+		return Long.toString(get());
+	}
+
+	/*
+	 * cell of the current thread
+	 */
+	static int stripe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+
+	private static int stripes() {
+		int n = 1;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		while (n < cpus * 2 && n < 64)
+			n <<= 1;
+		return n;
+	}
+}
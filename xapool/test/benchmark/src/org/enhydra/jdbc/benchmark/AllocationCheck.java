@@ -0,0 +1,74 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs PoolBenchmark.checkOutCheckIn with the GC profiler, logging
+ * disabled, and prints the bytes allocated per checkOut / checkIn cycle.
+ * Exits with 1 if a cycle of ConcurrentGenericPool allocates: without
+ * contention it reuses its free slot and its sub-pool, and the log
+ * messages are only built when their level is enabled. GenericPool is
+ * printed for comparison, its Hashtables allocate at each cycle.
+ * Usage: java -cp target/benchmarks.jar
+ * org.enhydra.jdbc.benchmark.AllocationCheck
+ */
+public class AllocationCheck {
+	private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+	// the measure of the profiler is not exactly 0 when nothing is
+	// allocated by the cycle (bytes per cycle)
+	private static final double ZERO = 0.5;
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder().include(
+				PoolBenchmark.class.getName() + ".checkOutCheckIn").threads(1)
+				.addProfiler(GCProfiler.class).build();
+		Collection results = new Runner(opt).run();
+		boolean allocates = false;
+		System.out.println();
+		for (Iterator it = results.iterator(); it.hasNext();) {
+			RunResult r = (RunResult) it.next();
+			String engine = r.getParams().getParam("engine");
+			Result alloc = (Result) r.getSecondaryResults().get(ALLOCATION);
+			double bytes = (alloc == null) ? Double.NaN : alloc.getScore();
+			System.out.println("checkOutCheckIn engine=" + engine + " : "
+					+ bytes + " bytes/op");
+			if ("ConcurrentGenericPool".equals(engine) && !(bytes < ZERO))
+				allocates = true;
+		}
+		if (allocates) {
+			System.out.println("ConcurrentGenericPool allocates at each checkOut / checkIn");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.LogFactory;
+import org.enhydra.jdbc.standard.StandardConnectionPoolDataSource;
+import org.enhydra.jdbc.util.Logger;
+
+/**
+ * Settings shared by the benchmarks.
+ */
+final class Benchmarks {
+	// xapool logs every call at debug level: the benchmarks measure the
+	// pool with logging disabled
+	static final String QUIET = "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog";
+
+	private Benchmarks() {
+	}
+
+	static Logger logger() {
+		return new Logger(LogFactory.getLog("org.enhydra.jdbc.xapool"));
+	}
+
+	/**
+	 * returns a connection handle of XAPool (StandardConnectionHandle) on
+	 * a stub connection, with a prepared statement cache of cacheSize
+	 */
+	static Connection connectionHandle(int cacheSize, int rows,
+			boolean concurrentCache) throws SQLException {
+		StandardConnectionPoolDataSource cpds = new StandardConnectionPoolDataSource();
+		cpds.setDriverName(StubDriver.class.getName());
+		cpds.setUrl(StubDriver.URL + "rows=" + rows);
+		cpds.setPreparedStmtCacheSize(cacheSize);
+		cpds.setConcurrentStatementCache(concurrentCache);
+		return cpds.getPooledConnection().getConnection();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+import org.enhydra.jdbc.pool.ConcurrentGenericPool;
+import org.enhydra.jdbc.pool.GenerationObject;
+import org.enhydra.jdbc.pool.GenericPool;
+import org.enhydra.jdbc.pool.PoolHelper;
+import org.enhydra.jdbc.pool.StandardPoolDataSource;
+import org.enhydra.jdbc.standard.StandardConnectionPoolDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * checkOut / checkIn throughput of the pool engines. checkOutCheckIn
+ * measures the engine alone, with plain objects; getConnectionClose goes
+ * through StandardPoolDataSource and the stub driver. Run it with several
+ * thread counts (-t, or PoolScaling): with more threads than maxSize the
+ * threads wait for each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET)
+public class PoolBenchmark {
+	@Param( { "GenericPool", "ConcurrentGenericPool" })
+	public String engine;
+
+	@Param( { "16" })
+	public int maxSize;
+
+	@Param( { "false" })
+	public boolean threadAffinity;
+
+	private GenericPool pool;
+
+	private StandardPoolDataSource dataSource;
+
+	@Setup
+	public void setUp() throws Exception {
+		PoolHelper helper = new PoolHelper() {
+			public void expire(Object o) {
+			}
+
+			public boolean checkThisObject(Object o) {
+				return true;
+			}
+
+			public boolean testThisObject(Object o) {
+				return true;
+			}
+
+			public GenerationObject create() {
+				return create(null, null);
+			}
+
+			public GenerationObject create(String user, String password) {
+				return new GenerationObject(new Object(), pool.getGeneration(),
+						user, password);
+			}
+		};
+		boolean concurrent = "ConcurrentGenericPool".equals(engine);
+		long lifeTime = GenericPool.DEFAULT_EXPIRATION;
+		long sleepTime = GenericPool.DEFAULT_SLEEPTIME;
+		if (concurrent)
+			pool = new ConcurrentGenericPool(helper, maxSize, maxSize,
+					lifeTime, sleepTime, 0);
+		else
+			pool = new GenericPool(helper, maxSize, maxSize, lifeTime,
+					sleepTime, 0);
+		pool.setLogger(Benchmarks.logger());
+		pool.setThreadAffinity(threadAffinity);
+		pool.start();
+
+		StandardConnectionPoolDataSource cpds = new StandardConnectionPoolDataSource();
+		cpds.setDriverName(StubDriver.class.getName());
+		cpds.setUrl(StubDriver.URL);
+		dataSource = new StandardPoolDataSource(cpds);
+		dataSource.setConcurrentPool(concurrent);
+		dataSource.setMinSize(maxSize);
+		dataSource.setMaxSize(maxSize);
+		dataSource.setCheckLevelObject(0);
+		dataSource.setThreadAffinity(threadAffinity);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.stop();
+		dataSource.shutdown(true);
+	}
+
+	@Benchmark
+	public Object checkOutCheckIn() throws Exception {
+		Object o = pool.checkOut(null, null);
+		pool.checkIn(o);
+		return o;
+	}
+
+	@Benchmark
+	public Connection getConnectionClose() throws Exception {
+		Connection con = dataSource.getConnection();
+		con.close();
+		return con;
+	}
+}
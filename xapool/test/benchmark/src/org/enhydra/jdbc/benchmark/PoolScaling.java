@@ -0,0 +1,68 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs PoolBenchmark for each thread count and prints a summary, to
+ * compare the scaling of the pool engines.
+ * Usage: java -cp target/benchmarks.jar
+ * org.enhydra.jdbc.benchmark.PoolScaling [threads, default
+ * 1,2,4,8,16,32,64,128,256]
+ */
+public class PoolScaling {
+	public static void main(String[] args) throws RunnerException {
+		String counts = (args.length > 0) ? args[0]
+				: "1,2,4,8,16,32,64,128,256";
+		List summary = new ArrayList();
+		StringTokenizer st = new StringTokenizer(counts, ",");
+		while (st.hasMoreTokens()) {
+			int threads = Integer.parseInt(st.nextToken().trim());
+			Options opt = new OptionsBuilder().include(
+					PoolBenchmark.class.getName()).threads(threads).build();
+			Collection results = new Runner(opt).run();
+			for (Iterator it = results.iterator(); it.hasNext();) {
+				RunResult r = (RunResult) it.next();
+				summary.add(r.getParams().getBenchmark().substring(
+						PoolBenchmark.class.getName().length() + 1)
+						+ " engine=" + r.getParams().getParam("engine")
+						+ " threads=" + threads + " : "
+						+ r.getPrimaryResult().getScore() + " "
+						+ r.getPrimaryResult().getScoreUnit());
+			}
+		}
+		System.out.println();
+		for (Iterator it = summary.iterator(); it.hasNext();)
+			System.out.println(it.next());
+	}
+}
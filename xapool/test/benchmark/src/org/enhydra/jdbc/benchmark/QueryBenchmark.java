@@ -0,0 +1,127 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.enhydra.jdbc.util.RequestCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of CoreStatement.executeQuery (RequestCache lookup and
+ * delegation) over the stub driver: stub queries the stub statement
+ * directly, coreStatement the same statement wrapped by XAPool,
+ * createStatement also creates and closes the wrapper at each query, and
+ * cachedQuery reads a request whose result is in the RequestCache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET)
+public class QueryBenchmark {
+	static final String SQL = "SELECT ID, NAME FROM T WHERE ID > 0";
+
+	static final String CACHED_SQL = "SELECT ID, NAME FROM REF WHERE ID > 0";
+
+	@Param( { "10" })
+	public int rows;
+
+	private Connection raw;
+
+	private Connection handle;
+
+	private Statement rawStatement;
+
+	private Statement statement;
+
+	@Setup
+	public void setUp() throws Exception {
+		Class.forName(StubDriver.class.getName());
+		raw = DriverManager.getConnection(StubDriver.URL + "rows=" + rows);
+		rawStatement = raw.createStatement();
+		handle = Benchmarks.connectionHandle(0, rows, false);
+		statement = handle.createStatement();
+		RequestCache cache = RequestCache.getInstance();
+		if (cache.getSqlPattern(CACHED_SQL) == null)
+			cache.addRequest("SELECT .* FROM REF.*", RequestCache.DEFAULT_TTL);
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		statement.close();
+		handle.close();
+		rawStatement.close();
+		raw.close();
+	}
+
+	static int read(ResultSet rs) throws SQLException {
+		int sum = 0;
+		while (rs.next())
+			sum += rs.getInt(1);
+		rs.close();
+		return sum;
+	}
+
+	@Benchmark
+	public int stub() throws SQLException {
+		return read(rawStatement.executeQuery(SQL));
+	}
+
+	@Benchmark
+	public int coreStatement() throws SQLException {
+		return read(statement.executeQuery(SQL));
+	}
+
+	@Benchmark
+	public int cachedQuery() throws SQLException {
+		return read(statement.executeQuery(CACHED_SQL));
+	}
+
+	@Benchmark
+	public int createStatement() throws SQLException {
+		Statement st = handle.createStatement();
+		try {
+			return read(st.executeQuery(SQL));
+		} finally {
+			st.close();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.enhydra.jdbc.standard.ConcurrentPreparedStatementCache;
+import org.enhydra.jdbc.standard.PreparedStatementCache;
+import org.enhydra.jdbc.util.LRUCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the prepared statement cache. hit and miss use a shared
+ * PreparedStatementCache directly: hit gets a cached statement, miss puts
+ * a new one, which evicts and closes the least recently used. prepareHit
+ * and prepareMiss go through prepareStatement / close of a connection
+ * handle, miss cycling over twice as many statements as the cache holds.
+ * concurrent selects ConcurrentPreparedStatementCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET)
+public class StatementCacheBenchmark {
+	@Param( { "16", "128", "500" })
+	public int cacheSize;
+
+	// ConcurrentPreparedStatementCache instead of PreparedStatementCache
+	@Param( { "false", "true" })
+	public boolean concurrent;
+
+	private LRUCache cache;
+
+	// cacheSize keys which are in the cache, and 2 * cacheSize to put
+	private String[] hitKeys;
+
+	private String[] missKeys;
+
+	private PreparedStatement[] missStatements;
+
+	@Setup
+	public void setUp() throws SQLException {
+		Connection con = Benchmarks.connectionHandle(0, 0, false);
+		if (concurrent)
+			cache = new ConcurrentPreparedStatementCache(cacheSize);
+		else
+			cache = new PreparedStatementCache(cacheSize);
+		cache.setLogger(Benchmarks.logger());
+		hitKeys = new String[cacheSize];
+		for (int i = 0; i < cacheSize; i++) {
+			hitKeys[i] = sql(i);
+			cache.put(hitKeys[i], con.prepareStatement(hitKeys[i]));
+		}
+		missKeys = new String[2 * cacheSize];
+		missStatements = new PreparedStatement[missKeys.length];
+		for (int i = 0; i < missKeys.length; i++) {
+			missKeys[i] = sql(cacheSize + i);
+			missStatements[i] = con.prepareStatement(missKeys[i]);
+		}
+	}
+
+	static String sql(int i) {
+		return "SELECT ID, NAME FROM T" + i + " WHERE ID = ?";
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int i;
+
+		int next(int n) {
+			if (++i >= n)
+				i = 0;
+			return i;
+		}
+	}
+
+	@Benchmark
+	public Object hit(Cursor c) {
+		return cache.get(hitKeys[c.next(hitKeys.length)]);
+	}
+
+	@Benchmark
+	public void miss(Cursor c) {
+		int i = c.next(missKeys.length);
+		cache.put(missKeys[i], missStatements[i]);
+	}
+
+	/**
+	 * connection handle of a thread, with its own cache
+	 */
+	@State(Scope.Thread)
+	public static class Handle {
+		Connection con;
+
+		String[] sql;
+
+		int i;
+
+		@Setup
+		public void setUp(StatementCacheBenchmark b) throws SQLException {
+			con = Benchmarks.connectionHandle(b.cacheSize, 0, b.concurrent);
+			sql = new String[2 * b.cacheSize];
+			for (int i = 0; i < sql.length; i++)
+				sql[i] = sql(i);
+		}
+
+		@TearDown
+		public void tearDown() throws SQLException {
+			con.close();
+		}
+
+		String next(int n) {
+			if (++i >= n)
+				i = 0;
+			return sql[i];
+		}
+	}
+
+	@Benchmark
+	public void prepareHit(Handle h) throws SQLException {
+		PreparedStatement ps = h.con.prepareStatement(h.next(cacheSize));
+		ps.close();
+	}
+
+	@Benchmark
+	public void prepareMiss(Handle h) throws SQLException {
+		PreparedStatement ps = h.con.prepareStatement(h.next(h.sql.length));
+		ps.close();
+	}
+}
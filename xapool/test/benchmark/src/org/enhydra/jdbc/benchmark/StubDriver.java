@@ -0,0 +1,321 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * In-process JDBC driver for the benchmarks: connections, statements and
+ * result sets do nothing, so that only the cost of XAPool is measured.
+ * The url is "jdbc:stub:" optionally followed by "rows=n", the number of
+ * rows of every result set (10 by default), of two columns ID INTEGER and
+ * NAME VARCHAR. Methods which are not implemented return null, 0 or
+ * false.
+ */
+public class StubDriver implements Driver {
+	public static final String URL = "jdbc:stub:";
+
+	public static final int DEFAULT_ROWS = 10;
+
+	static {
+		try {
+			DriverManager.registerDriver(new StubDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url))
+			return null;
+		int rows = DEFAULT_ROWS;
+		String params = url.substring(URL.length());
+		if (params.startsWith("rows="))
+			rows = Integer.parseInt(params.substring(5));
+		return (Connection) create(Connection.class, new StubConnection(rows));
+	}
+
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(URL);
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	static Object create(Class type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(StubDriver.class.getClassLoader(),
+				new Class[] { type }, handler);
+	}
+
+	/*
+	 * default value of a method which is not implemented
+	 */
+	static Object defaultValue(Class type) {
+		if (!type.isPrimitive() || type == Void.TYPE)
+			return null;
+		if (type == Boolean.TYPE)
+			return Boolean.FALSE;
+		if (type == Long.TYPE)
+			return new Long(0);
+		if (type == Double.TYPE)
+			return new Double(0);
+		if (type == Float.TYPE)
+			return new Float(0);
+		if (type == Short.TYPE)
+			return new Short((short) 0);
+		if (type == Byte.TYPE)
+			return new Byte((byte) 0);
+		if (type == Character.TYPE)
+			return new Character((char) 0);
+		return new Integer(0);
+	}
+
+	/**
+	 * identity based equals, hashCode and toString (xapool uses the
+	 * toString of a connection as a key), null if the method is not one of
+	 * them
+	 */
+	static Object objectMethod(Object proxy, String name, Object[] args,
+			String kind) {
+		if (name.equals("toString"))
+			return kind + "@"
+					+ Integer.toHexString(System.identityHashCode(proxy));
+		if (name.equals("hashCode"))
+			return new Integer(System.identityHashCode(proxy));
+		if (name.equals("equals"))
+			return Boolean.valueOf(proxy == args[0]);
+		return null;
+	}
+
+	static final class StubConnection implements InvocationHandler {
+		final int rows;
+
+		boolean autoCommit = true;
+
+		int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+		boolean closed;
+
+		StubConnection(int rows) {
+			this.rows = rows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			Object ret = objectMethod(proxy, name, args, "StubConnection");
+			if (ret != null)
+				return ret;
+			if (name.equals("createStatement")
+					|| name.equals("prepareStatement")
+					|| name.equals("prepareCall")) {
+				if (closed)
+					throw new SQLException("connection is closed");
+				return create(CallableStatement.class, new StubStatement(
+						(Connection) proxy, rows));
+			}
+			if (name.equals("getAutoCommit"))
+				return Boolean.valueOf(autoCommit);
+			if (name.equals("setAutoCommit")) {
+				autoCommit = ((Boolean) args[0]).booleanValue();
+				return null;
+			}
+			if (name.equals("getTransactionIsolation"))
+				return new Integer(isolation);
+			if (name.equals("setTransactionIsolation")) {
+				isolation = ((Integer) args[0]).intValue();
+				return null;
+			}
+			if (name.equals("close")) {
+				closed = true;
+				return null;
+			}
+			if (name.equals("isClosed"))
+				return Boolean.valueOf(closed);
+			if (name.equals("isValid"))
+				return Boolean.valueOf(!closed);
+			return defaultValue(method.getReturnType());
+		}
+	}
+
+	static final class StubStatement implements InvocationHandler {
+		final Connection con;
+
+		final int rows;
+
+		int batch;
+
+		boolean closed;
+
+		StubStatement(Connection con, int rows) {
+			this.con = con;
+			this.rows = rows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			Object ret = objectMethod(proxy, name, args, "StubStatement");
+			if (ret != null)
+				return ret;
+			if (name.equals("close")) {
+				closed = true;
+				return null;
+			}
+			if (name.equals("isClosed"))
+				return Boolean.valueOf(closed);
+			if (closed)
+				throw new SQLException("statement is closed");
+			if (name.equals("executeQuery") || name.equals("getResultSet"))
+				return create(ResultSet.class, new StubResultSet(
+						(java.sql.Statement) proxy, rows));
+			if (name.equals("executeUpdate"))
+				return new Integer(1);
+			if (name.equals("addBatch")) {
+				batch++;
+				return null;
+			}
+			if (name.equals("executeBatch")) {
+				int[] counts = new int[batch];
+				for (int i = 0; i < batch; i++)
+					counts[i] = 1;
+				batch = 0;
+				return counts;
+			}
+			if (name.equals("clearBatch")) {
+				batch = 0;
+				return null;
+			}
+			if (name.equals("getUpdateCount"))
+				return new Integer(-1);
+			if (name.equals("getConnection"))
+				return con;
+			return defaultValue(method.getReturnType());
+		}
+	}
+
+	static final ResultSetMetaData META_DATA = (ResultSetMetaData) Proxy
+			.newProxyInstance(StubDriver.class.getClassLoader(),
+					new Class[] { ResultSetMetaData.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							String name = method.getName();
+							Object ret = objectMethod(proxy, name, args,
+									"StubResultSetMetaData");
+							if (ret != null)
+								return ret;
+							if (name.equals("getColumnCount"))
+								return new Integer(2);
+							boolean id = ((Integer) args[0]).intValue() == 1;
+							if (name.equals("getColumnType"))
+								return new Integer(id ? Types.INTEGER
+										: Types.VARCHAR);
+							if (name.equals("getColumnName")
+									|| name.equals("getColumnLabel"))
+								return id ? "ID" : "NAME";
+							return defaultValue(method.getReturnType());
+						}
+					});
+
+	static final class StubResultSet implements InvocationHandler {
+		final java.sql.Statement statement;
+
+		final int rows;
+
+		int row;
+
+		boolean closed;
+
+		StubResultSet(java.sql.Statement statement, int rows) {
+			this.statement = statement;
+			this.rows = rows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			Object ret = objectMethod(proxy, name, args, "StubResultSet");
+			if (ret != null)
+				return ret;
+			if (name.equals("next"))
+				return Boolean.valueOf(++row <= rows);
+			if (name.equals("getInt"))
+				return new Integer(row);
+			if (name.equals("getLong"))
+				return new Long(row);
+			if (name.equals("getString"))
+				return "row" + row;
+			if (name.equals("getObject")) {
+				if (((Integer) args[0]).intValue() == 1)
+					return new Integer(row);
+				return "row" + row;
+			}
+			if (name.equals("getMetaData"))
+				return META_DATA;
+			if (name.equals("beforeFirst")) {
+				row = 0;
+				return null;
+			}
+			if (name.equals("close")) {
+				closed = true;
+				return null;
+			}
+			if (name.equals("isClosed"))
+				return Boolean.valueOf(closed);
+			if (name.equals("getStatement"))
+				return statement;
+			return defaultValue(method.getReturnType());
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.enhydra.jdbc.pool.StandardPoolDataSource;
+import org.enhydra.jdbc.standard.StandardConnectionPoolDataSource;
+
+/**
+ * Runs 10000 virtual threads against a pool of 8 connections, with 4
+ * carrier threads, for each pool engine. Each thread takes a connection,
+ * holds it 1 ms and closes it. Meanwhile a probe starts a virtual thread
+ * every 10 ms and measures how long it waits for a carrier: a thread
+ * waiting for a connection must unmount, if it pins its carrier the
+ * probes (and the threads holding the connections) cannot run.
+ * Exits with 1 if a thread fails, if the run does not end, or if a probe
+ * waited more than a second. Needs Java 21, the benchmarks are compiled
+ * for Java 8: the executor is created by reflection.
+ * Usage: java -cp target/benchmarks.jar
+ * org.enhydra.jdbc.benchmark.VirtualThreadCheck
+ */
+public class VirtualThreadCheck {
+	private static final int THREADS = 10000;
+
+	private static final int POOL_SIZE = 8;
+
+	private static final int CARRIERS = 4;
+
+	private static final long MAX_PROBE_WAIT = TimeUnit.SECONDS.toNanos(1);
+
+	public static void main(String[] args) throws Exception {
+		// before the first virtual thread: the scheduler must not add
+		// carriers to replace the pinned ones
+		setDefault("jdk.virtualThreadScheduler.parallelism", String
+				.valueOf(CARRIERS));
+		setDefault("jdk.virtualThreadScheduler.maxPoolSize", String
+				.valueOf(CARRIERS));
+		setDefault("org.apache.commons.logging.Log",
+				"org.apache.commons.logging.impl.NoOpLog");
+
+		boolean failed = false;
+		String[] engines = { "GenericPool", "ConcurrentGenericPool" };
+		for (int i = 0; i < engines.length; i++) {
+			if (!run(engines[i]))
+				failed = true;
+		}
+		if (failed) {
+			System.out.println("virtual threads starve waiting for the pool");
+			System.exit(1);
+		}
+	}
+
+	private static void setDefault(String key, String value) {
+		if (System.getProperty(key) == null)
+			System.setProperty(key, value);
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			System.out.println("VirtualThreadCheck needs Java 21 or later");
+			System.exit(2);
+			return null;
+		} catch (Exception e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	private static boolean run(String engine) throws Exception {
+		final ExecutorService executor = newVirtualThreadExecutor();
+		final ExecutorService probes = newVirtualThreadExecutor();
+		StandardConnectionPoolDataSource cpds = new StandardConnectionPoolDataSource();
+		cpds.setDriverName(StubDriver.class.getName());
+		cpds.setUrl(StubDriver.URL);
+		final StandardPoolDataSource dataSource = new StandardPoolDataSource(
+				cpds);
+		dataSource.setConcurrentPool("ConcurrentGenericPool".equals(engine));
+		dataSource.setMinSize(POOL_SIZE);
+		dataSource.setMaxSize(POOL_SIZE);
+		dataSource.setCheckLevelObject(0);
+		dataSource.setDeadLockMaxWait(60000);
+		dataSource.getConnection().close(); // starts the pool
+
+		final AtomicInteger errors = new AtomicInteger();
+		final long[] maxProbeWait = new long[1];
+		long start = System.nanoTime();
+		for (int i = 0; i < THREADS; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						Connection con = dataSource.getConnection();
+						try {
+							Thread.sleep(1);
+						} finally {
+							con.close();
+						}
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+				}
+			});
+		}
+		Thread probe = new Thread("VirtualThreadCheck probe") {
+			public void run() {
+				Runnable nothing = new Runnable() {
+					public void run() {
+					}
+				};
+				try {
+					while (!executor.isTerminated()) {
+						long submitted = System.nanoTime();
+						probes.submit(nothing).get();
+						long wait = System.nanoTime() - submitted;
+						if (wait > maxProbeWait[0])
+							maxProbeWait[0] = wait;
+						Thread.sleep(10);
+					}
+				} catch (Exception e) {
+					// interrupted
+				}
+			}
+		};
+		probe.start();
+		executor.shutdown();
+		boolean ended = executor.awaitTermination(120, TimeUnit.SECONDS);
+		long elapsed = System.nanoTime() - start;
+		if (!ended)
+			probe.interrupt();
+		probe.join();
+		probes.shutdown();
+		dataSource.shutdown(true);
+
+		long probeWait = maxProbeWait[0];
+		System.out.println("engine=" + engine + " threads=" + THREADS
+				+ " pool=" + POOL_SIZE + " carriers=" + CARRIERS + " : "
+				+ (ended ? "ended" : "NOT ended") + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, errors="
+				+ errors.get() + ", max probe wait="
+				+ TimeUnit.NANOSECONDS.toMillis(probeWait) + " ms");
+		return ended && errors.get() == 0 && probeWait <= MAX_PROBE_WAIT;
+	}
+}
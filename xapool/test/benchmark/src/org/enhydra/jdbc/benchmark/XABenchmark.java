@@ -0,0 +1,156 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.enhydra.jdbc.standard.StandardXADataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Enlist / delist cycles of StandardXADataSource, without transaction
+ * manager: each thread has its own XAConnection and runs start, end and
+ * commit (one phase) or start, end, prepare and commit (two phases) on a
+ * new xid. The physical connections are shared by all the threads
+ * through the data source (maxCon).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.QUIET)
+public class XABenchmark {
+	@Param( { "16" })
+	public int maxCon;
+
+	private StandardXADataSource xads;
+
+	private final AtomicLong ids = new AtomicLong();
+
+	@Setup
+	public void setUp() throws SQLException {
+		xads = new StandardXADataSource();
+		xads.setDriverName(StubDriver.class.getName());
+		xads.setUrl(StubDriver.URL);
+		xads.setMinCon(maxCon);
+		xads.setMaxCon(maxCon);
+	}
+
+	@TearDown
+	public void tearDown() {
+		xads.shutdown(true);
+	}
+
+	/**
+	 * XA connection of a thread
+	 */
+	@State(Scope.Thread)
+	public static class Branch {
+		XAConnection xac;
+
+		Connection con;
+
+		XAResource resource;
+
+		@Setup
+		public void setUp(XABenchmark b) throws SQLException {
+			xac = b.xads.getXAConnection();
+			con = xac.getConnection();
+			resource = xac.getXAResource();
+		}
+
+		@TearDown
+		public void tearDown() throws SQLException {
+			con.close();
+			xac.close();
+		}
+	}
+
+	@Benchmark
+	public void onePhase(Branch br) throws XAException {
+		Xid xid = new BenchmarkXid(ids.incrementAndGet());
+		br.resource.start(xid, XAResource.TMNOFLAGS);
+		br.resource.end(xid, XAResource.TMSUCCESS);
+		br.resource.commit(xid, true);
+	}
+
+	@Benchmark
+	public void twoPhase(Branch br) throws XAException {
+		Xid xid = new BenchmarkXid(ids.incrementAndGet());
+		br.resource.start(xid, XAResource.TMNOFLAGS);
+		br.resource.end(xid, XAResource.TMSUCCESS);
+		br.resource.prepare(xid);
+		br.resource.commit(xid, false);
+	}
+
+	static final class BenchmarkXid implements Xid {
+		private final byte[] gtrid;
+
+		BenchmarkXid(long id) {
+			gtrid = new byte[8];
+			for (int i = 0; i < 8; i++)
+				gtrid[i] = (byte) (id >>> (8 * i));
+		}
+
+		public int getFormatId() {
+			return 0x4250;
+		}
+
+		public byte[] getGlobalTransactionId() {
+			return gtrid;
+		}
+
+		public byte[] getBranchQualifier() {
+			return new byte[] { 1 };
+		}
+
+		public boolean equals(Object obj) {
+			return (obj instanceof BenchmarkXid)
+					&& Arrays.equals(gtrid, ((BenchmarkXid) obj).gtrid);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(gtrid);
+		}
+	}
+}
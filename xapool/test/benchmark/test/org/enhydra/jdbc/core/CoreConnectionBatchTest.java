@@ -0,0 +1,230 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.LogFactory;
+import org.enhydra.jdbc.benchmark.StubDriver;
+import org.enhydra.jdbc.util.Logger;
+
+/**
+ * Write-behind batching of executeUpdate by CoreConnection, on a
+ * connection of the StubDriver whose calls are recorded: when the batch
+ * is executed or discarded, and the update counts reported.
+ */
+public class CoreConnectionBatchTest extends TestCase {
+	// the calls recorded, "method" on the connection, "sql:method" on a
+	// statement
+	private static final List RECORDED = Arrays.asList(new String[] {
+			"executeUpdate", "addBatch", "executeBatch", "clearBatch",
+			"executeQuery", "commit", "rollback", "close" });
+
+	private final Vector calls = new Vector();
+
+	private int[] counts; // returned by executeBatch if set
+
+	private boolean failBatch; // executeBatch throws a BatchUpdateException
+
+	private StubCoreConnection con;
+
+	protected void setUp() throws Exception {
+		Connection physical = new StubDriver().connect(StubDriver.URL,
+				new Properties());
+		con = new StubCoreConnection((Connection) record(physical,
+				Connection.class, ""));
+		con.setLogger(new Logger(LogFactory.getLog("org.enhydra.jdbc.xapool")));
+		con.setUpdateBatchSize(3);
+		con.setAutoCommit(false);
+	}
+
+	public void testThresholdFlush() throws Exception {
+		StubCorePreparedStatement st = prepare("a");
+		assertEquals(1, st.executeUpdate());
+		assertEquals(1, st.executeUpdate());
+		assertCalls(new String[] { "a:addBatch", "a:addBatch" });
+		assertEquals(1, st.executeUpdate());
+		assertCalls(new String[] { "a:addBatch", "a:executeBatch" });
+		assertNull(con.getBatchStatement());
+		assertEquals(3, st.getBatchUpdateCounts().length);
+	}
+
+	public void testFlushOnOtherStatement() throws Exception {
+		StubCorePreparedStatement a = prepare("a");
+		StubCorePreparedStatement b = prepare("b");
+		a.executeUpdate();
+		b.executeUpdate();
+		assertCalls(new String[] { "a:addBatch", "a:executeBatch",
+				"b:addBatch" });
+		assertSame(b, con.getBatchStatement());
+		assertEquals(1, a.getBatchUpdateCounts().length);
+	}
+
+	public void testFlushOnRead() throws Exception {
+		StubCorePreparedStatement a = prepare("a");
+		StubCorePreparedStatement b = prepare("b");
+		a.executeUpdate();
+		b.executeQuery().close();
+		assertCalls(new String[] { "a:addBatch", "a:executeBatch",
+				"b:executeQuery" });
+		a.executeUpdate();
+		a.executeQuery().close();
+		assertCalls(new String[] { "a:addBatch", "a:executeBatch",
+				"a:executeQuery" });
+	}
+
+	public void testFlushOnCommit() throws Exception {
+		StubCorePreparedStatement st = prepare("a");
+		st.executeUpdate();
+		st.executeUpdate();
+		con.commit();
+		assertCalls(new String[] { "a:addBatch", "a:addBatch",
+				"a:executeBatch", "commit" });
+		assertEquals(2, st.getBatchUpdateCounts().length);
+	}
+
+	public void testDiscardOnRollback() throws Exception {
+		StubCorePreparedStatement st = prepare("a");
+		st.executeUpdate();
+		st.executeUpdate();
+		con.rollback();
+		assertCalls(new String[] { "a:addBatch", "a:addBatch",
+				"a:clearBatch", "rollback" });
+		assertNull(st.getBatchUpdateCounts());
+		assertEquals(0, con.flushBatch().length);
+		con.commit();
+		assertCalls(new String[] { "commit" });
+	}
+
+	public void testAutoCommitNotBatched() throws Exception {
+		con.setAutoCommit(true);
+		StubCorePreparedStatement st = prepare("a");
+		st.executeUpdate();
+		assertCalls(new String[] { "a:executeUpdate" });
+		assertNull(con.getBatchStatement());
+	}
+
+	public void testUpdateCounts() throws Exception {
+		// a lost update, a multi-row update and a count unknown to the
+		// driver are reported as is, without failing the flush
+		counts = new int[] { 0, 2, Statement.SUCCESS_NO_INFO };
+		StubCorePreparedStatement st = prepare("a");
+		st.executeUpdate();
+		st.executeUpdate();
+		st.executeUpdate();
+		assertTrue(Arrays.equals(counts, st.getBatchUpdateCounts()));
+		con.commit();
+
+		counts = new int[] { 1, 0 };
+		st.executeUpdate();
+		st.executeUpdate();
+		assertTrue(Arrays.equals(counts, con.flushBatch()));
+		assertTrue(Arrays.equals(counts, st.getBatchUpdateCounts()));
+	}
+
+	public void testFailedBatch() throws Exception {
+		counts = new int[] { 1 };
+		failBatch = true;
+		StubCorePreparedStatement st = prepare("a");
+		st.executeUpdate();
+		st.executeUpdate();
+		try {
+			con.commit();
+			fail("the batch fails");
+		} catch (BatchUpdateException expected) {
+		}
+		assertTrue(Arrays.equals(counts, st.getBatchUpdateCounts()));
+		assertCalls(new String[] { "a:addBatch", "a:addBatch",
+				"a:executeBatch" });
+		assertNull(con.getBatchStatement());
+	}
+
+	public void testCloseAfterFailedBatch() throws Exception {
+		failBatch = true;
+		prepare("a").executeUpdate();
+		try {
+			con.close();
+			fail("the batch fails");
+		} catch (BatchUpdateException expected) {
+		}
+		// the physical connection is closed anyway
+		assertCalls(new String[] { "a:addBatch", "a:executeBatch", "close" });
+		assertTrue(con.con.isClosed());
+	}
+
+	private StubCorePreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement ps = (PreparedStatement) record(con.con
+				.prepareStatement(sql), PreparedStatement.class, sql + ":");
+		StubCorePreparedStatement st = new StubCorePreparedStatement(con, ps);
+		st.setLogger(con.log);
+		return st;
+	}
+
+	private void assertCalls(String[] expected) {
+		assertEquals(Arrays.asList(expected), calls);
+		calls.clear();
+	}
+
+	/*
+	 * returns a proxy of target which records the calls, and returns the
+	 * counts set by the test from executeBatch
+	 */
+	private Object record(final Object target, Class type, final String prefix) {
+		return Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { type }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						String name = method.getName();
+						if (RECORDED.contains(name))
+							calls.add(prefix + name);
+						Object ret;
+						try {
+							ret = method.invoke(target, args);
+						} catch (InvocationTargetException e) {
+							throw e.getTargetException();
+						}
+						if (name.equals("executeBatch")) {
+							if (failBatch)
+								throw new BatchUpdateException("batch failed",
+										counts);
+							if (counts != null)
+								return counts;
+						}
+						return ret;
+					}
+				});
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.core;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.NClob;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Struct;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Concrete CoreConnection of the tests: the errors are thrown as is, and
+ * the JDBC 4 methods, which CoreConnection doesn't implement, are
+ * delegated to the physical connection.
+ */
+class StubCoreConnection extends CoreConnection {
+	StubCoreConnection(Connection con) {
+		super(con);
+	}
+
+	public void preInvoke() {
+	}
+
+	public void catchInvoke(SQLException e) throws SQLException {
+		throw e;
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return con.prepareCall(sql, resultSetType, resultSetConcurrency);
+	}
+
+	public boolean isValid(int timeout) throws SQLException {
+		return con.isValid(timeout);
+	}
+
+	public void abort(Executor executor) throws SQLException {
+		con.abort(executor);
+	}
+
+	public Clob createClob() throws SQLException {
+		return con.createClob();
+	}
+
+	public Blob createBlob() throws SQLException {
+		return con.createBlob();
+	}
+
+	public NClob createNClob() throws SQLException {
+		return con.createNClob();
+	}
+
+	public SQLXML createSQLXML() throws SQLException {
+		return con.createSQLXML();
+	}
+
+	public void setClientInfo(String name, String value)
+			throws SQLClientInfoException {
+		con.setClientInfo(name, value);
+	}
+
+	public void setClientInfo(Properties properties)
+			throws SQLClientInfoException {
+		con.setClientInfo(properties);
+	}
+
+	public String getClientInfo(String name) throws SQLException {
+		return con.getClientInfo(name);
+	}
+
+	public Properties getClientInfo() throws SQLException {
+		return con.getClientInfo();
+	}
+
+	public Array createArrayOf(String typeName, Object[] elements)
+			throws SQLException {
+		return con.createArrayOf(typeName, elements);
+	}
+
+	public Struct createStruct(String typeName, Object[] attributes)
+			throws SQLException {
+		return con.createStruct(typeName, attributes);
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		con.setSchema(schema);
+	}
+
+	public String getSchema() throws SQLException {
+		return con.getSchema();
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds)
+			throws SQLException {
+		con.setNetworkTimeout(executor, milliseconds);
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return con.getNetworkTimeout();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return con.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return con.isWrapperFor(iface);
+	}
+}
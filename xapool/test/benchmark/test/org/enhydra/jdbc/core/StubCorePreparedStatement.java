@@ -0,0 +1,165 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.core;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+
+/**
+ * Concrete CorePreparedStatement of the tests, whose updates are batched
+ * by the connection: the errors are thrown as is, and the JDBC 4 methods,
+ * which CorePreparedStatement doesn't implement, are delegated to the
+ * physical statement.
+ */
+class StubCorePreparedStatement extends CorePreparedStatement {
+	StubCorePreparedStatement(CoreConnection con, PreparedStatement ps) {
+		this.ps = ps;
+		batchConnection = con;
+	}
+
+	public void preInvoke() {
+	}
+
+	public void catchInvoke(SQLException e) throws SQLException {
+		throw e;
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		ps.setAsciiStream(parameterIndex, x, length);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x)
+			throws SQLException {
+		ps.setAsciiStream(parameterIndex, x);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		ps.setBinaryStream(parameterIndex, x, length);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x)
+			throws SQLException {
+		ps.setBinaryStream(parameterIndex, x);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader,
+			long length) throws SQLException {
+		ps.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader)
+			throws SQLException {
+		ps.setCharacterStream(parameterIndex, reader);
+	}
+
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		ps.setRowId(parameterIndex, x);
+	}
+
+	public void setNString(int parameterIndex, String value)
+			throws SQLException {
+		ps.setNString(parameterIndex, value);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value,
+			long length) throws SQLException {
+		ps.setNCharacterStream(parameterIndex, value, length);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value)
+			throws SQLException {
+		ps.setNCharacterStream(parameterIndex, value);
+	}
+
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+		ps.setNClob(parameterIndex, value);
+	}
+
+	public void setNClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		ps.setNClob(parameterIndex, reader, length);
+	}
+
+	public void setNClob(int parameterIndex, Reader reader)
+			throws SQLException {
+		ps.setNClob(parameterIndex, reader);
+	}
+
+	public void setClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		ps.setClob(parameterIndex, reader, length);
+	}
+
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		ps.setClob(parameterIndex, reader);
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream,
+			long length) throws SQLException {
+		ps.setBlob(parameterIndex, inputStream, length);
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream)
+			throws SQLException {
+		ps.setBlob(parameterIndex, inputStream);
+	}
+
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject)
+			throws SQLException {
+		ps.setSQLXML(parameterIndex, xmlObject);
+	}
+
+	public boolean isClosed() throws SQLException {
+		return ps.isClosed();
+	}
+
+	public void setPoolable(boolean poolable) throws SQLException {
+		ps.setPoolable(poolable);
+	}
+
+	public boolean isPoolable() throws SQLException {
+		return ps.isPoolable();
+	}
+
+	public void closeOnCompletion() throws SQLException {
+		ps.closeOnCompletion();
+	}
+
+	public boolean isCloseOnCompletion() throws SQLException {
+		return ps.isCloseOnCompletion();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return ps.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return ps.isWrapperFor(iface);
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.enhydra.jdbc.pool.PoolTestHelper.Item;
+
+/**
+ * The asynchronous check out (checkOutAsync), run on both engines by
+ * GenericPoolAsyncTest and ConcurrentGenericPoolAsyncTest.
+ */
+public abstract class AsyncCheckOutCase extends TestCase {
+	private static final long MS = 1000000L; // timeouts are in nanoseconds
+
+	private static final long LIFETIME = 600000;
+
+	private PoolTestHelper helper;
+
+	GenericPool pool;
+
+	/**
+	 * true to test ConcurrentGenericPool, false for GenericPool
+	 */
+	abstract boolean concurrent();
+
+	protected void setUp() {
+		helper = new PoolTestHelper();
+	}
+
+	protected void tearDown() {
+		if (pool != null)
+			pool.stop();
+	}
+
+	private GenericPool start(int minSize, int maxSize) {
+		pool = PoolTestHelper.pool(helper, concurrent(), minSize, maxSize,
+				LIFETIME);
+		pool.setDeadLockRetryWait(50); // period of the timer
+		pool.start();
+		return pool;
+	}
+
+	public void testFreeObject() throws Exception {
+		start(0, 1);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 1000 * MS);
+		assertTrue(f.isDone());
+		Object item = f.get(0, TimeUnit.MILLISECONDS);
+		assertTrue(item instanceof Item);
+		// a listener added once it is done is called at once
+		Listener l = new Listener();
+		f.addListener(l);
+		assertEquals(1, l.results.size());
+		assertSame(item, l.results.get(0));
+		assertSame(Thread.currentThread(), l.threads.get(0));
+	}
+
+	public void testCompletedByCheckIn() throws Exception {
+		start(0, 1);
+		Object item = pool.checkOut(null, null, 0);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 10000 * MS);
+		assertFalse(f.isDone());
+		Listener l = new Listener();
+		f.addListener(l);
+		assertEquals(0, l.results.size());
+		pool.checkIn(item);
+		assertTrue(f.isDone());
+		assertSame(item, f.get());
+		// called by the thread which gave the object back
+		assertSame(item, l.results.get(0));
+		assertSame(Thread.currentThread(), l.threads.get(0));
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	public void testTimeout() throws Exception {
+		start(0, 1);
+		pool.checkOut(null, null, 0);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 200 * MS);
+		Listener l = new Listener();
+		f.addListener(l);
+		try {
+			f.get(5000, TimeUnit.MILLISECONDS);
+			fail("the pool is full");
+		} catch (ExecutionException expected) {
+		}
+		assertTrue(l.eventually(1));
+		assertTrue(l.results.get(0) instanceof Exception);
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	public void testCancel() throws Exception {
+		start(0, 1);
+		Object item = pool.checkOut(null, null, 0);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 10000 * MS);
+		Listener l = new Listener();
+		f.addListener(l);
+		assertTrue(f.cancel(false));
+		assertTrue(f.isCancelled());
+		assertTrue(l.results.get(0) instanceof CancellationException);
+		try {
+			f.get();
+			fail("cancelled");
+		} catch (CancellationException expected) {
+		}
+		// the object given back is not handed to the cancelled check out
+		pool.checkIn(item);
+		assertEquals(1, pool.getUnlockedObjectCount());
+		assertFalse(f.cancel(false));
+		assertSame(item, pool.checkOut(null, null, 0));
+	}
+
+	public void testCancelDone() throws Exception {
+		start(0, 1);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 0);
+		assertTrue(f.isDone());
+		assertFalse(f.cancel(true));
+		assertFalse(f.isCancelled());
+	}
+
+	public void testStop() throws Exception {
+		start(0, 1);
+		pool.checkOut(null, null, 0);
+		CheckOutFuture f = pool.checkOutAsync(null, null, 10000 * MS);
+		Listener l = new Listener();
+		f.addListener(l);
+		pool.stop();
+		try {
+			f.get(5000, TimeUnit.MILLISECONDS);
+			fail("the pool is stopped");
+		} catch (ExecutionException expected) {
+		}
+		assertTrue(l.results.get(0) instanceof Exception);
+		pool = null;
+	}
+
+	public void testListenerGivesBack() throws Exception {
+		start(0, 1);
+		Object item = pool.checkOut(null, null, 0);
+		final Vector calls = new Vector();
+		CheckOutFuture[] f = new CheckOutFuture[3];
+		for (int i = 0; i < f.length; i++) {
+			final int n = i;
+			f[i] = pool.checkOutAsync(null, null, 10000 * MS);
+			f[i].addListener(new CheckOutListener() {
+				public void checkedOut(Object obj) {
+					calls.add("start" + n);
+					pool.checkIn(obj); // completes the next check out
+					calls.add("end" + n);
+				}
+
+				public void failed(Exception e) {
+					calls.add(e);
+				}
+			});
+		}
+		pool.checkIn(item);
+		// in order, each one after the listener of the previous returned
+		assertEquals("[start0, end0, start1, end1, start2, end2]", calls
+				.toString());
+		for (int i = 0; i < f.length; i++)
+			assertSame(item, f[i].get());
+		assertEquals(1, pool.getUnlockedObjectCount());
+	}
+
+	static final class Listener implements CheckOutListener {
+		final Vector results = new Vector();
+
+		final Vector threads = new Vector();
+
+		public void checkedOut(Object obj) {
+			threads.add(Thread.currentThread());
+			results.add(obj);
+		}
+
+		public void failed(Exception e) {
+			threads.add(Thread.currentThread());
+			results.add(e);
+		}
+
+		boolean eventually(final int n) throws InterruptedException {
+			return PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+				public boolean isTrue() {
+					return results.size() >= n;
+				}
+			});
+		}
+	}
+}
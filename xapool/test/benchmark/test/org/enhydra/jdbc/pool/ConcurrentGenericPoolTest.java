@@ -0,0 +1,413 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.enhydra.jdbc.pool.PoolTestHelper.Item;
+
+/**
+ * Correctness of the ConcurrentGenericPool engine: exclusive check outs,
+ * maxSize, waits and hand offs, expiry and removal, sub-pools, stop.
+ */
+public class ConcurrentGenericPoolTest extends TestCase {
+	private static final long MS = 1000000L; // timeouts are in nanoseconds
+
+	private static final long LIFETIME = 600000;
+
+	private PoolTestHelper helper;
+
+	private GenericPool pool;
+
+	protected void setUp() {
+		helper = new PoolTestHelper();
+	}
+
+	protected void tearDown() {
+		if (pool != null)
+			pool.stop();
+	}
+
+	private GenericPool start(int minSize, int maxSize) {
+		pool = PoolTestHelper.pool(helper, true, minSize, maxSize, LIFETIME);
+		pool.start();
+		return pool;
+	}
+
+	public void testContention() throws Exception {
+		final int maxSize = 4;
+		start(0, maxSize);
+		final Map inUse = Collections.synchronizedMap(new IdentityHashMap());
+		final Vector errors = new Vector();
+		final AtomicInteger maxCount = new AtomicInteger();
+		Thread[] threads = new Thread[16];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 2000; j++) {
+							Object o = pool.checkOut(null, null, 5000 * MS);
+							if (inUse.put(o, o) != null)
+								errors.add("handed out twice: " + o);
+							int count = pool.getCount();
+							if (count > maxCount.get())
+								maxCount.set(count);
+							if (j % 7 == 0)
+								Thread.yield();
+							inUse.remove(o);
+							pool.checkIn(o);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals("[]", errors.toString());
+		assertTrue(maxCount.get() <= maxSize);
+		assertTrue(helper.createdCount() <= maxSize);
+		assertEquals(0, pool.getLockedObjectCount());
+		assertEquals(pool.getCount(), pool.getUnlockedObjectCount());
+	}
+
+	public void testMaxSize() throws Exception {
+		start(0, 3);
+		for (int i = 0; i < 3; i++)
+			pool.checkOut(null, null, 0);
+		try {
+			pool.checkOut(null, null, 0);
+			fail("the pool is full");
+		} catch (Exception expected) {
+		}
+		assertEquals(3, pool.getCount());
+		assertEquals(3, helper.createdCount());
+	}
+
+	public void testWaitTimeout() throws Exception {
+		start(0, 1);
+		pool.checkOut(null, null, 0);
+		long start = System.nanoTime();
+		try {
+			pool.checkOut(null, null, 100 * MS);
+			fail("the pool is full");
+		} catch (Exception expected) {
+		}
+		assertTrue(System.nanoTime() - start >= 100 * MS);
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	public void testHandOffFifo() throws Exception {
+		start(0, 1);
+		Object first = pool.checkOut(null, null, 0);
+		final Vector served = new Vector();
+		Thread[] threads = new Thread[3];
+		for (int i = 0; i < threads.length; i++) {
+			final String name = "waiter" + i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						Object o = pool.checkOut(null, null, 5000 * MS);
+						served.add(name);
+						pool.checkIn(o);
+					} catch (Exception e) {
+						served.add(e);
+					}
+				}
+			};
+			threads[i].start();
+			final int queued = i + 1;
+			assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+				public boolean isTrue() {
+					return pool.getWaitingCount() == queued;
+				}
+			}));
+		}
+		pool.checkIn(first);
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join(5000);
+		assertEquals("[waiter0, waiter1, waiter2]", served.toString());
+		assertEquals(1, helper.createdCount());
+	}
+
+	public void testIdleExpiry() throws Exception {
+		pool = PoolTestHelper.pool(helper, true, 0, 2, 100);
+		pool.start();
+		final Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return item.expired && pool.getCount() == 0;
+			}
+		}));
+		assertNotSame(item, pool.checkOut(null, null, 0));
+	}
+
+	public void testExpiredAtCheckOut() throws Exception {
+		start(0, 2);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		pool.setLifeTime(-1); // every free object has expired
+		Item other = (Item) pool.checkOut(null, null, 0);
+		assertNotSame(item, other);
+		assertEquals(1, pool.getCount());
+	}
+
+	public void testRemove() throws Exception {
+		start(0, 2);
+		final Item locked = (Item) pool.checkOut(null, null, 0);
+		pool.removeLockedObject(locked);
+		assertEquals(0, pool.getCount());
+		// a check in after the removal is ignored
+		pool.checkIn(locked);
+		assertEquals(0, pool.getUnlockedObjectCount());
+		assertNotSame(locked, pool.checkOut(null, null, 0));
+
+		Item free = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(free);
+		GenerationObject genObject = (GenerationObject) pool
+				.getUnlockedPool().keys().nextElement();
+		assertSame(free, genObject.getObj());
+		pool.removeUnlockedObject(genObject);
+		assertEquals(0, pool.getUnlockedObjectCount());
+		final Item killed = free;
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return killed.expired;
+			}
+		}));
+		assertNotSame(free, pool.checkOut(null, null, 0));
+	}
+
+	public void testCleanUp() throws Exception {
+		start(1, 4);
+		pool.setCheckLevelObject(3);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		item.valid = false;
+		pool.cleanUp();
+		assertTrue(item.expired);
+		// the clean up creates the minSize objects again
+		assertEquals(1, pool.getCount());
+		assertEquals(1, pool.getUnlockedObjectCount());
+		assertNotSame(item, pool.checkOut(null, null, 0));
+	}
+
+	public void testFailedFillMinimum() throws Exception {
+		start(0, 1);
+		pool.setMinSize(1);
+		assertFailedCreateFreesSlot(new Runnable() {
+			public void run() {
+				pool.cleanUp();
+			}
+		});
+	}
+
+	public void testFailedUserMinimum() throws Exception {
+		start(0, 1);
+		pool.setMinSize(1);
+		assertFailedCreateFreesSlot(new Runnable() {
+			public void run() {
+				pool.minimumObject("c", "pc");
+			}
+		});
+	}
+
+	public void testFailedUserMinSize() throws Exception {
+		start(0, 1);
+		// the sub-pool of c exists, empty
+		pool.checkOut("c", "pc", 0);
+		pool.removeLockedObject(helper.created.get(0));
+		pool.setUserMinSize(1);
+		assertFailedCreateFreesSlot(new Runnable() {
+			public void run() {
+				pool.cleanUp();
+			}
+		});
+	}
+
+	public void testFailedBackgroundCreation() throws Exception {
+		pool = PoolTestHelper.pool(helper, true, 0, 1, LIFETIME);
+		pool.setSpareSize(1); // created in background
+		assertFailedCreateFreesSlot(new Runnable() {
+			public void run() {
+				pool.start();
+			}
+		});
+	}
+
+	/*
+	 * a thread waiting for the pool at maxSize gets the slot of a creation
+	 * which fails
+	 */
+	private void assertFailedCreateFreesSlot(Runnable create)
+			throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		helper.failGate = gate;
+		Thread creator = new Thread(create);
+		creator.start();
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return helper.gated.get() == 1;
+			}
+		}));
+		helper.failGate = null;
+
+		final Vector got = new Vector();
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					got.add(pool.checkOut(null, null, 10000 * MS));
+				} catch (Exception e) {
+					got.add(e);
+				}
+			}
+		};
+		waiter.start();
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return pool.getWaitingCount() == 1;
+			}
+		}));
+		long start = System.nanoTime();
+		gate.countDown();
+		waiter.join(5000);
+		creator.join(5000);
+		assertTrue(System.nanoTime() - start < 5000 * MS);
+		assertEquals(1, got.size());
+		assertTrue(got.get(0) instanceof Item);
+		assertEquals(1, pool.getCount());
+	}
+
+	public void testUserPools() throws Exception {
+		start(0, 4);
+		pool.setUserMaxSize(2);
+		Item a1 = (Item) pool.checkOut("a", "pa", 0);
+		Item a2 = (Item) pool.checkOut("a", "pa", 0);
+		try {
+			pool.checkOut("a", "pa", 0);
+			fail("user a has userMaxSize objects");
+		} catch (Exception expected) {
+		}
+		assertEquals("a", a1.user);
+		ConcurrentGenericPool concurrent = (ConcurrentGenericPool) pool;
+		assertEquals(2, concurrent.getCount("a", "pa"));
+
+		// a free object of a is not given to b
+		pool.checkIn(a1);
+		Item b1 = (Item) pool.checkOut("b", "pb", 0);
+		assertEquals("b", b1.user);
+		assertEquals(1, concurrent.getCount("b", "pb"));
+		assertEquals(2, concurrent.getUserCount());
+		assertSame(a1, pool.checkOut("a", "pa", 0));
+
+		// the pool is full: a free object of an other user is closed
+		pool.setUserMaxSize(3);
+		pool.checkIn(a2);
+		pool.checkOut("b", "pb", 0);
+		Item b3 = (Item) pool.checkOut("b", "pb", 0);
+		assertEquals("b", b3.user);
+		final Item evicted = a2;
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return evicted.expired;
+			}
+		}));
+		assertEquals(1, concurrent.getCount("a", "pa"));
+		assertEquals(4, pool.getCount());
+	}
+
+	public void testThreadAffinityRemoved() throws Exception {
+		start(0, 2);
+		pool.setThreadAffinity(true);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		assertSame(item, pool.checkOut(null, null, 0));
+		pool.checkIn(item);
+		pool.removeUnlockedObject((GenerationObject) pool.getUnlockedPool()
+				.keys().nextElement());
+		Item other = (Item) pool.checkOut(null, null, 0);
+		assertNotSame(item, other);
+
+		pool.checkIn(other);
+		assertSame(other, pool.checkOut(null, null, 0));
+		pool.removeLockedObject(other);
+		pool.checkIn(other);
+		Item third = (Item) pool.checkOut(null, null, 0);
+		assertNotSame(other, third);
+		assertNotSame(item, third);
+
+		// the objects of the pool before a restart are not handed back
+		pool.checkIn(third);
+		pool.stop();
+		pool.start();
+		Item fresh = (Item) pool.checkOut(null, null, 0);
+		assertNotSame(third, fresh);
+		assertFalse(fresh.expired);
+	}
+
+	public void testThreadAffinityCollected() throws Exception {
+		start(0, 2);
+		pool.setThreadAffinity(true);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		final WeakReference stopped = new WeakReference(pool
+				.getUnlockedPool().keys().nextElement());
+		pool.stop();
+		// the thread which checked in the object doesn't keep it
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				System.gc();
+				return stopped.get() == null;
+			}
+		}));
+	}
+
+	public void testStopWithCheckedOutObjects() throws Exception {
+		start(2, 4);
+		Item out1 = (Item) pool.checkOut(null, null, 0);
+		Item out2 = (Item) pool.checkOut(null, null, 0);
+		Item free = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(free);
+		pool.stop();
+		assertTrue(out1.expired);
+		assertTrue(out2.expired);
+		assertTrue(free.expired);
+		assertEquals(0, pool.getCount());
+		// the objects are given back after the stop
+		pool.checkIn(out1);
+		pool.checkIn(out2);
+		assertEquals(0, pool.getUnlockedObjectCount());
+		pool = null;
+	}
+}
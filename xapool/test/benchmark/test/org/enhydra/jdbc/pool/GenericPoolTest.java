@@ -0,0 +1,161 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.enhydra.jdbc.pool.PoolTestHelper.Item;
+
+/**
+ * The waits of the GenericPool engine on its condition: a check in wakes
+ * a waiting thread at once, a wait times out, and no wake up is lost.
+ * The retry wait is long, so that a waiting thread is woken up only by
+ * the signals of the pool.
+ */
+public class GenericPoolTest extends TestCase {
+	private static final long MS = 1000000L; // timeouts are in nanoseconds
+
+	private static final long LIFETIME = 600000;
+
+	private PoolTestHelper helper;
+
+	private GenericPool pool;
+
+	protected void setUp() {
+		helper = new PoolTestHelper();
+	}
+
+	protected void tearDown() {
+		if (pool != null)
+			pool.stop();
+	}
+
+	private GenericPool start(int minSize, int maxSize) {
+		pool = PoolTestHelper.pool(helper, false, minSize, maxSize, LIFETIME);
+		pool.setDeadLockRetryWait(60000);
+		pool.start();
+		return pool;
+	}
+
+	public void testCheckInWakesWaiter() throws Exception {
+		start(0, 1);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		final Vector got = new Vector();
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					got.add(pool.checkOut(null, null, 10000 * MS));
+				} catch (Exception e) {
+					got.add(e);
+				}
+			}
+		};
+		waiter.start();
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return pool.getWaitingCount() == 1;
+			}
+		}));
+		long start = System.nanoTime();
+		pool.checkIn(item);
+		waiter.join(5000);
+		assertTrue(System.nanoTime() - start < 5000 * MS);
+		assertEquals(1, got.size());
+		assertSame(item, got.get(0));
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	public void testRemoveWakesWaiter() throws Exception {
+		start(0, 1);
+		Item item = (Item) pool.checkOut(null, null, 0);
+		pool.checkIn(item);
+		pool.checkOut(null, null, 0);
+		final Vector got = new Vector();
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					got.add(pool.checkOut(null, null, 10000 * MS));
+				} catch (Exception e) {
+					got.add(e);
+				}
+			}
+		};
+		waiter.start();
+		assertTrue(PoolTestHelper.eventually(new PoolTestHelper.Condition() {
+			public boolean isTrue() {
+				return pool.getWaitingCount() == 1;
+			}
+		}));
+		// there is room for a new object
+		pool.removeLockedObject(item);
+		waiter.join(5000);
+		assertEquals(1, got.size());
+		assertTrue(got.get(0) instanceof Item);
+		assertNotSame(item, got.get(0));
+	}
+
+	public void testWaitTimeout() throws Exception {
+		start(0, 1);
+		pool.checkOut(null, null, 0);
+		long start = System.nanoTime();
+		try {
+			pool.checkOut(null, null, 200 * MS);
+			fail("the pool is full");
+		} catch (Exception expected) {
+		}
+		long waited = System.nanoTime() - start;
+		assertTrue(waited >= 200 * MS);
+		assertTrue(waited < 5000 * MS);
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	public void testNoLostWakeUps() throws Exception {
+		start(0, 2);
+		final Vector errors = new Vector();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int n = 0; n < 300; n++) {
+							// a lost wake up makes the check out time out
+							Object o = pool.checkOut(null, null, 10000 * MS);
+							Thread.yield();
+							pool.checkIn(o);
+						}
+					} catch (Exception e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(errors.toString(), 0, errors.size());
+		assertEquals(0, pool.getTimeoutCount());
+		assertEquals(2, pool.getCount());
+	}
+}
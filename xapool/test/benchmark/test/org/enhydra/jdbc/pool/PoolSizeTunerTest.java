@@ -0,0 +1,190 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import junit.framework.TestCase;
+
+import org.enhydra.jdbc.util.PoolMetrics;
+
+/**
+ * The decisions of PoolSizeTuner and the cap of a ConnectionBudget. The
+ * events of the windows are given to the tuner by the test, a window ends
+ * at the first check out after windowTime: windowTime is long while the
+ * events are given, so that only the last check out ends the window.
+ */
+public class PoolSizeTunerTest extends TestCase {
+	private static final long WINDOW = 50; // ms
+
+	private static final long NEVER = 3600000; // no window ends
+
+	private static final long LIFETIME = 600000;
+
+	private static int budgets; // a budget of its own for each test
+
+	private GenericPool pool;
+
+	private GenericPool other;
+
+	protected void tearDown() {
+		if (pool != null)
+			pool.stop();
+		if (other != null)
+			other.stop();
+	}
+
+	private GenericPool tuned(int minSize, int maxSize) {
+		PoolTestHelper helper = new PoolTestHelper();
+		GenericPool p = PoolTestHelper.pool(helper, false, minSize, maxSize,
+				LIFETIME);
+		p.start();
+		p.setAutoTune(true);
+		p.getSizeTuner().setWindowTime(NEVER);
+		return p;
+	}
+
+	/*
+	 * gives n check outs to the tuner, the waiting ones first, then ends
+	 * the window with one more check out
+	 */
+	private void window(GenericPool p, int n, int waited)
+			throws InterruptedException {
+		PoolSizeTuner tuner = p.getSizeTuner();
+		PoolMetrics source = p.getMetrics();
+		for (int i = 0; i < n; i++)
+			tuner.checkedOut(source, (i < waited) ? 1000000L : 0);
+		tuner.setWindowTime(WINDOW);
+		Thread.sleep(WINDOW + 10);
+		tuner.checkedOut(source, 0);
+		tuner.setWindowTime(NEVER);
+	}
+
+	public void testGrow() throws Exception {
+		pool = tuned(0, 8);
+		pool.getSizeTuner().setUpperBound(10);
+		window(pool, 10, 5);
+		assertEquals(10, pool.getMaxSize());
+		assertEquals(1, pool.getMetrics().getResizeCount());
+		// up to the upper bound
+		window(pool, 10, 5);
+		assertEquals(10, pool.getMaxSize());
+		assertTrue(pool.getSizeTuner().getLastDecision().indexOf(
+				"upper bound") >= 0);
+	}
+
+	public void testGrowOnTimeout() throws Exception {
+		pool = tuned(0, 4);
+		pool.getSizeTuner().setUpperBound(8);
+		pool.getSizeTuner().timedOut(pool.getMetrics(), 1000000L);
+		window(pool, 100, 0);
+		assertEquals(5, pool.getMaxSize());
+	}
+
+	public void testStable() throws Exception {
+		pool = tuned(0, 4);
+		pool.getSizeTuner().setUpperBound(8);
+		// 1 % of the check outs waited, under growWaitPercent
+		window(pool, 100, 1);
+		assertEquals(4, pool.getMaxSize());
+		assertEquals(0, pool.getMetrics().getResizeCount());
+	}
+
+	public void testShrink() throws Exception {
+		pool = tuned(0, 16);
+		pool.getSizeTuner().setShrinkWindows(2);
+		pool.getSizeTuner().setLowerBound(13);
+		window(pool, 10, 0);
+		assertEquals(16, pool.getMaxSize());
+		window(pool, 10, 0);
+		assertEquals(14, pool.getMaxSize());
+		// down to the lower bound
+		window(pool, 10, 0);
+		window(pool, 10, 0);
+		assertEquals(13, pool.getMaxSize());
+		window(pool, 10, 0);
+		window(pool, 10, 0);
+		assertEquals(13, pool.getMaxSize());
+	}
+
+	public void testMinSizeFollowsUse() throws Exception {
+		pool = tuned(0, 16);
+		for (int i = 0; i < 3; i++)
+			pool.checkOut(null, null, 0);
+		window(pool, 10, 0);
+		// the connections in use, plus the check outs during a creation
+		assertTrue(pool.getMinSize() >= 3);
+		assertTrue(pool.getMinSize() <= 4);
+		assertEquals(16, pool.getMaxSize());
+	}
+
+	public void testBudgetCapsGrowth() throws Exception {
+		ConnectionBudget budget = ConnectionBudget.getBudget("test"
+				+ (++budgets));
+		budget.setLimit(10);
+		pool = tuned(0, 5);
+		other = tuned(0, 5);
+		pool.getSizeTuner().setBudget(budget);
+		pool.getSizeTuner().setUpperBound(20);
+		other.getSizeTuner().setBudget(budget);
+		// the pools join the budget at their first window
+		window(pool, 10, 0);
+		window(other, 10, 0);
+		assertEquals(2, budget.getPoolCount());
+		assertEquals(10, budget.getUsed());
+
+		window(pool, 10, 10);
+		assertEquals(5, pool.getMaxSize());
+		assertTrue(pool.getSizeTuner().getLastDecision().indexOf(
+				"budget is exhausted") >= 0);
+
+		// the connections left by an other pool can be taken
+		other.setAutoTune(false);
+		assertEquals(5, budget.getUsed());
+		window(pool, 10, 10);
+		assertEquals(6, pool.getMaxSize());
+		assertEquals(6, budget.getUsed());
+	}
+
+	public void testBudgetExceeded() throws Exception {
+		ConnectionBudget budget = ConnectionBudget.getBudget("test"
+				+ (++budgets));
+		pool = tuned(0, 5);
+		other = tuned(0, 5);
+		pool.getSizeTuner().setBudget(budget);
+		other.getSizeTuner().setBudget(budget);
+		window(pool, 10, 0);
+		window(other, 10, 0);
+		budget.setLimit(8);
+		assertEquals(2, budget.getExcess());
+		// a pool shrinks at once, by the excess
+		window(pool, 10, 0);
+		assertEquals(3, pool.getMaxSize());
+		assertEquals(8, budget.getUsed());
+		assertEquals(0, budget.getExcess());
+		window(other, 10, 0);
+		assertEquals(5, other.getMaxSize());
+	}
+
+	public void testSameBudgetByName() {
+		assertSame(ConnectionBudget.getBudget("shared"), ConnectionBudget
+				.getBudget("shared"));
+	}
+}
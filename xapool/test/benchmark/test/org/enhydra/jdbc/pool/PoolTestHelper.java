@@ -0,0 +1,146 @@
+/*
+ * XAPool: Open Source XA JDBC Pool
+ * Copyright (C) 2003 Objectweb.org
+ * Initial Developer: Lutris Technologies Inc.
+ * Contact: xapool-public@lists.debian-sf.objectweb.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ */
+package org.enhydra.jdbc.pool;
+
+import java.sql.SQLException;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.LogFactory;
+import org.enhydra.jdbc.util.Logger;
+
+/**
+ * PoolHelper of the pool tests: the pooled objects are Items which record
+ * their user and whether they have been expired. The objects fail the
+ * checks once they are marked invalid, and the creation fails while
+ * failCreate is set. The creations which start while failGate is set wait
+ * until it is opened, then fail.
+ */
+class PoolTestHelper implements PoolHelper {
+	GenericPool pool;
+
+	// every object created, in creation order
+	final Vector created = new Vector();
+
+	volatile boolean failCreate;
+
+	volatile CountDownLatch failGate;
+
+	// creations waiting for failGate
+	final AtomicInteger gated = new AtomicInteger();
+
+	static final class Item {
+		final int id;
+
+		final String user;
+
+		volatile boolean valid = true;
+
+		volatile boolean expired;
+
+		Item(int id, String user) {
+			this.id = id;
+			this.user = user;
+		}
+
+		public String toString() {
+			return "Item" + id + "(" + user + ")";
+		}
+	}
+
+	/**
+	 * returns a started pool of this helper, without a clean up thread
+	 * unless sleepTime is set later
+	 */
+	static GenericPool pool(PoolTestHelper helper, boolean concurrent,
+			int minSize, int maxSize, long lifeTime) {
+		GenericPool pool;
+		if (concurrent)
+			pool = new ConcurrentGenericPool(helper, minSize, maxSize,
+					lifeTime, 0, 0);
+		else
+			pool = new GenericPool(helper, minSize, maxSize, lifeTime,
+					GenericPool.DEFAULT_SLEEPTIME, 0);
+		pool.setLogger(new Logger(LogFactory.getLog("org.enhydra.jdbc.xapool")));
+		helper.pool = pool;
+		return pool;
+	}
+
+	public void expire(Object o) {
+		((Item) o).expired = true;
+	}
+
+	public boolean checkThisObject(Object o) {
+		return ((Item) o).valid;
+	}
+
+	public boolean testThisObject(Object o) {
+		return ((Item) o).valid;
+	}
+
+	public GenerationObject create() throws SQLException {
+		return create(null, null);
+	}
+
+	public GenerationObject create(String user, String password)
+			throws SQLException {
+		CountDownLatch gate = failGate;
+		if (gate != null) {
+			gated.incrementAndGet();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+			}
+			throw new SQLException("creation failed");
+		}
+		if (failCreate)
+			throw new SQLException("creation failed");
+		Item item;
+		synchronized (created) {
+			item = new Item(created.size(), user);
+			created.add(item);
+		}
+		return new GenerationObject(item, pool.getGeneration(), user, password);
+	}
+
+	int createdCount() {
+		return created.size();
+	}
+
+	/**
+	 * waits until the condition is true, at most 5 seconds
+	 */
+	static boolean eventually(Condition condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.isTrue()) {
+			if (System.currentTimeMillis() > deadline)
+				return false;
+			Thread.sleep(5);
+		}
+		return true;
+	}
+
+	interface Condition {
+		boolean isTrue();
+	}
+}